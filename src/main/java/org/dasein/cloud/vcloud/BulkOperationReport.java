@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of an operation applied to many resources at once, recorded per resource ID. Reports are safe to
+ * update from several threads.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class BulkOperationReport {
+    static public enum Outcome {
+        /**
+         * The operation completed for the resource
+         */
+        SUCCEEDED,
+        /**
+         * The resource did not offer the requested action, usually because it is already in the requested state
+         */
+        UNCHANGED,
+        /**
+         * The operation failed for the resource
+         */
+        FAILED,
+        /**
+         * The task performing the operation was cancelled or aborted in the cloud
+         */
+        CANCELLED,
+        /**
+         * The task performing the operation did not finish before the deadline
+         */
+        TIMED_OUT,
+        /**
+         * The thread tracking the operation was interrupted before the task finished
+         */
+        INTERRUPTED
+    }
+
+    static public @Nonnull Outcome toOutcome(@Nonnull vCloudMethod.TaskOutcome outcome) {
+        switch( outcome ) {
+            case SUCCESS: return Outcome.SUCCEEDED;
+            case CANCELLED: return Outcome.CANCELLED;
+            case TIMED_OUT: return Outcome.TIMED_OUT;
+            default: return Outcome.INTERRUPTED;
+        }
+    }
+
+    private final LinkedHashMap<String,Outcome> outcomes = new LinkedHashMap<String, Outcome>();
+    private final LinkedHashMap<String,String>  messages = new LinkedHashMap<String, String>();
+
+    public BulkOperationReport() { }
+
+    /**
+     * Records the outcome for a resource, replacing any outcome recorded earlier.
+     * @param id the ID of the resource
+     * @param outcome the outcome of the operation for the resource
+     * @param message an explanation of the outcome, if any
+     */
+    public synchronized void record(@Nonnull String id, @Nonnull Outcome outcome, @Nullable String message) {
+        outcomes.put(id, outcome);
+        if( message == null ) {
+            messages.remove(id);
+        }
+        else {
+            messages.put(id, message);
+        }
+    }
+
+    public synchronized void record(@Nonnull Collection<String> ids, @Nonnull Outcome outcome, @Nullable String message) {
+        for( String id : ids ) {
+            record(id, outcome, message);
+        }
+    }
+
+    /**
+     * @return the IDs for which an outcome has been recorded, in the order they were first recorded
+     */
+    public synchronized @Nonnull Collection<String> getIds() {
+        return new ArrayList<String>(outcomes.keySet());
+    }
+
+    /**
+     * @param outcome the outcome to match
+     * @return the IDs whose recorded outcome matches the specified outcome
+     */
+    public synchronized @Nonnull Collection<String> getIds(@Nonnull Outcome outcome) {
+        ArrayList<String> ids = new ArrayList<String>();
+
+        for( Map.Entry<String,Outcome> entry : outcomes.entrySet() ) {
+            if( entry.getValue().equals(outcome) ) {
+                ids.add(entry.getKey());
+            }
+        }
+        return ids;
+    }
+
+    public synchronized @Nullable String getMessage(@Nonnull String id) {
+        return messages.get(id);
+    }
+
+    /**
+     * @param id the ID of the resource
+     * @return the recorded outcome or <code>null</code> if nothing has been recorded for the resource
+     */
+    public synchronized @Nullable Outcome getOutcome(@Nonnull String id) {
+        return outcomes.get(id);
+    }
+
+    public synchronized boolean contains(@Nonnull String id) {
+        return outcomes.containsKey(id);
+    }
+
+    /**
+     * @return true if every recorded outcome is {@link Outcome#SUCCEEDED} or {@link Outcome#UNCHANGED}
+     */
+    public synchronized boolean isSuccessful() {
+        for( Outcome outcome : outcomes.values() ) {
+            if( !outcome.equals(Outcome.SUCCEEDED) && !outcome.equals(Outcome.UNCHANGED) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized @Nonnull String toString() {
+        StringBuilder str = new StringBuilder();
+
+        for( Map.Entry<String,Outcome> entry : outcomes.entrySet() ) {
+            String message = messages.get(entry.getKey());
+
+            if( str.length() > 0 ) {
+                str.append(", ");
+            }
+            str.append(entry.getKey()).append("=").append(entry.getValue());
+            if( message != null ) {
+                str.append(" (").append(message).append(")");
+            }
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.util.APITrace;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Applies a per-resource operation to many resources at once on the provider's bulk thread pool, recording the
+ * outcome for each resource in a {@link BulkOperationReport}. A failure for one resource does not stop the others.
+ * The requests each operation makes are paced by the tenant's {@link RateLimiter}, so concurrent bulk jobs against the
+ * same account share one budget.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class BulkRunner {
+    static private final Logger logger = vCloud.getLogger(BulkRunner.class);
+
+    /**
+     * The work to perform for a single resource.
+     */
+    static public interface Operation {
+        public void run(@Nonnull String id) throws CloudException, InternalException;
+    }
+
+    private final vCloud      provider;
+    private final String      name;
+    private final RateLimiter limiter;
+
+    /**
+     * @param provider the provider performing the operations
+     * @param name the name of the operation, used for thread names and error messages
+     */
+    public BulkRunner(@Nonnull vCloud provider, @Nonnull String name) {
+        this.provider = provider;
+        this.name = name;
+        this.limiter = RateLimiter.getInstance(provider);
+    }
+
+    /**
+     * Runs the operation for each of the specified resources and waits for all of them to finish. Duplicate IDs are
+     * only processed once.
+     * @param ids the IDs of the resources
+     * @param operation the work to perform for each resource
+     * @return the outcome for each resource
+     */
+    public @Nonnull BulkOperationReport run(@Nonnull String[] ids, @Nonnull final Operation operation) {
+        final BulkOperationReport report = new BulkOperationReport();
+        LinkedHashSet<String> unique = new LinkedHashSet<String>();
+
+        for( String id : ids ) {
+            unique.add(id);
+        }
+        if( unique.size() == 1 ) {
+            String id = unique.iterator().next();
+
+            apply(id, operation, report);
+            return report;
+        }
+        ArrayList<Callable<Void>> jobs = new ArrayList<Callable<Void>>();
+
+        for( final String id : unique ) {
+            jobs.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    apply(id, operation, report);
+                    return null;
+                }
+            });
+        }
+        if( jobs.isEmpty() ) {
+            return report;
+        }
+        ExecutorService executor = provider.newBulkExecutor(name);
+
+        try {
+            executor.invokeAll(jobs);
+        }
+        catch( InterruptedException e ) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            for( String id : unique ) {
+                if( !report.contains(id) ) {
+                    report.record(id, BulkOperationReport.Outcome.INTERRUPTED, "Interrupted before the operation was requested");
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        return report;
+    }
+
+    /**
+     * Throws if the report holds a failure for any resource.
+     * @param name the name of the operation for the error message
+     * @param report the outcome of the operation
+     * @throws CloudException the operation did not succeed for one or more of the resources
+     */
+    static public void check(@Nonnull String name, @Nonnull BulkOperationReport report) throws CloudException {
+        if( !report.isSuccessful() ) {
+            throw new CloudException(name + " failed for some resources: " + report);
+        }
+    }
+
+    private void apply(@Nonnull String id, @Nonnull Operation operation, @Nonnull BulkOperationReport report) {
+        if( Thread.currentThread().isInterrupted() ) {
+            report.record(id, BulkOperationReport.Outcome.INTERRUPTED, "Interrupted before the operation was requested");
+            return;
+        }
+        limiter.enter();
+        APITrace.begin(provider, name);
+        try {
+            operation.run(id);
+            report.record(id, BulkOperationReport.Outcome.SUCCEEDED, null);
+        }
+        catch( CloudException | InternalException | RuntimeException e ) {
+            logger.error(name + " failed for " + id + ": " + e.getMessage());
+            report.record(id, BulkOperationReport.Outcome.FAILED, e.getMessage());
+        }
+        finally {
+            APITrace.end();
+            RateLimiter.leave();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the representations of individual entities (vApps and VMs, vApp templates, disks, networks, catalogs and
+ * catalog items) as returned by {@link vCloudMethod#get(String, String)}, keyed by the entity's URL. Each resource
+ * type has its own lifetime and size bound, and one cache of each type is shared by every provider instance connected
+ * to the same endpoint and account as the same user, since users may see different entities (and different
+ * representations of them).
+ * <p>
+ * Entries are dropped by {@link vCloudMethod} whenever it posts, puts or deletes against an entity or one of its
+ * sub-resources, and whenever a task it waits on finishes, using the task's <code>Owner</code> link. Because VMs are
+ * embedded in their parent vApp and catalog items are listed in their catalog, a change to any vApp or VM drops every
+ * cached vApp and a change to a catalog item drops every cached catalog. Representations that list tasks in progress
+ * are never cached, since the entity is about to change. Changes drop the entries of every user of the tenant.
+ * <p>
+ * Every change also bumps a generation for the entity's URL. A reader takes the generation with
+ * {@link #getGeneration(String)} before sending its GET and hands it back to {@link #put(String, String, long)}, which
+ * ignores the response if the entity changed while the GET was in flight; otherwise a GET racing a write could cache
+ * the representation from before the write.
+ * <p>
+ * Lookups that found nothing (404) are remembered for a short time so repeated lookups of deleted entities do not go
+ * back to the cloud; a 403 is not, since it depends on the user's rights. These misses are dropped along with the rest
+ * of an entity's entries and, for a whole resource type, whenever a task on something of that type succeeds (the task
+ * may have created it) or a catalog or catalog item is posted. Setting the <code>entityCache</code> custom
+ * property to <code>false</code> turns caching off.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class EntityCache {
+    static private final class Policy {
+        private final String resource;
+        private final String segment;
+        private final long   lifetime;
+        private final int    maxEntries;
+        private final String dependent;
+
+        private Policy(@Nonnull String resource, long lifetime, int maxEntries, @Nullable String dependent) {
+            this.resource = resource;
+            this.segment = "/" + resource + "/";
+            this.lifetime = lifetime;
+            this.maxEntries = maxEntries;
+            this.dependent = dependent;
+        }
+    }
+
+    static private final Policy[] policies = {
+            new Policy("vApp", CalendarWrapper.SECOND * 15L, 1000, "vApp"),
+            new Policy("vAppTemplate", CalendarWrapper.MINUTE * 5L, 500, null),
+            new Policy("disk", CalendarWrapper.SECOND * 30L, 500, null),
+            new Policy("network", CalendarWrapper.MINUTE * 5L, 200, null),
+            new Policy("catalog", CalendarWrapper.MINUTE * 5L, 100, null),
+            new Policy("catalogItem", CalendarWrapper.MINUTE * 5L, 1000, "catalog")
+    };
+
+    static private final long MISS_LIFETIME = CalendarWrapper.SECOND * 30L;
+
+    static private final ConcurrentHashMap<String,EntityCache> caches = new ConcurrentHashMap<String, EntityCache>();
+
+    static private @Nullable Policy getPolicy(@Nonnull String resource) {
+        for( Policy policy : policies ) {
+            if( policy.resource.equals(resource) ) {
+                return policy;
+            }
+        }
+        return null;
+    }
+
+    static private @Nonnull EntityCache getInstance(@Nonnull vCloud provider, @Nonnull Policy policy) {
+        String key = provider.getUserKey() + "#" + policy.resource;
+        EntityCache cache = caches.get(key);
+
+        if( cache == null ) {
+            cache = new EntityCache(provider.getTenantKey(), policy);
+
+            EntityCache existing = caches.putIfAbsent(key, cache);
+
+            if( existing != null ) {
+                cache = existing;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Lists the caches of a resource type held for the users of the provider's tenant.
+     */
+    static private @Nonnull List<EntityCache> getTenantCaches(@Nonnull vCloud provider, @Nonnull Policy policy) {
+        String tenant = provider.getTenantKey();
+        ArrayList<EntityCache> matches = new ArrayList<EntityCache>();
+
+        // make sure the provider's own cache exists so its generations are bumped too
+        getInstance(provider, policy);
+        for( EntityCache cache : caches.values() ) {
+            if( cache.policy == policy && cache.tenant.equals(tenant) ) {
+                matches.add(cache);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @param provider the provider making the request
+     * @param resource the resource type of the entity
+     * @return the cache for the resource type or <code>null</code> if entities of that type are not cached
+     */
+    static public @Nullable EntityCache getInstance(@Nonnull vCloud provider, @Nonnull String resource) {
+        if( !provider.isEntityCacheEnabled() ) {
+            return null;
+        }
+        Policy policy = getPolicy(resource);
+
+        return (policy == null ? null : getInstance(provider, policy));
+    }
+
+    /**
+     * Forgets the lookups of the new entity's resource type that found nothing, since the new entity may now answer to
+     * one of them.
+     * @param provider the provider that created the entity
+     * @param resourceOrHref the resource type of the new entity or its URL
+     */
+    static public void created(@Nonnull vCloud provider, @Nonnull String resourceOrHref) {
+        for( Policy policy : policies ) {
+            if( policy.resource.equals(resourceOrHref) || resourceOrHref.contains(policy.segment) ) {
+                for( EntityCache cache : getTenantCaches(provider, policy) ) {
+                    cache.clearMisses();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops whatever is cached for the entity addressed by a URL, whether the URL is the entity itself or one of its
+     * sub-resources or actions, along with any entries that embed that entity, for every user of the tenant.
+     * @param provider the provider making the change
+     * @param href the URL that was changed
+     */
+    static public void invalidate(@Nonnull vCloud provider, @Nonnull String href) {
+        for( Policy policy : policies ) {
+            if( href.contains(policy.segment) ) {
+                for( EntityCache cache : getTenantCaches(provider, policy) ) {
+                    cache.invalidate(href);
+                }
+                if( policy.dependent != null ) {
+                    for( EntityCache cache : getTenantCaches(provider, getPolicy(policy.dependent)) ) {
+                        cache.clear();
+                    }
+                }
+            }
+        }
+    }
+
+    static private class Cached {
+        private final String xml;
+        private final long   expires;
+
+        private Cached(@Nullable String xml, long expires) {
+            this.xml = xml;
+            this.expires = expires;
+        }
+    }
+
+    private final String                      tenant;
+    private final Policy                      policy;
+    private final LinkedHashMap<String,Cached> entries;
+    private final LinkedHashMap<String,Long>   generations;
+    private long                               clock;
+    private long                               floor;
+
+    private EntityCache(@Nonnull String tenant, @Nonnull final Policy policy) {
+        this.tenant = tenant;
+        this.policy = policy;
+        this.entries = new LinkedHashMap<String, Cached>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Cached> eldest) {
+                return (size() > policy.maxEntries);
+            }
+        };
+        this.generations = new LinkedHashMap<String, Long>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Long> eldest) {
+                if( size() > policy.maxEntries ) {
+                    // forgetting a URL's generation must never make it look older than it is
+                    floor = Math.max(floor, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param href the URL of the entity
+     * @return the generation of the entity, to be handed to {@link #put(String, String, long)} or
+     * {@link #putMissing(String, long)} once the entity has been read
+     */
+    public synchronized long getGeneration(@Nonnull String href) {
+        Long generation = generations.get(toEntityHref(href));
+
+        return (generation == null ? floor : Math.max(generation, floor));
+    }
+
+    /**
+     * @param href the URL of the entity
+     * @return the cached representation or <code>null</code> if none is cached, it has expired or the entity is
+     * known to be missing
+     */
+    public synchronized @Nullable String get(@Nonnull String href) {
+        Cached entry = entries.get(href);
+
+        if( entry == null ) {
+            return null;
+        }
+        if( entry.expires < System.currentTimeMillis() ) {
+            entries.remove(href);
+            return null;
+        }
+        return entry.xml;
+    }
+
+    /**
+     * @param href the URL of the entity
+     * @return true if a recent lookup of the entity found nothing
+     */
+    public synchronized boolean isMissing(@Nonnull String href) {
+        Cached entry = entries.get(href);
+
+        if( entry == null || entry.xml != null ) {
+            return false;
+        }
+        if( entry.expires < System.currentTimeMillis() ) {
+            entries.remove(href);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Caches an entity's representation unless it lists tasks in progress or the entity has changed since it was read.
+     * Sub-resources such as metadata are not cached, since they change through requests against other URLs.
+     * @param href the URL of the entity
+     * @param xml the representation returned for the URL
+     * @param generation the entity's generation from before it was read
+     */
+    public synchronized void put(@Nonnull String href, @Nonnull String xml, long generation) {
+        if( !isEntity(href) || getGeneration(href) != generation ) {
+            return;
+        }
+        if( xml.contains("Tasks>") ) {
+            entries.remove(href);
+            return;
+        }
+        entries.put(href, new Cached(xml, System.currentTimeMillis() + policy.lifetime));
+    }
+
+    /**
+     * Remembers that a lookup of an entity found nothing, unless the entity has changed since it was looked up.
+     * @param href the URL of the entity
+     * @param generation the entity's generation from before it was looked up
+     */
+    public synchronized void putMissing(@Nonnull String href, long generation) {
+        if( isEntity(href) && getGeneration(href) == generation ) {
+            entries.put(href, new Cached(null, System.currentTimeMillis() + MISS_LIFETIME));
+        }
+    }
+
+    private boolean isEntity(@Nonnull String href) {
+        int idx = href.lastIndexOf(policy.segment);
+
+        return (idx >= 0 && href.indexOf('/', idx + policy.segment.length()) < 0);
+    }
+
+    /**
+     * @return the URL of the entity addressed by a URL that may also name one of its sub-resources or actions
+     */
+    private @Nonnull String toEntityHref(@Nonnull String href) {
+        int idx = href.lastIndexOf(policy.segment);
+
+        if( idx < 0 ) {
+            return href;
+        }
+        int end = href.indexOf('/', idx + policy.segment.length());
+
+        return (end < 0 ? href : href.substring(0, end));
+    }
+
+    private synchronized void clearMisses() {
+        Iterator<Cached> it = entries.values().iterator();
+
+        while( it.hasNext() ) {
+            if( it.next().xml == null ) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the entries for the entity addressed by a URL and for any of its sub-resources, and bumps the entity's
+     * generation so reads already in flight are not cached.
+     * @param href the URL of the entity or of one of its sub-resources or actions
+     */
+    public synchronized void invalidate(@Nonnull String href) {
+        Iterator<String> it = entries.keySet().iterator();
+
+        while( it.hasNext() ) {
+            String key = it.next();
+
+            if( key.equals(href) || href.startsWith(key + "/") || key.startsWith(href + "/") ) {
+                it.remove();
+            }
+        }
+        generations.put(toEntityHref(href), ++clock);
+    }
+
+    /**
+     * Drops every entry and bumps the generation of every entity.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        generations.clear();
+        floor = ++clock;
+    }
+}
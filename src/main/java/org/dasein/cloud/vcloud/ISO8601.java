@@ -205,6 +205,129 @@ public final class ISO8601 {
         return cal;
     }
 
+    /**
+     * Value returned by {@link #parseMillis(String)} when the input cannot be parsed.
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * Parses an ISO8601-compliant date/time string straight to milliseconds
+     * since the epoch. Accepts the same format as {@link #parse(String)} but
+     * scans the characters in place rather than building substrings, a
+     * <code>TimeZone</code> and a <code>Calendar</code>. Years before the
+     * Gregorian cutover are handed to {@link #parse(String)} so both methods
+     * agree on the Julian calendar.
+     *
+     * @param text the date/time string to be parsed
+     * @return milliseconds since the epoch, or {@link #INVALID} if the input
+     *         could not be parsed
+     * @throws IllegalArgumentException if a <code>null</code> argument is passed
+     */
+    public static long parseMillis(String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("argument can not be null");
+        }
+        // YYYY-MM-DDThh:mm:ss.SSS followed by Z or +hh:mm/-hh:mm
+        int length = text.length();
+        if (length < 24 || text.charAt(0) == '-' || text.charAt(0) == '+') {
+            return parseSlow(text);
+        }
+        int year = digits(text, 0, 4);
+        if (year < 1583) {
+            return parseSlow(text);
+        }
+        if (text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':' || text.charAt(16) != ':' || text.charAt(19) != '.') {
+            return INVALID;
+        }
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int min = digits(text, 14, 2);
+        int sec = digits(text, 17, 2);
+        int ms = digits(text, 20, 3);
+        if (month < 0 || day < 0 || hour < 0 || min < 0 || sec < 0 || ms < 0) {
+            // parse() reads fields with Integer.parseInt, which also takes
+            // a sign, so leave anything that is not plain digits to it
+            return parseSlow(text);
+        }
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || min > 59 || sec > 59) {
+            return INVALID;
+        }
+        // time zone designator (Z or +00:00 or -00:00)
+        int offset;
+        char tzd = text.charAt(23);
+        if (tzd == 'Z' && length == 24) {
+            offset = 0;
+        } else if ((tzd == '+' || tzd == '-') && length == 29 && text.charAt(26) == ':') {
+            int tzHour = digits(text, 24, 2);
+            int tzMin = digits(text, 27, 2);
+            if (tzHour < 0 || tzMin < 0) {
+                return parseSlow(text);
+            }
+            if (tzHour > 23 || tzMin > 59) {
+                return INVALID;
+            }
+            offset = (tzHour * 60 + tzMin) * 60000;
+            if (tzd == '-') {
+                offset = -offset;
+            }
+        } else {
+            return INVALID;
+        }
+        long days = daysSinceEpoch(year, month, day);
+        return ((days * 24 + hour) * 60 + min) * 60000L + sec * 1000L + ms - offset;
+    }
+
+    private static long parseSlow(String text) {
+        Calendar cal = parse(text);
+        return (cal == null ? INVALID : cal.getTimeInMillis());
+    }
+
+    /**
+     * Reads a fixed number of decimal digits without allocating.
+     *
+     * @return the value, or -1 if any of the characters is not a digit
+     */
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0));
+                return (leap ? 29 : 28);
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days from 1970-01-01 to the given date in the proleptic Gregorian
+     * calendar.
+     */
+    private static long daysSinceEpoch(int year, int month, int day) {
+        // count years from March so the leap day falls at the end of the year
+        int y = (month <= 2 ? year - 1 : year);
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
     /**
      * Formats a <code>Calendar</code> value into an ISO8601-compliant
      * date/time string.
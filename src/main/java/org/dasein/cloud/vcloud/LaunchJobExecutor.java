@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the work that follows a VM launch (meta-data, customization, deploy and power on) on a bounded pool of named
+ * daemon threads owned by a single provider instance. Jobs are tracked until they finish so callers can see which
+ * launches are still being configured. When the pool and its queue are both full, the job is refused with a
+ * {@link CloudException} so the launch fails fast instead of configuring the VM on the caller's thread.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class LaunchJobExecutor {
+    static private final Logger logger = vCloud.getLogger(LaunchJobExecutor.class);
+
+    static public enum JobState {
+        /**
+         * The job is waiting in the queue for a free thread
+         */
+        QUEUED,
+        /**
+         * The job is running
+         */
+        RUNNING
+    }
+
+    /**
+     * A post-launch job that has been submitted and has not yet finished.
+     */
+    static public class Job {
+        private final String   id;
+        private final String   description;
+        private final long     submitted;
+        private volatile long     started;
+        private volatile JobState state;
+
+        private Job(@Nonnull String id, @Nonnull String description) {
+            this.id = id;
+            this.description = description;
+            this.submitted = System.currentTimeMillis();
+            this.state = JobState.QUEUED;
+        }
+
+        /**
+         * @return the ID of the VM or vApp being configured
+         */
+        public @Nonnull String getId() {
+            return id;
+        }
+
+        public @Nonnull String getDescription() {
+            return description;
+        }
+
+        public @Nonnull JobState getState() {
+            return state;
+        }
+
+        public @Nonnegative long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return when the job started running or 0 if it is still queued
+         */
+        public @Nonnegative long getStarted() {
+            return started;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return (description + " [" + state + "]");
+        }
+    }
+
+    private final ConcurrentHashMap<String,Job> jobs = new ConcurrentHashMap<String, Job>();
+    private final ThreadPoolExecutor            executor;
+    private final String                        name;
+
+    /**
+     * Constructs an executor running at most <code>maxThreads</code> jobs at once with up to <code>queueLimit</code>
+     * more waiting.
+     * @param name the name used as a prefix for the pool's threads
+     * @param maxThreads the maximum number of threads in the pool
+     * @param queueLimit the maximum number of jobs waiting for a thread
+     */
+    public LaunchJobExecutor(@Nonnull final String name, @Nonnegative int maxThreads, @Nonnegative int queueLimit) {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r);
+
+                t.setName(name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        this.name = name;
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueLimit), factory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a job for execution. Any exception thrown by the job is logged and the job is no longer reported as
+     * pending once it ends.
+     * @param id the ID of the VM or vApp being configured
+     * @param description a short description of the job for logging and reporting
+     * @param task the work to perform
+     * @return the tracking record for the job
+     * @throws CloudException the pool and its queue are full or the executor has been shut down
+     */
+    public @Nonnull Job submit(@Nonnull String id, @Nonnull String description, @Nonnull final Runnable task) throws CloudException {
+        final Job job = new Job(id, description);
+
+        jobs.put(id, job);
+        try {
+            execute(job, task);
+        }
+        catch( RejectedExecutionException e ) {
+            jobs.remove(id, job);
+            logger.warn("Launch job queue for " + name + " is " + (executor.isShutdown() ? "shut down" : "full") + ", refusing " + description);
+            throw new CloudException("Too many launches are still being configured (" + executor.getQueue().size() + " queued); try again later");
+        }
+        return job;
+    }
+
+    private void execute(@Nonnull final Job job, @Nonnull final Runnable task) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String name = Thread.currentThread().getName();
+
+                job.started = System.currentTimeMillis();
+                job.state = JobState.RUNNING;
+                Thread.currentThread().setName(name + " " + job.description);
+                try {
+                    task.run();
+                }
+                catch( Throwable t ) {
+                    logger.error("Launch job " + job.description + " failed: " + t.getMessage(), t);
+                }
+                finally {
+                    jobs.remove(job.id, job);
+                    Thread.currentThread().setName(name);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param id the ID of the VM or vApp being configured
+     * @return the pending job for the specified resource, or <code>null</code> if none is queued or running
+     */
+    public @Nullable Job getJob(@Nonnull String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * @return a snapshot of the jobs that are queued or running
+     */
+    public @Nonnull Collection<Job> listJobs() {
+        return new ArrayList<Job>(jobs.values());
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Stops accepting new jobs while letting queued and running jobs finish on the pool's threads.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for queued and running jobs to finish after a {@link #shutdown()}.
+     * @param timeoutMillis the maximum time to wait
+     * @return true if every job finished in time
+     * @throws InterruptedException the calling thread was interrupted while waiting
+     */
+    public boolean awaitTermination(@Nonnegative long timeoutMillis) throws InterruptedException {
+        return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the pool at once, interrupting running jobs and dropping queued ones.
+     * @return the jobs that were still queued or running
+     */
+    public @Nonnull Collection<Job> shutdownNow() {
+        executor.shutdownNow();
+
+        Collection<Job> unfinished = listJobs();
+
+        for( Job job : unfinished ) {
+            if( job.state == JobState.QUEUED ) {
+                // it will never run to remove itself
+                jobs.remove(job.id, job);
+            }
+        }
+        return unfinished;
+    }
+}
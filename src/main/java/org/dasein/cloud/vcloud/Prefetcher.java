@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Starts fetching the children of a listing on a pool of its own as soon as their references are read, typically
+ * from a {@link vCloudMethod#stream(String, String, java.util.Collection, vCloudMethod.ElementHandler)} handler, and
+ * hands back the results in the order the references were seen. The pool is created by
+ * {@link vCloud#newBulkExecutor(String)}, so its size follows the <code>bulkThreads</code> custom property; it is not
+ * shared with other listings because listings nest (listing VMs lists VLANs) and a shared bounded pool could fill up
+ * with parents waiting on children. Instances are used by a single listing and must be closed once it is done with
+ * them.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class Prefetcher<T> {
+    private final ExecutorService       executor;
+    private final ArrayList<Future<T>> results = new ArrayList<Future<T>>();
+    private int                         next    = 0;
+
+    public Prefetcher(@Nonnull vCloud provider, @Nonnull String name) {
+        executor = provider.newBulkExecutor(name);
+    }
+
+    /**
+     * Starts fetching a child.
+     * @param fetch the fetch, returning <code>null</code> if the child should be left out of the results
+     */
+    public void submit(@Nonnull Callable<T> fetch) {
+        results.add(executor.submit(fetch));
+    }
+
+    /**
+     * @return true if a fetch has been submitted whose result has not yet been taken
+     */
+    public boolean hasNext() {
+        return next < results.size();
+    }
+
+    /**
+     * @return true if the oldest fetch whose result has not yet been taken is done, so {@link #next()} will not block
+     */
+    public boolean isReady() {
+        return hasNext() && results.get(next).isDone();
+    }
+
+    /**
+     * Waits for the oldest fetch whose result has not yet been taken. If it failed, the fetches that have not yet run
+     * are abandoned and its error is thrown.
+     * @return the result, which is <code>null</code> if the child should be left out of the results
+     * @throws CloudException the fetch failed in the cloud provider
+     * @throws InternalException the fetch failed within Dasein Cloud, the wait was interrupted or there is no fetch
+     * left to take
+     */
+    public @Nullable T next() throws CloudException, InternalException {
+        if( !hasNext() ) {
+            throw new InternalException("No fetch is pending");
+        }
+        Future<T> result = results.get(next);
+
+        results.set(next++, null);
+        try {
+            return result.get();
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new InternalException(e);
+        }
+        catch( ExecutionException e ) {
+            Throwable cause = e.getCause();
+
+            close();
+            if( cause instanceof CloudException ) {
+                throw (CloudException)cause;
+            }
+            else if( cause instanceof InternalException ) {
+                throw (InternalException)cause;
+            }
+            throw new InternalException(cause);
+        }
+    }
+
+    /**
+     * Waits for every fetch submitted so far whose result has not yet been taken. If a fetch fails, the fetches that
+     * have not yet run are abandoned and its error is thrown.
+     * @return the non-null results in submission order
+     * @throws CloudException a fetch failed in the cloud provider
+     * @throws InternalException a fetch failed within Dasein Cloud or the wait was interrupted
+     */
+    public @Nonnull List<T> finish() throws CloudException, InternalException {
+        ArrayList<T> list = new ArrayList<T>();
+
+        try {
+            while( hasNext() ) {
+                T item = next();
+
+                if( item != null ) {
+                    list.add(item);
+                }
+            }
+        }
+        finally {
+            close();
+        }
+        return list;
+    }
+
+    /**
+     * Abandons any fetches that have not yet run and releases the pool's threads.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out the HTTP requests made by bulk operations against a single tenant so that large bulk jobs do not flood
+ * the vCloud Director cell. A bulk operation such as replacing tags issues several requests (reads, deletes, a merge
+ * and task polls), so rather than pacing whole operations, {@link BulkRunner} marks the thread running an operation
+ * with {@link #enter()} and {@link vCloudMethod} waits for a permit before each request sent from a marked thread.
+ * Requests made outside of bulk operations are not paced.
+ * <p>
+ * One limiter is shared by every provider instance connected to the same endpoint and account with the same rate, set
+ * by the <code>bulkRate</code> custom property (requests per second, default 20). Unused capacity does not
+ * accumulate, so a burst after an idle period is spaced like any other.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class RateLimiter {
+    static private final int MAX_LIMITERS = 1000;
+
+    /**
+     * The limiters by tenant and rate, evicted least recently used first. An evicted limiter still in use keeps
+     * pacing its current callers; later callers get a fresh one.
+     */
+    static private final LinkedHashMap<String,RateLimiter> limiters = new LinkedHashMap<String, RateLimiter>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,RateLimiter> eldest) {
+            return (size() > MAX_LIMITERS);
+        }
+    };
+
+    static private final ThreadLocal<RateLimiter> paced = new ThreadLocal<RateLimiter>();
+
+    /**
+     * @param provider the provider whose endpoint and account identify the tenant
+     * @return the limiter for the provider's tenant and configured rate
+     */
+    static public @Nonnull RateLimiter getInstance(@Nonnull vCloud provider) {
+        ProviderContext ctx = provider.getContext();
+        int rate = provider.getIntProperty("bulkRate", 20);
+        String key = (ctx == null ? "" : ctx.getEndpoint() + "#" + ctx.getAccountNumber()) + "#" + rate;
+
+        synchronized( limiters ) {
+            RateLimiter limiter = limiters.get(key);
+
+            if( limiter == null ) {
+                limiter = new RateLimiter(rate);
+                limiters.put(key, limiter);
+            }
+            return limiter;
+        }
+    }
+
+    /**
+     * Blocks until the calling thread may send another request, if it is running a bulk operation.
+     * @throws InterruptedException the calling thread was interrupted while waiting
+     */
+    static public void pace() throws InterruptedException {
+        RateLimiter limiter = paced.get();
+
+        if( limiter != null ) {
+            limiter.acquire();
+        }
+    }
+
+    /**
+     * Stops pacing the requests made by the calling thread.
+     */
+    static public void leave() {
+        paced.remove();
+    }
+
+    private final int  permitsPerSecond;
+    private final long intervalNanos;
+    private long       nextPermit;
+
+    private RateLimiter(@Nonnegative int permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1L) / permitsPerSecond;
+        this.nextPermit = System.nanoTime();
+    }
+
+    /**
+     * Paces every request the calling thread makes with this limiter until it calls {@link #leave()}.
+     */
+    public void enter() {
+        paced.set(this);
+    }
+
+    /**
+     * Blocks until the tenant may send another request.
+     * @throws InterruptedException the calling thread was interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+
+        synchronized( this ) {
+            long now = System.nanoTime();
+
+            if( nextPermit - now < 0L ) {
+                nextPermit = now;
+            }
+            wait = nextPermit - now;
+            nextPermit += intervalNanos;
+        }
+        if( wait > 0L ) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    public @Nonnegative int getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+}
@@ -0,0 +1,440 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Builders for the request bodies shared across the vCloud support classes. Each builder returns a payload that
+ * writes the document through an {@link XmlWriter} when the request is sent.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class RequestPayloads {
+    static public final String VCLOUD_NS = "http://www.vmware.com/vcloud/v1.5";
+    static public final String OVF_NS    = "http://schemas.dmtf.org/ovf/envelope/1";
+    static public final String XSI_NS    = "http://www.w3.org/2001/XMLSchema-instance";
+    static public final String RASD_NS   = "http://schemas.dmtf.org/wbem/wscim/1/cim-schema/2/CIM_ResourceAllocationSettingData";
+
+    static private final String RASD_ITEM_TYPE = "application/vnd.vmware.vcloud.rasdItem+xml";
+
+    /**
+     * Metadata entries to merge into an entity's metadata. Entries with empty values are left out.
+     * @param typed true to wrap values in a <code>TypedValue</code> as required from API 5.1 on
+     * @param metadata the keys and values to merge
+     * @return the <code>Metadata</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload metadata(final boolean typed, @Nonnull final Map<String,Object> metadata) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("Metadata").attribute("xmlns", VCLOUD_NS).attribute("xmlns:xsi", XSI_NS);
+                for( Map.Entry<String,Object> entry : metadata.entrySet() ) {
+                    Object value = entry.getValue();
+
+                    if( value != null && !value.equals("") ) {
+                        xml.start("MetadataEntry");
+                        xml.element("Key", entry.getKey());
+                        if( typed ) {
+                            xml.start("TypedValue").attribute("xsi:type", "MetadataStringValue");
+                        }
+                        xml.element("Value", value);
+                        if( typed ) {
+                            xml.end();
+                        }
+                        xml.end();
+                    }
+                }
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param name the name of the new disk
+     * @param sizeInBytes the size of the new disk
+     * @param description the description of the new disk
+     * @return the <code>DiskCreateParams</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload createDisk(@Nonnull final String name, final long sizeInBytes, @Nullable final String description) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("DiskCreateParams").attribute("xmlns", VCLOUD_NS);
+                xml.start("Disk").attribute("name", name).attribute("size", sizeInBytes);
+                xml.element("Description", description);
+                xml.end();
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param diskHref the URL of the disk to attach or detach
+     * @param diskType the media type of the disk, if it should be stated
+     * @return the <code>DiskAttachOrDetachParams</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload attachOrDetachDisk(@Nonnull final String diskHref, @Nullable final String diskType) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("DiskAttachOrDetachParams").attribute("xmlns", VCLOUD_NS);
+                xml.start("Disk").attribute("type", diskType).attribute("href", diskHref).end();
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param powerAction the <code>UndeployPowerAction</code>, or <code>null</code> for the cloud default
+     * @return the <code>UndeployVAppParams</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload undeploy(@Nullable final String powerAction) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("UndeployVAppParams").attribute("xmlns", VCLOUD_NS);
+                if( powerAction != null ) {
+                    xml.element("UndeployPowerAction", powerAction);
+                }
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param name the name of the new vApp template
+     * @param description the description of the new vApp template
+     * @param sourceHref the URL of the vApp to capture
+     * @param sourceType the media type of the vApp
+     * @return the <code>CaptureVAppParams</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload captureVApp(@Nonnull final String name, @Nullable final String description, @Nonnull final String sourceHref, @Nonnull final String sourceType) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("CaptureVAppParams").attribute("xmlns", VCLOUD_NS).attribute("xmlns:ovf", OVF_NS).attribute("name", name);
+                xml.element("Description", description);
+                xml.start("Source").attribute("href", sourceHref).attribute("type", sourceType).end();
+                xml.start("CustomizationSection");
+                xml.start("ovf:Info").end();
+                xml.element("CustomizeOnInstantiate", "true");
+                xml.end();
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param name the name of the new catalog
+     * @param description the description of the new catalog
+     * @return the unpublished <code>AdminCatalog</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload adminCatalog(@Nonnull final String name, @Nullable final String description) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("AdminCatalog").attribute("xmlns", VCLOUD_NS).attribute("name", name);
+                xml.element("Description", description);
+                xml.element("IsPublished", "false");
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param name the name of the catalog item and the entity it references
+     * @param description the description of the catalog item
+     * @param entityHref the URL of the entity to publish
+     * @param entityType the media type of the entity
+     * @return the <code>CatalogItem</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload catalogItem(@Nonnull final String name, @Nullable final String description, @Nonnull final String entityHref, @Nonnull final String entityType) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("CatalogItem").attribute("xmlns", VCLOUD_NS).attribute("xmlns:xsi", XSI_NS).attribute("name", name);
+                xml.element("Description", description);
+                xml.start("Entity").attribute("href", entityHref).attribute("name", name).attribute("type", entityType).attribute("xsi:type", "ResourceReferenceType").end();
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param powerOn true if the vApp or VM should be powered on once deployed
+     * @return the <code>DeployVAppParams</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload deploy(final boolean powerOn) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("DeployVAppParams").attribute("powerOn", powerOn).attribute("xmlns", VCLOUD_NS).end();
+            }
+        };
+    }
+
+    /**
+     * @param name the new name of the VM
+     * @param description the new description of the VM
+     * @return the <code>Vm</code> payload that renames a VM
+     */
+    static public @Nonnull XmlWriter.Payload vmName(@Nonnull final String name, @Nullable final String description) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("vcloud:Vm").attribute("xmlns:vcloud", VCLOUD_NS).attribute("name", name);
+                xml.element("vcloud:Description", description);
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param vmUrl the URL of the VM
+     * @param cpuCount the number of virtual CPUs
+     * @return the CPU <code>Item</code> of the VM's virtual hardware section
+     */
+    static public @Nonnull XmlWriter.Payload cpuItem(@Nonnull String vmUrl, int cpuCount) {
+        return rasdItem(vmUrl + "/virtualHardwareSection/cpu", "hertz * 10^6", "Number of Virtual CPUs", cpuCount + " virtual CPU(s)", 1, 3, cpuCount, cpuCount * 1000);
+    }
+
+    /**
+     * @param vmUrl the URL of the VM
+     * @param megabytes the memory size in megabytes
+     * @param elementName the display name of the memory size
+     * @return the memory <code>Item</code> of the VM's virtual hardware section
+     */
+    static public @Nonnull XmlWriter.Payload memoryItem(@Nonnull String vmUrl, int megabytes, @Nonnull String elementName) {
+        return rasdItem(vmUrl + "/virtualHardwareSection/memory", "byte * 2^20", "Memory Size", elementName, 2, 4, megabytes, megabytes * 10);
+    }
+
+    static private @Nonnull XmlWriter.Payload rasdItem(@Nonnull final String href, @Nonnull final String allocationUnits, @Nonnull final String description, @Nonnull final String elementName, final int instanceId, final int resourceType, final int quantity, final int weight) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("vcloud:Item").attribute("xmlns:vcloud", VCLOUD_NS).attribute("xmlns:rasd", RASD_NS);
+                xml.attribute("vcloud:type", RASD_ITEM_TYPE).attribute("vcloud:href", href);
+                xml.element("rasd:AllocationUnits", allocationUnits);
+                xml.element("rasd:Description", description);
+                xml.element("rasd:ElementName", elementName);
+                xml.element("rasd:InstanceID", instanceId);
+                xml.element("rasd:Reservation", 0);
+                xml.element("rasd:ResourceType", resourceType);
+                xml.element("rasd:VirtualQuantity", quantity);
+                xml.element("rasd:Weight", weight);
+                xml.start("vcloud:Link").attribute("href", href).attribute("rel", "edit").attribute("type", RASD_ITEM_TYPE).end();
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * A network connection section that connects a VM's first NIC to a network, taking its address from the pool.
+     * @param sectionHref the URL of the section being replaced, or <code>null</code> when instantiating
+     * @param sectionType the media type of the section, written only with its URL
+     * @param networkName the name of the network to connect to
+     * @return the <code>NetworkConnectionSection</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload networkConnection(@Nullable final String sectionHref, @Nullable final String sectionType, @Nonnull final String networkName) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("NetworkConnectionSection");
+                if( sectionHref != null ) {
+                    xml.attribute("href", sectionHref).attribute("type", sectionType);
+                }
+                xml.attribute("xmlns", VCLOUD_NS);
+                xml.start("Info").attribute("xmlns", OVF_NS).text("Specifies the available VM network connections").end();
+                xml.element("PrimaryNetworkConnectionIndex", 0);
+                xml.start("NetworkConnection").attribute("network", networkName);
+                xml.element("NetworkConnectionIndex", 0);
+                xml.element("IsConnected", "true");
+                xml.element("IpAddressAllocationMode", "POOL");
+                xml.end();
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param changeSid true if the guest's SID should be changed (Windows guests)
+     * @param adminPassword the administrator password, or <code>null</code> to have one generated
+     * @param script the customization script, if any
+     * @param computerName the guest's computer name
+     * @return the <code>GuestCustomizationSection</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload guestCustomization(final boolean changeSid, @Nullable final String adminPassword, @Nullable final String script, @Nonnull final String computerName) {
+        final String vmId = UUID.randomUUID().toString();
+
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("GuestCustomizationSection").attribute("xmlns", VCLOUD_NS).attribute("xmlns:ovf", OVF_NS).attribute("ovf:required", "false");
+                xml.start("Info").attribute("xmlns", OVF_NS).text("Specifies Guest OS Customization Settings").end();
+                xml.element("Enabled", "true");
+                xml.element("ChangeSid", changeSid);
+                xml.element("VirtualMachineId", vmId);
+                xml.element("JoinDomainEnabled", "false");
+                xml.element("UseOrgSettings", "false");
+                xml.element("AdminPasswordEnabled", "true");
+                if( adminPassword != null ) {
+                    xml.element("AdminPassword", adminPassword);
+                }
+                else {
+                    xml.element("AdminPasswordAuto", "true");
+                }
+                xml.element("ResetPasswordRequired", "false");
+                if( script != null ) {
+                    xml.element("CustomizationScript", script);
+                }
+                xml.element("ComputerName", computerName);
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * The vApp network configuration for a launch, bridging a network named for the VDC network the VMs connect to
+     * and, when the template names one, the template's own network to its parent. Failing that, the template's full
+     * network configuration is copied as given.
+     * @param networkName the name of the VDC network the VMs connect to
+     * @param networkHref the URL of that network
+     * @param networkId the ID of that network
+     * @param templateNetworkName the name of the template's network, if known
+     * @param templateNetworkHref the URL of the template network's parent, if its name is known
+     * @param templateNetworkId the ID of the template network's parent, if its name is known
+     * @param templateNetworkConfig the template's rendered <code>NetworkConfig</code> elements, if its network name is
+     * not known
+     * @return the <code>InstantiationParams</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload vAppNetworkConfig(@Nonnull final String networkName, @Nonnull final String networkHref, @Nonnull final String networkId, @Nullable final String templateNetworkName, @Nullable final String templateNetworkHref, @Nullable final String templateNetworkId, @Nullable final String templateNetworkConfig) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("InstantiationParams");
+                xml.start("NetworkConfigSection");
+                xml.start("Info").attribute("xmlns", OVF_NS).text("Configuration parameters for logical networks").end();
+                bridgedNetwork(xml, networkName, networkHref, networkId);
+                if( templateNetworkName != null ) {
+                    bridgedNetwork(xml, templateNetworkName, templateNetworkHref, templateNetworkId);
+                }
+                else if( templateNetworkConfig != null && templateNetworkConfig.length() > 0 ) {
+                    xml.raw(templateNetworkConfig);
+                }
+                xml.end();
+                xml.end();
+            }
+        };
+    }
+
+    static private void bridgedNetwork(@Nonnull XmlWriter xml, @Nonnull String name, @Nullable String parentHref, @Nullable String parentId) throws IOException {
+        xml.start("NetworkConfig").attribute("networkName", name);
+        xml.start("Configuration");
+        xml.start("ParentNetwork").attribute("name", name).attribute("id", parentId).attribute("href", parentHref).end();
+        xml.element("FenceMode", "bridged");
+        xml.end();
+        xml.end();
+    }
+
+    /**
+     * A sourced item that instantiates one template VM under a new name, already customized and sized.
+     * @param sourceHref the URL of the template VM
+     * @param name the name of the new VM
+     * @param description the description of the new VM, if any
+     * @param networkConnection the VM's network connection section
+     * @param guestCustomization the VM's guest customization section
+     * @param hardwareSection the template VM's virtual hardware section resized for the requested product, if any
+     * @return the <code>SourcedItem</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload sourcedItem(@Nonnull final String sourceHref, @Nonnull final String name, @Nullable final String description, @Nonnull final XmlWriter.Payload networkConnection, @Nonnull final XmlWriter.Payload guestCustomization, @Nullable final String hardwareSection) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start("SourcedItem");
+                xml.start("Source").attribute("href", sourceHref).end();
+                xml.start("VmGeneralParams");
+                xml.element("Name", name);
+                if( description != null ) {
+                    xml.element("Description", description);
+                }
+                xml.element("NeedsCustomization", "true");
+                xml.end();
+                xml.start("InstantiationParams");
+                networkConnection.write(xml);
+                guestCustomization.write(xml);
+                if( hardwareSection != null ) {
+                    xml.raw(hardwareSection);
+                }
+                xml.end();
+                xml.end();
+            }
+        };
+    }
+
+    /**
+     * @param name the name of the new vApp
+     * @param description the description of the new vApp
+     * @param networkConfig the vApp network configuration, if the template's own does not apply
+     * @param templateHref the URL of the vApp template
+     * @param sourcedItems the customized template VMs, or an empty list to instantiate the template VMs as they are
+     * @return the undeployed <code>InstantiateVAppTemplateParams</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload instantiateVAppTemplate(@Nonnull String name, @Nullable String description, @Nullable XmlWriter.Payload networkConfig, @Nonnull String templateHref, @Nonnull List<XmlWriter.Payload> sourcedItems) {
+        return vAppParams("InstantiateVAppTemplateParams", name, description, networkConfig, templateHref, sourcedItems);
+    }
+
+    /**
+     * @param name the name of the new vApp
+     * @param description the description of the new vApp
+     * @param networkConfig the vApp network configuration, if the template's own does not apply
+     * @param sourcedItems the template VMs to compose the vApp from
+     * @return the undeployed <code>ComposeVAppParams</code> payload
+     */
+    static public @Nonnull XmlWriter.Payload composeVApp(@Nonnull String name, @Nullable String description, @Nullable XmlWriter.Payload networkConfig, @Nonnull List<XmlWriter.Payload> sourcedItems) {
+        return vAppParams("ComposeVAppParams", name, description, networkConfig, null, sourcedItems);
+    }
+
+    static private @Nonnull XmlWriter.Payload vAppParams(@Nonnull final String root, @Nonnull final String name, @Nullable final String description, @Nullable final XmlWriter.Payload networkConfig, @Nullable final String templateHref, @Nonnull final List<XmlWriter.Payload> sourcedItems) {
+        return new XmlWriter.Payload() {
+            @Override
+            public void write(@Nonnull XmlWriter xml) throws IOException {
+                xml.start(root).attribute("xmlns", VCLOUD_NS).attribute("xmlns:ovf", OVF_NS).attribute("xmlns:xsi", XSI_NS);
+                xml.attribute("name", name).attribute("deploy", "false").attribute("powerOn", "false");
+                xml.element("Description", description);
+                if( networkConfig != null ) {
+                    networkConfig.write(xml);
+                }
+                if( templateHref != null ) {
+                    xml.start("Source").attribute("href", templateHref).end();
+                }
+                for( XmlWriter.Payload item : sourcedItems ) {
+                    item.write(xml);
+                }
+                xml.element("AllEULAsAccepted", "true");
+                xml.end();
+            }
+        };
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the bodies of GET responses that carried an <code>ETag</code> or <code>Last-Modified</code> validator so that
+ * {@link vCloudMethod} can revalidate them with a conditional GET and reuse the body when the cloud answers
+ * <code>304 Not Modified</code>. One cache is shared by every provider instance connected to the same endpoint and
+ * account as the same user, since users may be shown different bodies for the same URL. Each cache is bounded by the
+ * UTF-8 size of its bodies, set by the <code>responseCacheKb</code> custom property (default 8192), with the least
+ * recently used responses evicted first. At most {@link #MAX_CACHES} caches are kept, the least recently used being
+ * dropped first, so the memory held by all of them is at most that many times the property. Setting the property to
+ * <code>0</code> turns conditional GETs off.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class ResponseCache {
+    static private final Logger logger = vCloud.getLogger(ResponseCache.class);
+
+    static public final int MAX_CACHES = 16;
+
+    /**
+     * The caches by user, evicted least recently used first.
+     */
+    static private final LinkedHashMap<String,ResponseCache> caches = new LinkedHashMap<String, ResponseCache>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,ResponseCache> eldest) {
+            return (size() > MAX_CACHES);
+        }
+    };
+
+    /**
+     * @param provider the provider making the request
+     * @return the response cache for the provider's user or <code>null</code> if conditional GETs are turned off
+     */
+    static public @Nullable ResponseCache getInstance(@Nonnull vCloud provider) {
+        String key = provider.getUserKey();
+        long capacity = provider.getResponseCacheKb() * 1024L;
+        ResponseCache cache;
+
+        synchronized( caches ) {
+            if( capacity <= 0L ) {
+                caches.remove(key);
+                return null;
+            }
+            cache = caches.get(key);
+            if( cache == null ) {
+                cache = new ResponseCache(capacity);
+                caches.put(key, cache);
+                return cache;
+            }
+        }
+        // the property may have changed on reconnect; keep what fits rather than starting over
+        cache.setCapacity(capacity);
+        return cache;
+    }
+
+    /**
+     * @return the number of bytes the string takes up encoded as UTF-8
+     */
+    static int getUtf8Size(@Nonnull String s) {
+        int bytes = 0;
+
+        for( int i=0; i<s.length(); i++ ) {
+            char c = s.charAt(i);
+
+            if( c < 0x80 ) {
+                bytes++;
+            }
+            else if( c < 0x800 ) {
+                bytes += 2;
+            }
+            else if( Character.isHighSurrogate(c) && i+1 < s.length() && Character.isLowSurrogate(s.charAt(i+1)) ) {
+                bytes += 4;
+                i++;
+            }
+            else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * A cached response body and the validators that came with it.
+     */
+    static public class Response {
+        private final String body;
+        private final int    bytes;
+        private final String etag;
+        private final String lastModified;
+
+        private Response(@Nonnull String body, int bytes, @Nullable String etag, @Nullable String lastModified) {
+            this.body = body;
+            this.bytes = bytes;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public @Nonnull String getBody() {
+            return body;
+        }
+    }
+
+    private long                                 capacity;
+    private final LinkedHashMap<String,Response> responses = new LinkedHashMap<String, Response>(64, 0.75f, true);
+    private long                                 size;
+    private long                                 hits;
+    private long                                 misses;
+
+    private ResponseCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    private synchronized void setCapacity(long capacity) {
+        if( this.capacity != capacity ) {
+            this.capacity = capacity;
+            trim();
+        }
+    }
+
+    private void trim() {
+        Iterator<Response> it = responses.values().iterator();
+
+        while( size > capacity && it.hasNext() ) {
+            size -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Adds the validators of any cached response for the URL to a request.
+     * @param request the GET about to be sent
+     * @param url the URL being read
+     * @return the cached response the validators belong to, or <code>null</code> if none is cached
+     */
+    public synchronized @Nullable Response addValidators(@Nonnull HttpRequest request, @Nonnull String url) {
+        Response response = responses.get(url);
+
+        if( response != null ) {
+            if( response.etag != null ) {
+                request.addHeader("If-None-Match", response.etag);
+            }
+            if( response.lastModified != null ) {
+                request.addHeader("If-Modified-Since", response.lastModified);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Records that a cached response was reused after a <code>304 Not Modified</code>.
+     */
+    public synchronized void hit() {
+        hits++;
+        if( logger.isDebugEnabled() && (hits + misses) % 100 == 0 ) {
+            logger.debug("Conditional GET hit ratio " + getHitRatio() + " over " + (hits + misses) + " responses, " + size + " bytes cached");
+        }
+    }
+
+    /**
+     * Stores a full response, replacing what was cached for the URL. Responses without validators are not kept.
+     * @param url the URL that was read
+     * @param response the response from the cloud
+     * @param body the body of the response
+     */
+    public synchronized void store(@Nonnull String url, @Nonnull HttpResponse response, @Nonnull String body) {
+        Header etag = response.getFirstHeader("ETag");
+        Header lastModified = response.getFirstHeader("Last-Modified");
+
+        misses++;
+        remove(url);
+        if( etag == null && lastModified == null ) {
+            return;
+        }
+        int bytes = getUtf8Size(body);
+
+        if( bytes > capacity ) {
+            return;
+        }
+        responses.put(url, new Response(body, bytes, etag == null ? null : etag.getValue(), lastModified == null ? null : lastModified.getValue()));
+        size += bytes;
+        trim();
+    }
+
+    /**
+     * Forgets any response cached for the URL.
+     * @param url the URL
+     */
+    public synchronized void remove(@Nonnull String url) {
+        Response response = responses.remove(url);
+
+        if( response != null ) {
+            size -= response.bytes;
+        }
+    }
+
+    /**
+     * @return the share of full responses and revalidated responses that were answered from the cache
+     */
+    public synchronized @Nonnegative double getHitRatio() {
+        long total = hits + misses;
+
+        return (total == 0L ? 0.0 : ((double)hits) / total);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the total UTF-8 size of the cached bodies in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+}
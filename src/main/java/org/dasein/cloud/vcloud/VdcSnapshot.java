@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The references listed by a VDC, read with a single pass over the VDC document and shared for a short time by the
+ * vApp, volume and VLAN listings so that listing all three reads each VDC once. The resource entities (vApps, vApp
+ * templates, disks and media) and the available networks are kept as plain references; loading the entities they
+ * point to is left to the listings.
+ * <p>
+ * Listings go through {@link #forEachResourceEntity(vCloudMethod, vCloud, String, String, ReferenceHandler)} and
+ * {@link #forEachNetwork(vCloudMethod, vCloud, String, ReferenceHandler)}. When the VDC has to be read, these hand over
+ * each reference as it streams in, so the listing can start loading entities before the read finishes.
+ * <p>
+ * One snapshot per VDC is shared by every provider instance connected to the same endpoint and account as the same
+ * user, since users may see different entities. Concurrent listings that find no current snapshot wait for a single
+ * read of the VDC. {@link vCloudMethod} drops the snapshots of every user of a tenant whenever it deletes something,
+ * posts against a VDC or sees a task finish, since any of these may add or remove references. Setting the <code>entityCache</code> custom property to <code>false</code> turns sharing off.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class VdcSnapshot {
+    static private final long LIFETIME = CalendarWrapper.SECOND * 30L;
+
+    static private final List<String> ELEMENTS = Arrays.asList("ResourceEntity", "AvailableNetworks/Network");
+
+    /**
+     * The snapshot of one VDC for one user. While a thread reads the VDC, <code>loading</code> is set and other
+     * readers wait on the slot for it to finish.
+     */
+    static private class Slot {
+        private final String tenant;
+        private VdcSnapshot  snapshot;
+        private boolean      loading;
+
+        private Slot(@Nonnull String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    static private final ConcurrentHashMap<String,Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+    static private @Nonnull Slot getSlot(@Nonnull vCloud provider, @Nonnull String vdcId) {
+        String key = provider.getUserKey() + "#" + vdcId;
+        Slot slot = slots.get(key);
+
+        if( slot == null ) {
+            slot = new Slot(provider.getTenantKey());
+
+            Slot existing = slots.putIfAbsent(key, slot);
+
+            if( existing != null ) {
+                slot = existing;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Receives the references listed by a VDC.
+     */
+    static public interface ReferenceHandler {
+        /**
+         * Called for each reference in document order, while the VDC is still streaming in if it had to be read.
+         * @param reference the reference
+         * @throws CloudException an error occurred in the cloud provider acting on the reference
+         * @throws InternalException an error occurred within Dasein Cloud acting on the reference
+         */
+        public void reference(@Nonnull Reference reference) throws CloudException, InternalException;
+    }
+
+    /**
+     * Hands the VDC's <code>ResourceEntity</code> references of a given type to a handler, from the current snapshot
+     * or, if there is none, as a new snapshot is read.
+     * @param method the method used to read the VDC
+     * @param provider the provider making the request
+     * @param vdcId the ID of the VDC
+     * @param mediaType the media type of the entities sought, compared without regard to case
+     * @param handler the handler receiving the references
+     * @throws CloudException an error occurred in the cloud provider reading the VDC or in the handler
+     * @throws InternalException an error occurred within Dasein Cloud reading the VDC or in the handler
+     */
+    static public void forEachResourceEntity(@Nonnull vCloudMethod method, @Nonnull vCloud provider, @Nonnull String vdcId, @Nonnull final String mediaType, @Nonnull final ReferenceHandler handler) throws CloudException, InternalException {
+        ReferenceHandler matching = new ReferenceHandler() {
+            @Override
+            public void reference(@Nonnull Reference reference) throws CloudException, InternalException {
+                if( mediaType.equalsIgnoreCase(reference.type) ) {
+                    handler.reference(reference);
+                }
+            }
+        };
+        VdcSnapshot snapshot = getCurrent(method, provider, vdcId, matching, null);
+
+        if( snapshot != null ) {
+            for( Reference reference : snapshot.entities ) {
+                matching.reference(reference);
+            }
+        }
+    }
+
+    /**
+     * Hands the VDC's <code>Network</code> references under <code>AvailableNetworks</code> to a handler, from the
+     * current snapshot or, if there is none, as a new snapshot is read.
+     * @param method the method used to read the VDC
+     * @param provider the provider making the request
+     * @param vdcId the ID of the VDC
+     * @param handler the handler receiving the references
+     * @throws CloudException an error occurred in the cloud provider reading the VDC or in the handler
+     * @throws InternalException an error occurred within Dasein Cloud reading the VDC or in the handler
+     */
+    static public void forEachNetwork(@Nonnull vCloudMethod method, @Nonnull vCloud provider, @Nonnull String vdcId, @Nonnull ReferenceHandler handler) throws CloudException, InternalException {
+        VdcSnapshot snapshot = getCurrent(method, provider, vdcId, null, handler);
+
+        if( snapshot != null ) {
+            for( Reference reference : snapshot.networks ) {
+                handler.reference(reference);
+            }
+        }
+    }
+
+    /**
+     * @return the current snapshot, or <code>null</code> if the VDC had to be read and the handlers have already
+     * been given its references
+     */
+    static private @Nullable VdcSnapshot getCurrent(@Nonnull vCloudMethod method, @Nonnull vCloud provider, @Nonnull String vdcId, @Nullable ReferenceHandler entityHandler, @Nullable ReferenceHandler networkHandler) throws CloudException, InternalException {
+        if( !provider.isEntityCacheEnabled() ) {
+            load(method, vdcId, entityHandler, networkHandler);
+            return null;
+        }
+        Slot slot = getSlot(provider, vdcId);
+
+        synchronized( slot ) {
+            while( slot.loading ) {
+                try {
+                    slot.wait();
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InternalException("Interrupted while waiting for VDC " + vdcId + " to be read");
+                }
+            }
+            if( slot.snapshot != null && slot.snapshot.expires >= System.currentTimeMillis() ) {
+                return slot.snapshot;
+            }
+            slot.loading = true;
+        }
+        // the handlers are called without holding the slot so a slow listing only holds up those waiting on the read
+        VdcSnapshot snapshot = null;
+
+        try {
+            snapshot = load(method, vdcId, entityHandler, networkHandler);
+            return null;
+        }
+        finally {
+            synchronized( slot ) {
+                if( snapshot != null ) {
+                    slot.snapshot = snapshot;
+                }
+                slot.loading = false;
+                slot.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Drops the snapshots of every user of the provider's tenant.
+     * @param provider the provider making the change
+     */
+    static public void invalidate(@Nonnull vCloud provider) {
+        String tenant = provider.getTenantKey();
+        Iterator<Slot> it = slots.values().iterator();
+
+        while( it.hasNext() ) {
+            if( it.next().tenant.equals(tenant) ) {
+                it.remove();
+            }
+        }
+    }
+
+    static private @Nonnull VdcSnapshot load(@Nonnull vCloudMethod method, @Nonnull String vdcId, @Nullable final ReferenceHandler entityHandler, @Nullable final ReferenceHandler networkHandler) throws CloudException, InternalException {
+        final ArrayList<Reference> entities = new ArrayList<Reference>();
+        final ArrayList<Reference> networks = new ArrayList<Reference>();
+
+        method.stream("vdc", vdcId, ELEMENTS, new vCloudMethod.ElementHandler() {
+            @Override
+            public void element(@Nonnull String localName, @Nonnull Map<String,String> attributes) throws CloudException, InternalException {
+                String href = attributes.get("href");
+
+                if( href != null ) {
+                    Reference reference = new Reference(href, attributes.get("type"), attributes.get("name"));
+
+                    if( localName.equals("Network") ) {
+                        networks.add(reference);
+                        if( networkHandler != null ) {
+                            networkHandler.reference(reference);
+                        }
+                    }
+                    else {
+                        entities.add(reference);
+                        if( entityHandler != null ) {
+                            entityHandler.reference(reference);
+                        }
+                    }
+                }
+            }
+        });
+        return new VdcSnapshot(entities, networks, System.currentTimeMillis() + LIFETIME);
+    }
+
+    /**
+     * A reference to an entity listed by a VDC.
+     */
+    static public class Reference {
+        private final String href;
+        private final String type;
+        private final String name;
+
+        private Reference(@Nonnull String href, @Nullable String type, @Nullable String name) {
+            this.href = href;
+            this.type = type;
+            this.name = name;
+        }
+
+        public @Nonnull String getHref() {
+            return href;
+        }
+
+        public @Nullable String getName() {
+            return name;
+        }
+
+        public @Nullable String getType() {
+            return type;
+        }
+    }
+
+    private final List<Reference> entities;
+    private final List<Reference> networks;
+    private final long            expires;
+
+    private VdcSnapshot(@Nonnull List<Reference> entities, @Nonnull List<Reference> networks, long expires) {
+        this.entities = Collections.unmodifiableList(entities);
+        this.networks = Collections.unmodifiableList(networks);
+        this.expires = expires;
+    }
+}
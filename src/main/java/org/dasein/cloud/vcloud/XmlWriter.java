@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * A minimal streaming XML writer for request bodies. Names are written as given and values are escaped with
+ * {@link vCloud#escapeXml(Appendable, String)} directly into the output, so a payload is encoded in one pass without
+ * first being assembled as a string. Request entities are buffered as UTF-8 bytes so they are sent with a
+ * <code>Content-Length</code> rather than chunked.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class XmlWriter {
+    /**
+     * A request body that can be written any number of times.
+     */
+    static public interface Payload {
+        public void write(@Nonnull XmlWriter xml) throws IOException;
+    }
+
+    /**
+     * Encodes a payload as a repeatable UTF-8 entity of known length.
+     * @param payload the request body
+     * @param contentType the media type of the body
+     * @return the entity
+     */
+    static public @Nonnull HttpEntity toEntity(@Nonnull Payload payload, @Nullable String contentType) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+
+            payload.write(new XmlWriter(writer));
+            writer.flush();
+        }
+        catch( IOException e ) {
+            throw new RuntimeException(e);
+        }
+        ByteArrayEntity entity = new ByteArrayEntity(out.toByteArray());
+
+        if( contentType != null ) {
+            entity.setContentType(contentType);
+        }
+        return entity;
+    }
+
+    /**
+     * Renders a payload as a string, for logging or for embedding in a larger document.
+     */
+    static public @Nonnull String toString(@Nonnull Payload payload) {
+        StringWriter out = new StringWriter();
+
+        try {
+            payload.write(new XmlWriter(out));
+        }
+        catch( IOException e ) {
+            throw new RuntimeException(e);
+        }
+        return out.toString();
+    }
+
+    private final Writer            out;
+    private final ArrayList<String> open = new ArrayList<String>();
+    private boolean                 inStartTag;
+
+    public XmlWriter(@Nonnull Writer out) {
+        this.out = out;
+    }
+
+    private void closeStartTag() throws IOException {
+        if( inStartTag ) {
+            out.write('>');
+            inStartTag = false;
+        }
+    }
+
+    /**
+     * Opens an element. Attributes may be added until content is written or the element is ended.
+     */
+    public @Nonnull XmlWriter start(@Nonnull String name) throws IOException {
+        closeStartTag();
+        out.write('<');
+        out.write(name);
+        open.add(name);
+        inStartTag = true;
+        return this;
+    }
+
+    /**
+     * Adds an attribute to the element just opened. Null values are left out.
+     */
+    public @Nonnull XmlWriter attribute(@Nonnull String name, @Nullable Object value) throws IOException {
+        if( !inStartTag ) {
+            throw new IllegalStateException("Attribute " + name + " written outside of a start tag");
+        }
+        if( value != null ) {
+            out.write(' ');
+            out.write(name);
+            out.write("=\"");
+            vCloud.escapeXml(out, value.toString());
+            out.write('"');
+        }
+        return this;
+    }
+
+    /**
+     * Writes escaped text content. Null values write nothing.
+     */
+    public @Nonnull XmlWriter text(@Nullable Object value) throws IOException {
+        closeStartTag();
+        if( value != null ) {
+            vCloud.escapeXml(out, value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Writes markup that has already been rendered, such as a section copied from a template.
+     */
+    public @Nonnull XmlWriter raw(@Nonnull String xml) throws IOException {
+        closeStartTag();
+        out.write(xml);
+        return this;
+    }
+
+    /**
+     * Closes the innermost open element.
+     */
+    public @Nonnull XmlWriter end() throws IOException {
+        String name = open.remove(open.size() - 1);
+
+        if( inStartTag ) {
+            out.write("/>");
+            inStartTag = false;
+        }
+        else {
+            out.write("</");
+            out.write(name);
+            out.write('>');
+        }
+        return this;
+    }
+
+    /**
+     * Writes an element with text content, or an empty element if the value is null.
+     */
+    public @Nonnull XmlWriter element(@Nonnull String name, @Nullable Object value) throws IOException {
+        return start(name).text(value).end();
+    }
+}
@@ -37,11 +37,19 @@ import org.dasein.cloud.dc.DataCenter;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.vcloud.BulkOperationReport;
+import org.dasein.cloud.vcloud.BulkRunner;
+import org.dasein.cloud.vcloud.Prefetcher;
+import org.dasein.cloud.vcloud.RequestPayloads;
+import org.dasein.cloud.vcloud.VdcSnapshot;
+import org.dasein.cloud.vcloud.XmlWriter;
 import org.dasein.cloud.vcloud.vCloud;
+import org.dasein.cloud.vcloud.vCloudBinder;
 import org.dasein.cloud.vcloud.vCloudMethod;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.storage.*;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -49,8 +57,12 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Implements support for disks in vCloud 5.1 and beyond.
@@ -80,12 +92,9 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
         APITrace.begin(getProvider(), "Volume.attachVolume");
         try {
             vCloudMethod method = new vCloudMethod(getProvider());
-            StringBuilder xml = new StringBuilder();
+            XmlWriter.Payload payload = RequestPayloads.attachOrDetachDisk(method.toURL("disk", volumeId), "application/vnd.vmware.vcloud.disk+xml");
 
-            xml.append("<DiskAttachOrDetachParams xmlns=\"http://www.vmware.com/vcloud/v1.5\">");
-            xml.append("<Disk type=\"application/vnd.vmware.vcloud.disk+xml\" href=\"").append(method.toURL("disk", volumeId)).append("\" />");
-            xml.append("</DiskAttachOrDetachParams>");
-            method.waitFor(method.post("attachVolume", method.toURL("vApp", toServer) + "/disk/action/attach", method.getMediaTypeForActionAttachVolume(), xml.toString()));
+            method.waitFor(method.postXml("attachVolume", method.toURL("vApp", toServer) + "/disk/action/attach", method.getMediaTypeForActionAttachVolume(), payload));
         }
         finally {
             APITrace.end();
@@ -195,17 +204,7 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
                 vdcId = getProvider().getDataCenterServices().listDataCenters(getContext().getRegionId()).iterator().next().getProviderDataCenterId();
             }
             long size = options.getVolumeSize().convertTo(Storage.BYTE).longValue();
-            StringBuilder xml = new StringBuilder();
-
-            xml.append("<DiskCreateParams xmlns=\"http://www.vmware.com/vcloud/v1.5\">");
-
-            xml.append("<Disk name=\"").append(vCloud.escapeXml(options.getName())).append("\" ");
-            xml.append("size=\"").append(String.valueOf(size)).append("\">");
-            xml.append("<Description>").append(vCloud.escapeXml(options.getDescription())).append("</Description>");
-            xml.append("</Disk>");
-            xml.append("</DiskCreateParams>");
-
-            String response = method.post(vCloudMethod.CREATE_DISK, vdcId, xml.toString());
+            String response = method.postXml(vCloudMethod.CREATE_DISK, vdcId, RequestPayloads.createDisk(options.getName(), size, options.getDescription()));
 
             if( response.length() < 1 ) {
                 throw new CloudException("No error, but no volume");
@@ -229,22 +228,9 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
                 String vmId = options.getVlanId();
 
                 if( vmId != null ) {
-                    long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*10L);
-
-                    while( timeout > System.currentTimeMillis() ) {
-                        try { Thread.sleep(15000L); }
-                        catch( InterruptedException ignore ) { }
-                        try {
-                            Volume v = getVolume(volumeId);
-
-                            if( v != null && v.getCurrentState().equals(VolumeState.AVAILABLE) ) {
-                                break;
-                            }
-                        }
-                        catch( Throwable ignore ) {
-                            // ignore
-                        }
-                    }
+                    // 0 is still being created
+                    try { method.waitForEntity("disk", volumeId, Collections.singletonList("0"), System.currentTimeMillis() + (CalendarWrapper.MINUTE*10L)); }
+                    catch( Throwable ignore ) { }
                     try { attach(volumeId, vmId, options.getDeviceId()); }
                     catch( Throwable ignore ) { }
                 }
@@ -277,12 +263,9 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
                 throw new CloudException("No virtual machine is attached to this volume");
             }
             vCloudMethod method = new vCloudMethod(getProvider());
-            StringBuilder xml = new StringBuilder();
+            XmlWriter.Payload payload = RequestPayloads.attachOrDetachDisk(method.toURL("disk", volumeId), null);
 
-            xml.append("<DiskAttachOrDetachParams xmlns=\"http://www.vmware.com/vcloud/v1.5\">");
-            xml.append("<Disk href=\"").append(method.toURL("disk", volumeId)).append("\" />");
-            xml.append("</DiskAttachOrDetachParams>");
-            method.waitFor(method.post("detachVolume",  method.toURL("vApp", serverId) + "/disk/action/detach", method.getMediaTypeForActionAttachVolume(), xml.toString()));
+            method.waitFor(method.postXml("detachVolume",  method.toURL("vApp", serverId) + "/disk/action/detach", method.getMediaTypeForActionAttachVolume(), payload));
         }
         finally {
             APITrace.end();
@@ -294,16 +277,32 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
         return new DiskCapabilities(getProvider());
     }
 
+    /**
+     * Reads the disk from the cloud rather than the entity cache, since callers asking for a single volume are usually
+     * checking whether its state has changed.
+     */
     @Override
     public Volume getVolume(@Nonnull String volumeId) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "Volume.getVolume");
         try {
-            for( Volume v : listVolumes() ) {
-                if( v.getProviderVolumeId().equals(volumeId) ) {
-                    return v;
+            vCloudMethod method = new vCloudMethod((vCloud)getProvider());
+            vCloudBinder.Disk disk = method.toDisk(method.fetch("disk", volumeId));
+
+            if( disk == null ) {
+                return null;
+            }
+            String vdcHref = disk.getLink("up", method.getMediaTypeForVDC());
+
+            if( vdcHref == null ) {
+                for( Volume v : listVolumes() ) {
+                    if( v.getProviderVolumeId().equals(volumeId) ) {
+                        return v;
+                    }
                 }
+                return null;
             }
-            return null; // TODO: optimize
+            // the fetch above refreshed the cached disk, which is what toVolume reads
+            return toVolume(((vCloud)getProvider()).toID(vdcHref), volumeId);
         }
         finally {
             APITrace.end();
@@ -331,51 +330,33 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
         APITrace.begin(getProvider(), "Volume.listVolumes");
         try {
             vCloudMethod method = new vCloudMethod(getProvider());
-            ArrayList<Volume> volumes = new ArrayList<Volume>();
-
-            for( DataCenter dc : method.listDataCenters() ) {
-                String xml = method.get("vdc", dc.getProviderDataCenterId());
-
-                if( xml != null && !xml.equals("") ) {
-                    Document doc = method.parseXML(xml);
-                    String docElementTagName = doc.getDocumentElement().getTagName();
-                    String nsString = "";
-                    if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                    NodeList vdcs = doc.getElementsByTagName(nsString + "Vdc");
-
-                    if( vdcs.getLength() > 0 ) {
-                        NodeList attributes = vdcs.item(0).getChildNodes();
-
-                        for( int i=0; i<attributes.getLength(); i++ ) {
-                            Node attribute = attributes.item(i);
-                            if(attribute.getNodeName().contains(":"))nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-                            else nsString = "";
-
-                            if( attribute.getNodeName().equalsIgnoreCase(nsString + "ResourceEntities") && attribute.hasChildNodes() ) {
-                                NodeList resources = attribute.getChildNodes();
-
-                                for( int j=0; j<resources.getLength(); j++ ) {
-                                    Node resource = resources.item(j);
-                                    if(resource.getNodeName().contains(":"))nsString = resource.getNodeName().substring(0, resource.getNodeName().indexOf(":") + 1);
-                                    else nsString = "";
-
-                                    if( resource.getNodeName().equalsIgnoreCase(nsString + "ResourceEntity") && resource.hasAttributes() ) {
-                                        Node type = resource.getAttributes().getNamedItem("type");
-
-                                        if( type != null && type.getNodeValue().equals(method.getMediaTypeForDisk()) ) {
-                                            Node href = resource.getAttributes().getNamedItem("href");
-                                            Volume volume = toVolume(dc.getProviderDataCenterId(), getProvider().toID(href.getNodeValue().trim()));
-
-                                            if( volume != null ) {
-                                                volumes.add(volume);
-                                            }
-                                        }
-                                    }
+            final String diskType = method.getMediaTypeForDisk();
+            final Prefetcher<Volume> prefetcher = new Prefetcher<Volume>((vCloud)getProvider(), "listVolumes");
+            List<Volume> volumes;
+
+            try {
+                // the VDC snapshot is shared with the VM and VLAN listings
+                for( DataCenter dc : method.listDataCenters() ) {
+                    final String vdcId = dc.getProviderDataCenterId();
+
+                    VdcSnapshot.forEachResourceEntity(method, (vCloud)getProvider(), vdcId, diskType, new VdcSnapshot.ReferenceHandler() {
+                        @Override
+                        public void reference(@Nonnull VdcSnapshot.Reference disk) throws CloudException, InternalException {
+                            final String volumeId = ((vCloud)getProvider()).toID(disk.getHref());
+
+                            prefetcher.submit(new Callable<Volume>() {
+                                @Override
+                                public Volume call() throws Exception {
+                                    return toVolume(vdcId, volumeId);
                                 }
-                            }
+                            });
                         }
-                    }
+                    });
                 }
+                volumes = prefetcher.finish();
+            }
+            finally {
+                prefetcher.close();
             }
             return volumes;
         }
@@ -441,63 +422,28 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
         if( xml == null || xml.length() < 1 ) {
             return null;
         }
-        Document doc = method.parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList disks = doc.getElementsByTagName(nsString + "Disk");
-
-        if( disks.getLength() < 1 ) {
-            return null;
-        }
-        Node diskNode = disks.item(0);
-        Node n = diskNode.getAttributes().getNamedItem("name");
+        vCloudBinder.Disk disk = method.toDisk(xml);
 
-        if( n != null ) {
-            volume.setName(n.getNodeValue().trim());
-        }
-        n = diskNode.getAttributes().getNamedItem("size");
-        if( n != null ) {
-            try {
-                volume.setSize(new Storage<org.dasein.util.uom.storage.Byte>(Integer.parseInt(n.getNodeValue().trim()), Storage.BYTE));
-            }
-            catch( NumberFormatException ignore ) {
-                // ignore
-            }
+        volume.setName(disk.getName());
+        volume.setDescription(disk.getDescription());
+        if( disk.getSize() > 0L ) {
+            volume.setSize(new Storage<org.dasein.util.uom.storage.Byte>(disk.getSize(), Storage.BYTE));
         }
-        if( volume.getSize() == null ) {
+        else {
             volume.setSize(new Storage<Gigabyte>(1, Storage.GIGABYTE));
         }
-        n = diskNode.getAttributes().getNamedItem("status");
-        if( n != null ) {
-            volume.setCurrentState(toState(n.getNodeValue().trim()));
-        }
-        NodeList attributes = diskNode.getChildNodes();
-
-        for( int i=0; i<attributes.getLength(); i++ ) {
-            Node attribute = attributes.item(i);
-
-            if( attribute.getNodeName().equalsIgnoreCase(nsString + "Description") && attribute.hasChildNodes() ) {
-                volume.setDescription(attribute.getFirstChild().getNodeValue().trim());
-            }
+        if( disk.getStatus() != null ) {
+            volume.setCurrentState(toState(disk.getStatus()));
         }
         try {
             xml = method.get("disk", volumeId + "/attachedVms");
 
             if( xml != null && !xml.equals("") ) {
-                doc = method.parseXML(xml);
-                docElementTagName = doc.getDocumentElement().getTagName();
-                nsString = "";
-                if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                NodeList vms = doc.getElementsByTagName(nsString + "VmReference");
-
-                if( vms.getLength() > 0 ) {
-                    Node vm = vms.item(0);
-                    Node href = vm.getAttributes().getNamedItem("href");
-
-                    if( href != null ) {
-                        volume.setProviderVirtualMachineId(getProvider().toID(href.getNodeValue().trim()));
-                    }
+                Element vm = vCloudBinder.first(method.bindXML(xml), vCloudBinder.VM_REFERENCE);
+                String href = (vm == null ? null : vCloudBinder.attribute(vm, "href"));
+
+                if( href != null ) {
+                    volume.setProviderVirtualMachineId(getProvider().toID(href));
                 }
             }
         }
@@ -517,12 +463,12 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
     public void setTags(@Nonnull String volumeId, @Nonnull Tag... tags) throws CloudException, InternalException {
     	APITrace.begin(getProvider(), "Volume.setTags");
     	try {
-    		Tag[] collectionForDelete = TagUtils.getTagsForDelete(getVolume(volumeId).getTags(), tags);
+    		vCloudMethod method = new vCloudMethod(getProvider());
+    		Tag[] collectionForDelete = TagUtils.getTagsForDelete(method.getMetaData("disk", volumeId), tags);
     		if (collectionForDelete.length != 0 ) {
     			removeTags(volumeId, collectionForDelete);
     		}
     		Map<String,Object> metadata = new HashMap<String, Object>();
-    		vCloudMethod method = new vCloudMethod(getProvider());
     		for( Tag tag : tags ) {
     			metadata.put(tag.getKey(), tag.getValue());
     		}
@@ -535,9 +481,23 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
     
     @Override
     public void setTags(@Nonnull String[] volumeIds, @Nonnull Tag... tags) throws CloudException, InternalException {
-    	for (String id : volumeIds) {
-    		setTags(id, tags);
-    	}
+    	BulkRunner.check("Volume.setTags", setTagsAll(volumeIds, tags));
+    }
+
+    /**
+     * Replaces the tags on each of the specified volumes, recording the outcome per volume instead of stopping at the
+     * first failure.
+     * @param volumeIds the IDs of the volumes
+     * @param tags the tags to apply
+     * @return the outcome for each volume
+     */
+    public @Nonnull BulkOperationReport setTagsAll(@Nonnull String[] volumeIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner((vCloud)getProvider(), "Volume.setTags").run(volumeIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod((vCloud)getProvider()).replaceMetaData("disk", id, tags);
+    		}
+    	});
     }
     
     @Override
@@ -558,9 +518,22 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
     
     @Override
     public void updateTags( @Nonnull String[] volumeIds, @Nonnull Tag... tags ) throws CloudException, InternalException {
-    	for( String id : volumeIds ) {
-    		updateTags(id, tags);
-    	}
+    	BulkRunner.check("Volume.updateTags", updateTagsAll(volumeIds, tags));
+    }
+
+    /**
+     * Adds or updates tags on each of the specified volumes, recording the outcome per volume.
+     * @param volumeIds the IDs of the volumes
+     * @param tags the tags to apply
+     * @return the outcome for each volume
+     */
+    public @Nonnull BulkOperationReport updateTagsAll(@Nonnull String[] volumeIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner((vCloud)getProvider(), "Volume.updateTags").run(volumeIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod((vCloud)getProvider()).mergeMetaData("disk", id, vCloudMethod.toMetadataMap(tags));
+    		}
+    	});
     }
     
     @Override
@@ -581,8 +554,21 @@ public class DiskSupport extends AbstractVolumeSupport<vCloud> {
     
     @Override
     public void removeTags( @Nonnull String[] volumeIds, @Nonnull Tag... tags ) throws CloudException, InternalException {
-    	for( String id : volumeIds ) {
-    		removeTags(id, tags);
-    	}
+    	BulkRunner.check("Volume.removeTags", removeTagsAll(volumeIds, tags));
+    }
+
+    /**
+     * Removes tags from each of the specified volumes, recording the outcome per volume.
+     * @param volumeIds the IDs of the volumes
+     * @param tags the tags to remove; only their keys are used
+     * @return the outcome for each volume
+     */
+    public @Nonnull BulkOperationReport removeTagsAll(@Nonnull String[] volumeIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner((vCloud)getProvider(), "Volume.removeTags").run(volumeIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod((vCloud)getProvider()).removeMetaData("disk", id, vCloudMethod.toMetadataMap(tags));
+    		}
+    	});
     }
 }
@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud.compute;
+
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.vcloud.XmlWriter;
+import org.dasein.cloud.vcloud.vCloud;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The resolved image, VLAN and network configuration for launching a given image onto a given VLAN in a given VDC.
+ * Plans are cached per user, since they hold the template as that user's catalogs show it, so repeated launches skip
+ * the image lookup, the VLAN lookups and the building of the vApp network configuration. Plans expire with the network
+ * cache, and all plans of the tenant are dropped whenever its image or network caches are refreshed. The least
+ * recently used plans are dropped once {@link #MAX_PLANS} are held.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class LaunchPlan {
+    static public final int MAX_PLANS = 1000;
+
+    static private final long LIFETIME = CalendarWrapper.MINUTE * 5L;
+
+    /**
+     * A cached plan, the tenant it was cached for and when it should be resolved again.
+     */
+    static private class Cached {
+        private final LaunchPlan plan;
+        private final String     tenant;
+        private final long       expires;
+
+        private Cached(@Nonnull LaunchPlan plan, @Nonnull String tenant, long expires) {
+            this.plan = plan;
+            this.tenant = tenant;
+            this.expires = expires;
+        }
+    }
+
+    static private final LinkedHashMap<String,Cached> plans = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Cached> eldest) {
+            return (size() > MAX_PLANS);
+        }
+    };
+
+    static private @Nonnull String toKey(@Nonnull vCloud provider, @Nonnull String imageId, @Nullable String vlanId, @Nonnull String vdcId) {
+        return provider.getUserKey() + "#" + vdcId + "#" + imageId + "#" + (vlanId == null ? "" : vlanId);
+    }
+
+    /**
+     * Finds a cached plan for launching the specified image.
+     * @param provider the provider performing the launch
+     * @param imageId the ID of the image being launched
+     * @param vlanId the VLAN requested in the launch options, if any
+     * @param vdcId the VDC into which the image is being launched
+     * @return the matching plan or <code>null</code> if none is cached
+     */
+    static public @Nullable LaunchPlan get(@Nonnull vCloud provider, @Nonnull String imageId, @Nullable String vlanId, @Nonnull String vdcId) {
+        String key = toKey(provider, imageId, vlanId, vdcId);
+
+        synchronized( plans ) {
+            Cached cached = plans.get(key);
+
+            if( cached == null ) {
+                return null;
+            }
+            if( cached.expires > System.currentTimeMillis() ) {
+                return cached.plan;
+            }
+            plans.remove(key);
+            return null;
+        }
+    }
+
+    static public void put(@Nonnull vCloud provider, @Nonnull LaunchPlan plan) {
+        Cached cached = new Cached(plan, provider.getTenantKey(), System.currentTimeMillis() + LIFETIME);
+
+        synchronized( plans ) {
+            plans.put(toKey(provider, plan.imageId, plan.requestedVlanId, plan.vdcId), cached);
+        }
+    }
+
+    /**
+     * Discards the cached plans of every user of the provider's tenant.
+     * @param provider the provider whose image or network information has changed
+     */
+    static public void invalidate(@Nonnull vCloud provider) {
+        String tenant = provider.getTenantKey();
+
+        synchronized( plans ) {
+            Iterator<Cached> it = plans.values().iterator();
+
+            while( it.hasNext() ) {
+                if( it.next().tenant.equals(tenant) ) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private final String            imageId;
+    private final String            requestedVlanId;
+    private final String            vdcId;
+    private final MachineImage      image;
+    private final VLAN              vlan;
+    private final XmlWriter.Payload networkConfig;
+    private final String            networkHref;
+    private final String            templateUrl;
+    private final String            templateXml;
+
+    /**
+     * @param imageId the ID of the image being launched
+     * @param requestedVlanId the VLAN requested in the launch options, if any
+     * @param vdcId the VDC into which the image is being launched
+     * @param image the image being launched
+     * @param vlan the VLAN the VMs will be connected to
+     * @param networkConfig the instantiation parameters for the vApp networks, if the template's own do not apply
+     * @param networkHref the href of the VDC network backing the VLAN
+     * @param templateUrl the URL of the vApp template
+     * @param templateXml the vApp template document, when the API version customizes VMs at instantiation
+     */
+    public LaunchPlan(@Nonnull String imageId, @Nullable String requestedVlanId, @Nonnull String vdcId, @Nonnull MachineImage image, @Nonnull VLAN vlan, @Nullable XmlWriter.Payload networkConfig, @Nonnull String networkHref, @Nonnull String templateUrl, @Nullable String templateXml) {
+        this.imageId = imageId;
+        this.requestedVlanId = (requestedVlanId == null ? "" : requestedVlanId);
+        this.vdcId = vdcId;
+        this.image = image;
+        this.vlan = vlan;
+        this.networkConfig = networkConfig;
+        this.networkHref = networkHref;
+        this.templateUrl = templateUrl;
+        this.templateXml = templateXml;
+    }
+
+    public @Nonnull MachineImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return the <code>InstantiationParams</code> element configuring the vApp networks, or <code>null</code> if the
+     * template's own network configuration applies
+     */
+    public @Nullable XmlWriter.Payload getNetworkConfig() {
+        return networkConfig;
+    }
+
+    public @Nonnull String getNetworkHref() {
+        return networkHref;
+    }
+
+    public @Nonnull String getTemplateUrl() {
+        return templateUrl;
+    }
+
+    public @Nullable String getTemplateXml() {
+        return templateXml;
+    }
+
+    public @Nonnull VLAN getVlan() {
+        return vlan;
+    }
+
+    public @Nonnull String getVdcId() {
+        return vdcId;
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud.compute;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.VirtualMachineProduct;
+import org.dasein.cloud.vcloud.vCloud;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Megabyte;
+import org.dasein.util.uom.storage.Storage;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable index of the VM products defined in the products resource (<code>vmproducts.json</code> unless the
+ * <code>vmproducts</code> property says otherwise) for one provider, cloud and region. The resource is read and
+ * parsed once per JVM; each index is built once and then serves lookups by ID, by architecture and by CPU count and
+ * RAM size without searching, and finds the smallest product with at least a given CPU count and RAM size with one
+ * pass over a list kept in size order. The indexed products are never handed out: every lookup returns copies, so callers may
+ * change what they get back without affecting other callers.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class ProductCatalog {
+    static private final Logger logger = vCloud.getLogger(ProductCatalog.class);
+
+    static private final int MAX_CUSTOM_PRODUCTS = 1000;
+
+    static private final ConcurrentHashMap<String,JSONArray>             resources      = new ConcurrentHashMap<String, JSONArray>();
+    static private final ConcurrentHashMap<String,ProductCatalog>        catalogs       = new ConcurrentHashMap<String, ProductCatalog>();
+    static private final ConcurrentHashMap<String,VirtualMachineProduct> customProducts = new ConcurrentHashMap<String, VirtualMachineProduct>();
+
+    /**
+     * Provides the product index for the provider's current products resource, provider, cloud and region.
+     * @param provider the provider whose products are sought
+     * @return the product index
+     * @throws InternalException the products resource could not be read or parsed
+     */
+    static public @Nonnull ProductCatalog getInstance(@Nonnull vCloud provider) throws InternalException {
+        ProviderContext ctx = provider.getContext();
+        String resource = provider.getVMProductsResource();
+        String providerName = provider.getProviderName();
+        String cloudName = provider.getCloudName();
+        String regionId = (ctx == null ? null : ctx.getRegionId());
+        String key = resource + "#" + providerName + "#" + cloudName + "#" + regionId;
+        ProductCatalog catalog = catalogs.get(key);
+
+        if( catalog == null ) {
+            catalog = new ProductCatalog(getProductSet(resource, providerName, cloudName), regionId);
+
+            ProductCatalog existing = catalogs.putIfAbsent(key, catalog);
+
+            if( existing != null ) {
+                catalog = existing;
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Describes a product ID of the form <code>custom:cpu:ram</code> assigned to VMs that match no standard product.
+     * Malformed custom IDs describe a 1 CPU, 512 MB product.
+     * @param productId the custom product ID
+     * @return the product described by the ID
+     */
+    static public @Nonnull VirtualMachineProduct toCustomProduct(@Nonnull String productId) {
+        VirtualMachineProduct product = customProducts.get(productId);
+
+        if( product != null ) {
+            return copy(product);
+        }
+        int cpuCount = 1, ramInMb = 512;
+        int first = productId.indexOf(':');
+        int second = (first < 0 ? -1 : productId.indexOf(':', first + 1));
+
+        if( second > 0 && productId.indexOf(':', second + 1) < 0 ) {
+            try {
+                cpuCount = Integer.parseInt(productId.substring(first + 1, second));
+                ramInMb = Integer.parseInt(productId.substring(second + 1));
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid custom product ID: " + productId);
+                cpuCount = 1;
+                ramInMb = 512;
+            }
+        }
+        product = new VirtualMachineProduct();
+        product.setProviderProductId(productId);
+        product.setCpuCount(cpuCount);
+        product.setRamSize(new Storage<Megabyte>(ramInMb, Storage.MEGABYTE));
+        product.setName(productId);
+        product.setDescription(productId);
+        if( customProducts.size() < MAX_CUSTOM_PRODUCTS ) {
+            customProducts.putIfAbsent(productId, product);
+        }
+        return copy(product);
+    }
+
+    static private @Nonnull VirtualMachineProduct copy(@Nonnull VirtualMachineProduct product) {
+        VirtualMachineProduct copy = new VirtualMachineProduct();
+
+        copy.setProviderProductId(product.getProviderProductId());
+        copy.setName(product.getName());
+        copy.setDescription(product.getDescription());
+        copy.setCpuCount(product.getCpuCount());
+        copy.setRamSize(product.getRamSize());
+        copy.setRootVolumeSize(product.getRootVolumeSize());
+        copy.setStandardHourlyRate(product.getStandardHourlyRate());
+        return copy;
+    }
+
+    static private @Nonnull List<VirtualMachineProduct> copy(@Nonnull List<VirtualMachineProduct> products) {
+        ArrayList<VirtualMachineProduct> copies = new ArrayList<VirtualMachineProduct>(products.size());
+
+        for( VirtualMachineProduct product : products ) {
+            copies.add(copy(product));
+        }
+        return copies;
+    }
+
+    static private @Nonnull JSONArray getResource(@Nonnull String resource) throws InternalException {
+        JSONArray sets = resources.get(resource);
+
+        if( sets == null ) {
+            InputStream input = ProductCatalog.class.getResourceAsStream(resource);
+
+            if( input == null ) {
+                logger.warn("No standard products resource exists for " + resource);
+                sets = new JSONArray();
+            }
+            else {
+                try {
+                    sets = new JSONArray(new JSONTokener(new InputStreamReader(input, "UTF-8")));
+                }
+                catch( IOException e ) {
+                    throw new InternalException(e);
+                }
+                catch( JSONException e ) {
+                    throw new InternalException(e);
+                }
+                finally {
+                    try { input.close(); }
+                    catch( IOException ignore ) { }
+                }
+            }
+            JSONArray existing = resources.putIfAbsent(resource, sets);
+
+            if( existing != null ) {
+                sets = existing;
+            }
+        }
+        return sets;
+    }
+
+    /**
+     * Picks the product set for the provider and cloud, falling back to the default set (or the first set) when
+     * there is no exact match.
+     */
+    static private @Nullable JSONObject getProductSet(@Nonnull String resource, @Nonnull String providerName, @Nonnull String cloudName) throws InternalException {
+        JSONArray sets = getResource(resource);
+        JSONObject match = null;
+
+        try {
+            for( int i=0; i<sets.length(); i++ ) {
+                JSONObject productSet = sets.getJSONObject(i);
+
+                if( !productSet.has("cloud") || !productSet.has("provider") || !productSet.has("products") ) {
+                    continue;
+                }
+                String cloud = productSet.getString("cloud");
+                String provider = productSet.getString("provider");
+
+                if( match == null || (provider.equals("default") && cloud.equals("default")) ) {
+                    match = productSet;
+                }
+                if( provider.equalsIgnoreCase(providerName) && cloud.equalsIgnoreCase(cloudName) ) {
+                    return productSet;
+                }
+            }
+        }
+        catch( JSONException e ) {
+            throw new InternalException(e);
+        }
+        if( match == null ) {
+            logger.warn("No products were defined");
+        }
+        return match;
+    }
+
+    static private long toSizeKey(int cpuCount, int ramInMb) {
+        return (((long)cpuCount) << 32) | (ramInMb & 0xffffffffL);
+    }
+
+    static private int getRamInMb(@Nonnull VirtualMachineProduct product) {
+        return product.getRamSize().intValue();
+    }
+
+    private final List<VirtualMachineProduct>                                   products;
+    private final Map<String,VirtualMachineProduct>                             byId;
+    private final Map<Architecture,List<VirtualMachineProduct>>                 byArchitecture;
+    private final Map<Architecture,List<VirtualMachineProduct>>                 bySizeOrder;
+    private final Map<Architecture,Map<Long,VirtualMachineProduct>>             bySize;
+
+    private ProductCatalog(@Nullable JSONObject productSet, @Nullable String regionId) throws InternalException {
+        ArrayList<VirtualMachineProduct> all = new ArrayList<VirtualMachineProduct>();
+        HashMap<String,VirtualMachineProduct> ids = new HashMap<String, VirtualMachineProduct>();
+        EnumMap<Architecture,List<VirtualMachineProduct>> architectures = new EnumMap<Architecture, List<VirtualMachineProduct>>(Architecture.class);
+
+        for( Architecture architecture : Architecture.values() ) {
+            architectures.put(architecture, new ArrayList<VirtualMachineProduct>());
+        }
+        if( productSet != null ) {
+            try {
+                JSONArray list = productSet.getJSONArray("products");
+
+                for( int i=0; i<list.length(); i++ ) {
+                    JSONObject json = list.getJSONObject(i);
+
+                    if( isExcluded(json, regionId) ) {
+                        continue;
+                    }
+                    VirtualMachineProduct product = toProduct(json);
+
+                    if( product == null ) {
+                        continue;
+                    }
+                    all.add(product);
+                    if( !ids.containsKey(product.getProviderProductId()) ) {
+                        ids.put(product.getProviderProductId(), product);
+                    }
+                    if( json.has("architectures") ) {
+                        JSONArray supported = json.getJSONArray("architectures");
+
+                        for( int j=0; j<supported.length(); j++ ) {
+                            try {
+                                architectures.get(Architecture.valueOf(supported.getString(j))).add(product);
+                            }
+                            catch( IllegalArgumentException e ) {
+                                logger.warn("Ignoring unknown architecture " + supported.getString(j) + " for product " + product.getProviderProductId());
+                            }
+                        }
+                    }
+                    else {
+                        for( List<VirtualMachineProduct> products : architectures.values() ) {
+                            products.add(product);
+                        }
+                    }
+                }
+            }
+            catch( JSONException e ) {
+                throw new InternalException(e);
+            }
+        }
+        EnumMap<Architecture,List<VirtualMachineProduct>> sorted = new EnumMap<Architecture, List<VirtualMachineProduct>>(Architecture.class);
+        EnumMap<Architecture,Map<Long,VirtualMachineProduct>> sizes = new EnumMap<Architecture, Map<Long, VirtualMachineProduct>>(Architecture.class);
+
+        for( Map.Entry<Architecture,List<VirtualMachineProduct>> entry : architectures.entrySet() ) {
+            ArrayList<VirtualMachineProduct> bySmallest = new ArrayList<VirtualMachineProduct>(entry.getValue());
+            HashMap<Long,VirtualMachineProduct> size = new HashMap<Long, VirtualMachineProduct>();
+
+            for( VirtualMachineProduct product : entry.getValue() ) {
+                Long key = toSizeKey(product.getCpuCount(), getRamInMb(product));
+
+                if( !size.containsKey(key) ) {
+                    size.put(key, product);
+                }
+            }
+            // a stable sort, so products of the same size stay in the order they are defined
+            Collections.sort(bySmallest, new Comparator<VirtualMachineProduct>() {
+                @Override
+                public int compare(VirtualMachineProduct a, VirtualMachineProduct b) {
+                    int ra = getRamInMb(a), rb = getRamInMb(b);
+
+                    if( ra != rb ) {
+                        return (ra < rb ? -1 : 1);
+                    }
+                    return (a.getCpuCount() < b.getCpuCount() ? -1 : (a.getCpuCount() == b.getCpuCount() ? 0 : 1));
+                }
+            });
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            sorted.put(entry.getKey(), Collections.unmodifiableList(bySmallest));
+            sizes.put(entry.getKey(), Collections.unmodifiableMap(size));
+        }
+        products = Collections.unmodifiableList(all);
+        byId = Collections.unmodifiableMap(ids);
+        byArchitecture = Collections.unmodifiableMap(architectures);
+        bySizeOrder = Collections.unmodifiableMap(sorted);
+        bySize = Collections.unmodifiableMap(sizes);
+    }
+
+    static private boolean isExcluded(@Nonnull JSONObject json, @Nullable String regionId) throws JSONException {
+        if( regionId != null && json.has("excludesRegions") ) {
+            JSONArray regions = json.getJSONArray("excludesRegions");
+
+            for( int j=0; j<regions.length(); j++ ) {
+                if( regions.getString(j).equals(regionId) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static private @Nullable VirtualMachineProduct toProduct(@Nonnull JSONObject json) throws InternalException {
+        VirtualMachineProduct prd = new VirtualMachineProduct();
+
+        try {
+            if( json.has("id") ) {
+                prd.setProviderProductId(json.getString("id"));
+            }
+            else {
+                return null;
+            }
+            if( json.has("name") ) {
+                prd.setName(json.getString("name"));
+            }
+            else {
+                prd.setName(prd.getProviderProductId());
+            }
+            if( json.has("description") ) {
+                prd.setDescription(json.getString("description"));
+            }
+            else {
+                prd.setDescription(prd.getName());
+            }
+            if( json.has("cpuCount") ) {
+                prd.setCpuCount(json.getInt("cpuCount"));
+            }
+            else {
+                prd.setCpuCount(1);
+            }
+            if( json.has("rootVolumeSizeInGb") ) {
+                prd.setRootVolumeSize(new Storage<Gigabyte>(json.getInt("rootVolumeSizeInGb"), Storage.GIGABYTE));
+            }
+            else {
+                prd.setRootVolumeSize(new Storage<Gigabyte>(1, Storage.GIGABYTE));
+            }
+            if( json.has("ramSizeInMb") ) {
+                prd.setRamSize(new Storage<Megabyte>(json.getInt("ramSizeInMb"), Storage.MEGABYTE));
+            }
+            else {
+                prd.setRamSize(new Storage<Megabyte>(512, Storage.MEGABYTE));
+            }
+            if( json.has("standardHourlyRates") ) {
+                JSONArray rates = json.getJSONArray("standardHourlyRates");
+
+                for( int i=0; i<rates.length(); i++ ) {
+                    JSONObject rate = rates.getJSONObject(i);
+
+                    if( rate.has("rate") ) {
+                        prd.setStandardHourlyRate((float)rate.getDouble("rate"));
+                    }
+                }
+            }
+        }
+        catch( JSONException e ) {
+            throw new InternalException(e);
+        }
+        return prd;
+    }
+
+    /**
+     * @param productId the ID of a standard product or a <code>custom:cpu:ram</code> ID
+     * @return a copy of the matching product or <code>null</code> if the ID is neither
+     */
+    public @Nullable VirtualMachineProduct getProduct(@Nonnull String productId) {
+        VirtualMachineProduct product = byId.get(productId);
+
+        if( product != null ) {
+            return copy(product);
+        }
+        return (productId.startsWith("custom") ? toCustomProduct(productId) : null);
+    }
+
+    /**
+     * @param architecture the architecture the products must support, or <code>null</code> for all products
+     * @return copies of the matching products in the order they are defined
+     */
+    public @Nonnull List<VirtualMachineProduct> getProducts(@Nullable Architecture architecture) {
+        return copy(architecture == null ? products : byArchitecture.get(architecture));
+    }
+
+    /**
+     * @param architecture the architecture the product must support
+     * @param cpuCount the exact number of CPUs
+     * @param ramInMb the exact RAM size in megabytes
+     * @return a copy of the first product defined with that CPU count and RAM size, or <code>null</code> if there is none
+     */
+    public @Nullable VirtualMachineProduct getProduct(@Nonnull Architecture architecture, int cpuCount, int ramInMb) {
+        VirtualMachineProduct product = bySize.get(architecture).get(toSizeKey(cpuCount, ramInMb));
+
+        return (product == null ? null : copy(product));
+    }
+
+    /**
+     * Finds the smallest product with at least the specified resources, preferring less RAM and then fewer CPUs.
+     * @param architecture the architecture the product must support
+     * @param minimumCpuCount the minimum number of CPUs
+     * @param minimumRamInMb the minimum RAM size in megabytes
+     * @return a copy of the nearest fit or <code>null</code> if no product is large enough
+     */
+    public @Nullable VirtualMachineProduct findProduct(@Nonnull Architecture architecture, int minimumCpuCount, int minimumRamInMb) {
+        for( VirtualMachineProduct product : bySizeOrder.get(architecture) ) {
+            if( product.getCpuCount() >= minimumCpuCount && getRamInMb(product) >= minimumRamInMb ) {
+                return copy(product);
+            }
+        }
+        return null;
+    }
+}
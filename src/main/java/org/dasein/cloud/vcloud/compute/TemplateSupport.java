@@ -29,6 +29,7 @@ import org.dasein.cloud.compute.Architecture;
 import org.dasein.cloud.compute.ImageCapabilities;
 import org.dasein.cloud.compute.ImageClass;
 import org.dasein.cloud.compute.ImageCreateOptions;
+import org.dasein.cloud.compute.ImageFilterOptions;
 import org.dasein.cloud.compute.MachineImage;
 import org.dasein.cloud.compute.MachineImageFormat;
 import org.dasein.cloud.compute.MachineImageState;
@@ -43,14 +44,20 @@ import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.Cache;
 import org.dasein.cloud.util.CacheLevel;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.vcloud.BulkOperationReport;
+import org.dasein.cloud.vcloud.BulkRunner;
+import org.dasein.cloud.vcloud.Prefetcher;
+import org.dasein.cloud.vcloud.RequestPayloads;
+import org.dasein.cloud.vcloud.XmlWriter;
 import org.dasein.cloud.vcloud.vCloud;
+import org.dasein.cloud.vcloud.vCloudBinder;
 import org.dasein.cloud.vcloud.vCloudMethod;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.time.Minute;
 import org.dasein.util.uom.time.TimePeriod;
 import org.dasein.util.uom.time.Week;
 import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -69,10 +76,12 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -123,21 +132,17 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
             else if( vAppId == null ) {
                 throw new CloudException("Unable to determine virtual machine vApp for capture: " + vmId);
             }
-            long timeout = (System.currentTimeMillis() + CalendarWrapper.MINUTE * 10L);
+            boolean running = !vm.getCurrentState().equals(VmState.STOPPED);
+
+            if( vm.getCurrentState().equals(VmState.PENDING) ) {
+                String status = method.waitForEntity("vApp", vmId, vAppSupport.PENDING_STATUSES, System.currentTimeMillis() + (CalendarWrapper.MINUTE * 10L));
 
-            while( timeout > System.currentTimeMillis() ) {
-                if( vm == null ) {
+                if( status == null ) {
                     throw new CloudException("VM " + vmId + " went away");
                 }
-                if( !vm.getCurrentState().equals(VmState.PENDING) ) {
-                    break;
-                }
-                try { Thread.sleep(15000L); }
-                catch( InterruptedException ignore ) { }
-                try { vm = ((vCloud)getProvider()).getComputeServices().getVirtualMachineSupport().getVirtualMachine(vmId); }
-                catch( Throwable ignore ) { }
+                // 8 is powered off
+                running = !status.equals("8");
             }
-            boolean running = !vm.getCurrentState().equals(VmState.STOPPED);
             String vappId = (String)vm.getTag(vAppSupport.PARENT_VAPP_ID);
 
             if( running ) {
@@ -145,15 +150,8 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
             }
             try {
                 String endpoint = method.toURL("vApp", vAppId);
-                StringBuilder xml = new StringBuilder();
-
-                xml.append("<CaptureVAppParams xmlns=\"http://www.vmware.com/vcloud/v1.5\" xmlns:ovf=\"http://schemas.dmtf.org/ovf/envelope/1\" name=\"").append(vCloud.escapeXml(options.getName())).append("\">");
-                xml.append("<Description>").append(options.getDescription()).append("</Description>");
-                xml.append("<Source href=\"").append(endpoint).append("\" type=\"").append(method.getMediaTypeForVApp()).append("\"/>");
-                xml.append("<CustomizationSection><ovf:Info/><CustomizeOnInstantiate>true</CustomizeOnInstantiate></CustomizationSection>");
-                xml.append("</CaptureVAppParams>");
-
-                String response = method.post(vCloudMethod.CAPTURE_VAPP, vm.getProviderDataCenterId(), xml.toString());
+                XmlWriter.Payload payload = RequestPayloads.captureVApp(options.getName(), options.getDescription(), endpoint, method.getMediaTypeForVApp());
+                String response = method.postXml(vCloudMethod.CAPTURE_VAPP, vm.getProviderDataCenterId(), payload);
 
                 if( response.equals("") ) {
                     throw new CloudException("No error or other information was in the response");
@@ -174,7 +172,7 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
                             logger.warn("Current state of VM: " + vm.getCurrentState());
                             ((vCloud)getProvider()).getComputeServices().getVirtualMachineSupport().undeploy(vappId, "shutdown");
                         }
-                        response = method.post(vCloudMethod.CAPTURE_VAPP, vm.getProviderDataCenterId(), xml.toString());
+                        response = method.postXml(vCloudMethod.CAPTURE_VAPP, vm.getProviderDataCenterId(), payload);
                         if( response.equals("") ) {
                             throw new CloudException("No error or other information was in the response");
                         }
@@ -233,15 +231,9 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
                 }
             }
         }
-        StringBuilder xml;
-
         if( c == null ) {
-            xml = new StringBuilder();
-            xml.append("<AdminCatalog xmlns=\"http://www.vmware.com/vcloud/v1.5\" name=\"Standard Catalog\">");
-            xml.append("<Description>Standard catalog for custom vApp templates</Description>");
-            xml.append("<IsPublished>false</IsPublished>");
-            xml.append("</AdminCatalog>");
-            String response = method.post("createCatalog", method.toAdminURL("org", getContext().getRegionId()) + "/catalogs", method.getMediaTypeForActionAddCatalog(), xml.toString());
+            XmlWriter.Payload payload = RequestPayloads.adminCatalog("Standard Catalog", "Standard catalog for custom vApp templates");
+            String response = method.postXml("createCatalog", method.toAdminURL("org", getContext().getRegionId()) + "/catalogs", method.getMediaTypeForActionAddCatalog(), payload);
             String href = null;
 
             method.waitFor(response);
@@ -265,25 +257,20 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
             if( href == null ) {
                 throw new CloudException("No catalog could be identified for publishing vApp template " + img.getProviderMachineImageId());
             }
-            c = getCatalog(false, href);
-            if( c == null ) {
+            // the new catalog is missing from the cached listing
+            getCatalogCache().clear();
+            c = getCatalog(href);
+            if( c == null || c.published ) {
                 throw new CloudException("No catalog could be identified for publishing vApp template " + img.getProviderMachineImageId());
             }
         }
 
-        xml = new StringBuilder();
-        xml.append("<CatalogItem xmlns=\"http://www.vmware.com/vcloud/v1.5\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ");
-        xml.append("name=\"").append(vCloud.escapeXml(img.getName())).append("\">");
-        xml.append("<Description>").append(vCloud.escapeXml(img.getDescription())).append("</Description>");
-        xml.append("<Entity href=\"").append(method.toURL("vAppTemplate", img.getProviderMachineImageId())).append("\" ");
-        xml.append("name=\"").append(vCloud.escapeXml(img.getName())).append("\" ");
-        xml.append("type=\"").append(method.getMediaTypeForVAppTemplate()).append("\" xsi:type=\"").append("ResourceReferenceType\"/>");
-        xml.append("</CatalogItem>");
+        XmlWriter.Payload payload = RequestPayloads.catalogItem(img.getName(), img.getDescription(), method.toURL("vAppTemplate", img.getProviderMachineImageId()), method.getMediaTypeForVAppTemplate());
 
-        method.waitFor(method.post("publish", method.toURL("catalog", c.catalogId) + "/catalogItems", method.getMediaTypeForCatalogItem(), xml.toString()));
+        method.waitFor(method.postXml("publish", method.toURL("catalog", c.catalogId) + "/catalogItems", method.getMediaTypeForCatalogItem(), payload));
     }
 
-    private @Nullable Catalog getCatalog(boolean published, @Nonnull String href) throws CloudException, InternalException {
+    private @Nullable Catalog getCatalog(@Nonnull String href) throws CloudException, InternalException {
         String catalogId = ((vCloud)getProvider()).toID(href);
         vCloudMethod method = new vCloudMethod((vCloud)getProvider());
         String xml = method.get("catalog", catalogId);
@@ -292,62 +279,21 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
             logger.warn("Unable to find catalog " + catalogId + " indicated by org " + getContext().getAccountNumber());
             return null;
         }
-        Document doc = method.parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList cNodes = doc.getElementsByTagName(nsString + "Catalog");
-
-        for( int i=0; i<cNodes.getLength(); i++ ) {
-            Node cnode = cNodes.item(i);
-
-            Node name = cnode.getAttributes().getNamedItem("name");
-            String catalogName = null;
+        vCloudBinder.Catalog c = method.toCatalog(xml);
+        String ownerHref = null;
 
-            if( name != null ) {
-                catalogName = name.getNodeValue().trim();
-            }
-            if( cnode.hasChildNodes() ) {
-                NodeList attributes = cnode.getChildNodes();
-                String owner = "--public--";
-                boolean p = false;
-
-                for( int j=0; j<attributes.getLength(); j++ ) {
-                    Node attribute = attributes.item(j);
-                    if(attribute.getNodeName().contains(":"))nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-                    else nsString = "";
-
-                    if( attribute.getNodeName().equalsIgnoreCase(nsString + "IsPublished") ) {
-                        p = (attribute.hasChildNodes() && attribute.getFirstChild().getNodeValue().trim().equalsIgnoreCase("true"));
-                    }
-                    else if( attribute.getNodeName().equalsIgnoreCase(nsString + "Link") && attribute.hasAttributes() ) {
-                        Node rel = attribute.getAttributes().getNamedItem("rel");
-
-                        if( rel != null && rel.getNodeValue().trim().equalsIgnoreCase("up") ) {
-                            Node type = attribute.getAttributes().getNamedItem("type");
-
-                            if( type != null && type.getNodeValue().trim().equalsIgnoreCase(method.getMediaTypeForOrg()) ) {
-                                Node h = attribute.getAttributes().getNamedItem("href");
-
-                                if( h != null ) {
-                                    owner = method.getOrgName(h.getNodeValue().trim());
-                                }
-                            }
-                        }
-                    }
-                }
-                if( p == published ) {
-                    Catalog catalog = new Catalog();
-                    catalog.catalogId = ((vCloud)getProvider()).toID(href);
-                    catalog.published = p;
-                    catalog.owner = owner;
-                    catalog.name = catalogName;
-                    return catalog;
-                }
+        for( vCloudBinder.Link link : c.getLinks() ) {
+            if( link.getRel().equalsIgnoreCase("up") && method.getMediaTypeForOrg().equalsIgnoreCase(link.getType()) ) {
+                ownerHref = link.getHref();
             }
-
         }
-        return null;
+        Catalog catalog = new Catalog();
+
+        catalog.catalogId = catalogId;
+        catalog.published = c.isPublished();
+        catalog.owner = (ownerHref == null ? "--public--" : method.getOrgName(ownerHref));
+        catalog.name = c.getName();
+        return catalog;
     }
 
     @Override
@@ -412,8 +358,19 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
         }
     }
 
-    private Iterable<Catalog> listPublicCatalogs() throws CloudException, InternalException {
-        Cache<Catalog> cache = Cache.getInstance(getProvider(), "publicCatalogs", Catalog.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(30, TimePeriod.MINUTE));
+    private @Nonnull Cache<Catalog> getCatalogCache() {
+        return Cache.getInstance(getProvider(), "catalogs", Catalog.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(30, TimePeriod.MINUTE));
+    }
+
+    /**
+     * Lists every catalog linked from the org, published or not, reading each catalog once. The public and private
+     * catalog listings are both filtered from the one cached result.
+     * @return the org's catalogs
+     * @throws CloudException an error occurred in the cloud provider reading the org or its catalogs
+     * @throws InternalException an error occurred within Dasein Cloud reading the org or its catalogs
+     */
+    private @Nonnull Iterable<Catalog> listCatalogs() throws CloudException, InternalException {
+        Cache<Catalog> cache = getCatalogCache();
         Iterable<Catalog> catalogs = cache.get(getContext());
 
         if( catalogs == null ) {
@@ -442,7 +399,7 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
 
                             if( type != null && type.getNodeValue().trim().equals(method.getMediaTypeForCatalog()) ) {
                                 Node href = link.getAttributes().getNamedItem("href");
-                                Catalog c = getCatalog(true, href.getNodeValue().trim());
+                                Catalog c = getCatalog(href.getNodeValue().trim());
 
                                 if( c != null ) {
                                     list.add(c);
@@ -458,50 +415,23 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
         return catalogs;
     }
 
-    private Iterable<Catalog> listPrivateCatalogs() throws CloudException, InternalException {
-        Cache<Catalog> cache = Cache.getInstance(getProvider(), "privateCatalogs", Catalog.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(30, TimePeriod.MINUTE));
-        Iterable<Catalog> catalogs = cache.get(getContext());
-
-        if( catalogs == null ) {
-            vCloudMethod method = new vCloudMethod((vCloud)getProvider());
-            String xml = method.get("org", getContext().getRegionId());
+    private @Nonnull Iterable<Catalog> listCatalogs(boolean published) throws CloudException, InternalException {
+        ArrayList<Catalog> matches = new ArrayList<Catalog>();
 
-            if( xml == null ) {
-                catalogs = Collections.emptyList();
+        for( Catalog catalog : listCatalogs() ) {
+            if( catalog.published == published ) {
+                matches.add(catalog);
             }
-            else {
-                ArrayList<Catalog> list = new ArrayList<Catalog>();
-                Document doc = method.parseXML(xml);
-                String docElementTagName = doc.getDocumentElement().getTagName();
-                String nsString = "";
-                if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                NodeList links = doc.getElementsByTagName(nsString + "Link");
-
-                for( int i=0; i<links.getLength(); i++ ) {
-                    Node link = links.item(i);
-
-                    if( link.hasAttributes() ) {
-                        Node rel = link.getAttributes().getNamedItem("rel");
-
-                        if( rel != null && rel.getNodeValue().trim().equalsIgnoreCase("down") ) {
-                            Node type = link.getAttributes().getNamedItem("type");
+        }
+        return matches;
+    }
 
-                            if( type != null && type.getNodeValue().trim().equals(method.getMediaTypeForCatalog()) ) {
-                                Node href = link.getAttributes().getNamedItem("href");
-                                Catalog c = getCatalog(false, href.getNodeValue().trim());
+    private Iterable<Catalog> listPublicCatalogs() throws CloudException, InternalException {
+        return listCatalogs(true);
+    }
 
-                                if( c != null ) {
-                                    list.add(c);
-                                }
-                            }
-                        }
-                    }
-                }
-                catalogs = list;
-            }
-            cache.put(getContext(), catalogs);
-        }
-        return catalogs;
+    private Iterable<Catalog> listPrivateCatalogs() throws CloudException, InternalException {
+        return listCatalogs(false);
     }
 
     @Override
@@ -547,77 +477,43 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
                 return imageList2;
             }
 
-            ArrayList<MachineImage> images = new ArrayList<MachineImage>();
-
-            for( Catalog catalog : listPrivateCatalogs() ) {
-                vCloudMethod method = new vCloudMethod((vCloud)getProvider());
-                String xml = method.get("catalog", catalog.catalogId);
-
-                if( xml == null ) {
-                    logger.warn("Unable to find catalog " + catalog.catalogId + " indicated by org " + getContext().getAccountNumber());
-                    continue;
-                }
-                Document doc = method.parseXML(xml);
-                String docElementTagName = doc.getDocumentElement().getTagName();
-                String nsString = "";
-                if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                NodeList cNodes = doc.getElementsByTagName(nsString + "Catalog");
-
-                for( int i=0; i<cNodes.getLength(); i++ ) {
-                    Node cnode = cNodes.item(i);
-
-                    if( cnode.hasChildNodes() ) {
-                        NodeList items = cnode.getChildNodes();
-
-                        for( int j=0; j<items.getLength(); j++ ) {
-                            Node wrapper = items.item(j);
-                            if(wrapper.getNodeName().contains(":"))nsString = wrapper.getNodeName().substring(0, wrapper.getNodeName().indexOf(":") + 1);
-                            else nsString = "";
-
-                            if( wrapper.getNodeName().equalsIgnoreCase(nsString + "CatalogItems") && wrapper.hasChildNodes() ) {
-                                NodeList entries = wrapper.getChildNodes();
-
-                                for( int k=0; k<entries.getLength(); k++ ) {
-                                    Node item = entries.item(k);
-                                    if(item.getNodeName().contains(":"))nsString = item.getNodeName().substring(0, item.getNodeName().indexOf(":") + 1);
-                                    else nsString = "";
-
-                                    if( item.getNodeName().equalsIgnoreCase(nsString + "CatalogItem") && item.hasAttributes() ) {
-                                        Node href = item.getAttributes().getNamedItem("href");
+            vCloudMethod method = new vCloudMethod((vCloud)getProvider());
+            final Prefetcher<MachineImage> prefetcher = new Prefetcher<MachineImage>((vCloud)getProvider(), "listImages");
+            List<MachineImage> images;
 
-                                        if( href != null ) {
-                                            String catalogItemId = ((vCloud)getProvider()).toID(href.getNodeValue().trim());
-                                            MachineImage image = loadTemplate(catalog.owner, catalogItemId, catalog.published);
-                                            if( image != null ) {
-                                                if( options == null || options.matches(image) ) {
-                                                    image.setProviderOwnerId(catalog.owner);
-                                                    try {
-                                                    	String metaData = method.get("vAppTemplate", image.getProviderMachineImageId() + "/metadata");
-                                                    	if( metaData != null && !metaData.equals("") ) {
-                                                    		method.parseMetaData(image, metaData);
-                                                    	}
-                                                    }
-                                                    catch( Throwable warning ) {
-                                                    	if (logger.isDebugEnabled()) {
-                                                    		logger.warn("Failed to get and parse image metadata.", warning);
-                                                    	}
-                                                    	else {
-                                                    		logger.warn("Failed to get and parse image metadata.");
-                                                    	}
-                                                    }
-                                                    image.setTag("catalogItemId", catalogItemId);
-                                                    images.add(image);
-                                                }
-                                            }
-                                        }
+            try {
+                // stream each catalog and start loading each item as soon as its reference arrives
+                for( final Catalog catalog : listPrivateCatalogs() ) {
+                    boolean found = method.stream("catalog", catalog.catalogId, Collections.singletonList("CatalogItem"), new vCloudMethod.ElementHandler() {
+                        @Override
+                        public void element(@Nonnull String localName, @Nonnull Map<String,String> attributes) {
+                            String href = attributes.get("href");
+
+                            if( href != null ) {
+                                final String catalogItemId = ((vCloud)getProvider()).toID(href);
+
+                                prefetcher.submit(new Callable<MachineImage>() {
+                                    @Override
+                                    public MachineImage call() throws Exception {
+                                        return loadCatalogImage(catalog, catalogItemId, options);
                                     }
-                                }
+                                });
                             }
                         }
+                    });
+
+                    if( !found ) {
+                        logger.warn("Unable to find catalog " + catalog.catalogId + " indicated by org " + getContext().getAccountNumber());
                     }
                 }
+                images = prefetcher.finish();
+            }
+            finally {
+                prefetcher.close();
             }
             cache.put(getContext(), images);
+            // launch plans hold images from the previous listing
+            LaunchPlan.invalidate(getProvider());
             return images;
         }
         finally {
@@ -626,6 +522,37 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
         }
     }
 
+    /**
+     * Loads the image behind a catalog item along with its metadata.
+     * @return the image or <code>null</code> if the item is not a usable template or does not match the options
+     */
+    private @Nullable MachineImage loadCatalogImage(@Nonnull Catalog catalog, @Nonnull String catalogItemId, @Nullable ImageFilterOptions options) throws CloudException, InternalException {
+        MachineImage image = loadTemplate(catalog.owner, catalogItemId, catalog.published);
+
+        if( image == null || (options != null && !options.matches(image)) ) {
+            return null;
+        }
+        image.setProviderOwnerId(catalog.owner);
+        try {
+            vCloudMethod method = new vCloudMethod((vCloud)getProvider());
+            String metaData = method.get("vAppTemplate", image.getProviderMachineImageId() + "/metadata");
+
+            if( metaData != null && !metaData.equals("") ) {
+                method.parseMetaData(image, metaData);
+            }
+        }
+        catch( Throwable warning ) {
+            if (logger.isDebugEnabled()) {
+                logger.warn("Failed to get and parse image metadata.", warning);
+            }
+            else {
+                logger.warn("Failed to get and parse image metadata.");
+            }
+        }
+        image.setTag("catalogItemId", catalogItemId);
+        return image;
+    }
+
     @Override
     public @Nonnull Iterable<MachineImageFormat> listSupportedFormats() throws CloudException, InternalException {
         return Collections.singletonList(MachineImageFormat.VMDK);
@@ -710,49 +637,26 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
         if( xml == null ) {
             return null;
         }
-        Document doc = method.parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList templates = doc.getElementsByTagName(nsString + "VAppTemplate");
+        Element template = vCloudBinder.first(method.bindXML(xml), vCloudBinder.VAPP_TEMPLATE);
 
-        if( templates.getLength() < 1 ) {
+        if( template == null ) {
             return null;
         }
-        Node template = templates.item(0);
         TreeSet<String> childVms = new TreeSet<String>();
 
         if( name == null ) {
-            Node node = template.getAttributes().getNamedItem("name");
-
-            if( node != null ) {
-                String n = node.getNodeValue().trim();
-
-                if( n.length() > 0 ) {
-                    name = n;
-                }
-            }
+            name = vCloudBinder.attribute(template, "name");
         }
-        NodeList attributes = template.getChildNodes();
         Platform platform = Platform.UNKNOWN;
         Architecture architecture = Architecture.I64;
         TagPair tagPair = null;
         String parentNetworkHref = null, parentNetworkId = null, parentNetworkName = null, networkConf = null;
 
-        for( int i=0; i<attributes.getLength(); i++ ) {
-            Node attribute = attributes.item(i);
+        for( Node attribute = template.getFirstChild(); attribute != null; attribute = attribute.getNextSibling() ) {
+            if( vCloudBinder.DESCRIPTION.matches(attribute) && description == null ) {
+                String d = vCloudBinder.text((Element)attribute);
 
-            if(attribute.getNodeName().contains(":")){
-                nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-            }
-            else{
-                nsString="";
-            }
-
-            if( attribute.getNodeName().equalsIgnoreCase(nsString + "description") && description == null && attribute.hasChildNodes() ) {
-                String d = attribute.getFirstChild().getNodeValue().trim();
-
-                if( d.length() > 0 ) {
+                if( d != null ) {
                     description = d;
                     if( name == null ) {
                         name = d;
@@ -760,155 +664,95 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
                 }
             }
             // need network config details
-            else if ( attribute.getNodeName().equalsIgnoreCase(nsString + "networkconfigsection") && attribute.hasChildNodes()) {
-                NodeList networkConfigs = attribute.getChildNodes();
-
-                for (int item=0; item<networkConfigs.getLength(); item++) {
-                    Node networkConfig = networkConfigs.item(item);
-
-                    if (networkConfig.getNodeName().equalsIgnoreCase(nsString + "networkconfig") && networkConfig.hasChildNodes()) {
-                        StringWriter sw = new StringWriter();
-                        try {
-                            Transformer t = TransformerFactory.newInstance().newTransformer();
-                            t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-                            t.setOutputProperty(OutputKeys.INDENT, "yes");
-                            t.transform(new DOMSource(networkConfig), new StreamResult(sw));
-                        } catch (TransformerException te) {
-                            System.out.println("nodeToString Transformer Exception");
-                        }
-                        networkConf = sw.toString();
-                        NodeList configs = networkConfig.getChildNodes();
-
-                        for (int configItem=0; configItem<configs.getLength(); configItem++) {
-                            Node config = configs.item(configItem);
-
-                            if (config.getNodeName().equalsIgnoreCase(nsString + "configuration") && config.hasChildNodes()) {
-                                NodeList c = config.getChildNodes();
-
-                                for (int conf = 0; conf<c.getLength(); conf++) {
-                                    Node conf2 = c.item(conf);
-
-                                    if (conf2.getNodeName().equalsIgnoreCase(nsString + "parentnetwork") && conf2.hasAttributes()) {
-                                        Node parentHref = conf2.getAttributes().getNamedItem("href");
-                                        Node parentId = conf2.getAttributes().getNamedItem("id");
-                                        Node parentName = conf2.getAttributes().getNamedItem("name");
-                                        if (parentHref != null) {
-                                            parentNetworkHref = parentHref.getNodeValue().trim();
-                                        }
-                                        if (parentId != null) {
-                                            parentNetworkId = parentId.getNodeValue().trim();
-                                        }
-                                        if (parentHref != null) {
-                                            parentNetworkName = parentName.getNodeValue().trim();
-                                        }
-                                    }
-                                }
-                            }
-                        }
+            else if( vCloudBinder.NETWORK_CONFIG_SECTION.matches(attribute) ) {
+                for( Element networkConfig : vCloudBinder.children(attribute, vCloudBinder.NETWORK_CONFIG) ) {
+                    StringWriter sw = new StringWriter();
+                    try {
+                        Transformer t = TransformerFactory.newInstance().newTransformer();
+                        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+                        t.setOutputProperty(OutputKeys.INDENT, "yes");
+                        t.transform(new DOMSource(networkConfig), new StreamResult(sw));
+                    } catch (TransformerException te) {
+                        System.out.println("nodeToString Transformer Exception");
+                    }
+                    networkConf = sw.toString();
+                    Element config = vCloudBinder.child(networkConfig, vCloudBinder.CONFIGURATION);
+                    Element parent = (config == null ? null : vCloudBinder.child(config, vCloudBinder.PARENT_NETWORK));
+
+                    if( parent != null ) {
+                        parentNetworkHref = vCloudBinder.attribute(parent, "href");
+                        parentNetworkId = vCloudBinder.attribute(parent, "id");
+                        parentNetworkName = vCloudBinder.attribute(parent, "name");
                     }
                 }
             }
-            else if( attribute.getNodeName().equalsIgnoreCase(nsString + "children") && attribute.hasChildNodes() ) {
-                NodeList children = attribute.getChildNodes();
-
-                for( int j=0; j<children.getLength(); j++ ) {
-                    Node child = children.item(j);
-
-                    if( child.getNodeName().equalsIgnoreCase(nsString + "vm") && child.hasChildNodes() ) {
-                        Node childHref = child.getAttributes().getNamedItem("href");
-
-                        if( childHref != null ) {
-                            childVms.add(((vCloud)getProvider()).toID(childHref.getNodeValue().trim()));
-                        }
-                        NodeList vmAttrs = child.getChildNodes();
-
-                        for( int k=0; k<vmAttrs.getLength(); k++ ) {
-                            Node vmAttr = vmAttrs.item(k);
-                            if(vmAttr.getNodeName().contains(":"))nsString = vmAttr.getNodeName().substring(0, vmAttr.getNodeName().indexOf(":") + 1);
-
-                            if( vmAttr.getNodeName().equalsIgnoreCase(nsString + "guestcustomizationsection") && vmAttr.hasChildNodes() ) {
-                                NodeList custList = vmAttr.getChildNodes();
-
-                                for( int l=0; l<custList.getLength(); l++ ) {
-                                    Node cust = custList.item(l);
+            else if( vCloudBinder.CHILDREN.matches(attribute) ) {
+                for( Element child : vCloudBinder.children(attribute, vCloudBinder.VM) ) {
+                    String childHref = vCloudBinder.attribute(child, "href");
 
-                                    if( cust.getNodeName().equalsIgnoreCase(nsString + "computername") && cust.hasChildNodes() ) {
-                                        String n = cust.getFirstChild().getNodeValue().trim();
+                    if( childHref != null ) {
+                        childVms.add(((vCloud)getProvider()).toID(childHref));
+                    }
+                    for( Node vmAttr = child.getFirstChild(); vmAttr != null; vmAttr = vmAttr.getNextSibling() ) {
+                        if( vCloudBinder.GUEST_CUSTOMIZATION_SECTION.matches(vmAttr) ) {
+                            String n = vCloudBinder.text(vmAttr, vCloudBinder.COMPUTER_NAME);
 
-                                        if( n.length() > 0 ) {
-                                            if( name == null ) {
-                                                name = n;
-                                            }
-                                            else {
-                                                name = name + " - " + n;
-                                            }
-                                        }
-                                    }
+                            if( n != null ) {
+                                if( name == null ) {
+                                    name = n;
                                 }
-                            }
-                            else if( vmAttr.getNodeName().equalsIgnoreCase(nsString + "ProductSection") && vmAttr.hasChildNodes() ) {
-                                NodeList prdList = vmAttr.getChildNodes();
-
-                                for( int l=0; l<prdList.getLength(); l++ ) {
-                                    Node prd = prdList.item(l);
-
-                                    if( prd.getNodeName().equalsIgnoreCase(nsString + "Product") && prd.hasChildNodes() ) {
-                                        String n = prd.getFirstChild().getNodeValue().trim();
-
-                                        if( n.length() > 0 ) {
-                                            platform = Platform.guess(n);
-                                        }
-                                    }
+                                else {
+                                    name = name + " - " + n;
                                 }
                             }
-                            else if( vmAttr.getNodeName().equalsIgnoreCase(nsString + "OperatingSystemSection") && vmAttr.hasChildNodes() ) {
-                                NodeList os = vmAttr.getChildNodes();
-
-                                for( int l=0; l<os.getLength(); l++ ) {
-                                    Node osdesc = os.item(l);
+                        }
+                        else if( vCloudBinder.OVF_PRODUCT_SECTION.matches(vmAttr) ) {
+                            String n = vCloudBinder.text(vmAttr, vCloudBinder.OVF_PRODUCT);
 
-                                    if( osdesc.getNodeName().equalsIgnoreCase(nsString + "Description") && osdesc.hasChildNodes() ) {
-                                        String desc = osdesc.getFirstChild().getNodeValue();
+                            if( n != null ) {
+                                platform = Platform.guess(n);
+                            }
+                        }
+                        else if( vCloudBinder.OVF_OPERATING_SYSTEM_SECTION.matches(vmAttr) ) {
+                            String desc = vCloudBinder.text(vmAttr, vCloudBinder.OVF_DESCRIPTION);
 
-                                        platform = Platform.guess(desc);
+                            if( desc != null ) {
+                                platform = Platform.guess(desc);
 
-                                        if( desc.contains("32") || (desc.contains("x86") && !desc.contains("64")) ) {
-                                            architecture = Architecture.I32;
-                                        }
-                                    }
+                                if( desc.contains("32") || (desc.contains("x86") && !desc.contains("64")) ) {
+                                    architecture = Architecture.I32;
                                 }
-                            } else if (vmAttr.getNodeName().equalsIgnoreCase((nsString + "NetworkConnectionSection")) && vmAttr.hasChildNodes()) {
-                                tagPair = parseNetworkConnectionSection(vmAttr, nsString);
                             }
                         }
+                        else if( vCloudBinder.NETWORK_CONNECTION_SECTION.matches(vmAttr) ) {
+                            tagPair = parseNetworkConnectionSection((Element)vmAttr);
+                        }
                     }
                 }
             }
-            else if( attribute.getNodeName().equalsIgnoreCase(nsString + "datecreated") && attribute.hasChildNodes() ) {
-                createdAt = ((vCloud)getProvider()).parseTime(attribute.getFirstChild().getNodeValue().trim());
+            else if( vCloudBinder.DATE_CREATED.matches(attribute) ) {
+                String created = vCloudBinder.text((Element)attribute);
+
+                if( created != null ) {
+                    createdAt = ((vCloud)getProvider()).parseTime(created);
+                }
             }
-            else if (attribute.getNodeName().equalsIgnoreCase(nsString + "LeaseSettingsSection") && attribute.hasChildNodes()){
+            else if( vCloudBinder.LEASE_SETTINGS_SECTION.matches(attribute) ) {
                 if (logger.isTraceEnabled()){
                     logger.trace("Checking lease settings for VAppTemplate : " +  name);
                 }
-                NodeList children = attribute.getChildNodes();
-                for( int j=0; j<children.getLength(); j++ ) {
-                    Node child = children.item(j);
-                    if( child.getNodeName().equalsIgnoreCase(nsString + "StorageLeaseExpiration") && child.hasChildNodes() ) {
-                        String expiryDateString = child.getFirstChild().getNodeValue().trim();
-                        Date expiryDate = new Date(vCloud.parseTime(expiryDateString));
-                        if (expiryDate != null){
-                            Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-                            if (cal.getTimeInMillis() > expiryDate.getTime()){
-                                if (logger.isTraceEnabled()){
-                                    logger.trace("vAppTemplate " + name + " has an expired storage lease.");
-                                }
-                                return null;
-                            }
+                String expiryDateString = vCloudBinder.text(attribute, vCloudBinder.STORAGE_LEASE_EXPIRATION);
+
+                if( expiryDateString != null ) {
+                    Date expiryDate = new Date(vCloud.parseTime(expiryDateString));
+                    Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+                    if (cal.getTimeInMillis() > expiryDate.getTime()){
+                        if (logger.isTraceEnabled()){
+                            logger.trace("vAppTemplate " + name + " has an expired storage lease.");
                         }
+                        return null;
                     }
                 }
-
             }
         }
         if( name == null ) {
@@ -966,42 +810,23 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
         }
     }
 
-    private TagPair parseNetworkConnectionSection(@Nonnull Node vmAttr, @Nonnull String nsString) {
-        int primaryNetIndex = -1;
-        NodeList netList = vmAttr.getChildNodes();
-        for ( int i=0; i<netList.getLength(); i++ ) {
-            Node node = netList.item(i);
-            if (node.getNodeName().equalsIgnoreCase(nsString + "PrimaryNetworkConnectionIndex")) {
-                primaryNetIndex = Integer.parseInt(node.getFirstChild().getNodeValue().trim());
-                break;
-            }
-        }
+    private TagPair parseNetworkConnectionSection(@Nonnull Element section) {
+        String primaryNetIndex = vCloudBinder.text(section, vCloudBinder.PRIMARY_NETWORK_CONNECTION_INDEX);
         String defaultVlanName =  null;
         String defaultVlanNameDHCP = null;
-        if (primaryNetIndex >= 0) {
-            for ( int i=0; i<netList.getLength(); i++ ) {
-                Node node = netList.item(i);
-                if (node.getNodeName().equalsIgnoreCase(nsString + "NetworkConnection")) {
-                    NodeList netNodeChildren = node.getChildNodes();
-                    for ( int j=0; j<netNodeChildren.getLength(); j++ ) {
-                        Node netNodeChild = netNodeChildren.item(j);
-                        if (netNodeChild.getNodeName().equalsIgnoreCase(nsString + "NetworkConnectionIndex")) {
-                            int thisIndex = Integer.parseInt(netNodeChild.getFirstChild().getNodeValue().trim());
-                            if (primaryNetIndex == thisIndex) {
-                                NamedNodeMap netNodeChildAttributes = node.getAttributes();
-                                Node networkNode = netNodeChildAttributes.getNamedItem("network");
-                                String networkName = networkNode.getNodeValue();
-                                for ( int k=0; k<netNodeChildren.getLength(); k++ ) {
-                                    Node netNodeChild2 = netNodeChildren.item(k);
-                                    if (netNodeChild2.getNodeName().equalsIgnoreCase(nsString + "IpAddressAllocationMode")) {
-                                        if ("DHCP".equalsIgnoreCase(netNodeChild2.getFirstChild().getNodeValue().trim())) {
-                                            defaultVlanNameDHCP = networkName;
-                                        } else {
-                                            defaultVlanName = networkName;
-                                        }
-                                    }
-                                }
-                            }
+
+        if( primaryNetIndex != null ) {
+            for( Element connection : vCloudBinder.children(section, vCloudBinder.NETWORK_CONNECTION) ) {
+                if( primaryNetIndex.equals(vCloudBinder.text(connection, vCloudBinder.NETWORK_CONNECTION_INDEX)) ) {
+                    String networkName = connection.getAttribute("network");
+                    String mode = vCloudBinder.text(connection, vCloudBinder.IP_ADDRESS_ALLOCATION_MODE);
+
+                    if( mode != null ) {
+                        if( "DHCP".equalsIgnoreCase(mode) ) {
+                            defaultVlanNameDHCP = networkName;
+                        }
+                        else {
+                            defaultVlanName = networkName;
                         }
                     }
                 }
@@ -1026,6 +851,7 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
             if( catalogItemId != null ) {
                 method.delete("catalogItem", catalogItemId);
             }
+            LaunchPlan.invalidate(getProvider());
         }
         finally {
             APITrace.end();
@@ -1121,7 +947,7 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
     	APITrace.begin(getProvider(), "Image.setTags");
     	try {
     		vCloudMethod method = new vCloudMethod(getProvider());
-    		Tag[] collectionForDelete = TagUtils.getTagsForDelete(getImage(imageId).getTags(), tags);
+    		Tag[] collectionForDelete = TagUtils.getTagsForDelete(method.getMetaData("vAppTemplate", imageId), tags);
     		if (collectionForDelete.length != 0 ) {
     			removeTags(imageId, collectionForDelete);
     		}
@@ -1138,9 +964,23 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
     
     @Override
     public void setTags(@Nonnull String[] imageIds, @Nonnull Tag... tags) throws CloudException, InternalException {
-    	for( String id : imageIds ) {
-    		setTags(id, tags);
-    	}
+    	BulkRunner.check("Image.setTags", setTagsAll(imageIds, tags));
+    }
+
+    /**
+     * Replaces the tags on each of the specified images, recording the outcome per image instead of stopping at the
+     * first failure.
+     * @param imageIds the IDs of the images
+     * @param tags the tags to apply
+     * @return the outcome for each image
+     */
+    public @Nonnull BulkOperationReport setTagsAll(@Nonnull String[] imageIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner((vCloud)getProvider(), "Image.setTags").run(imageIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod((vCloud)getProvider()).replaceMetaData("vAppTemplate", id, tags);
+    		}
+    	});
     }
     
     @Override
@@ -1161,9 +1001,22 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
     
     @Override
     public void updateTags(@Nonnull String[] imageIds, @Nonnull Tag... tags) throws CloudException, InternalException {
-    	for( String id : imageIds ) {
-    		updateTags(id, tags);
-    	}
+    	BulkRunner.check("Image.updateTags", updateTagsAll(imageIds, tags));
+    }
+
+    /**
+     * Adds or updates tags on each of the specified images, recording the outcome per image.
+     * @param imageIds the IDs of the images
+     * @param tags the tags to apply
+     * @return the outcome for each image
+     */
+    public @Nonnull BulkOperationReport updateTagsAll(@Nonnull String[] imageIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner((vCloud)getProvider(), "Image.updateTags").run(imageIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod((vCloud)getProvider()).mergeMetaData("vAppTemplate", id, vCloudMethod.toMetadataMap(tags));
+    		}
+    	});
     }
     
     @Override
@@ -1184,8 +1037,21 @@ public class TemplateSupport extends AbstractImageSupport<vCloud> {
     
     @Override
     public void removeTags(@Nonnull String[] imageIds, @Nonnull Tag... tags) throws CloudException, InternalException {
-    	for( String id : imageIds ) {
-    		removeTags(id, tags);
-    	}
+    	BulkRunner.check("Image.removeTags", removeTagsAll(imageIds, tags));
+    }
+
+    /**
+     * Removes tags from each of the specified images, recording the outcome per image.
+     * @param imageIds the IDs of the images
+     * @param tags the tags to remove; only their keys are used
+     * @return the outcome for each image
+     */
+    public @Nonnull BulkOperationReport removeTagsAll(@Nonnull String[] imageIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner((vCloud)getProvider(), "Image.removeTags").run(imageIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod((vCloud)getProvider()).removeMetaData("vAppTemplate", id, vCloudMethod.toMetadataMap(tags));
+    		}
+    	});
     }
 }
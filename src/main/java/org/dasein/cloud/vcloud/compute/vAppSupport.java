@@ -40,36 +40,49 @@ import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.Cache;
 import org.dasein.cloud.util.CacheLevel;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.vcloud.BulkRunner;
+import org.dasein.cloud.vcloud.Prefetcher;
+import org.dasein.cloud.vcloud.RequestPayloads;
+import org.dasein.cloud.vcloud.VdcSnapshot;
+import org.dasein.cloud.vcloud.XmlWriter;
+import org.dasein.cloud.vcloud.BulkOperationReport;
 import org.dasein.cloud.vcloud.vCloud;
+import org.dasein.cloud.vcloud.vCloudBinder;
 import org.dasein.cloud.vcloud.vCloudException;
 import org.dasein.cloud.vcloud.vCloudMethod;
+import org.dasein.util.CalendarWrapper;
 import org.dasein.util.Jiterator;
 import org.dasein.util.JiteratorPopulator;
 import org.dasein.util.PopulatorThread;
-import org.dasein.util.uom.storage.Gigabyte;
-import org.dasein.util.uom.storage.Megabyte;
-import org.dasein.util.uom.storage.Storage;
-import org.dasein.util.uom.time.Day;
-import org.dasein.util.uom.time.TimePeriod;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
-import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Implements services for interacting with virtual machines in a vCloud environment. A Dasein Cloud virtual machine
@@ -85,6 +98,11 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     static private final Logger logger = vCloud.getLogger(vAppSupport.class);
 
     static public final String PARENT_VAPP_ID = "parentVAppId";
+
+    /**
+     * vCloud VM and vApp status codes for states that are in transition.
+     */
+    static public final Collection<String> PENDING_STATUSES = Collections.unmodifiableList(Arrays.asList("0", "1", "5", "6", "7", "9"));
     private volatile transient VMSupportCapabilities capabilities;
 
     vAppSupport(@Nonnull vCloud provider) {
@@ -95,42 +113,10 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         APITrace.begin(getProvider(), "VM.deploy");
         try {
             vCloudMethod method = new vCloudMethod(getProvider());
-            String xml = method.get("vApp", vmId);
-
-            if( xml != null ) {
-                Document doc = method.parseXML(xml);
-                String docElementTagName = doc.getDocumentElement().getTagName();
-                String nsString = "";
-                if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
-
-                for( int i=0; i<nodes.getLength(); i++ ) {
-                    NodeList links = nodes.item(i).getChildNodes();
-
-                    for( int j=0; j<links.getLength(); j++ ) {
-                        Node node = links.item(j);
-                        if(node.getNodeName().contains(":"))nsString = node.getNodeName().substring(0, node.getNodeName().indexOf(":") + 1);
-                        else nsString = "";
-
-                        if( node.getNodeName().equalsIgnoreCase(nsString + "Link") && node.hasAttributes() ) {
-                            Node rel = node.getAttributes().getNamedItem("rel");
-
-                            if( rel != null && rel.getNodeValue().trim().equalsIgnoreCase("deploy") ) {
-                                Node href = node.getAttributes().getNamedItem("href");
+            String task = method.postAction("vApp", vmId, "deploy", method.getMediaTypeForActionDeployVApp(), RequestPayloads.deploy(false));
 
-                                if( href != null ) {
-                                    String endpoint = href.getNodeValue().trim();
-                                    String action = method.getAction(endpoint);
-                                    StringBuilder payload = new StringBuilder();
-
-                                    payload.append("<DeployVAppParams powerOn=\"false\" xmlns=\"http://www.vmware.com/vcloud/v1.5\"/>");
-                                    method.waitFor(method.post(action, endpoint, method.getMediaTypeForActionDeployVApp(), payload.toString()));
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
+            if( task != null ) {
+                method.waitFor(task);
             }
         }
         finally {
@@ -150,25 +136,7 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     public @Nullable VirtualMachineProduct getProduct(@Nonnull String productId) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "VM.getProduct");
         try {
-            VirtualMachineProduct product = super.getProduct(productId);
-
-            if( product == null && productId.startsWith("custom") ) {
-                String[] parts = productId.split(":");
-
-                product = new VirtualMachineProduct();
-                product.setProviderProductId(productId);
-                if( parts.length == 3 ) {
-                    product.setCpuCount(Integer.parseInt(parts[1]));
-                    product.setRamSize(new Storage<Megabyte>(Integer.parseInt(parts[2]), Storage.MEGABYTE));
-                }
-                else {
-                    product.setCpuCount(1);
-                    product.setRamSize(new Storage<Megabyte>(512, Storage.MEGABYTE));
-                }
-                product.setName(productId);
-                product.setDescription(productId);
-            }
-            return product;
+            return ProductCatalog.getInstance(getProvider()).getProduct(productId);
         }
         finally {
             APITrace.end();
@@ -182,88 +150,39 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         if( xml == null || xml.equals("") ) {
             return null;
         }
-        Document doc = method.parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
+        Element vapp = vCloudBinder.first(method.bindXML(xml), vCloudBinder.VAPP);
+        String href = (vapp == null ? null : method.getBinder().toEntity(vapp).getLink("up", method.getMediaTypeForVDC()));
 
-        if( nodes.getLength() < 1 ) {
-            return null;
-        }
-        Node node = nodes.item(0);
-        NodeList elements = node.getChildNodes();
-
-        for( int i=0; i<elements.getLength(); i++ ) {
-            Node n = elements.item(i);
-            if(n.getNodeName().contains(":"))nsString = n.getNodeName().substring(0, n.getNodeName().indexOf(":") + 1);
-            else nsString = "";
-
-            if( n.getNodeName().equalsIgnoreCase(nsString + "Link") && n.hasAttributes() ) {
-                Node rel = n.getAttributes().getNamedItem("rel");
-
-                if( rel != null && rel.getNodeValue().trim().equals("up") ) {
-                    Node type = n.getAttributes().getNamedItem("type");
-
-                    if( type != null && type.getNodeValue().trim().equals(method.getMediaTypeForVDC()) ) {
-                        Node href = n.getAttributes().getNamedItem("href");
-
-                        if( href != null ) {
-                            return getProvider().toID(href.getNodeValue().trim());
-                        }
-                    }
-                }
-            }
-        }
-        return null;
+        return (href == null ? null : getProvider().toID(href));
     }
 
+    /**
+     * Reads the VM from the cloud rather than the entity cache, since callers asking for a single VM are usually
+     * checking whether its state has changed.
+     */
     @Override
     public VirtualMachine getVirtualMachine(@Nonnull String vmId) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "VM.getVirtualMachine");
         try {
             vCloudMethod method = new vCloudMethod(getProvider());
-            String xml = method.get("vApp", vmId);
+            String xml = method.fetch("vApp", vmId);
 
             if( xml != null && !xml.equals("") ) {
-                Document doc = method.parseXML(xml);
-                String docElementTagName = doc.getDocumentElement().getTagName();
-                String nsString = "";
-                if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                NodeList vmNodes = doc.getElementsByTagName(nsString + "Vm");
+                Element vmNode = vCloudBinder.first(method.bindXML(xml), vCloudBinder.VM);
 
-                if( vmNodes.getLength() < 1 ) {
+                if( vmNode == null ) {
                     return null;
                 }
-                Node vmNode = vmNodes.item(0);
-                NodeList vmElements = vmNode.getChildNodes();
-                String vdc = null, parentVapp = null;
-
-                for( int i=0; i<vmElements.getLength(); i++ ) {
-                    Node n = vmElements.item(i);
-                    if(n.getNodeName().contains(":"))nsString = n.getNodeName().substring(0, n.getNodeName().indexOf(":") + 1);
-                    else nsString = "";
-
-                    if( n.getNodeName().equalsIgnoreCase(nsString + "Link") && n.hasAttributes() ) {
-                        Node rel = n.getAttributes().getNamedItem("rel");
+                String parentHref = method.getBinder().toEntity(vmNode).getLink("up", method.getMediaTypeForVApp());
 
-                        if( rel != null && rel.getNodeValue().trim().equals("up") ) {
-                            Node type = n.getAttributes().getNamedItem("type");
+                if( parentHref != null ) {
+                    String parentVapp = getProvider().toID(parentHref);
+                    String vdc = getVDC(parentVapp);
 
-                            if( type != null && type.getNodeValue().trim().equals(method.getMediaTypeForVApp()) ) {
-                                Node href = n.getAttributes().getNamedItem("href");
-
-                                if( href != null ) {
-                                    parentVapp = getProvider().toID(href.getNodeValue().trim());
-                                    vdc = getVDC(parentVapp);
-                                }
-                            }
-                        }
+                    if( vdc != null ) {
+                        return toVirtualMachine(vdc, parentVapp, vmNode, getProvider().getNetworkServices().getVlanSupport().listVlans());
                     }
                 }
-                if( vdc != null ) {
-                    return toVirtualMachine(vdc, parentVapp, vmNode, getProvider().getNetworkServices().getVlanSupport().listVlans());
-                }
             }
             return null;
         }
@@ -290,153 +209,35 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         try {
             final String fullname = withLaunchOptions.getHostName();
             final String basename = validateHostName(withLaunchOptions.getHostName());
-            if (basename.length() > 27) {
-               throw new CloudException("The maximum name length is 27: '" + basename + "' is " + basename.length());
-            }
 
-            String vdcId = withLaunchOptions.getDataCenterId();
+            // reject names too long even for a single VM before instantiating anything
+            checkNameLengths(fullname, basename, 1);
 
-            if( vdcId == null ) {
-                for( DataCenter dc : getProvider().getDataCenterServices().listDataCenters(getContext().getRegionId()) ) {
-                    if( dc.isActive() && dc.isAvailable() ) {
-                        vdcId = dc.getProviderDataCenterId();
-                        break;
-                    }
-                }
-            }
-            if( vdcId == null ) {
-                throw new CloudException("Unable to identify a target data center for deploying VM");
-            }
-            final VirtualMachineProduct product = getProduct(withLaunchOptions.getStandardProductId());
+            String vdcId = resolveDataCenterId(withLaunchOptions);
             final vCloudMethod method = new vCloudMethod(getProvider());
-            final MachineImage img = getProvider().getComputeServices().getImageSupport().getImage(withLaunchOptions.getMachineImageId());
-
-            if( img == null ) {
-                throw new CloudException("No such image: " + withLaunchOptions.getMachineImageId());
-            }
-            StringBuilder xml = new StringBuilder();
-
-            xml.append("<InstantiateVAppTemplateParams xmlns:ovf=\"http://schemas.dmtf.org/ovf/envelope/1\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" name=\"").append(withLaunchOptions.getFriendlyName()).append("\" xmlns=\"http://www.vmware.com/vcloud/v1.5\" deploy=\"false\" powerOn=\"false\">");
-            xml.append("<Description>").append(img.getProviderMachineImageId()).append("</Description>");
-
-            String vlanId = withLaunchOptions.getVlanId();
-
-            // If vlanId is not specified, explicitly use default in machine image. If left out,
-            // default is not recognized in vCloud 1.5, error is: VCD entity network "X"
-            // specified for VM "Y" does not exist (even though it does exist)
-            if (vlanId == null || vlanId.trim().isEmpty()) {
-                String defaultVlanName = (String)img.getTag("defaultVlanName");
-                String defaultVlanNameDHCP = (String)img.getTag("defaultVlanNameDHCP");
-                if (defaultVlanName != null && !defaultVlanName.trim().isEmpty()) {
-                    Iterable<VLAN> vlans = getProvider().getNetworkServices().getVlanSupport().listVlans();
-                    for (VLAN vlan : vlans) {
-                        if (defaultVlanName.equalsIgnoreCase(vlan.getName())) {
-                            vlanId = vlan.getProviderVlanId();
-                        }
-                    }
-                    if (vlanId == null) {
-                        throw new CloudException("Could not locate default vlan '" + defaultVlanName + "'");
-                    }
-                } else if (defaultVlanNameDHCP != null && !defaultVlanNameDHCP.trim().isEmpty()) {
-                    throw new CloudException("No vlan selected and the default is DHCP-based which is not supported");
-                } else {
-                    throw new CloudException("No vlan specified and no default.");
-                }
-            }
+            LaunchPlan plan = getLaunchPlan(method, withLaunchOptions, vdcId);
+            final MachineImage img = plan.getImage();
+            final VirtualMachineProduct product = resolveProduct(withLaunchOptions, img);
+            final VLAN vlan = plan.getVlan();
+            List<XmlWriter.Payload> sourcedItems = null;
 
-            final VLAN vlan = getProvider().getNetworkServices().getVlanSupport().getVlan(vlanId);
-            if( vlan != null ) {
-                //check image tags
-                String parentName = null, parentId = null, parentHref = null;
-                if (img.getTag("parentNetworkName") != null) {
-                   parentName =  img.getTag("parentNetworkName").toString();
-                }
-                if (img.getTag("parentNetworkId") != null) {
-                    parentId =  img.getTag("parentNetworkId").toString();
-                }
-                if (img.getTag("parentNetworkHref") != null) {
-                    parentHref =  img.getTag("parentNetworkHref").toString();
-                    if (parentHref.length()>0) {
-                        parentHref = parentHref.substring(0, parentHref.indexOf("/network/")+9);
-                    }
-                    else {
-                        logger.debug("Not found network settings in the template so getting the base href from network");
-                        parentHref = vlan.getTag("networkHref").toString();
-                        parentHref = vlan.getTag("networkHref").toString().substring(0, parentHref.indexOf("/network/")+9);
-                    }
-                }
-                else {
-                    logger.debug("Not found network settings in the template so getting the base href from network");
-                    parentHref = vlan.getTag("networkHref").toString();
-                    parentHref = vlan.getTag("networkHref").toString().substring(0, parentHref.indexOf("/network/")+9);
-                }
-                if (parentName == null || !vlan.getName().equals(parentName)) {
-                    // if we don't have the parent id we need to try and find it
-                    if (parentId == null && parentName != null) {
-                        Iterable<VLAN> vlanList = getProvider().getNetworkServices().getVlanSupport().listVlans();
-                        while (vlanList.iterator().hasNext()) {
-                            VLAN v = vlanList.iterator().next();
-                            if (v.getName().equals(parentName)) {
-                                // found a match
-                                parentId = v.getProviderVlanId();
-                                break;
-                            }
-                        }
-                        if (parentId == null || parentHref == null) {
-                            throw new CloudException("Unable to find the network config settings - cannot specify network for this vApp");
-                        }
-                    }
-
-                    // new vapp network config
-                    xml.append("<InstantiationParams>");
-                    xml.append("<NetworkConfigSection>");
-                    xml.append("<Info xmlns=\"http://schemas.dmtf.org/ovf/envelope/1\">Configuration parameters for logical networks</Info>");
-                    xml.append("<NetworkConfig networkName=\"").append(vCloud.escapeXml(vlan.getName())).append("\">");
-                    xml.append("<Configuration>");
-                    xml.append("<ParentNetwork name=\"").append(vCloud.escapeXml(vlan.getName())).append("\"");
-                    xml.append(" id=\"").append(vlanId).append("\"");
-                    xml.append(" href=\"").append(parentHref).append(vlanId).append("\"/>");
-                    xml.append("<FenceMode>bridged</FenceMode>");
-                    xml.append("</Configuration>");
-                    xml.append("</NetworkConfig>");
-
-                    if (parentName != null) {
-                        //existing network config from vapp template
-                        xml.append("<NetworkConfig networkName=\"").append(parentName).append("\">");
-                        xml.append("<Configuration>");
-                        xml.append("<ParentNetwork name=\"").append(parentName).append("\"");
-                        xml.append(" id=\"").append(parentId).append("\"");
-                        xml.append(" href=\"").append(parentHref).append(parentId).append("\"/>");
-                        xml.append("<FenceMode>bridged</FenceMode>");
-                        xml.append("</Configuration>");
-                        xml.append("</NetworkConfig>");
-                    }
-                    else if (img.getTag("fullNetConf") != null && img.getTag("fullNetConf").toString().length()>0){
-                        xml.append(img.getTag("fullNetConf"));
-                    }
-                    xml.append("</NetworkConfigSection>");
-                    xml.append("</InstantiationParams>");
-                }
-
-                String vAppTemplateUrl = method.toURL("vAppTemplate", img.getProviderMachineImageId());
-                xml.append("<Source href=\"").append(vAppTemplateUrl).append("\"/>");
-            }
-            else {
-                throw new CloudException("Failed to find vlan " + vlanId);
+            // from 5.6 on, the VMs are customized as part of instantiation rather than reconfigured afterwards
+            if( plan.getTemplateXml() != null ) {
+                sourcedItems = toSourcedItems(method, method.parseXML(plan.getTemplateXml()), withLaunchOptions, img, product, vlan);
             }
-            xml.append("<AllEULAsAccepted>true</AllEULAsAccepted>");
-            xml.append("</InstantiateVAppTemplateParams>");
+            boolean preconfigured = (sourcedItems != null);
+            XmlWriter.Payload payload = RequestPayloads.instantiateVAppTemplate(withLaunchOptions.getFriendlyName(), img.getProviderMachineImageId(), plan.getNetworkConfig(), plan.getTemplateUrl(), preconfigured ? sourcedItems : Collections.<XmlWriter.Payload>emptyList());
 
             if( logger.isDebugEnabled() ) {
                 try {
-                    method.parseXML(xml.toString());
+                    method.parseXML(XmlWriter.toString(payload));
                     logger.debug("XML passes");
                 }
                 catch( Throwable t ) {
                     logger.error("XML parse failure: " + t.getMessage());
                 }
             }
-            String instantiateResponse = method.post(vCloudMethod.INSTANTIATE_VAPP, vdcId, xml.toString());
+            String instantiateResponse = method.postXml(vCloudMethod.INSTANTIATE_VAPP, vdcId, payload);
 
             try {
                 method.waitFor(instantiateResponse);
@@ -464,7 +265,8 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
 
             String vappId = getProvider().toID(href.getNodeValue().trim());
 
-            String vAppResponse = method.get("vApp", vappId);
+            // just created, so an earlier lookup may have cached a miss
+            String vAppResponse = method.fetch("vApp", vappId);
 
             if( vAppResponse == null ) {
                 try {
@@ -479,34 +281,22 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
             final Document doc = method.parseXML(vAppResponse);
             NodeList vmNodes = doc.getElementsByTagName(nsString + "Vm");
 
-            // vCloud has a 27 character limit on computer-name, reject upfront
             final boolean multipleVMs = (vmNodes.getLength() > 1);
-            if (multipleVMs) {
-                // take suffixes into account:
-                if (basename.length() > 25) {
-                    try {
-                        vCloudMethod dmethod = new vCloudMethod(getProvider());
-                        dmethod.delete("vApp", vappId);
-                    } catch (Throwable t) {
-                        logger.error("Problem cleaning up vApp " + vappId + ": " + t.getMessage());
-                    }
-                    throw new CloudException("Because there are multiple VMs in this vApp, the maximum name length is 25: '" + basename + "' is " + basename.length());
+
+            // without the template, the number of VMs and so the suffixed name limits are only known now
+            if( plan.getTemplateXml() == null ) {
+                try {
+                    checkNameLengths(fullname, basename, vmNodes.getLength());
                 }
-                if (fullname.length() > 126) {
+                catch( CloudException e ) {
                     try {
-                        vCloudMethod dmethod = new vCloudMethod(getProvider());
-                        dmethod.delete("vApp", vappId);
-                    } catch (Throwable t) {
+                        method.delete("vApp", vappId);
+                    }
+                    catch( Throwable t ) {
                         logger.error("Problem cleaning up vApp " + vappId + ": " + t.getMessage());
                     }
-                    throw new CloudException("Because there are multiple VMs in this vApp, the maximum name length is 126: '" + basename + "' is " + basename.length());
+                    throw e;
                 }
-            } else if (basename.length() > 27) {
-                // should have been rejected already
-                throw new CloudException("The maximum name length is 27: '" + basename + "' is " + basename.length());
-            }
-            else if (fullname.length() > 128) {
-                throw new CloudException("The maximum name length is 128: '" + basename + "' is " + basename.length());
             }
 
             String vmId = parseVmId(vmNodes);
@@ -538,8 +328,12 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
             }
 
             final String fvmId = vmId;
-            Thread t = new Thread() {
+            final boolean customized = preconfigured;
+            Runnable job = new Runnable() {
                 public void run() {
+                    // a single deadline bounds the whole post-launch configuration
+                    final long deadline = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 30L);
+
                     try {
                         Map<String,Object> metadata = withLaunchOptions.getMetaData();
 
@@ -566,7 +360,7 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
                         String vappId = getProvider().toID(href.getNodeValue().trim());
                         String vAppResponse;
                         try {
-                            vAppResponse = method.get("vApp", vappId);
+                            vAppResponse = method.fetch("vApp", vappId);
                         } catch (CloudException e) {
                             logger.error("Error getting vApp " + vappId, e);
                             return;
@@ -607,9 +401,11 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
                                 href = task.getAttributes().getNamedItem("href");
                                 if( href != null ) {
                                     try {
-                                        method.waitFor(href.getNodeValue().trim());
+                                        method.waitFor(method.get("task", getProvider().toID(href.getNodeValue().trim())));
                                     } catch (CloudException e) {
                                         logger.error("Error waiting for task to complete.", e);
+                                    } catch (InternalException e) {
+                                        logger.error("Error waiting for task to complete.", e);
                                     }
                                 }
                             }
@@ -617,7 +413,7 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
 
                         String vAppGetResponse;
                         try {
-                            vAppGetResponse = method.get("vApp", vappId);
+                            vAppGetResponse = method.fetch("vApp", vappId);
                         } catch (CloudException e) {
                             logger.error("Error getting vApp " + vappId, e);
                             return;
@@ -673,149 +469,9 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
                                             String vmUrl = href.getNodeValue().trim();
 
                                             vmId = getProvider().toID(vmUrl);
-
-                                            StringBuilder guestXml = new StringBuilder();
-                                            guestXml.append("<GuestCustomizationSection xmlns=\"http://www.vmware.com/vcloud/v1.5\" ");
-                                            guestXml.append(" xmlns:ovf=\"http://schemas.dmtf.org/ovf/envelope/1\" ovf:required=\"false\">");
-
-                                            guestXml.append("<Info xmlns=\"http://schemas.dmtf.org/ovf/envelope/1\">Specifies Guest OS Customization Settings</Info>");
-                                            guestXml.append("<Enabled>true</Enabled>");
-                                            guestXml.append("<ChangeSid>").append(String.valueOf(img.getPlatform().isWindows())).append("</ChangeSid>");
-                                            guestXml.append("<VirtualMachineId>").append(UUID.randomUUID().toString()).append("</VirtualMachineId>");
-                                            guestXml.append("<JoinDomainEnabled>false</JoinDomainEnabled>");
-                                            guestXml.append("<UseOrgSettings>false</UseOrgSettings>");
-
-                                            guestXml.append("<AdminPasswordEnabled>true</AdminPasswordEnabled>");
-                                            if( pw != null ) {
-                                                guestXml.append("<AdminPassword>").append(vCloud.escapeXml(pw)).append("</AdminPassword>");
-                                                //guestXml.append("<AdminPasswordAuto>false</AdminPasswordAuto>");
-                                            }
-                                            else {
-                                                guestXml.append("<AdminPasswordAuto>true</AdminPasswordAuto>");
-                                            }
-                                            guestXml.append("<ResetPasswordRequired>false</ResetPasswordRequired>");
-
-                                            String userData = withLaunchOptions.getUserData();
-                                            if( userData != null && userData.length() > 0 ) {
-                                                guestXml.append("<CustomizationScript>").append(vCloud.escapeXml(userData)).append("</CustomizationScript>");
-                                            } else {
-                                                String customizationScript = parseCustomizationScript(vm);
-                                                if (customizationScript != null) {
-                                                    guestXml.append("<CustomizationScript>").append(vCloud.escapeXml(customizationScript)).append("</CustomizationScript>");
-                                                }
-                                            }
-
-                                            guestXml.append("<ComputerName>").append(vCloud.escapeXml(validateHostName(withLaunchOptions.getHostName() + suffix))).append("</ComputerName>");
-                                            guestXml.append("</GuestCustomizationSection>");
-
-                                            try {
-                                                method.waitFor(method.put("guestCustomizationSection", vmUrl + "/guestCustomizationSection", method.getMediaTypeForGuestCustomizationSection(), guestXml.toString()));
-                                            } catch (CloudException e) {
-                                                logger.error("Error configuring guest for vApp " + vappId, e);
-                                                return;
-                                            } catch (InternalException e) {
-                                                logger.error("Error configuring guest for vApp " + vappId, e);
+                                            if( !customized && !configureVm(method, vappId, vm, vmUrl, fullname + suffix, validateHostName(withLaunchOptions.getHostName() + suffix), withLaunchOptions, img, product, vlan, deadline) ) {
                                                 return;
                                             }
-
-                                            StringBuilder vmXml = new StringBuilder();
-                                            vmXml.append("<vcloud:Vm xmlns:vcloud=\"http://www.vmware.com/vcloud/v1.5\" ");
-                                            vmXml.append("name=\"").append(vCloud.escapeXml(fullname + suffix)).append("\">");
-                                            vmXml.append("<vcloud:Description>").append(withLaunchOptions.getDescription()).append("</vcloud:Description>");
-                                            vmXml.append("</vcloud:Vm>");
-
-                                            try {
-                                                method.waitFor(method.put("", vmUrl, method.getMediaTypeForVM(), vmXml.toString()));
-                                            } catch (CloudException e) {
-                                                logger.error("Error configuring vm for vApp " + vappId, e);
-                                                return;
-                                            } catch (InternalException e) {
-                                                logger.error("Error configuring vm for vApp " + vappId, e);
-                                                return;
-                                            }
-
-                                            if( product != null ) {
-
-                                                StringBuilder xml = new StringBuilder();
-
-                                                xml.append("<vcloud:Item " +
-                                                           "xmlns:vcloud=\"http://www.vmware.com/vcloud/v1.5\" " +
-                                                           "xmlns:rasd=\"http://schemas.dmtf.org/wbem/wscim/1/cim-schema/2/CIM_ResourceAllocationSettingData\" " +
-                                                           "vcloud:type=\"application/vnd.vmware.vcloud.rasdItem+xml\" " +
-                                                           "vcloud:href=\"").append(vmUrl).append("/virtualHardwareSection/cpu\">");
-                                                xml.append("<rasd:AllocationUnits>hertz * 10^6</rasd:AllocationUnits>");
-                                                xml.append("<rasd:Description>Number of Virtual CPUs</rasd:Description>");
-                                                xml.append("<rasd:ElementName>").append(String.valueOf(product.getCpuCount())).append(" virtual CPU(s)</rasd:ElementName>");
-                                                xml.append("<rasd:InstanceID>1</rasd:InstanceID>");
-                                                xml.append("<rasd:Reservation>0</rasd:Reservation>");
-                                                xml.append("<rasd:ResourceType>3</rasd:ResourceType>");
-                                                xml.append("<rasd:VirtualQuantity>").append(String.valueOf(product.getCpuCount())).append("</rasd:VirtualQuantity>");
-                                                xml.append("<rasd:Weight>").append(String.valueOf(product.getCpuCount()*1000)).append("</rasd:Weight>");  //changed from 0
-                                                xml.append("<vcloud:Link href=\"").append(vmUrl).append("/virtualHardwareSection/cpu\" rel=\"edit\" type=\"application/vnd.vmware.vcloud.rasdItem+xml\"/>");
-                                                xml.append("</vcloud:Item>");
-
-                                                try {
-                                                    method.waitFor(method.put("virtualHardwareSection/cpu", vmUrl + "/virtualHardwareSection/cpu", method.getMediaTypeForRasdItem(), xml.toString()));
-                                                } catch (CloudException e) {
-                                                    logger.error("Error configuring virtual hardware cpu for vApp " + vappId, e);
-                                                    return;
-                                                } catch (InternalException e) {
-                                                    logger.error("Error configuring virtual hardware cpu for vApp " + vappId, e);
-                                                    return;
-                                                }
-
-                                                xml = new StringBuilder();
-
-                                                xml.append("<vcloud:Item " +
-                                                        "xmlns:vcloud=\"http://www.vmware.com/vcloud/v1.5\" " +
-                                                        "xmlns:rasd=\"http://schemas.dmtf.org/wbem/wscim/1/cim-schema/2/CIM_ResourceAllocationSettingData\" " +
-                                                        "vcloud:type=\"application/vnd.vmware.vcloud.rasdItem+xml\" " +
-                                                        "vcloud:href=\"").append(vmUrl).append("/virtualHardwareSection/memory\">");
-                                                xml.append("<rasd:AllocationUnits>byte * 2^20</rasd:AllocationUnits>");
-                                                xml.append("<rasd:Description>Memory Size</rasd:Description>");
-                                                xml.append("<rasd:ElementName>").append(product.getRamSize().toString()).append("</rasd:ElementName>");
-                                                xml.append("<rasd:InstanceID>2</rasd:InstanceID>");
-                                                xml.append("<rasd:Reservation>0</rasd:Reservation>");
-                                                xml.append("<rasd:ResourceType>4</rasd:ResourceType>");
-                                                xml.append("<rasd:VirtualQuantity>").append(String.valueOf(product.getRamSize().intValue())).append("</rasd:VirtualQuantity>");
-                                                xml.append("<rasd:Weight>").append(String.valueOf(product.getRamSize().intValue()*10)).append("</rasd:Weight>");
-                                                xml.append("<vcloud:Link href=\"").append(vmUrl).append("/virtualHardwareSection/memory\" rel=\"edit\" type=\"application/vnd.vmware.vcloud.rasdItem+xml\"/>");
-                                                xml.append("</vcloud:Item>");
-                                                try {
-                                                    method.waitFor(method.put("virtualHardwareSection/memory", vmUrl + "/virtualHardwareSection/memory", method.getMediaTypeForRasdItem(), xml.toString()));
-                                                } catch (CloudException e) {
-                                                    logger.error("Error configuring virtual hardware memory for vApp " + vappId, e);
-                                                    return;
-                                                } catch (InternalException e) {
-                                                    logger.error("Error configuring virtual hardware memory for vApp " + vappId, e);
-                                                    return;
-                                                }
-
-
-                                                if( vlan != null ) {
-                                                    xml = new StringBuilder();
-                                                    xml.append("<NetworkConnectionSection href=\"").append(vmUrl).append("/networkConnectionSection/").append("\" ");
-                                                    xml.append("xmlns=\"http://www.vmware.com/vcloud/v1.5\" ");
-                                                    xml.append(" type=\"").append(method.getMediaTypeForNetworkConnectionSection()).append("\">");
-                                                    xml.append("<Info xmlns=\"http://schemas.dmtf.org/ovf/envelope/1\">Specifies the available VM network connections</Info>");
-                                                    xml.append("<PrimaryNetworkConnectionIndex>0</PrimaryNetworkConnectionIndex>");
-                                                    xml.append("<NetworkConnection network=\"").append(vCloud.escapeXml(vlan.getName())).append("\">");
-                                                    xml.append("<NetworkConnectionIndex>0</NetworkConnectionIndex>");
-                                                    xml.append("<IsConnected>true</IsConnected>");
-                                                    xml.append("<IpAddressAllocationMode>POOL</IpAddressAllocationMode>");
-                                                    xml.append("</NetworkConnection>");
-                                                    xml.append("</NetworkConnectionSection>");
-                                                    try {
-                                                        method.waitFor(method.put("networkConnectionSection", vmUrl + "/networkConnectionSection", method.getMediaTypeForNetworkConnectionSection(), xml.toString()));
-                                                    } catch (CloudException e) {
-                                                        logger.error("Error configuring virtual hardware for vApp " + vappId, e);
-                                                        return;
-                                                    } catch (InternalException e) {
-                                                        logger.error("Error configuring virtual hardware for vApp " + vappId, e);
-                                                        return;
-                                                    }
-                                                }
-                                            }
                                             break;
                                         }
                                     }
@@ -848,9 +504,14 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
                 }
             };
 
-            t.setName("Configure vCloud VM " + vm.getProviderVirtualMachineId());
-            t.setDaemon(true);
-            t.start();
+            try {
+                getProvider().getLaunchJobExecutor().submit(vm.getProviderVirtualMachineId(), "Configure vCloud VM " + vm.getProviderVirtualMachineId(), job);
+            }
+            catch( CloudException e ) {
+                // nothing will configure or power on the VM, so do not leave it behind
+                deleteVapp(method, vappId);
+                throw e;
+            }
             vm.setProviderMachineImageId(img.getProviderMachineImageId());
             if (pw != null) {
                 vm.setRootPassword(pw);
@@ -862,6 +523,679 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         }
     }
 
+    @Override
+    public @Nonnull Iterable<String> launchMany(@Nonnull VMLaunchOptions withLaunchOptions, @Nonnegative int count) throws CloudException, InternalException {
+        ArrayList<String> ids = new ArrayList<String>();
+
+        for( VirtualMachine vm : launchVirtualMachines(withLaunchOptions, count) ) {
+            ids.add(vm.getProviderVirtualMachineId());
+        }
+        return ids;
+    }
+
+    /**
+     * Launches <code>count</code> copies of the requested image into a single vApp using one composeVApp request.
+     * Every copy of every VM in the template becomes a sourced item customized as part of the compose, so there is one
+     * task to track and one vApp to load, deploy and power on regardless of the number of VMs. VM names are the host
+     * name followed by a <code>-n</code> suffix, and the computer name limits are checked against the longest suffix.
+     * Clouds older than vCloud 5.6 do not accept customization in the compose request, so the VMs are launched one by
+     * one as before.
+     * @param withLaunchOptions the options shared by every VM being launched
+     * @param count the number of copies of the template to launch
+     * @return the virtual machines in the composed vApp
+     * @throws CloudException the cloud rejected the compose request or the compose task did not complete
+     * @throws InternalException an error occurred building the request
+     */
+    public @Nonnull Collection<VirtualMachine> launchVirtualMachines(@Nonnull VMLaunchOptions withLaunchOptions, @Nonnegative int count) throws CloudException, InternalException {
+        if( count < 1 ) {
+            throw new InternalException("Invalid attempt to launch less than 1 virtual machine (requested " + count + ").");
+        }
+        if( count == 1 ) {
+            return Collections.singletonList(launch(withLaunchOptions));
+        }
+        vCloudMethod method = new vCloudMethod(getProvider());
+
+        if( !vCloudMethod.matches(method.getAPIVersion(), "5.6", null) ) {
+            ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+
+            for( String id : super.launchMany(withLaunchOptions, count) ) {
+                VirtualMachine vm = getVirtualMachine(id);
+
+                if( vm != null ) {
+                    vms.add(vm);
+                }
+            }
+            return vms;
+        }
+        APITrace.begin(getProvider(), "launchManyVMs");
+        try {
+            String fullname = withLaunchOptions.getHostName();
+            String vdcId = resolveDataCenterId(withLaunchOptions);
+            LaunchPlan plan = getLaunchPlan(method, withLaunchOptions, vdcId);
+            final MachineImage img = plan.getImage();
+            VLAN vlan = plan.getVlan();
+            VirtualMachineProduct product = resolveProduct(withLaunchOptions, img);
+            String templateXml = plan.getTemplateXml();
+
+            if( templateXml == null ) {
+                throw new CloudException("No such image: " + img.getProviderMachineImageId());
+            }
+            List<Node> templateVms = listTemplateVms(method.parseXML(templateXml));
+
+            if( templateVms.isEmpty() ) {
+                throw new CloudException("No virtual machines exist in template " + img.getProviderMachineImageId());
+            }
+            int total = count * templateVms.size();
+
+            checkNameLengths(fullname, validateHostName(fullname), total);
+
+            ArrayList<XmlWriter.Payload> sourcedItems = new ArrayList<XmlWriter.Payload>();
+            int n = 1;
+
+            for( int i=0; i<count; i++ ) {
+                for( Node vm : templateVms ) {
+                    String name = fullname + "-" + n;
+
+                    n++;
+                    sourcedItems.add(toSourcedItem(method, vm, name, validateHostName(name), withLaunchOptions, img, product, vlan));
+                }
+            }
+            // the same vApp network configuration as a single launch of the image
+            XmlWriter.Payload payload = RequestPayloads.composeVApp(withLaunchOptions.getFriendlyName(), img.getProviderMachineImageId(), plan.getNetworkConfig(), sourcedItems);
+            final long deadline = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 30L);
+            String composeResponse = method.postXml(vCloudMethod.COMPOSE_VAPP, vdcId, payload);
+            Node vappNode = findChild(method.parseXML(composeResponse), "VApp");
+            Node href = (vappNode == null ? null : vappNode.getAttributes().getNamedItem("href"));
+
+            if( href == null ) {
+                throw new CloudException("The compose operation succeeded, but no vApp was present");
+            }
+            final String vappId = getProvider().toID(href.getNodeValue().trim());
+            vCloudMethod.TaskOutcome outcome;
+
+            try {
+                outcome = method.waitFor(composeResponse, deadline, true);
+            }
+            catch( CloudException e ) {
+                deleteVapp(method, vappId);
+                throw e;
+            }
+            if( outcome != vCloudMethod.TaskOutcome.SUCCESS ) {
+                deleteVapp(method, vappId);
+                throw new CloudException("Composing vApp " + vappId + " did not complete: " + outcome);
+            }
+            String vAppResponse = method.fetch("vApp", vappId);
+
+            if( vAppResponse == null ) {
+                throw new CloudException("vApp went away");
+            }
+            Element children = vCloudBinder.child(method.bindXML(vAppResponse), vCloudBinder.CHILDREN);
+            Iterable<VLAN> vlans = getProvider().getNetworkServices().getVlanSupport().listVlans();
+            final ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+
+            if( children != null ) {
+                for( Element vmNode : vCloudBinder.children(children, vCloudBinder.VM) ) {
+                    if( vmNode.hasAttributes() ) {
+                        VirtualMachine vm = toVirtualMachine(vdcId, vappId, vmNode, vlans);
+
+                        if( vm != null ) {
+                            vm.setProviderMachineImageId(img.getProviderMachineImageId());
+                            if( withLaunchOptions.getBootstrapPassword() != null ) {
+                                vm.setRootPassword(withLaunchOptions.getBootstrapPassword());
+                            }
+                            vms.add(vm);
+                        }
+                    }
+                }
+            }
+            if( vms.size() < total ) {
+                logger.warn("Composed vApp " + vappId + " holds " + vms.size() + " of the " + total + " requested VMs");
+            }
+            final vCloudMethod fmethod = method;
+            final Map<String,Object> metadata = new HashMap<String, Object>();
+
+            if( withLaunchOptions.getMetaData() != null ) {
+                metadata.putAll(withLaunchOptions.getMetaData());
+            }
+            metadata.put("dsnImageId", img.getProviderMachineImageId());
+            metadata.put("dsnCreated", String.valueOf(System.currentTimeMillis()));
+            Runnable job = new Runnable() {
+                public void run() {
+                    for( VirtualMachine vm : vms ) {
+                        try {
+                            fmethod.postMetaData("vApp", vm.getProviderVirtualMachineId(), metadata);
+                        }
+                        catch( Throwable warn ) {
+                            logger.warn("Error updating meta-data on launch: " + warn.getMessage());
+                        }
+                    }
+                    try {
+                        deploy(vappId);
+                        startVapp(vappId, true);
+                    }
+                    catch( Throwable e ) {
+                        logger.error("Error starting vApp " + vappId, e);
+                    }
+                }
+            };
+
+            try {
+                getProvider().getLaunchJobExecutor().submit(vappId, "Start vCloud vApp " + vappId, job);
+            }
+            catch( CloudException e ) {
+                // nothing will deploy or power on the vApp, so do not leave it behind
+                deleteVapp(method, vappId);
+                throw e;
+            }
+            return vms;
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    private void deleteVapp(@Nonnull vCloudMethod method, @Nonnull String vappId) {
+        try {
+            method.delete("vApp", vappId);
+        }
+        catch( Throwable t ) {
+            logger.error("Problem cleaning up vApp " + vappId + ": " + t.getMessage());
+        }
+    }
+
+    /**
+     * Resolves the image, VLAN and vApp network configuration for a launch, reusing a cached plan for the same image,
+     * VLAN and VDC when one exists.
+     */
+    private @Nonnull LaunchPlan getLaunchPlan(@Nonnull vCloudMethod method, @Nonnull VMLaunchOptions withLaunchOptions, @Nonnull String vdcId) throws CloudException, InternalException {
+        LaunchPlan plan = LaunchPlan.get(getProvider(), withLaunchOptions.getMachineImageId(), withLaunchOptions.getVlanId(), vdcId);
+
+        if( plan != null ) {
+            return plan;
+        }
+        MachineImage img = getProvider().getComputeServices().getImageSupport().getImage(withLaunchOptions.getMachineImageId());
+
+        if( img == null ) {
+            throw new CloudException("No such image: " + withLaunchOptions.getMachineImageId());
+        }
+        String vlanId = resolveVlanId(withLaunchOptions, img);
+        VLAN vlan = getProvider().getNetworkServices().getVlanSupport().getVlan(vlanId);
+
+        if( vlan == null ) {
+            throw new CloudException("Failed to find vlan " + vlanId);
+        }
+        XmlWriter.Payload networkConfig = null;
+
+        //check image tags
+        String parentName = null, parentId = null, parentHref = null;
+        if (img.getTag("parentNetworkName") != null) {
+           parentName =  img.getTag("parentNetworkName").toString();
+        }
+        if (img.getTag("parentNetworkId") != null) {
+            parentId =  img.getTag("parentNetworkId").toString();
+        }
+        if (img.getTag("parentNetworkHref") != null) {
+            parentHref =  img.getTag("parentNetworkHref").toString();
+            if (parentHref.length()>0) {
+                parentHref = parentHref.substring(0, parentHref.indexOf("/network/")+9);
+            }
+            else {
+                logger.debug("Not found network settings in the template so getting the base href from network");
+                parentHref = vlan.getTag("networkHref").toString();
+                parentHref = vlan.getTag("networkHref").toString().substring(0, parentHref.indexOf("/network/")+9);
+            }
+        }
+        else {
+            logger.debug("Not found network settings in the template so getting the base href from network");
+            parentHref = vlan.getTag("networkHref").toString();
+            parentHref = vlan.getTag("networkHref").toString().substring(0, parentHref.indexOf("/network/")+9);
+        }
+        if (parentName == null || !vlan.getName().equals(parentName)) {
+            // if we don't have the parent id we need to try and find it
+            if (parentId == null && parentName != null) {
+                for( VLAN v : getProvider().getNetworkServices().getVlanSupport().listVlans() ) {
+                    if (v.getName().equals(parentName)) {
+                        // found a match
+                        parentId = v.getProviderVlanId();
+                        break;
+                    }
+                }
+                if (parentId == null || parentHref == null) {
+                    throw new CloudException("Unable to find the network config settings - cannot specify network for this vApp");
+                }
+            }
+
+            // new vapp network config, bridging the template's own network too if it is known
+            String templateNetConf = (img.getTag("fullNetConf") == null ? null : img.getTag("fullNetConf").toString());
+
+            networkConfig = RequestPayloads.vAppNetworkConfig(vlan.getName(), parentHref + vlanId, vlanId, parentName, parentName == null ? null : parentHref + parentId, parentId, templateNetConf);
+        }
+        String networkHref = vlan.getTag("networkHref").toString();
+        String templateXml = null;
+
+        networkHref = networkHref.substring(0, networkHref.indexOf("/network/") + 9) + vlanId;
+        if( vCloudMethod.matches(method.getAPIVersion(), "5.6", null) ) {
+            templateXml = method.get("vAppTemplate", img.getProviderMachineImageId());
+        }
+        plan = new LaunchPlan(withLaunchOptions.getMachineImageId(), withLaunchOptions.getVlanId(), vdcId, img, vlan, networkConfig, networkHref, method.toURL("vAppTemplate", img.getProviderMachineImageId()), templateXml);
+        LaunchPlan.put(getProvider(), plan);
+        return plan;
+    }
+
+    /**
+     * Identifies the data center requested in the launch options, or the first active and available one in the region.
+     */
+    private @Nonnull String resolveDataCenterId(@Nonnull VMLaunchOptions withLaunchOptions) throws CloudException, InternalException {
+        String vdcId = withLaunchOptions.getDataCenterId();
+
+        if( vdcId == null ) {
+            for( DataCenter dc : getProvider().getDataCenterServices().listDataCenters(getContext().getRegionId()) ) {
+                if( dc.isActive() && dc.isAvailable() ) {
+                    vdcId = dc.getProviderDataCenterId();
+                    break;
+                }
+            }
+        }
+        if( vdcId == null ) {
+            throw new CloudException("Unable to identify a target data center for deploying VM");
+        }
+        return vdcId;
+    }
+
+    /**
+     * Identifies the VLAN requested in the launch options, or the default VLAN named in the image tags.
+     */
+    private @Nonnull String resolveVlanId(@Nonnull VMLaunchOptions withLaunchOptions, @Nonnull MachineImage img) throws CloudException, InternalException {
+        String vlanId = withLaunchOptions.getVlanId();
+
+        // If vlanId is not specified, explicitly use default in machine image. If left out,
+        // default is not recognized in vCloud 1.5, error is: VCD entity network "X"
+        // specified for VM "Y" does not exist (even though it does exist)
+        if (vlanId == null || vlanId.trim().isEmpty()) {
+            String defaultVlanName = (String)img.getTag("defaultVlanName");
+            String defaultVlanNameDHCP = (String)img.getTag("defaultVlanNameDHCP");
+            if (defaultVlanName != null && !defaultVlanName.trim().isEmpty()) {
+                Iterable<VLAN> vlans = getProvider().getNetworkServices().getVlanSupport().listVlans();
+                for (VLAN vlan : vlans) {
+                    if (defaultVlanName.equalsIgnoreCase(vlan.getName())) {
+                        vlanId = vlan.getProviderVlanId();
+                    }
+                }
+                if (vlanId == null) {
+                    throw new CloudException("Could not locate default vlan '" + defaultVlanName + "'");
+                }
+            } else if (defaultVlanNameDHCP != null && !defaultVlanNameDHCP.trim().isEmpty()) {
+                throw new CloudException("No vlan selected and the default is DHCP-based which is not supported");
+            } else {
+                throw new CloudException("No vlan specified and no default.");
+            }
+        }
+        return vlanId;
+    }
+
+    /**
+     * Builds a sourced item for each VM in the template carrying its name, network connection, guest customization
+     * and (when a product is specified) virtual hardware, so the VMs come out of instantiation ready to power on.
+     * @return the sourced items, or <code>null</code> if the template lists no VMs or a product was requested for a
+     * template VM without a virtual hardware section, in which case the VMs must be reconfigured after instantiation
+     * @throws CloudException the requested host name is too long for the number of VMs in the template
+     */
+    private @Nullable List<XmlWriter.Payload> toSourcedItems(@Nonnull vCloudMethod method, @Nonnull Document template, @Nonnull VMLaunchOptions options, @Nonnull MachineImage img, @Nullable VirtualMachineProduct product, @Nonnull VLAN vlan) throws CloudException, InternalException {
+        List<Node> vms = listTemplateVms(template);
+
+        if( vms.isEmpty() ) {
+            return null;
+        }
+        String fullname = options.getHostName();
+        boolean multipleVMs = (vms.size() > 1);
+
+        checkNameLengths(fullname, validateHostName(fullname), vms.size());
+        if( product != null ) {
+            for( Node vm : vms ) {
+                if( findChild(vm, "VirtualHardwareSection") == null ) {
+                    return null;
+                }
+            }
+        }
+        ArrayList<XmlWriter.Payload> items = new ArrayList<XmlWriter.Payload>();
+        int count = 1;
+
+        for( Node vm : vms ) {
+            String suffix = (multipleVMs ? ("-" + count) : "");
+
+            count++;
+            items.add(toSourcedItem(method, vm, fullname + suffix, validateHostName(fullname + suffix), options, img, product, vlan));
+        }
+        return items;
+    }
+
+    /**
+     * Builds a single sourced item that instantiates the specified template VM under the specified name.
+     * @throws CloudException a product was requested but the template VM has no virtual hardware section to resize
+     */
+    private @Nonnull XmlWriter.Payload toSourcedItem(@Nonnull vCloudMethod method, @Nonnull Node vm, @Nonnull String name, @Nonnull String computerName, @Nonnull VMLaunchOptions options, @Nonnull MachineImage img, @Nullable VirtualMachineProduct product, @Nonnull VLAN vlan) throws CloudException, InternalException {
+        String hardwareXml = (product == null ? null : toHardwareSectionXml(vm, product));
+
+        if( product != null && hardwareXml == null ) {
+            throw new CloudException("Template VM " + vm.getAttributes().getNamedItem("href").getNodeValue().trim() + " has no virtual hardware section to size for " + product.getProviderProductId());
+        }
+        return RequestPayloads.sourcedItem(vm.getAttributes().getNamedItem("href").getNodeValue().trim(), name, options.getDescription(), toNetworkConnection(method, null, vlan), toGuestCustomization(vm, img, options, computerName), hardwareXml);
+    }
+
+    /**
+     * Lists the VMs in a vApp template that can be referenced as the source of a sourced item.
+     */
+    private @Nonnull List<Node> listTemplateVms(@Nonnull Document template) {
+        ArrayList<Node> vms = new ArrayList<Node>();
+        NodeList children = template.getDocumentElement().getChildNodes();
+
+        for( int i=0; i<children.getLength(); i++ ) {
+            Node child = children.item(i);
+
+            if( child.getNodeName().equals("Children") || child.getNodeName().endsWith(":Children") ) {
+                NodeList list = child.getChildNodes();
+
+                for( int j=0; j<list.getLength(); j++ ) {
+                    Node vm = list.item(j);
+
+                    if( (vm.getNodeName().equals("Vm") || vm.getNodeName().endsWith(":Vm")) && vm.hasAttributes() && vm.getAttributes().getNamedItem("href") != null ) {
+                        vms.add(vm);
+                    }
+                }
+            }
+        }
+        return vms;
+    }
+
+    /**
+     * Enforces the vCloud limits on computer and VM names, allowing for the <code>-n</code> suffixes added when a vApp
+     * holds several VMs. The limits shrink with the width of the largest suffix, so names valid for a handful of VMs
+     * may be rejected for a larger launch.
+     * @param vmCount the total number of VMs that will share the name
+     */
+    private void checkNameLengths(@Nonnull String fullname, @Nonnull String basename, int vmCount) throws CloudException {
+        if( vmCount > 1 ) {
+            int suffixLength = 1 + String.valueOf(vmCount).length();
+            int maxBase = 27 - suffixLength;
+            int maxFull = 128 - suffixLength;
+
+            if( basename.length() > maxBase ) {
+                throw new CloudException("Because there are multiple VMs in this vApp, the maximum name length is " + maxBase + ": '" + basename + "' is " + basename.length());
+            }
+            if( fullname.length() > maxFull ) {
+                throw new CloudException("Because there are multiple VMs in this vApp, the maximum name length is " + maxFull + ": '" + basename + "' is " + basename.length());
+            }
+        }
+        else if( basename.length() > 27 ) {
+            throw new CloudException("The maximum name length is 27: '" + basename + "' is " + basename.length());
+        }
+        else if( fullname.length() > 128 ) {
+            throw new CloudException("The maximum name length is 128: '" + basename + "' is " + basename.length());
+        }
+    }
+
+    /**
+     * Applies the guest customization, name, hardware and network settings for a newly instantiated VM. Against
+     * vCloud 5.6 and later, everything is sent as one reconfigureVm request tracked by a single task; older versions (or
+     * a cloud that rejects the reconfigure action) get the sections applied one PUT at a time.
+     * @return true if the VM was fully configured and may be powered on
+     */
+    private boolean configureVm(@Nonnull vCloudMethod method, @Nonnull String vappId, @Nonnull Node vmNode, @Nonnull String vmUrl, @Nonnull String vmName, @Nonnull String computerName, @Nonnull VMLaunchOptions options, @Nonnull MachineImage img, @Nullable VirtualMachineProduct product, @Nullable VLAN vlan, long deadline) {
+        try {
+            XmlWriter.Payload guest = toGuestCustomization(vmNode, img, options, computerName);
+            XmlWriter.Payload network = (vlan == null ? null : toNetworkConnection(method, vmUrl, vlan));
+
+            if( vCloudMethod.matches(method.getAPIVersion(), "5.6", null) ) {
+                String xml = toReconfigureVmXml(method, vmNode, vmName, options.getDescription(), product, network == null ? null : XmlWriter.toString(network), XmlWriter.toString(guest));
+                String task = null;
+                boolean posted = false;
+
+                try {
+                    task = method.post("reconfigureVm", vmUrl + "/action/reconfigureVm", method.getMediaTypeForVM(), xml);
+                    posted = true;
+                }
+                catch( CloudException e ) {
+                    logger.warn("Unable to reconfigure " + vmUrl + " in a single request, falling back to individual sections: " + e.getMessage());
+                }
+                if( posted ) {
+                    return isComplete(method.waitFor(task, deadline, true), "reconfiguring VM", vappId);
+                }
+            }
+            if( !isComplete(method.waitFor(method.putXml("guestCustomizationSection", vmUrl + "/guestCustomizationSection", method.getMediaTypeForGuestCustomizationSection(), guest), deadline, true), "configuring guest", vappId) ) {
+                return false;
+            }
+            if( !isComplete(method.waitFor(method.putXml("", vmUrl, method.getMediaTypeForVM(), RequestPayloads.vmName(vmName, options.getDescription())), deadline, true), "configuring vm", vappId) ) {
+                return false;
+            }
+            if( product != null ) {
+                if( !isComplete(method.waitFor(method.putXml("virtualHardwareSection/cpu", vmUrl + "/virtualHardwareSection/cpu", method.getMediaTypeForRasdItem(), RequestPayloads.cpuItem(vmUrl, product.getCpuCount())), deadline, true), "configuring virtual hardware cpu", vappId) ) {
+                    return false;
+                }
+                if( !isComplete(method.waitFor(method.putXml("virtualHardwareSection/memory", vmUrl + "/virtualHardwareSection/memory", method.getMediaTypeForRasdItem(), RequestPayloads.memoryItem(vmUrl, product.getRamSize().intValue(), product.getRamSize().toString())), deadline, true), "configuring virtual hardware memory", vappId) ) {
+                    return false;
+                }
+            }
+            if( network != null ) {
+                if( !isComplete(method.waitFor(method.putXml("networkConnectionSection", vmUrl + "/networkConnectionSection", method.getMediaTypeForNetworkConnectionSection(), network), deadline, true), "configuring network connections", vappId) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        catch( CloudException e ) {
+            logger.error("Error configuring VM for vApp " + vappId, e);
+            return false;
+        }
+        catch( InternalException e ) {
+            logger.error("Error configuring VM for vApp " + vappId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the product requested by the launch options. When the <code>roundUpCustomProducts</code> property is
+     * set, a <code>custom:cpu:ram</code> ID is taken as a minimum and resolved to the smallest standard product for
+     * the image's architecture that fits, keeping the custom product only if none does.
+     * @param options the launch options
+     * @param img the image being launched
+     * @return the product to size the VMs with or <code>null</code> if the product ID is unknown
+     * @throws CloudException an error occurred in the cloud provider loading the products
+     * @throws InternalException an error occurred within Dasein Cloud loading the products
+     */
+    private @Nullable VirtualMachineProduct resolveProduct(@Nonnull VMLaunchOptions options, @Nonnull MachineImage img) throws CloudException, InternalException {
+        VirtualMachineProduct product = getProduct(options.getStandardProductId());
+
+        if( product == null || !getProvider().isRoundUpCustomProducts() || !options.getStandardProductId().startsWith("custom") ) {
+            return product;
+        }
+        Architecture architecture = (img.getArchitecture() == null ? Architecture.I64 : img.getArchitecture());
+        VirtualMachineProduct fit = ProductCatalog.getInstance(getProvider()).findProduct(architecture, product.getCpuCount(), product.getRamSize().intValue());
+
+        if( fit == null ) {
+            logger.debug("No standard product fits " + product.getProviderProductId() + ", launching it as requested");
+            return product;
+        }
+        logger.debug("Launching " + fit.getProviderProductId() + " for " + product.getProviderProductId());
+        return fit;
+    }
+
+    private boolean isComplete(@Nonnull vCloudMethod.TaskOutcome outcome, @Nonnull String step, @Nonnull String vappId) {
+        if( !outcome.equals(vCloudMethod.TaskOutcome.SUCCESS) ) {
+            logger.error("Gave up " + step + " for vApp " + vappId + ": " + outcome);
+            return false;
+        }
+        return true;
+    }
+
+    private @Nonnull XmlWriter.Payload toGuestCustomization(@Nonnull Node vmNode, @Nonnull MachineImage img, @Nonnull VMLaunchOptions options, @Nonnull String computerName) {
+        String script = options.getUserData();
+
+        if( script == null || script.length() < 1 ) {
+            script = parseCustomizationScript(vmNode);
+        }
+        return RequestPayloads.guestCustomization(img.getPlatform().isWindows(), options.getBootstrapPassword(), script, computerName);
+    }
+
+    private @Nonnull XmlWriter.Payload toNetworkConnection(@Nonnull vCloudMethod method, @Nullable String vmUrl, @Nonnull VLAN vlan) {
+        if( vmUrl == null ) {
+            return RequestPayloads.networkConnection(null, null, vlan.getName());
+        }
+        return RequestPayloads.networkConnection(vmUrl + "/networkConnectionSection/", method.getMediaTypeForNetworkConnectionSection(), vlan.getName());
+    }
+
+    /**
+     * Builds a reconfigureVm payload from the VM's current representation so sections and hardware items that are not
+     * being changed are posted back as they are. The name, description, CPU and memory are updated in place, and the
+     * network connection and guest customization sections are replaced.
+     */
+    private @Nonnull String toReconfigureVmXml(@Nonnull vCloudMethod method, @Nonnull Node vmNode, @Nonnull String name, @Nullable String description, @Nullable VirtualMachineProduct product, @Nullable String networkXml, @Nonnull String guestXml) throws CloudException, InternalException {
+        Element vm = (Element)vmNode.cloneNode(true);
+
+        copyNamespaces(vmNode, vm);
+        vm.setAttribute("name", name);
+        setDescription(vm, description);
+
+        Node hardware = findChild(vm, "VirtualHardwareSection");
+
+        if( product != null && hardware != null ) {
+            setHardware(hardware, product);
+        }
+        if( networkXml != null ) {
+            replaceSection(method, vm, "NetworkConnectionSection", networkXml);
+        }
+        replaceSection(method, vm, "GuestCustomizationSection", guestXml);
+        return toXml(vm);
+    }
+
+    /**
+     * Sets the description of a VM, adding the element if the VM has none. The schema places <code>Description</code>
+     * after the <code>Link</code> elements every resource starts with, so a new description goes after the last link.
+     */
+    static void setDescription(@Nonnull Element vm, @Nullable String description) {
+        Node desc = findChild(vm, "Description");
+
+        if( desc == null ) {
+            String prefix = (vm.getNodeName().contains(":") ? vm.getNodeName().substring(0, vm.getNodeName().indexOf(":") + 1) : "");
+            Node lastLink = null;
+
+            for( Node n = vm.getFirstChild(); n != null; n = n.getNextSibling() ) {
+                if( n.getNodeType() == Node.ELEMENT_NODE && (n.getNodeName().equals("Link") || n.getNodeName().endsWith(":Link")) ) {
+                    lastLink = n;
+                }
+            }
+            desc = vm.getOwnerDocument().createElement(prefix + "Description");
+            vm.insertBefore(desc, lastLink == null ? vm.getFirstChild() : lastLink.getNextSibling());
+        }
+        desc.setTextContent(description == null ? "" : description);
+    }
+
+    /**
+     * Renders the template VM's virtual hardware section with the CPU and memory of the specified product, suitable for
+     * the instantiation parameters of a sourced item.
+     */
+    private @Nullable String toHardwareSectionXml(@Nonnull Node vmNode, @Nonnull VirtualMachineProduct product) throws InternalException {
+        Node existing = findChild(vmNode, "VirtualHardwareSection");
+
+        if( existing == null ) {
+            return null;
+        }
+        Element hardware = (Element)existing.cloneNode(true);
+        NodeList items = hardware.getChildNodes();
+
+        copyNamespaces(existing, hardware);
+        for( int i=items.getLength()-1; i>=0; i-- ) {
+            Node item = items.item(i);
+            String n = item.getNodeName();
+
+            if( n.equals("Link") || n.endsWith(":Link") ) {
+                hardware.removeChild(item);
+            }
+        }
+        setHardware(hardware, product);
+        return toXml(hardware);
+    }
+
+    private void setHardware(@Nonnull Node hardware, @Nonnull VirtualMachineProduct product) {
+        NodeList items = hardware.getChildNodes();
+
+        for( int i=0; i<items.getLength(); i++ ) {
+            Node item = items.item(i);
+            Node type = findChild(item, "ResourceType");
+            Node quantity = findChild(item, "VirtualQuantity");
+
+            if( type == null || quantity == null ) {
+                continue;
+            }
+            String t = type.getTextContent().trim();
+
+            if( t.equals("3") ) {
+                quantity.setTextContent(String.valueOf(product.getCpuCount()));
+            }
+            else if( t.equals("4") ) {
+                quantity.setTextContent(String.valueOf(product.getRamSize().intValue()));
+            }
+        }
+    }
+
+    /**
+     * Copies the namespace declarations in scope for the source node onto the target so the target can be
+     * serialized on its own.
+     */
+    private void copyNamespaces(@Nonnull Node source, @Nonnull Element target) {
+        for( Node parent = source; parent != null && parent.getNodeType() == Node.ELEMENT_NODE; parent = parent.getParentNode() ) {
+            NamedNodeMap attributes = parent.getAttributes();
+
+            for( int i=0; i<attributes.getLength(); i++ ) {
+                Node attribute = attributes.item(i);
+
+                if( attribute.getNodeName().startsWith("xmlns") && !target.hasAttribute(attribute.getNodeName()) ) {
+                    target.setAttribute(attribute.getNodeName(), attribute.getNodeValue());
+                }
+            }
+        }
+    }
+
+    private @Nonnull String toXml(@Nonnull Node node) throws InternalException {
+        StringWriter sw = new StringWriter();
+
+        try {
+            Transformer t = TransformerFactory.newInstance().newTransformer();
+
+            t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            t.transform(new DOMSource(node), new StreamResult(sw));
+        }
+        catch( TransformerException e ) {
+            throw new InternalException(e);
+        }
+        return sw.toString();
+    }
+
+    private void replaceSection(@Nonnull vCloudMethod method, @Nonnull Element vm, @Nonnull String localName, @Nonnull String xml) throws CloudException, InternalException {
+        Node section = vm.getOwnerDocument().importNode(method.parseXML(xml).getDocumentElement(), true);
+        Node existing = findChild(vm, localName);
+
+        if( existing == null ) {
+            vm.appendChild(section);
+        }
+        else {
+            vm.replaceChild(section, existing);
+        }
+    }
+
+    static private @Nullable Node findChild(@Nonnull Node parent, @Nonnull String localName) {
+        NodeList children = parent.getChildNodes();
+
+        for( int i=0; i<children.getLength(); i++ ) {
+            Node child = children.item(i);
+            String name = child.getNodeName();
+
+            if( child.getNodeType() == Node.ELEMENT_NODE && (name.equals(localName) || name.endsWith(":" + localName)) ) {
+                return child;
+            }
+        }
+        return null;
+    }
+
     private String parseVmId(NodeList vmNodes){
         String vmId = "";
         Node vmNode = vmNodes.item(0);
@@ -883,7 +1217,7 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     }
 
     private String retryListvApp(vCloudMethod method, String vappId, String nsString) throws CloudException, InternalException{
-        String retryResponse = method.get("vApp", vappId);
+        String retryResponse = method.fetch("vApp", vappId);
         final Document retryDoc = method.parseXML(retryResponse);
         String vmId = parseVmId(retryDoc.getElementsByTagName(nsString + "Vm"));
         return vmId;
@@ -923,136 +1257,19 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     public Iterable<VirtualMachineProduct> listProducts(@Nonnull String providerMachineImageId, @Nullable VirtualMachineProductFilterOptions options) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "listVMProducts");
         try {
-            String cacheName = "productsALL";
-            if( options.getArchitecture() != null ) {
-                cacheName = "products" + options.getArchitecture().name();
-            }
-            Cache<VirtualMachineProduct> cache = Cache.getInstance(getProvider(), cacheName, VirtualMachineProduct.class, CacheLevel.REGION, new TimePeriod<Day>(1, TimePeriod.DAY));
-            Iterable<VirtualMachineProduct> products = cache.get(getContext());
-
-            if( products == null ) {
-                ArrayList<VirtualMachineProduct> list = new ArrayList<VirtualMachineProduct>();
+            List<VirtualMachineProduct> products = ProductCatalog.getInstance(getProvider()).getProducts(options == null ? null : options.getArchitecture());
 
-                try {
-                    String resource = getProvider().getVMProductsResource();
-                    InputStream input = vAppSupport.class.getResourceAsStream(resource);
-
-                    if( input != null ) {
-                        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-                        StringBuilder json = new StringBuilder();
-                        String line;
-
-                        while( (line = reader.readLine()) != null ) {
-                            json.append(line);
-                            json.append("\n");
-                        }
-                        JSONArray arr = new JSONArray(json.toString());
-                        JSONObject toCache = null;
-
-                        for( int i=0; i<arr.length(); i++ ) {
-                            JSONObject productSet = arr.getJSONObject(i);
-                            String cloud, provider;
-
-                            if( productSet.has("cloud") ) {
-                                cloud = productSet.getString("cloud");
-                            }
-                            else {
-                                continue;
-                            }
-                            if( productSet.has("provider") ) {
-                                provider = productSet.getString("provider");
-                            }
-                            else {
-                                continue;
-                            }
-                            if( !productSet.has("products") ) {
-                                continue;
-                            }
-                            if( toCache == null || (provider.equals("default") && cloud.equals("default")) ) {
-                                toCache = productSet;
-                            }
-                            if( provider.equalsIgnoreCase(getProvider().getProviderName()) && cloud.equalsIgnoreCase(getProvider().getCloudName()) ) {
-                                toCache = productSet;
-                                break;
-                            }
-                        }
-                        if( toCache == null ) {
-                            logger.warn("No products were defined");
-                            return Collections.emptyList();
-                        }
-                        JSONArray plist = toCache.getJSONArray("products");
-
-                        for( int i=0; i<plist.length(); i++ ) {
-                            JSONObject product = plist.getJSONObject(i);
-                            boolean supported = false;
-
-                            // If architecture is specified, check if product matches
-                            if( options != null && options.getArchitecture() != null && product.has("architectures") ) {
-                                JSONArray architectures = product.getJSONArray("architectures");
-
-                                for( int j=0; j<architectures.length(); j++ ) {
-                                    String a = architectures.getString(j);
-
-                                    if( options.getArchitecture().name().equals(a) ) {
-                                        supported = true;
-                                        break;
-                                    }
-                                }
-                                if( !supported ) {
-                                    continue;
-                                }
-                            }
-                            else {
-                                // No architecture specified, flip the flag - all architectures allowed
-                                supported = true;
-                            }
-
-                            if( product.has("excludesRegions") ) {
-                                JSONArray regions = product.getJSONArray("excludesRegions");
-
-                                for( int j=0; j<regions.length(); j++ ) {
-                                    String r = regions.getString(j);
-
-                                    if( r.equals(getContext().getRegionId()) ) {
-                                        supported = false;
-                                        break;
-                                    }
-                                }
-                            }
-                            if( !supported ) {
-                                continue;
-                            }
-                            VirtualMachineProduct prd = toProduct(product);
-
-                            if( prd != null ) {
-                                if( options != null) {
-                                    // Filter supplied, add matches only.
-                                    if( options.matches(prd) ) {
-                                        list.add(prd);
-                                    }
-                                }
-                                else {
-                                    // No filter supplied, add all survived.
-                                    list.add(prd);
-                                }
-                            }
-                        }
-                    }
-                    else {
-                        logger.warn("No standard products resource exists for " + resource);
-                    }
+            if( options == null ) {
+                return products;
+            }
+            ArrayList<VirtualMachineProduct> list = new ArrayList<VirtualMachineProduct>();
 
-                    products = list;
-                    cache.put(getContext(), products);
-                }
-                catch( IOException e ) {
-                    throw new InternalException(e);
-                }
-                catch( JSONException e ) {
-                    throw new InternalException(e);
+            for( VirtualMachineProduct product : products ) {
+                if( options.matches(product) ) {
+                    list.add(product);
                 }
             }
-            return products;
+            return list;
         }
         finally {
             APITrace.end();
@@ -1080,51 +1297,47 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         getProvider().hold();
         PopulatorThread<VirtualMachine> populator = new PopulatorThread<VirtualMachine>(new JiteratorPopulator<VirtualMachine>() {
             @Override
-            public void populate(@Nonnull Jiterator<VirtualMachine> iterator) throws Exception {
+            public void populate(@Nonnull final Jiterator<VirtualMachine> iterator) throws Exception {
                 try {
                     APITrace.begin(getProvider(), "VM.listVirtualMachines");
                     try {
-                        Iterable<VLAN> vlans = getProvider().getNetworkServices().getVlanSupport().listVlans();
+                        final Iterable<VLAN> vlans = getProvider().getNetworkServices().getVlanSupport().listVlans();
                         vCloudMethod method = new vCloudMethod(getProvider());
+                        final String vappType = method.getMediaTypeForVApp();
+                        final Prefetcher<List<VirtualMachine>> prefetcher = new Prefetcher<List<VirtualMachine>>(getProvider(), "listVirtualMachines");
 
-                        for( DataCenter dc : method.listDataCenters() ) {
-                            String xml = method.get("vdc", dc.getProviderDataCenterId());
-
-                            if( xml != null && !xml.equals("") ) {
-                                Document doc = method.parseXML(xml);
-                                String docElementTagName = doc.getDocumentElement().getTagName();
-                                String nsString = "";
-                                if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                                NodeList vdcs = doc.getElementsByTagName(nsString + "Vdc");
-
-                                if( vdcs.getLength() > 0 ) {
-                                    NodeList attributes = vdcs.item(0).getChildNodes();
-
-                                    for( int i=0; i<attributes.getLength(); i++ ) {
-                                        Node attribute = attributes.item(i);
-                                        if(attribute.getNodeName().contains(":"))nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-                                        else nsString = "";
-
-                                        if( attribute.getNodeName().equalsIgnoreCase(nsString + "ResourceEntities") && attribute.hasChildNodes() ) {
-                                            NodeList resources = attribute.getChildNodes();
-
-                                            for( int j=0; j<resources.getLength(); j++ ) {
-                                                Node resource = resources.item(j);
-
-                                                if( resource.getNodeName().equalsIgnoreCase(nsString + "ResourceEntity") && resource.hasAttributes() ) {
-                                                    Node type = resource.getAttributes().getNamedItem("type");
-
-                                                    if( type != null && type.getNodeValue().equalsIgnoreCase(method.getMediaTypeForVApp()) ) {
-                                                        Node href = resource.getAttributes().getNamedItem("href");
-
-                                                        loadVmsFor(dc.getProviderDataCenterId(), getProvider().toID(href.getNodeValue().trim()), iterator, vlans);
-                                                    }
-                                                }
+                        try {
+                            // the VDC snapshot is shared with the volume and VLAN listings
+                            for( DataCenter dc : method.listDataCenters() ) {
+                                final String vdcId = dc.getProviderDataCenterId();
+
+                                VdcSnapshot.forEachResourceEntity(method, getProvider(), vdcId, vappType, new VdcSnapshot.ReferenceHandler() {
+                                    @Override
+                                    public void reference(@Nonnull VdcSnapshot.Reference vapp) throws CloudException, InternalException {
+                                        final String vappId = getProvider().toID(vapp.getHref());
+
+                                        prefetcher.submit(new Callable<List<VirtualMachine>>() {
+                                            @Override
+                                            public List<VirtualMachine> call() throws Exception {
+                                                ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+
+                                                loadVmsFor(vdcId, vappId, vms, vlans);
+                                                return vms;
                                             }
+                                        });
+                                        // hand over whatever has already loaded, keeping the listing order
+                                        while( prefetcher.isReady() ) {
+                                            pushAll(iterator, prefetcher.next());
                                         }
                                     }
-                                }
+                                });
                             }
+                            while( prefetcher.hasNext() ) {
+                                pushAll(iterator, prefetcher.next());
+                            }
+                        }
+                        finally {
+                            prefetcher.close();
                         }
                     }
                     finally {
@@ -1140,7 +1353,15 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         return populator.getResult();
     }
 
-    private void loadVmsFor(@Nonnull String vdcId, @Nonnull String id, @Nonnull Jiterator<VirtualMachine> vms, @Nonnull Iterable<VLAN> vlans) throws InternalException, CloudException {
+    static private void pushAll(@Nonnull Jiterator<VirtualMachine> iterator, @Nullable List<VirtualMachine> vms) {
+        if( vms != null ) {
+            for( VirtualMachine vm : vms ) {
+                iterator.push(vm);
+            }
+        }
+    }
+
+    private void loadVmsFor(@Nonnull String vdcId, @Nonnull String id, @Nonnull Collection<VirtualMachine> vms, @Nonnull Iterable<VLAN> vlans) throws InternalException, CloudException {
         vCloudMethod method = new vCloudMethod(getProvider());
 
         String xml = method.get("vApp", id);
@@ -1148,105 +1369,30 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         if( xml == null || xml.equals("") ) {
             return;
         }
-        Document doc = method.parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList vapps = doc.getElementsByTagName(nsString + "VApp");
+        Element vapp = vCloudBinder.first(method.bindXML(xml), vCloudBinder.VAPP);
+        Element children = (vapp == null ? null : vCloudBinder.child(vapp, vCloudBinder.CHILDREN));
 
-        if( vapps.getLength() < 1 ) {
+        if( children == null ) {
             return;
         }
-        NodeList attributes = vapps.item(0).getChildNodes();
+        for( Element vmNode : vCloudBinder.children(children, vCloudBinder.VM) ) {
+            if( vmNode.hasAttributes() ) {
+                VirtualMachine vm = toVirtualMachine(vdcId, id, vmNode, vlans);
 
-        for( int i=0; i<attributes.getLength(); i++ ) {
-            Node attribute = attributes.item(i);
-            if(attribute.getNodeName().contains(":"))nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-            else nsString = "";
-
-            if( attribute.getNodeName().equals(nsString + "Children") && attribute.hasChildNodes() ) {
-                NodeList children = attribute.getChildNodes();
-
-                for( int j=0; j<children.getLength(); j++ ) {
-                    Node vmNode = children.item(j);
-
-                    if( vmNode.getNodeName().equalsIgnoreCase(nsString + "Vm") && vmNode.hasAttributes() ) {
-                        VirtualMachine vm = toVirtualMachine(vdcId, id, vmNode, vlans);
-
-                        if( vm != null ) {
-                            vms.push(vm);
-                        }
-                    }
+                if( vm != null ) {
+                    vms.add(vm);
                 }
             }
         }
     }
 
     @Override
-    public void reboot(@Nonnull String vmId) throws CloudException, InternalException {
-        APITrace.begin(getProvider(), "VM.reboot");
-        try {
-            vCloudMethod method = new vCloudMethod(getProvider());
-            String xml = method.get("vApp", vmId);
-
-            if( xml != null ) {
-                Document doc = method.parseXML(xml);
-                String docElementTagName = doc.getDocumentElement().getTagName();
-                String nsString = "";
-                if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
-
-                if(nodes.getLength() > 0){
-                    for( int i=0; i<nodes.getLength(); i++ ) {
-                        Node node = nodes.item(i);
-                        if(node.getNodeName().contains(":"))nsString = node.getNodeName().substring(0, node.getNodeName().indexOf(":") + 1);
-                        else nsString = "";
-
-                        if( node.getNodeName().equalsIgnoreCase(nsString + "Link") && node.hasAttributes() ) {
-                            Node rel = node.getAttributes().getNamedItem("rel");
-
-                            if( rel != null && rel.getNodeValue().trim().equalsIgnoreCase("power:reboot") ) {
-                                Node href = node.getAttributes().getNamedItem("href");
-
-                                if( href != null ) {
-                                    String endpoint = href.getNodeValue().trim();
-                                    String action = method.getAction(endpoint);
-
-                                    method.post(action, endpoint, null, null);
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-                else{
-                    nodes = doc.getElementsByTagName(nsString + "Vm");
-                    if(nodes.getLength() > 0){
-                        Node vmNode = nodes.item(0);
-                        if(vmNode != null && vmNode.hasChildNodes()){
-                            NodeList links = vmNode.getChildNodes();
-                            for(int i=0;i<links.getLength();i++){
-                                Node link = links.item(i);
-                                if(link.getNodeName().equalsIgnoreCase(nsString + "Link") && link.hasAttributes()){
-                                    Node rel = link.getAttributes().getNamedItem("rel");
-
-                                    if( rel != null && rel.getNodeValue().trim().equalsIgnoreCase("power:reboot") ) {
-                                        Node href = link.getAttributes().getNamedItem("href");
-
-                                        if( href != null ) {
-                                            String endpoint = href.getNodeValue().trim();
-                                            String action = method.getAction(endpoint);
-
-                                            method.post(action, endpoint, null, null);
-                                            break;
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+    public void reboot(@Nonnull String vmId) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "VM.reboot");
+        try {
+            vCloudMethod method = new vCloudMethod(getProvider());
+
+            method.postAction("vApp", vmId, "power:reboot", null, null);
         }
         finally {
             APITrace.end();
@@ -1274,50 +1420,227 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         }
     }
 
-    private void startVapp(@Nonnull String vappId, boolean wait) throws CloudException, InternalException {
-        vCloudMethod method = new vCloudMethod(getProvider());
-        String xml = method.get("vApp", vappId);
+    /**
+     * Powers on many VMs at once. The VMs are loaded concurrently and grouped by parent vApp, a vApp whose VMs are
+     * all being started is powered on with a single request, and the resulting tasks are tracked together.
+     * @param vmIds the IDs of the VMs to start
+     * @return the outcome for each VM
+     * @throws CloudException an error occurred in the cloud provider setting up the operation
+     * @throws InternalException an error occurred within Dasein Cloud setting up the operation
+     */
+    public @Nonnull BulkOperationReport startAll(@Nonnull Collection<String> vmIds) throws CloudException, InternalException {
+        return powerAll("VM.startAll", vmIds, "power:powerOn", null, null, false);
+    }
 
-        if( xml != null ) {
-            Document doc = method.parseXML(xml);
-            String docElementTagName = doc.getDocumentElement().getTagName();
-            String nsString = "";
-            if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-            NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
+    /**
+     * Stops many VMs at once by undeploying them, or undeploying their vApp when every VM in it is being stopped.
+     * @param vmIds the IDs of the VMs to stop
+     * @param force true to power the VMs off rather than shut down their guests
+     * @return the outcome for each VM
+     * @throws CloudException an error occurred in the cloud provider setting up the operation
+     * @throws InternalException an error occurred within Dasein Cloud setting up the operation
+     */
+    public @Nonnull BulkOperationReport stopAll(@Nonnull Collection<String> vmIds, boolean force) throws CloudException, InternalException {
+        return powerAll("VM.stopAll", vmIds, "undeploy", new vCloudMethod(getProvider()).getMediaTypeForActionUndeployVApp(), RequestPayloads.undeploy(force ? null : "shutdown"), true);
+    }
 
-            if( nodes.getLength() < 1 ) {
-                nodes = doc.getElementsByTagName(nsString + "Vm");
-            }
-            for( int i=0; i<nodes.getLength(); i++ ) {
-                NodeList links = nodes.item(i).getChildNodes();
+    /**
+     * Reboots many VMs at once.
+     * @param vmIds the IDs of the VMs to reboot
+     * @return the outcome for each VM
+     * @throws CloudException an error occurred in the cloud provider setting up the operation
+     * @throws InternalException an error occurred within Dasein Cloud setting up the operation
+     */
+    public @Nonnull BulkOperationReport rebootAll(@Nonnull Collection<String> vmIds) throws CloudException, InternalException {
+        return powerAll("VM.rebootAll", vmIds, "power:reboot", null, null, false);
+    }
+
+    /**
+     * Suspends many VMs at once.
+     * @param vmIds the IDs of the VMs to suspend
+     * @return the outcome for each VM
+     * @throws CloudException an error occurred in the cloud provider setting up the operation
+     * @throws InternalException an error occurred within Dasein Cloud setting up the operation
+     */
+    public @Nonnull BulkOperationReport suspendAll(@Nonnull Collection<String> vmIds) throws CloudException, InternalException {
+        return powerAll("VM.suspendAll", vmIds, "power:suspend", null, null, false);
+    }
+
+    /**
+     * Applies a power action to many VMs. The VMs are loaded concurrently and grouped by parent vApp; when a group
+     * covers every VM in its vApp, the action is posted once against the vApp instead of once per VM. The resulting
+     * tasks are then tracked together until they finish.
+     * @param operation the name of the operation for API tracing
+     * @param vmIds the IDs of the VMs to act on
+     * @param rel the relationship of the action link to follow
+     * @param contentType the content type of the action payload, if any
+     * @param payload the action payload, if any
+     * @param alwaysCheckParent true if the parent vApp must be checked even when only one of its VMs is affected
+     * @return the outcome for each VM
+     */
+    private @Nonnull BulkOperationReport powerAll(@Nonnull String operation, @Nonnull Collection<String> vmIds, @Nonnull final String rel, @Nullable final String contentType, @Nullable final XmlWriter.Payload payload, final boolean alwaysCheckParent) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), operation);
+        try {
+            final BulkOperationReport report = new BulkOperationReport();
+            final Map<String,Document> vmDocs = new ConcurrentHashMap<String, Document>();
+            final Map<String,String> parents = new ConcurrentHashMap<String, String>();
+            final Map<String,String> tasks = new ConcurrentHashMap<String, String>();
+            final long deadline = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 30L);
+            ExecutorService executor = getProvider().newBulkExecutor("vCloud " + operation);
+
+            try {
+                ArrayList<Callable<Void>> jobs = new ArrayList<Callable<Void>>();
+
+                for( final String vmId : new LinkedHashSet<String>(vmIds) ) {
+                    jobs.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            try {
+                                vCloudMethod method = new vCloudMethod(getProvider());
+                                String xml = method.get("vApp", vmId);
+
+                                if( xml == null || xml.equals("") ) {
+                                    report.record(vmId, BulkOperationReport.Outcome.FAILED, "No such virtual machine: " + vmId);
+                                    return null;
+                                }
+                                Document doc = method.parseXML(xml);
+                                String parentHref = findLink(doc.getDocumentElement(), "up", method.getMediaTypeForVApp());
+
+                                vmDocs.put(vmId, doc);
+                                if( parentHref != null ) {
+                                    parents.put(vmId, getProvider().toID(parentHref));
+                                }
+                            }
+                            catch( Throwable t ) {
+                                report.record(vmId, BulkOperationReport.Outcome.FAILED, t.getMessage());
+                            }
+                            return null;
+                        }
+                    });
+                }
+                if( !invokeAll(executor, jobs) ) {
+                    return interrupted(vmIds, report);
+                }
+                HashMap<String,List<String>> groups = new HashMap<String, List<String>>();
+
+                for( String vmId : vmDocs.keySet() ) {
+                    String parentId = parents.get(vmId);
+
+                    if( parentId == null ) {
+                        // act on the VM alone
+                        parentId = "";
+                    }
+                    List<String> group = groups.get(parentId);
 
-                for( int j=0; j<links.getLength(); j++ ) {
-                    Node node = links.item(j);
-                    if(node.getNodeName().contains(":"))nsString = node.getNodeName().substring(0, node.getNodeName().indexOf(":") + 1);
-                    else nsString = "";
+                    if( group == null ) {
+                        group = new ArrayList<String>();
+                        groups.put(parentId, group);
+                    }
+                    group.add(vmId);
+                }
+                jobs = new ArrayList<Callable<Void>>();
+                for( final Map.Entry<String,List<String>> group : groups.entrySet() ) {
+                    jobs.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            vCloudMethod method = new vCloudMethod(getProvider());
+                            String vappId = group.getKey();
+                            List<String> ids = group.getValue();
+
+                            if( !vappId.equals("") && (alwaysCheckParent || ids.size() > 1) ) {
+                                try {
+                                    vCloudBinder.VApp vapp = method.toVApp(method.get("vApp", vappId));
 
-                    if( node.getNodeName().equalsIgnoreCase(nsString + "Link") && node.hasAttributes() ) {
-                        Node rel = node.getAttributes().getNamedItem("rel");
+                                    if( vapp != null ) {
+                                        HashSet<String> childIds = new HashSet<String>();
 
-                        if( rel != null && rel.getNodeValue().trim().equalsIgnoreCase("power:powerOn") ) {
-                            Node href = node.getAttributes().getNamedItem("href");
+                                        for( vCloudBinder.Entity vm : vapp.getVms() ) {
+                                            if( vm.getId() != null ) {
+                                                childIds.add(vm.getId());
+                                            }
+                                        }
+                                        String href = vapp.getLink(rel, null);
 
-                            if( href != null ) {
-                                String endpoint = href.getNodeValue().trim();
-                                String action = method.getAction(endpoint);
+                                        if( href != null && !childIds.isEmpty() && ids.containsAll(childIds) ) {
+                                            String task = method.postXml(method.getAction(href), href, contentType, payload);
 
-                                String task = method.post(action, endpoint, null, null);
+                                            for( String id : ids ) {
+                                                tasks.put(id, task);
+                                            }
+                                            return null;
+                                        }
+                                    }
+                                }
+                                catch( Throwable t ) {
+                                    logger.warn("Unable to act on vApp " + vappId + " as a whole, acting on its VMs individually: " + t.getMessage());
+                                }
+                            }
+                            for( String id : ids ) {
+                                try {
+                                    String href = findLink(vmDocs.get(id).getDocumentElement(), rel, null);
 
-                                if( wait ) {
-                                    method.waitFor(task);
+                                    if( href == null ) {
+                                        report.record(id, BulkOperationReport.Outcome.UNCHANGED, "No " + rel + " action is available for " + id);
+                                    }
+                                    else {
+                                        tasks.put(id, method.postXml(method.getAction(href), href, contentType, payload));
+                                    }
+                                }
+                                catch( Throwable t ) {
+                                    report.record(id, BulkOperationReport.Outcome.FAILED, t.getMessage());
                                 }
-                                break;
                             }
+                            return null;
                         }
-                    }
+                    });
                 }
+                if( !invokeAll(executor, jobs) ) {
+                    return interrupted(vmIds, report);
+                }
+            }
+            finally {
+                executor.shutdown();
+            }
+            new vCloudMethod(getProvider()).waitForAll(tasks, deadline, false, report);
+            return report;
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    /**
+     * Runs the jobs on the executor and waits for all of them to finish.
+     * @return false if the calling thread was interrupted while waiting
+     */
+    private boolean invokeAll(@Nonnull ExecutorService executor, @Nonnull Collection<Callable<Void>> jobs) {
+        try {
+            executor.invokeAll(jobs);
+            return true;
+        }
+        catch( InterruptedException e ) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private @Nonnull BulkOperationReport interrupted(@Nonnull Collection<String> vmIds, @Nonnull BulkOperationReport report) {
+        for( String id : vmIds ) {
+            if( !report.contains(id) ) {
+                report.record(id, BulkOperationReport.Outcome.INTERRUPTED, "Interrupted before the operation was requested");
             }
         }
+        return report;
+    }
+
+    private void startVapp(@Nonnull String vappId, boolean wait) throws CloudException, InternalException {
+        vCloudMethod method = new vCloudMethod(getProvider());
+        String task = method.postAction("vApp", vappId, "power:powerOn", null, null);
+
+        if( task != null && wait ) {
+            method.waitFor(task);
+        }
     }
 
     @Override
@@ -1337,14 +1660,9 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         if (xml == null) {
             throw new CloudException("No information returned for ID: " + id);
         }
-        Document doc = method.parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
-        if( nodes.getLength() < 1 ) {
-            nodes = doc.getElementsByTagName(nsString + "Vm");
-        } else {
+        Element root = method.bindXML(xml);
+
+        if( vCloudBinder.first(root, vCloudBinder.VAPP) != null ) {
             // 1. It's a vApp ID, nothing to search for, undeploy via vApp
             if (force) {
                 undeploy(id);
@@ -1355,7 +1673,7 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         }
 
         // 2. It's a VM. Find vApp ID
-        String vAppId = parseParentVappId(nodes, method);
+        String vAppId = parseParentVappId(vCloudBinder.first(root, vCloudBinder.VM), method);
         if (vAppId == null) {
             throw new CloudException("No parent vApp ID found for: " + id);
         }
@@ -1375,31 +1693,12 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
             throw new CloudException("No information returned for ID: " + vAppId);
         }
 
-        Document doc = method.parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
-        NodeList attributes = nodes.item(0).getChildNodes();
-
-        int count = 0;
-        for( int i=0; i<attributes.getLength(); i++ ) {
-            Node attribute = attributes.item(i);
-            if(attribute.getNodeName().contains(":"))nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-            else nsString = "";
-
-            if( attribute.getNodeName().equals(nsString + "Children") && attribute.hasChildNodes() ) {
-                NodeList children = attribute.getChildNodes();
+        Element vapp = vCloudBinder.first(method.bindXML(xml), vCloudBinder.VAPP);
 
-                for( int j=0; j<children.getLength(); j++ ) {
-                    Node vmNode = children.item(j);
-
-                    if( vmNode.getNodeName().equalsIgnoreCase(nsString + "Vm") && vmNode.hasAttributes() ) {
-                        count++;
-                    }
-                }
-            }
+        if( vapp == null ) {
+            throw new CloudException("No vApp returned for ID: " + vAppId);
         }
+        int count = method.getBinder().toVApp(vapp).getVms().size();
 
         String powerAction = null;
         if (!force) {
@@ -1422,89 +1721,28 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         String xml = method.get("vApp", vmId);
 
         if( xml != null ) {
-            Document doc = method.parseXML(xml);
-            String docElementTagName = doc.getDocumentElement().getTagName();
-            String nsString = "";
-            if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-            NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
+            Element root = method.bindXML(xml);
+            Element node = vCloudBinder.first(root, vCloudBinder.VAPP);
 
-            if( nodes.getLength() < 1 ) {
-                nodes = doc.getElementsByTagName(nsString + "Vm");
+            if( node == null ) {
+                node = vCloudBinder.first(root, vCloudBinder.VM);
             }
+            String endpoint = (node == null ? null : method.getBinder().toEntity(node).getLink(force ? "power:powerOff" : "power:shutdown", null));
 
-            for( int i=0; i<nodes.getLength(); i++ ) {
-                NodeList links = nodes.item(i).getChildNodes();
-
-                for( int j=0; j<links.getLength(); j++ ) {
-                    Node node = links.item(j);
-                    if(node.getNodeName().contains(":"))nsString = node.getNodeName().substring(0, node.getNodeName().indexOf(":") + 1);
-                    else nsString = "";
-
-                    if( node.getNodeName().equalsIgnoreCase(nsString + "Link") && node.hasAttributes() ) {
-                        Node rel = node.getAttributes().getNamedItem("rel");
-
-                        if( force && rel != null && rel.getNodeValue().trim().equalsIgnoreCase("power:powerOff") ) {
-                            Node href = node.getAttributes().getNamedItem("href");
-
-                            if( href != null ) {
-                                String endpoint = href.getNodeValue().trim();
-                                String action = method.getAction(endpoint);
-
-                                String task = method.post(action, endpoint, null, null);
-
-                                if( wait ) {
-                                    method.waitFor(task);
-                                }
-                                break;
-                            }
-                        }
-                        else if( !force && rel != null && rel.getNodeValue().trim().equalsIgnoreCase("power:shutdown") ) {
-                            Node href = node.getAttributes().getNamedItem("href");
+            if( endpoint != null ) {
+                String task = method.post(method.getAction(endpoint), endpoint, null, null);
 
-                            if( href != null ) {
-                                String endpoint = href.getNodeValue().trim();
-                                String action = method.getAction(endpoint);
-
-                                String task = method.post(action, endpoint, null, null);
-
-                                if( wait ) {
-                                    method.waitFor(task);
-                                }
-                                break;
-                            }
-                        }
-                    }
+                if( wait ) {
+                    method.waitFor(task);
                 }
             }
         }
     }
 
-    private String parseParentVappId(NodeList nodes, vCloudMethod method) {
-        String nsString = "";
-        for( int i=0; i<nodes.getLength(); i++ ) {
-            NodeList links = nodes.item(i).getChildNodes();
-
-            for( int j=0; j<links.getLength(); j++ ) {
-                Node node = links.item(j);
-                if(node.getNodeName().contains(":"))nsString = node.getNodeName().substring(0, node.getNodeName().indexOf(":") + 1);
-                else nsString = "";
+    private @Nullable String parseParentVappId(@Nullable Element vm, @Nonnull vCloudMethod method) {
+        String href = (vm == null ? null : method.getBinder().toEntity(vm).getLink("up", method.getMediaTypeForVApp()));
 
-                if( node.getNodeName().equalsIgnoreCase(nsString + "Link") && node.hasAttributes() ) {
-                    Node rel = node.getAttributes().getNamedItem("rel");
-
-                    if (rel != null && rel.getNodeValue().trim().equalsIgnoreCase("up")) {
-                        Node type = node.getAttributes().getNamedItem("type");
-                        if( type != null && type.getNodeValue().trim().equals(method.getMediaTypeForVApp()) ) {
-                            Node href = node.getAttributes().getNamedItem("href");
-                            if( href != null ) {
-                                return getProvider().toID(href.getNodeValue().trim());
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return null;
+        return (href == null ? null : getProvider().toID(href));
     }
 
     @Override
@@ -1520,44 +1758,8 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
 
     private void suspendVapp(@Nonnull String vappId) throws CloudException, InternalException {
         vCloudMethod method = new vCloudMethod(getProvider());
-        String xml = method.get("vApp", vappId);
-
-        if( xml != null ) {
-            Document doc = method.parseXML(xml);
-            String docElementTagName = doc.getDocumentElement().getTagName();
-            String nsString = "";
-            if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-            NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
-
-            if( nodes.getLength() < 1 ) {
-                nodes = doc.getElementsByTagName(nsString + "Vm");
-            }
-            for( int i=0; i<nodes.getLength(); i++ ) {
-                NodeList links = nodes.item(i).getChildNodes();
-
-                for( int j=0; j<links.getLength(); j++ ) {
-                    Node node = links.item(j);
-                    if(node.getNodeName().contains(":"))nsString = node.getNodeName().substring(0, node.getNodeName().indexOf(":") + 1);
-                    else nsString = "";
-
-                    if( node.getNodeName().equalsIgnoreCase(nsString + "Link") && node.hasAttributes() ) {
-                        Node rel = node.getAttributes().getNamedItem("rel");
-
-                        if( rel != null && rel.getNodeValue().trim().equalsIgnoreCase("power:suspend") ) {
-                            Node href = node.getAttributes().getNamedItem("href");
 
-                            if( href != null ) {
-                                String endpoint = href.getNodeValue().trim();
-                                String action = method.getAction(endpoint);
-
-                                method.post(action, endpoint, null, null);
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        method.postAction("vApp", vappId, "power:suspend", null, null);
     }
 
     @Override
@@ -1569,27 +1771,27 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     public void terminate(@Nonnull String vmId) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "VM.terminate");
         try {
-            VirtualMachine vm = getVirtualMachine(vmId);
+            vCloudMethod method = new vCloudMethod(getProvider());
+            vCloudBinder.VApp vm = method.toVApp(method.get("vApp", vmId));
+            String parentHref = (vm == null ? null : vm.getLink("up", method.getMediaTypeForVApp()));
 
-            if( vm == null ) {
+            if( parentHref == null ) {
                 throw new CloudException("No such virtual machine: " + vmId);
             }
-            String vappId = (String)vm.getTag(PARENT_VAPP_ID);
-            Jiterator<VirtualMachine> vms = new Jiterator<VirtualMachine>();
+            // read the parent once and count its VMs rather than loading each of them
+            String vappId = getProvider().toID(parentHref);
+            vCloudBinder.VApp vapp = method.toVApp(method.get("vApp", vappId));
             boolean contains = false;
             int count = 0;
 
-            loadVmsFor(vm.getProviderDataCenterId(), vappId, vms, getProvider().getNetworkServices().getVlanSupport().listVlans());
-
-            for( VirtualMachine v : vms ) {
-                count++;
-                if( v.getProviderVirtualMachineId().equals(vmId) ) {
-                    contains = true;
-                    break;
+            if( vapp != null ) {
+                for( vCloudBinder.Entity child : vapp.getVms() ) {
+                    count++;
+                    if( vmId.equals(child.getId()) ) {
+                        contains = true;
+                    }
                 }
             }
-            vCloudMethod method = new vCloudMethod(getProvider());
-
             if( count == 1 && contains ) {
                 try { undeploy(vappId); }
                 catch( Throwable t ) {
@@ -1610,62 +1812,26 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         }
     }
 
-    private @Nullable VirtualMachineProduct toProduct(@Nonnull JSONObject json) throws InternalException {
-        VirtualMachineProduct prd = new VirtualMachineProduct();
+    /**
+     * Finds the href of the first link on an entity with the specified relationship (and media type, if specified).
+     */
+    private @Nullable String findLink(@Nonnull Node entity, @Nonnull String rel, @Nullable String type) {
+        NodeList children = entity.getChildNodes();
 
-        try {
-            if( json.has("id") ) {
-                prd.setProviderProductId(json.getString("id"));
-            }
-            else {
-                return null;
-            }
-            if( json.has("name") ) {
-                prd.setName(json.getString("name"));
-            }
-            else {
-                prd.setName(prd.getProviderProductId());
-            }
-            if( json.has("description") ) {
-                prd.setDescription(json.getString("description"));
-            }
-            else {
-                prd.setDescription(prd.getName());
-            }
-            if( json.has("cpuCount") ) {
-                prd.setCpuCount(json.getInt("cpuCount"));
-            }
-            else {
-                prd.setCpuCount(1);
-            }
-            if( json.has("rootVolumeSizeInGb") ) {
-                prd.setRootVolumeSize(new Storage<Gigabyte>(json.getInt("rootVolumeSizeInGb"), Storage.GIGABYTE));
-            }
-            else {
-                prd.setRootVolumeSize(new Storage<Gigabyte>(1, Storage.GIGABYTE));
-            }
-            if( json.has("ramSizeInMb") ) {
-                prd.setRamSize(new Storage<Megabyte>(json.getInt("ramSizeInMb"), Storage.MEGABYTE));
-            }
-            else {
-                prd.setRamSize(new Storage<Megabyte>(512, Storage.MEGABYTE));
-            }
-            if( json.has("standardHourlyRates") ) {
-                JSONArray rates = json.getJSONArray("standardHourlyRates");
+        for( int i=0; i<children.getLength(); i++ ) {
+            Node link = children.item(i);
 
-                for( int i=0; i<rates.length(); i++ ) {
-                    JSONObject rate = rates.getJSONObject(i);
+            if( (link.getNodeName().equals("Link") || link.getNodeName().endsWith(":Link")) && link.hasAttributes() ) {
+                Node r = link.getAttributes().getNamedItem("rel");
+                Node t = link.getAttributes().getNamedItem("type");
+                Node href = link.getAttributes().getNamedItem("href");
 
-                    if( rate.has("rate") ) {
-                        prd.setStandardHourlyRate((float)rate.getDouble("rate"));
-                    }
+                if( r != null && href != null && r.getNodeValue().trim().equalsIgnoreCase(rel) && (type == null || (t != null && t.getNodeValue().trim().equals(type))) ) {
+                    return href.getNodeValue().trim();
                 }
             }
         }
-        catch( JSONException e ) {
-            throw new InternalException(e);
-        }
-        return prd;
+        return null;
     }
 
     private @Nonnull VmState toState(@Nonnull String status) throws CloudException, InternalException {
@@ -1687,8 +1853,8 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         }
     }
 
-    private @Nullable VirtualMachine toVirtualMachine(@Nonnull String vdcId, @Nonnull String parentVAppId, @Nonnull Node vmNode, @Nonnull Iterable<VLAN> vlans) throws CloudException, InternalException {
-        Node n = vmNode.getAttributes().getNamedItem("href");
+    private @Nullable VirtualMachine toVirtualMachine(@Nonnull String vdcId, @Nonnull String parentVAppId, @Nonnull Element vmNode, @Nonnull Iterable<VLAN> vlans) throws CloudException, InternalException {
+        String href = vCloudBinder.attribute(vmNode, "href");
         VirtualMachine vm = new VirtualMachine();
 
         vm.setProviderMachineImageId("unknown");
@@ -1707,100 +1873,67 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
         vm.setProviderRegionId(getContext().getRegionId());
         vm.setProviderDataCenterId(vdcId);
 
-        if( n != null ) {
-            vm.setProviderVirtualMachineId((getProvider()).toID(n.getNodeValue().trim()));
+        if( href != null ) {
+            vm.setProviderVirtualMachineId((getProvider()).toID(href));
         }
-        n = vmNode.getAttributes().getNamedItem("status");
-        if( n != null ) {
-            vm.setCurrentState(toState(n.getNodeValue().trim()));
+        String status = vCloudBinder.attribute(vmNode, "status");
+
+        if( status != null ) {
+            vm.setCurrentState(toState(status));
         }
-        String vmName = null;
+        String vmName = vCloudBinder.attribute(vmNode, "name");
         String computerName = null;
-        n = vmNode.getAttributes().getNamedItem("name");
-        if( n != null ) {
-            vmName = n.getNodeValue().trim();
-        }
-        NodeList attributes = vmNode.getChildNodes();
-
-        for( int i=0; i<attributes.getLength(); i++ ) {
-            Node attribute = attributes.item(i);
 
-            if( attribute.getNodeName().equalsIgnoreCase("Description") && attribute.hasChildNodes() ) {
-                vm.setDescription(attribute.getFirstChild().getNodeValue().trim());
+        for( Node attribute = vmNode.getFirstChild(); attribute != null; attribute = attribute.getNextSibling() ) {
+            if( vCloudBinder.DESCRIPTION.matches(attribute) ) {
+                vm.setDescription(vCloudBinder.text((Element)attribute));
             }
-            else if( attribute.getNodeName().equalsIgnoreCase("GuestCustomizationSection") && attribute.hasChildNodes() ) {
-                NodeList elements = attribute.getChildNodes();
-                String adminPassword = null;
-
-                for( int j=0; j<elements.getLength(); j++ ) {
-                    Node element = elements.item(j);
+            else if( vCloudBinder.GUEST_CUSTOMIZATION_SECTION.matches(attribute) ) {
+                String adminPassword = vCloudBinder.text(attribute, vCloudBinder.ADMIN_PASSWORD);
 
-                    if( element.getNodeName().equalsIgnoreCase("AdminPassword") && element.hasChildNodes() ) {
-                        adminPassword = element.getFirstChild().getNodeValue().trim();
-                    }
-                    else if( element.getNodeName().equalsIgnoreCase("ComputerName") && element.hasChildNodes() ) {
-                        computerName = element.getFirstChild().getNodeValue().trim();
-                    }
-                }
+                computerName = vCloudBinder.text(attribute, vCloudBinder.COMPUTER_NAME);
                 if( adminPassword != null ) {
                     vm.setRootUser(vm.getPlatform().isWindows() ? "administrator" : "root");
                     vm.setRootPassword(adminPassword);
                 }
             }
-            else if( attribute.getNodeName().equalsIgnoreCase("DateCreated") && attribute.hasChildNodes() ) {
-                vm.setCreationTimestamp((getProvider()).parseTime(attribute.getFirstChild().getNodeValue().trim()));
+            else if( vCloudBinder.DATE_CREATED.matches(attribute) ) {
+                String created = vCloudBinder.text((Element)attribute);
+
+                if( created != null ) {
+                    vm.setCreationTimestamp((getProvider()).parseTime(created));
+                }
             }
-            else if( attribute.getNodeName().equalsIgnoreCase("NetworkConnectionSection") && attribute.hasChildNodes() ) {
-                NodeList elements = attribute.getChildNodes();
+            else if( vCloudBinder.NETWORK_CONNECTION_SECTION.matches(attribute) ) {
                 TreeSet<String> addrs = new TreeSet<String>();
 
-                for( int j=0; j<elements.getLength(); j++ ) {
-                    Node element = elements.item(j);
+                for( Element element : vCloudBinder.children(attribute, vCloudBinder.NETWORK_CONNECTION) ) {
+                    String addr = vCloudBinder.text(element, vCloudBinder.IP_ADDRESS);
+                    String connected = vCloudBinder.text(element, vCloudBinder.IS_CONNECTED);
 
-                    if( element.getNodeName().equalsIgnoreCase("NetworkConnection") ) {
-                        if( element.hasChildNodes() ) {
-                            NodeList parts = element.getChildNodes();
-                            Boolean connected = null;
-                            String addr = null;
+                    if( (connected == null || connected.equalsIgnoreCase("true")) && addr != null ) {
+                        addrs.add(addr);
+                    }
+                    String netNameOrId = vCloudBinder.attribute(element, "network");
 
-                            for( int k=0; k<parts.getLength(); k++ ) {
-                                Node part = parts.item(k);
+                    if( netNameOrId != null ) {
+                        boolean compat = (getProvider()).isCompat();
 
-                                if( part.getNodeName().equalsIgnoreCase("IpAddress") && part.hasChildNodes() ) {
-                                    addr = part.getFirstChild().getNodeValue().trim();
-                                }
-                                if( part.getNodeName().equalsIgnoreCase("IsConnected") && part.hasChildNodes() ) {
-                                    connected = part.getFirstChild().getNodeValue().trim().equalsIgnoreCase("true");
-                                }
+                        for( VLAN vlan : vlans ) {
+                            boolean matches = false;
+
+                            if( !compat && vlan.getProviderVlanId().equals(netNameOrId) ) {
+                                matches = true;
                             }
-                            if( (connected == null || connected) && addr != null ) {
-                                addrs.add(addr);
+                            else if( compat && vlan.getProviderVlanId().equals("/network/" + netNameOrId) ) {
+                                matches = true;
                             }
-                        }
-                        if( element.hasAttributes() ) {
-                            Node net = element.getAttributes().getNamedItem("network");
-
-                            if( net != null ) {
-                                String netNameOrId = net.getNodeValue().trim();
-                                boolean compat = (getProvider()).isCompat();
-
-                                for( VLAN vlan : vlans ) {
-                                    boolean matches = false;
-
-                                    if( !compat && vlan.getProviderVlanId().equals(netNameOrId) ) {
-                                        matches = true;
-                                    }
-                                    else if( compat && vlan.getProviderVlanId().equals("/network/" + netNameOrId) ) {
-                                        matches = true;
-                                    }
-                                    else if( vlan.getName().equals(netNameOrId) ) {
-                                        matches = true;
-                                    }
-                                    if( matches ) {
-                                        vm.setProviderVlanId(vlan.getProviderVlanId());
-                                        break;
-                                    }
-                                }
+                            else if( vlan.getName().equals(netNameOrId) ) {
+                                matches = true;
+                            }
+                            if( matches ) {
+                                vm.setProviderVlanId(vlan.getProviderVlanId());
+                                break;
                             }
                         }
                     }
@@ -1839,77 +1972,51 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
                     }
                 }
             }
-            else if( attribute.getNodeName().equalsIgnoreCase("ovf:OperatingSystemSection") && attribute.hasChildNodes() ) {
-                NodeList os = attribute.getChildNodes();
-
-                for( int j=0; j<os.getLength(); j++ ) {
-                    Node osdesc = os.item(j);
+            else if( vCloudBinder.OVF_OPERATING_SYSTEM_SECTION.matches(attribute) ) {
+                String desc = vCloudBinder.text(attribute, vCloudBinder.OVF_DESCRIPTION);
 
-                    if( osdesc.getNodeName().equalsIgnoreCase("ovf:Description") && osdesc.hasChildNodes() ) {
-                        String desc = osdesc.getFirstChild().getNodeValue();
+                if( desc != null ) {
+                    vm.setPlatform(Platform.guess(desc));
 
-                        vm.setPlatform(Platform.guess(desc));
-
-                        if( desc.contains("32") || (desc.contains("x86") && !desc.contains("64")) ) {
-                            vm.setArchitecture(Architecture.I32);
-                        }
+                    if( desc.contains("32") || (desc.contains("x86") && !desc.contains("64")) ) {
+                        vm.setArchitecture(Architecture.I32);
                     }
                 }
             }
-            else if( attribute.getNodeName().equalsIgnoreCase("ovf:VirtualHardwareSection") && attribute.hasChildNodes() ) {
-                NodeList hardware = attribute.getChildNodes();
+            else if( vCloudBinder.OVF_VIRTUAL_HARDWARE_SECTION.matches(attribute) ) {
                 int memory = 0, cpu = 0;
 
-                for( int j=0; j<hardware.getLength(); j++ ) {
-                    Node item = hardware.item(j);
-
-                    if( item.getNodeName().equalsIgnoreCase("ovf:item") && item.hasChildNodes() ) {
-                        NodeList bits = item.getChildNodes();
-                        String rt = null;
-                        int qty = 0;
-
-                        for( int k=0; k<bits.getLength(); k++ ) {
-                            Node bit = bits.item(k);
-
-                            if( bit.getNodeName().equalsIgnoreCase("rasd:ResourceType") && bit.hasChildNodes() ) {
-                                rt = bit.getFirstChild().getNodeValue().trim();
-                            }
-                            else if( bit.getNodeName().equalsIgnoreCase("rasd:VirtualQuantity") && bit.hasChildNodes() ) {
-                                try {
-                                    qty = Integer.parseInt(bit.getFirstChild().getNodeValue().trim());
-                                }
-                                catch( NumberFormatException ignore ){
-                                    // ignore
-                                }
-                            }
+                for( Element item : vCloudBinder.children(attribute, vCloudBinder.OVF_ITEM) ) {
+                    String rt = vCloudBinder.text(item, vCloudBinder.RASD_RESOURCE_TYPE);
+                    String quantity = vCloudBinder.text(item, vCloudBinder.RASD_VIRTUAL_QUANTITY);
+                    int qty = 0;
 
+                    if( quantity != null ) {
+                        try {
+                            qty = Integer.parseInt(quantity);
                         }
-                        if( rt != null ) {
-                            if( rt.equals("3") ) { // cpu
-                                cpu = qty;
-                            }
-                            else if( rt.equals("4") ) {     // memory
-                                memory = qty;
-                            }
-                            /*
-                            else if( rt.equals("10") ) {     // NIC
-
-                            }
-                            else if( rt.equals("17") ) {     // disk
-
-                            }
-                            */
+                        catch( NumberFormatException ignore ){
+                            // ignore
                         }
                     }
-                }
-                VirtualMachineProduct product = null;
+                    if( rt != null ) {
+                        if( rt.equals("3") ) { // cpu
+                            cpu = qty;
+                        }
+                        else if( rt.equals("4") ) {     // memory
+                            memory = qty;
+                        }
+                        /*
+                        else if( rt.equals("10") ) {     // NIC
 
-                for( VirtualMachineProduct prd : listProducts("bogus", VirtualMachineProductFilterOptions.getInstance().withArchitecture(Architecture.I64)) ) {
-                    if( prd.getCpuCount() == cpu && memory == prd.getRamSize().intValue() ) {
-                        product = prd;
-                        break;
+                        }
+                        else if( rt.equals("17") ) {     // disk
+
+                        }
+                        */
                     }
                 }
+                VirtualMachineProduct product = ProductCatalog.getInstance(getProvider()).getProduct(Architecture.I64, cpu, memory);
                 if( product == null ) {
                     vm.setProductId("custom:" + cpu + ":" + memory);
                 }
@@ -2008,63 +2115,34 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
      */
     public void undeploy(@Nonnull String vmId, String powerAction) throws CloudException, InternalException {
         vCloudMethod method = new vCloudMethod(getProvider());
-        String xml = method.get("vApp", vmId);
+        long deadline = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 10L);
+        long backoff = CalendarWrapper.SECOND;
+        String task;
 
-        if( xml != null ) {
-            Document doc = method.parseXML(xml);
-            String docElementTagName = doc.getDocumentElement().getTagName();
-            String nsString = "";
-            if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-            NodeList nodes = doc.getElementsByTagName(nsString + "VApp");
-
-            if( nodes.getLength() < 1 ) {
-                nodes = doc.getElementsByTagName(nsString + "Vm");
-            }
-            for( int i=0; i<nodes.getLength(); i++ ) {
-                NodeList links = nodes.item(i).getChildNodes();
-
-                for( int j=0; j<links.getLength(); j++ ) {
-                    Node node = links.item(j);
-                    if(node.getNodeName().contains(":"))nsString = node.getNodeName().substring(0, node.getNodeName().indexOf(":") + 1);
-                    else nsString = "";
-
-                    if( node.getNodeName().equalsIgnoreCase(nsString + "Link") && node.hasAttributes() ) {
-                        Node rel = node.getAttributes().getNamedItem("rel");
-
-                        if( rel != null && rel.getNodeValue().trim().equalsIgnoreCase("undeploy") ) {
-                            Node href = node.getAttributes().getNamedItem("href");
-
-                            if( href != null ) {
-                                String endpoint = href.getNodeValue().trim();
-                                String action = method.getAction(endpoint);
-                                StringBuilder payload = new StringBuilder();
-
-                                if (powerAction == null) {
-                                    payload.append("<UndeployVAppParams xmlns=\"http://www.vmware.com/vcloud/v1.5\"/>");
-                                } else {
-                                    payload.append("<UndeployVAppParams xmlns=\"http://www.vmware.com/vcloud/v1.5\"><UndeployPowerAction>");
-                                    payload.append(powerAction);
-                                    payload.append("</UndeployPowerAction></UndeployVAppParams>");
-                                }
-                                try {
-                                    method.waitFor(method.post(action, endpoint, method.getMediaTypeForActionUndeployVApp(), payload.toString()));
-                                }
-                                catch( vCloudException e ) {
-                                    if( e.getProviderCode().contains("BUSY_ENTITY") ) {
-                                        try { Thread.sleep(15000L); }
-                                        catch( InterruptedException ignore ) { }
-                                        undeploy(vmId);
-                                        return;
-                                    }
-                                    throw e;
-                                }
-                                break;
-                            }
-                        }
-                    }
+        while( true ) {
+            try {
+                task = method.postAction("vApp", vmId, "undeploy", method.getMediaTypeForActionUndeployVApp(), RequestPayloads.undeploy(powerAction));
+                break;
+            }
+            catch( vCloudException e ) {
+                if( !e.getProviderCode().contains("BUSY_ENTITY") || System.currentTimeMillis() >= deadline ) {
+                    throw e;
+                }
+                // wait for whatever is keeping the entity busy to finish, then try again
+                if( method.waitForEntity("vApp", vmId, PENDING_STATUSES, deadline) == null ) {
+                    return;
                 }
+                try { Thread.sleep(backoff); }
+                catch( InterruptedException ignore ) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(backoff * 2, CalendarWrapper.SECOND * 10L);
             }
         }
+        if( task != null ) {
+            method.waitFor(task);
+        }
     }
 
     private @Nonnull String validateHostName(@Nonnull String src) {
@@ -2101,7 +2179,7 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     	APITrace.begin(getProvider(), "VM.setTags");
     	try {
     		vCloudMethod method = new vCloudMethod(getProvider());
-    		Tag[] collectionForDelete = TagUtils.getTagsForDelete(getVirtualMachine(vmId).getTags(), tags);
+    		Tag[] collectionForDelete = TagUtils.getTagsForDelete(method.getMetaData("vApp", vmId), tags);
     		if (collectionForDelete.length != 0 ) {
     			removeTags(vmId, collectionForDelete);
     		}
@@ -2118,9 +2196,23 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     
     @Override
     public void setTags(@Nonnull String[] vmIds, @Nonnull Tag... tags) throws CloudException, InternalException {
-    	for (String id : vmIds) {
-    		setTags(id, tags);
-    	}
+    	BulkRunner.check("VM.setTags", setTagsAll(vmIds, tags));
+    }
+
+    /**
+     * Replaces the tags on each of the specified VMs, recording the outcome per VM instead of stopping at the
+     * first failure.
+     * @param vmIds the IDs of the VMs
+     * @param tags the tags to apply
+     * @return the outcome for each VM
+     */
+    public @Nonnull BulkOperationReport setTagsAll(@Nonnull String[] vmIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner(getProvider(), "VM.setTags").run(vmIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod(getProvider()).replaceMetaData("vApp", id, tags);
+    		}
+    	});
     }
     
     @Override
@@ -2141,9 +2233,22 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     
     @Override
     public void updateTags( @Nonnull String[] vmIds, @Nonnull Tag... tags ) throws CloudException, InternalException {
-    	for( String id : vmIds ) {
-    		updateTags(id, tags);
-    	}
+    	BulkRunner.check("VM.updateTags", updateTagsAll(vmIds, tags));
+    }
+
+    /**
+     * Adds or updates tags on each of the specified VMs, recording the outcome per VM.
+     * @param vmIds the IDs of the VMs
+     * @param tags the tags to apply
+     * @return the outcome for each VM
+     */
+    public @Nonnull BulkOperationReport updateTagsAll(@Nonnull String[] vmIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner(getProvider(), "VM.updateTags").run(vmIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod(getProvider()).mergeMetaData("vApp", id, vCloudMethod.toMetadataMap(tags));
+    		}
+    	});
     }
     
     @Override
@@ -2164,8 +2269,21 @@ public class vAppSupport extends AbstractVMSupport<vCloud> {
     
     @Override
     public void removeTags( @Nonnull String[] vmIds, @Nonnull Tag... tags ) throws CloudException, InternalException {
-    	for( String id : vmIds ) {
-    		removeTags(id, tags);
-    	}
+    	BulkRunner.check("VM.removeTags", removeTagsAll(vmIds, tags));
+    }
+
+    /**
+     * Removes tags from each of the specified VMs, recording the outcome per VM.
+     * @param vmIds the IDs of the VMs
+     * @param tags the tags to remove; only their keys are used
+     * @return the outcome for each VM
+     */
+    public @Nonnull BulkOperationReport removeTagsAll(@Nonnull String[] vmIds, @Nonnull final Tag... tags) {
+    	return new BulkRunner(getProvider(), "VM.removeTags").run(vmIds, new BulkRunner.Operation() {
+    		@Override
+    		public void run(@Nonnull String id) throws CloudException, InternalException {
+    			new vCloudMethod(getProvider()).removeMetaData("vApp", id, vCloudMethod.toMetadataMap(tags));
+    		}
+    	});
     }
 }
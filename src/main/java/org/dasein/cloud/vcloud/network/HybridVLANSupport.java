@@ -27,17 +27,19 @@ import org.dasein.cloud.network.*;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.Cache;
 import org.dasein.cloud.util.CacheLevel;
+import org.dasein.cloud.vcloud.Prefetcher;
+import org.dasein.cloud.vcloud.VdcSnapshot;
+import org.dasein.cloud.vcloud.compute.LaunchPlan;
 import org.dasein.cloud.vcloud.vCloud;
+import org.dasein.cloud.vcloud.vCloudBinder;
 import org.dasein.cloud.vcloud.vCloudMethod;
 import org.dasein.util.uom.time.Minute;
 import org.dasein.util.uom.time.TimePeriod;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Implements support for vCloud networking.
@@ -155,48 +157,36 @@ public class HybridVLANSupport extends AbstractVLANSupport<vCloud> {
                 return cached;
             }
             vCloudMethod method = new vCloudMethod(getProvider());
-            ArrayList<VLAN> vlans = new ArrayList<VLAN>();
-
-            for( DataCenter dc : method.listDataCenters() ) {
-                String xml = method.get("vdc", dc.getProviderDataCenterId());
-
-                if( xml != null && !xml.equals("") ) {
-                    Document doc = method.parseXML(xml);
-                    String docElementTagName = doc.getDocumentElement().getTagName();
-                    String nsString = "";
-                    if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                    NodeList vdcs = doc.getElementsByTagName(nsString + "Vdc");
-
-                    if( vdcs.getLength() > 0 ) {
-                        NodeList attributes = vdcs.item(0).getChildNodes();
-
-                        for( int i=0; i<attributes.getLength(); i++ ) {
-                            Node attribute = attributes.item(i);
-                            if(attribute.getNodeName().contains(":"))nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-                            else nsString = "";
-
-                            if( attribute.getNodeName().equalsIgnoreCase(nsString + "AvailableNetworks") && attribute.hasChildNodes() ) {
-                                NodeList resources = attribute.getChildNodes();
-
-                                for( int j=0; j<resources.getLength(); j++ ) {
-                                    Node resource = resources.item(j);
-
-                                    if( resource.getNodeName().equalsIgnoreCase(nsString + "Network") && resource.hasAttributes() ) {
-                                        Node href = resource.getAttributes().getNamedItem("href");
-
-                                        VLAN vlan = toVlan(dc.getProviderDataCenterId(), getProvider().toID(href.getNodeValue().trim()));
-
-                                        if( vlan != null ) {
-                                            vlans.add(vlan);
-                                        }
-                                    }
+            final Prefetcher<VLAN> prefetcher = new Prefetcher<VLAN>(getProvider(), "listVlans");
+            List<VLAN> vlans;
+
+            try {
+                // the VDC snapshot is shared with the VM and volume listings
+                for( DataCenter dc : method.listDataCenters() ) {
+                    final String vdcId = dc.getProviderDataCenterId();
+
+                    VdcSnapshot.forEachNetwork(method, getProvider(), vdcId, new VdcSnapshot.ReferenceHandler() {
+                        @Override
+                        public void reference(@Nonnull VdcSnapshot.Reference network) throws CloudException, InternalException {
+                            final String networkId = getProvider().toID(network.getHref());
+
+                            prefetcher.submit(new Callable<VLAN>() {
+                                @Override
+                                public VLAN call() throws Exception {
+                                    return toVlan(vdcId, networkId);
                                 }
-                            }
+                            });
                         }
-                    }
+                    });
                 }
+                vlans = prefetcher.finish();
+            }
+            finally {
+                prefetcher.close();
             }
             cache.put(getContext(), vlans);
+            // launch plans hold VLANs from the previous listing
+            LaunchPlan.invalidate(getProvider());
             return vlans;
         }
         finally {
@@ -216,24 +206,7 @@ public class HybridVLANSupport extends AbstractVLANSupport<vCloud> {
         if( xml == null || xml.equals("") ) {
             return null;
         }
-        Document doc = method.parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList nets = doc.getElementsByTagName(nsString + "OrgVdcNetwork");
-
-        if( nets.getLength() < 1 ) {
-            nets = doc.getElementsByTagName(nsString + "OrgNetwork");
-            if( nets.getLength() < 1 ) {
-                nets = doc.getElementsByTagName(nsString + "Network");
-                if( nets.getLength() < 1 ) {
-                    return null;
-                }
-            }
-        }
-        Node netNode = nets.item(0);
-        if(netNode.getNodeName().contains(":"))nsString = netNode.getNodeName().substring(0, netNode.getNodeName().indexOf(":") + 1);
-        NodeList attributes = netNode.getChildNodes();
+        vCloudBinder.Network network = method.toNetwork(xml);
         VLAN vlan = new VLAN();
 
         vlan.setProviderVlanId(id);
@@ -241,198 +214,40 @@ public class HybridVLANSupport extends AbstractVLANSupport<vCloud> {
         vlan.setProviderRegionId(getContext().getRegionId());
         vlan.setProviderOwnerId(getContext().getAccountNumber());
         vlan.setSupportedTraffic(IPVersion.IPV4);
-        vlan.setCurrentState(VLANState.AVAILABLE);
+        vlan.setCurrentState(network.isEnabled() ? VLANState.AVAILABLE : VLANState.PENDING);
+        if( network.getName() != null ) {
+            vlan.setName(network.getName());
+        }
+        if( network.getDescription() != null ) {
+            vlan.setDescription(network.getDescription());
+        }
+        HashMap<String,String> tags = new HashMap<String, String>();
 
-        Node n;
+        if( network.getHref() != null ) {
+            tags.put("networkHref", network.getHref());
+        }
+        ArrayList<String> dnsServers = new ArrayList<String>();
 
-        /*
-        n = netNode.getAttributes().getNamedItem("status");
-        if( n == null ) {
-            vlan.setCurrentState(VLANState.AVAILABLE);
+        if( network.getDns1() != null ) {
+            dnsServers.add(network.getDns1());
         }
-        else {
-            vlan.setCurrentState(toState(n.getNodeValue().trim()));
+        if( network.getDns2() != null ) {
+            dnsServers.add(network.getDns2());
         }
-        */
-        n = netNode.getAttributes().getNamedItem(nsString + "name");
-        if( n != null ) {
-            vlan.setName(n.getNodeValue().trim());
-            vlan.setDescription(n.getNodeValue().trim());
+        vlan.setDnsServers(dnsServers.toArray(new String[dnsServers.size()]));
+        if( network.getDnsSuffix() != null ) {
+            vlan.setDomainName(network.getDnsSuffix());
         }
-        HashMap<String,String> tags = new HashMap<String, String>();
-        n = netNode.getAttributes().getNamedItem(nsString + "href");
-        if (n != null) {
-           tags.put("networkHref", n.getNodeValue().trim());
+        if( network.getIpStart() != null ) {
+            tags.put("ipStart", network.getIpStart());
         }
-
-
-        String gateway = null;
-        String netmask = null;
-        boolean shared = false;
-        String fenceMode = null;
-
-        for( int i=0; i<attributes.getLength(); i++ ) {
-            Node attribute = attributes.item(i);
-            if(attribute.getNodeName().contains(":"))nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-            else nsString = "";
-
-            if( attribute.getNodeName().equals(nsString + "Description") && attribute.hasChildNodes() ) {
-                shared = attribute.getFirstChild().getNodeValue().trim().equalsIgnoreCase("true");
-            }
-            else if( attribute.getNodeName().equals(nsString + "IsShared") && attribute.hasChildNodes() ) {
-                vlan.setDescription(attribute.getFirstChild().getNodeValue().trim());
-            }
-            else if( attribute.getNodeName().equals(nsString + "Features") && attribute.hasChildNodes() ) {
-                NodeList list = attribute.getChildNodes();
-
-                for( int j=0; j<list.getLength(); j++ ) {
-                    Node feature = list.item(j);
-
-                    if( feature.getNodeName().equalsIgnoreCase(nsString + "FenceMode") && feature.hasChildNodes() ) {
-                        fenceMode = feature.getFirstChild().getNodeValue().trim();
-                    }
-                }
-            }
-            else if( attribute.getNodeName().equals(nsString + "Configuration") && attribute.hasChildNodes() ) {
-                NodeList scopesList = attribute.getChildNodes();
-                String[] dns = new String[10];
-                String ipStart = null;
-                String ipEnd = null;
-                String domain = null;
-                Boolean enabled = null;
-
-                for( int j=0; j<scopesList.getLength(); j++ ) {
-                    Node scopesNode = scopesList.item(j);
-                    if(scopesNode.getNodeName().contains(":"))nsString = scopesNode.getNodeName().substring(0, scopesNode.getNodeName().indexOf(":") + 1);
-                    else nsString = "";
-
-                    if( scopesNode.getNodeName().equalsIgnoreCase(nsString + "FenceMode") && scopesNode.hasChildNodes() ) {
-                        fenceMode = scopesNode.getFirstChild().getNodeValue().trim();
-                    }
-                    else if( (scopesNode.getNodeName().equalsIgnoreCase(nsString + "IpScope") || scopesNode.getNodeName().equalsIgnoreCase(nsString + "IpScopes")) && scopesNode.hasChildNodes() ) {
-                        Node scope = null;
-
-                        if( scopesNode.getNodeName().equalsIgnoreCase(nsString + "IpScope") ) {
-                            scope = scopesNode;
-                        }
-                        else {
-                            NodeList scopes = scopesNode.getChildNodes();
-
-                            for( int k=0; k<scopes.getLength(); k++ ) {
-                                Node node = scopes.item(k);
-                                if(node.getNodeName().contains(":"))nsString = node.getNodeName().substring(0, node.getNodeName().indexOf(":") + 1);
-                                else nsString = "";
-
-                                if( node.getNodeName().equalsIgnoreCase(nsString + "IpScope") ) {
-                                    scope = node;
-                                    break;
-                                }
-                            }
-                        }
-                        if( scope != null ) {
-                            NodeList saList = scope.getChildNodes();
-
-                            for( int l=0; l<saList.getLength(); l++ ) {
-                                Node sa = saList.item(l);
-                                if(sa.getNodeName().contains(":"))nsString = sa.getNodeName().substring(0, sa.getNodeName().indexOf(":") + 1);
-                                else nsString = "";
-
-                                if( sa.getNodeName().equalsIgnoreCase(nsString + "Gateway") && sa.hasChildNodes() ) {
-                                    gateway = sa.getFirstChild().getNodeValue().trim();
-                                }
-                                else if( sa.getNodeName().equalsIgnoreCase(nsString + "Netmask") && sa.hasChildNodes() ) {
-                                    netmask = sa.getFirstChild().getNodeValue().trim();
-                                }
-                                else if( sa.getNodeName().equalsIgnoreCase(nsString + "DnsSuffix") && sa.hasChildNodes() ) {
-                                    domain = sa.getFirstChild().getNodeValue().trim();
-                                }
-                                else if( sa.getNodeName().startsWith(nsString + "Dns") && sa.hasChildNodes() ) {
-                                    String ns = sa.getFirstChild().getNodeValue().trim();
-
-                                    if( sa.getNodeName().equals(ns + "Dns") ) {
-                                        dns[0] = ns;
-                                    }
-                                    else {
-                                        try {
-                                            int idx = Integer.parseInt(sa.getNodeName().substring(3));
-
-                                            dns[idx] = ns;
-                                        }
-                                        catch( NumberFormatException e ) {
-                                            for(int z=0; z<dns.length; z++ ) {
-                                                if( dns[z] == null ) {
-                                                    dns[z] = ns;
-                                                    break;
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                                else if( sa.getNodeName().equalsIgnoreCase(nsString + "IsEnabled") && sa.hasChildNodes() ) {
-                                    enabled = sa.getFirstChild().getNodeValue().trim().equalsIgnoreCase("true");
-                                }
-                                else if( sa.getNodeName().equalsIgnoreCase(nsString + "IpRanges") && sa.hasChildNodes() ) {
-                                    NodeList rangesList = sa.getChildNodes();
-
-                                    for( int m=0; m<rangesList.getLength(); m++ ) {
-                                        Node ranges = rangesList.item(m);
-                                        if(ranges.getNodeName().contains(":"))nsString = ranges.getNodeName().substring(0, ranges.getNodeName().indexOf(":") + 1);
-
-                                        if( ranges.getNodeName().equalsIgnoreCase(nsString + "IpRanges") && ranges.hasChildNodes() ) {
-                                            NodeList rangeList = ranges.getChildNodes();
-
-                                            for( int o=0; o<rangeList.getLength(); o++ ) {
-                                                Node range = rangeList.item(o);
-                                                if(range.getNodeName().contains(":"))nsString = range.getNodeName().substring(0, range.getNodeName().indexOf(":") + 1);
-
-                                                if( range.getNodeName().equalsIgnoreCase(nsString + "IpRange") && range.hasChildNodes() ) {
-                                                    NodeList addresses = range.getChildNodes();
-
-                                                    for( int p=0; p<addresses.getLength(); p++ ) {
-                                                        Node address = addresses.item(p);
-
-                                                        if( address.getNodeName().equalsIgnoreCase(nsString + "StartAddress") && address.hasChildNodes() ) {
-                                                            ipStart = address.getFirstChild().getNodeValue().trim();
-                                                        }
-                                                        else if( address.getNodeName().equalsIgnoreCase(nsString + "EndAddress") && address.hasChildNodes() ) {
-                                                            ipEnd = address.getFirstChild().getNodeValue().trim();
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    else if( attribute.getNodeName().equalsIgnoreCase(nsString + "Gateway") && attribute.hasChildNodes() ) {
-                        gateway = attribute.getFirstChild().getNodeValue().trim();
-                    }
-                    else if( attribute.getNodeName().equalsIgnoreCase(nsString + "Netmask") && attribute.hasChildNodes() ) {
-                        netmask = attribute.getFirstChild().getNodeValue().trim();
-                    }
-                }
-                ArrayList<String> dnsServers = new ArrayList<String>();
-
-                for( String ns : dns ) {
-                    if( ns != null ) {
-                        dnsServers.add(ns);
-                    }
-                }
-                vlan.setDnsServers(dnsServers.toArray(new String[dnsServers.size()]));
-                vlan.setCurrentState(enabled == null || enabled ? VLANState.AVAILABLE : VLANState.PENDING);
-                if( domain != null ) {
-                    vlan.setDomainName(domain);
-                }
-                if( ipStart != null ) {
-                    tags.put("ipStart", ipStart);
-                }
-                if( ipEnd != null ) {
-                    tags.put("ipEnd", ipEnd);
-                }
-            }
+        if( network.getIpEnd() != null ) {
+            tags.put("ipEnd", network.getIpEnd());
         }
+        String fenceMode = network.getFenceMode();
+        String gateway = network.getGateway();
+        String netmask = network.getNetmask();
+
         if( fenceMode != null ) {
             // isolated
             // bridged
@@ -448,7 +263,7 @@ public class HybridVLANSupport extends AbstractVLANSupport<vCloud> {
         if( netmask != null && gateway != null ) {
             vlan.setCidr(netmask, gateway);
         }
-        tags.put("shared", String.valueOf(shared));
+        tags.put("shared", String.valueOf(network.isShared()));
         if( vlan.getName() == null ) {
             vlan.setName(vlan.getProviderVlanId());
         }
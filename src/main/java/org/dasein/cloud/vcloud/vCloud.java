@@ -30,11 +30,16 @@ import org.dasein.cloud.vcloud.network.vCloudNetworkServices;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Bootstrapping class for interacting with vCloud Director through Dasein Cloud. This implementation is a complete
@@ -77,27 +82,102 @@ public class vCloud extends AbstractCloud {
     }
 
     static public String escapeXml(String nonxml) {
-        StringBuilder str = new StringBuilder();
+        int i = 0;
+
+        // most values need no escaping, so hand them back without copying
+        while( i < nonxml.length() && !needsEscape(nonxml.charAt(i)) ) {
+            i++;
+        }
+        if( i == nonxml.length() ) {
+            return nonxml;
+        }
+        StringBuilder str = new StringBuilder(nonxml.length() + 16);
+
+        try {
+            escapeXml(str, nonxml);
+        }
+        catch( IOException e ) {
+            throw new RuntimeException(e);
+        }
+        return str.toString();
+    }
+
+    /**
+     * Writes the escaped form of a value straight to the output, copying runs of characters that need no escaping
+     * in one go.
+     * @param out the output to write to
+     * @param nonxml the value to escape
+     * @throws IOException an error occurred writing to the output
+     */
+    static public void escapeXml(@Nonnull Appendable out, @Nonnull String nonxml) throws IOException {
+        int start = 0;
 
         for( int i=0; i<nonxml.length(); i++ ) {
             char c = nonxml.charAt(i);
 
+            if( !needsEscape(c) ) {
+                continue;
+            }
+            if( i > start ) {
+                out.append(nonxml, start, i);
+            }
             switch( c ) {
-                case '&': str.append("&amp;"); break;
-                case '>': str.append("&gt;"); break;
-                case '<': str.append("&lt;"); break;
-                case '"': str.append("&quot;"); break;
-                case '[': str.append("&#091;"); break;
-                case ']': str.append("&#093;"); break;
-                case '!': str.append("&#033;"); break;
-                default: str.append(c);
+                case '&': out.append("&amp;"); break;
+                case '>': out.append("&gt;"); break;
+                case '<': out.append("&lt;"); break;
+                case '"': out.append("&quot;"); break;
+                case '[': out.append("&#091;"); break;
+                case ']': out.append("&#093;"); break;
+                case '!': out.append("&#033;"); break;
             }
+            start = i + 1;
         }
-        return str.toString();
+        if( start < nonxml.length() ) {
+            out.append(nonxml, start, nonxml.length());
+        }
+    }
+
+    static private boolean needsEscape(char c) {
+        return (c == '&' || c == '>' || c == '<' || c == '"' || c == '[' || c == ']' || c == '!');
     }
 
+    private LaunchJobExecutor launchJobs;
+
     public vCloud() { }
 
+    /**
+     * Stops accepting launch jobs and waits for the queued and running ones to finish, for at most the number of
+     * seconds in the <code>launchShutdownSeconds</code> custom property (default 30). Jobs still unfinished after that
+     * are interrupted or dropped and logged.
+     */
+    @Override
+    public void close() {
+        LaunchJobExecutor jobs;
+
+        synchronized( this ) {
+            jobs = launchJobs;
+        }
+        if( jobs != null ) {
+            jobs.shutdown();
+            try {
+                if( !jobs.awaitTermination(getIntProperty("launchShutdownSeconds", 30) * 1000L) ) {
+                    abandon(jobs);
+                }
+            }
+            catch( InterruptedException e ) {
+                abandon(jobs);
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.close();
+    }
+
+    static private void abandon(@Nonnull LaunchJobExecutor jobs) {
+        for( LaunchJobExecutor.Job job : jobs.shutdownNow() ) {
+            logger.warn("Abandoned launch job on close: " + job);
+        }
+    }
+
     @Override
     public @Nonnull String getCloudName() {
         ProviderContext ctx = getContext();
@@ -137,119 +217,220 @@ public class vCloud extends AbstractCloud {
         return (name == null ? "VMware" : name);
     }
 
-    public @Nullable String[] getVersionPreference() {
-        ProviderContext ctx = getContext();
-        String value;
-
-        if( ctx == null ) {
-            value = null;
-        }
-        else {
-            Properties p = ctx.getCustomProperties();
-
-            if( p == null ) {
-                value = null;
+    /**
+     * Provides the executor that runs post-launch configuration for VMs launched through this provider. The pool size
+     * and queue limit come from the <code>launchThreads</code> and <code>launchQueue</code> custom properties
+     * (default 10 and 200).
+     * @return the launch job executor for this provider
+     */
+    public @Nonnull LaunchJobExecutor getLaunchJobExecutor() {
+        synchronized( this ) {
+            if( launchJobs == null || launchJobs.isShutdown() ) {
+                ProviderContext ctx = getContext();
+                String name = "vCloud launch" + (ctx == null ? "" : " " + ctx.getAccountNumber());
+
+                launchJobs = new LaunchJobExecutor(name, getIntProperty("launchThreads", 10), getIntProperty("launchQueue", 200));
             }
-            else {
-                value = p.getProperty("versionPreference");
-            }
-        }
-        if( value == null ) {
-            value = System.getProperty("vCloudVersionPreference");
-        }
-        if( value == null ) {
-            return null;
-        }
-        else if( value.contains(",") ) {
-            return value.trim().split(",");
-        }
-        else {
-            return new String[] { value };
+            return launchJobs;
         }
     }
 
+    /**
+     * Creates a pool of named daemon threads for spreading a bulk operation over several concurrent requests. The
+     * pool size comes from the <code>bulkThreads</code> custom property (default 10). The caller is responsible for
+     * shutting the pool down when the operation is done.
+     * @param name the name used as a prefix for the pool's threads
+     * @return a new executor for a bulk operation
+     */
+    public @Nonnull ExecutorService newBulkExecutor(@Nonnull final String name) {
+        return Executors.newFixedThreadPool(getIntProperty("bulkThreads", 10), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r);
+
+                t.setName(name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
 
-    public @Nonnull String getVMProductsResource() {
+    int getIntProperty(@Nonnull String name, int defaultValue) {
         ProviderContext ctx = getContext();
-        String value;
+        Properties p = (ctx == null ? null : ctx.getCustomProperties());
+        String value = (p == null ? null : p.getProperty(name));
 
-        if( ctx == null ) {
-            value = null;
-        }
-        else {
-            Properties p = ctx.getCustomProperties();
+        if( value != null ) {
+            try {
+                int i = Integer.parseInt(value.trim());
 
-            if( p == null ) {
-                value = null;
+                if( i > 0 ) {
+                    return i;
+                }
             }
-            else {
-                value = p.getProperty("vmproducts");
+            catch( NumberFormatException ignore ) {
+                // ignore
             }
+            logger.warn("Ignoring invalid value for " + name + ": " + value);
         }
-        if( value == null ) {
-            value = System.getProperty("vcloud.vmproducts");
-        }
-        if( value == null ) {
-            value = "/org/dasein/cloud/vcloud/vmproducts.json";
-        }
-        return value;
+        return defaultValue;
     }
 
-    public boolean isCompat() {
-        ProviderContext ctx = getContext();
-        String value;
+    /**
+     * The custom properties consulted on hot paths, resolved once for a given {@link ProviderContext}. The context's
+     * properties take precedence over the matching system properties.
+     */
+    static private final class Config {
+        private final ProviderContext context;
+        private final boolean         compat;
+        private final boolean         insecure;
+        private final boolean         entityCache;
+        private final boolean         roundUpCustomProducts;
+        private final int             responseCacheKb;
+        private final String[]        versionPreference;
+        private final String          vmProductsResource;
+        private final String          tenantKey;
+        private final String          userKey;
+
+        private Config(@Nullable ProviderContext context) {
+            this.context = context;
+            if( context == null ) {
+                tenantKey = "";
+                userKey = "";
+            }
+            else {
+                Object keys = context.getConfigurationValue("apiKey");
+                String user = "";
+
+                if( keys instanceof byte[][] && ((byte[][])keys).length > 0 && ((byte[][])keys)[0] != null ) {
+                    user = new String(((byte[][])keys)[0], StandardCharsets.UTF_8);
+                }
+                tenantKey = context.getEndpoint() + "#" + context.getAccountNumber();
+                userKey = tenantKey + "#" + user;
+            }
+            compat = "true".equalsIgnoreCase(getProperty(context, "compat", "vCloudCompat"));
+            insecure = "true".equalsIgnoreCase(getProperty(context, "insecure", "insecure"));
+            entityCache = !"false".equalsIgnoreCase(getProperty(context, "entityCache", "vCloudEntityCache"));
+            roundUpCustomProducts = "true".equalsIgnoreCase(getProperty(context, "roundUpCustomProducts", "vCloudRoundUpCustomProducts"));
+
+            String kb = getProperty(context, "responseCacheKb", "vCloudResponseCacheKb");
+            int size = 8192;
+
+            if( kb != null ) {
+                try {
+                    size = Math.max(0, Integer.parseInt(kb.trim()));
+                }
+                catch( NumberFormatException e ) {
+                    logger.warn("Ignoring invalid value for responseCacheKb: " + kb);
+                }
+            }
+            responseCacheKb = size;
 
-        if( ctx == null ) {
-            value = null;
-        }
-        else {
-            Properties p = ctx.getCustomProperties();
+            String value = getProperty(context, "versionPreference", "vCloudVersionPreference");
 
-            if( p == null ) {
-                value = null;
+            if( value == null ) {
+                versionPreference = null;
+            }
+            else if( value.contains(",") ) {
+                versionPreference = value.trim().split(",");
             }
             else {
-                value = p.getProperty("compat");
+                versionPreference = new String[] { value };
             }
+            value = getProperty(context, "vmproducts", "vcloud.vmproducts");
+            vmProductsResource = (value == null ? "/org/dasein/cloud/vcloud/vmproducts.json" : value);
         }
-        if( value == null ) {
-            value = System.getProperty("vCloudCompat");
+
+        static private @Nullable String getProperty(@Nullable ProviderContext ctx, @Nonnull String name, @Nonnull String systemName) {
+            Properties p = (ctx == null ? null : ctx.getCustomProperties());
+            String value = (p == null ? null : p.getProperty(name));
+
+            return (value == null ? System.getProperty(systemName) : value);
         }
-        return (value != null && value.equalsIgnoreCase("true"));
     }
 
-    public boolean isInsecure() {
+    private volatile Config config;
+
+    private @Nonnull Config getConfig() {
         ProviderContext ctx = getContext();
-        String value;
+        Config c = config;
 
-        if( ctx == null ) {
-            value = null;
+        // a new context means the provider was (re)connected, so its properties may have changed
+        if( c == null || c.context != ctx ) {
+            c = new Config(ctx);
+            config = c;
         }
-        else {
-            Properties p = ctx.getCustomProperties();
+        return c;
+    }
 
-            if( p == null ) {
-                value = null;
-            }
-            else {
-                value = p.getProperty("insecure");
-            }
-        }
-        if( value == null ) {
-            value = System.getProperty("insecure");
-        }
-        return (value != null && value.equalsIgnoreCase("true"));
+    public @Nullable String[] getVersionPreference() {
+        String[] preference = getConfig().versionPreference;
+
+        return (preference == null ? null : preference.clone());
+    }
+
+    public @Nonnull String getVMProductsResource() {
+        return getConfig().vmProductsResource;
+    }
+
+    public boolean isCompat() {
+        return getConfig().compat;
+    }
+
+    public boolean isInsecure() {
+        return getConfig().insecure;
+    }
+
+    /**
+     * Identifies the endpoint, org and user this provider is connected as. Two users in the same org may see different
+     * entities and be allowed different actions, so anything learned from responses and shared between provider
+     * instances is keyed by this rather than by the org alone.
+     * @return the key for state shared by providers connected as the same user
+     */
+    public @Nonnull String getUserKey() {
+        return getConfig().userKey;
+    }
+
+    /**
+     * Identifies the endpoint and org this provider is connected to. A change made by any user of the org is visible
+     * to all of them, so state shared per user is dropped for every user of the tenant when an entity changes.
+     * @return the key shared by every user of the tenant
+     */
+    public @Nonnull String getTenantKey() {
+        return getConfig().tenantKey;
+    }
+
+    /**
+     * @return true unless the <code>entityCache</code> property turns off the {@link EntityCache}
+     */
+    public boolean isEntityCacheEnabled() {
+        return getConfig().entityCache;
+    }
+
+    /**
+     * @return true if the <code>roundUpCustomProducts</code> property asks for <code>custom:cpu:ram</code> launches to
+     * use the smallest standard product with at least that many CPUs and that much RAM
+     */
+    public boolean isRoundUpCustomProducts() {
+        return getConfig().roundUpCustomProducts;
+    }
+
+    /**
+     * @return the memory bound of the {@link ResponseCache} in kilobytes, or 0 if conditional GETs are turned off
+     */
+    public int getResponseCacheKb() {
+        return getConfig().responseCacheKb;
     }
 
     public static @Nonnegative long parseTime(@Nullable String time) throws CloudException {
         if( time == null || time.length() < 1 ) {
             return 0L;
         }
-        Calendar cal = ISO8601.parse(time);
-        if (cal == null) {
-            return 0L;
-        }
-        return cal.getTimeInMillis();
+        long millis = ISO8601.parseMillis(time);
+
+        return (millis == ISO8601.INVALID ? 0L : millis);
     }
 
     @Override
@@ -278,18 +459,25 @@ public class vCloud extends AbstractCloud {
         }
     }
 
+    /**
+     * Extracts the ID from an entity's href: the last path segment or, in compat mode, the last two. Trailing
+     * slashes are ignored and hrefs with fewer than three segments are returned as is.
+     * @param url the href of the entity
+     * @return the ID of the entity
+     */
     public @Nonnull String toID(@Nonnull String url) {
-        String[] parts = url.split("/");
+        int end = url.length();
 
-        if( parts.length > 2 ) {
-            if( isCompat() ) {
-                return "/" + parts[parts.length-2] + "/" + parts[parts.length-1];
-            }
-            else {
-                return parts[parts.length-1];
-            }
+        while( end > 0 && url.charAt(end-1) == '/' ) {
+            end--;
+        }
+        int last = url.lastIndexOf('/', end-1);
+        int previous = (last > 0 ? url.lastIndexOf('/', last-1) : -1);
+
+        if( previous < 0 ) {
+            return url;
         }
-        return url;
+        return (isCompat() ? url.substring(previous, end) : url.substring(last+1, end));
     }
 
     @Override
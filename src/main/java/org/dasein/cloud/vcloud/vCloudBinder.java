@@ -0,0 +1,744 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binds vCloud API responses to small immutable records. Documents are parsed namespace aware and each element is
+ * visited once; child elements are matched by comparing their local name and namespace against precomputed
+ * {@link Name}s, so no strings are built while walking the tree. Any of the vCloud API namespaces match, as does an
+ * element with no namespace; the names of the OVF sections vCloud embeds match their own namespaces only.
+ * @since 2015.10
+ * @version 2015.10 initial version
+ */
+public class vCloudBinder {
+    static public final String VCLOUD_NAMESPACE_PREFIX = "http://www.vmware.com/vcloud/";
+
+    /**
+     * The OVF envelope namespace, used by the sections vCloud embeds from OVF.
+     */
+    static public final String OVF_NAMESPACE = "http://schemas.dmtf.org/ovf/envelope/1";
+    /**
+     * The namespace of the resource allocation settings inside an OVF <code>Item</code>.
+     */
+    static public final String RASD_NAMESPACE = "http://schemas.dmtf.org/wbem/wscim/1/cim-schema/2/CIM_ResourceAllocationSettingData";
+
+    /**
+     * A precomputed element name, either in the vCloud namespaces or in one specific namespace.
+     */
+    static public final class Name {
+        private final String namespace;
+        private final String localName;
+
+        public Name(@Nonnull String localName) {
+            this(null, localName);
+        }
+
+        /**
+         * @param namespace the namespace of the element or <code>null</code> for any of the vCloud API namespaces
+         * @param localName the local name of the element
+         */
+        public Name(@Nullable String namespace, @Nonnull String localName) {
+            this.namespace = namespace;
+            this.localName = localName;
+        }
+
+        public @Nonnull String getLocalName() {
+            return localName;
+        }
+
+        public boolean matches(@Nullable Node node) {
+            if( node == null || node.getNodeType() != Node.ELEMENT_NODE || !localName.equals(node.getLocalName()) ) {
+                return false;
+            }
+            String ns = node.getNamespaceURI();
+
+            if( namespace != null ) {
+                return namespace.equals(ns);
+            }
+            return (ns == null || ns.startsWith(VCLOUD_NAMESPACE_PREFIX));
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return localName;
+        }
+    }
+
+    static public final Name ADMIN_PASSWORD                   = new Name("AdminPassword");
+    static public final Name CATALOG                          = new Name("Catalog");
+    static public final Name CATALOG_ITEM                     = new Name("CatalogItem");
+    static public final Name CATALOG_ITEMS                    = new Name("CatalogItems");
+    static public final Name CHILDREN                         = new Name("Children");
+    static public final Name COMPUTER_NAME                    = new Name("ComputerName");
+    static public final Name CONFIGURATION                    = new Name("Configuration");
+    static public final Name DATE_CREATED                     = new Name("DateCreated");
+    static public final Name DESCRIPTION                      = new Name("Description");
+    static public final Name DISK                             = new Name("Disk");
+    static public final Name DNS1                             = new Name("Dns1");
+    static public final Name DNS2                             = new Name("Dns2");
+    static public final Name DNS_SUFFIX                       = new Name("DnsSuffix");
+    static public final Name END_ADDRESS                      = new Name("EndAddress");
+    static public final Name ERROR                            = new Name("Error");
+    static public final Name FEATURES                         = new Name("Features");
+    static public final Name FENCE_MODE                       = new Name("FenceMode");
+    static public final Name GATEWAY                          = new Name("Gateway");
+    static public final Name GUEST_CUSTOMIZATION_SECTION      = new Name("GuestCustomizationSection");
+    static public final Name IP_ADDRESS                       = new Name("IpAddress");
+    static public final Name IP_ADDRESS_ALLOCATION_MODE       = new Name("IpAddressAllocationMode");
+    static public final Name IP_RANGE                         = new Name("IpRange");
+    static public final Name IP_RANGES                        = new Name("IpRanges");
+    static public final Name IP_SCOPE                         = new Name("IpScope");
+    static public final Name IP_SCOPES                        = new Name("IpScopes");
+    static public final Name IS_CONNECTED                     = new Name("IsConnected");
+    static public final Name IS_ENABLED                       = new Name("IsEnabled");
+    static public final Name IS_PUBLISHED                     = new Name("IsPublished");
+    static public final Name IS_SHARED                        = new Name("IsShared");
+    static public final Name KEY                              = new Name("Key");
+    static public final Name LEASE_SETTINGS_SECTION           = new Name("LeaseSettingsSection");
+    static public final Name LINK                             = new Name("Link");
+    static public final Name METADATA_ENTRY                   = new Name("MetadataEntry");
+    static public final Name NETMASK                          = new Name("Netmask");
+    static public final Name NETWORK_CONFIG                   = new Name("NetworkConfig");
+    static public final Name NETWORK_CONFIG_SECTION           = new Name("NetworkConfigSection");
+    static public final Name NETWORK_CONNECTION               = new Name("NetworkConnection");
+    static public final Name NETWORK_CONNECTION_INDEX         = new Name("NetworkConnectionIndex");
+    static public final Name NETWORK_CONNECTION_SECTION       = new Name("NetworkConnectionSection");
+    static public final Name NETWORK_QUOTA                    = new Name("NetworkQuota");
+    static public final Name OWNER                            = new Name("Owner");
+    static public final Name PARENT_NETWORK                   = new Name("ParentNetwork");
+    static public final Name PRIMARY_NETWORK_CONNECTION_INDEX = new Name("PrimaryNetworkConnectionIndex");
+    static public final Name START_ADDRESS                    = new Name("StartAddress");
+    static public final Name STORAGE_LEASE_EXPIRATION         = new Name("StorageLeaseExpiration");
+    static public final Name TASK                             = new Name("Task");
+    static public final Name TYPED_VALUE                      = new Name("TypedValue");
+    static public final Name VALUE                            = new Name("Value");
+    static public final Name VAPP                             = new Name("VApp");
+    static public final Name VAPP_TEMPLATE                    = new Name("VAppTemplate");
+    static public final Name VDC                              = new Name("Vdc");
+    static public final Name VM                               = new Name("Vm");
+    static public final Name VM_QUOTA                         = new Name("VmQuota");
+    static public final Name VM_REFERENCE                     = new Name("VmReference");
+
+    static public final Name OVF_DESCRIPTION                  = new Name(OVF_NAMESPACE, "Description");
+    static public final Name OVF_ITEM                         = new Name(OVF_NAMESPACE, "Item");
+    static public final Name OVF_OPERATING_SYSTEM_SECTION     = new Name(OVF_NAMESPACE, "OperatingSystemSection");
+    static public final Name OVF_PRODUCT                      = new Name(OVF_NAMESPACE, "Product");
+    static public final Name OVF_PRODUCT_SECTION              = new Name(OVF_NAMESPACE, "ProductSection");
+    static public final Name OVF_VIRTUAL_HARDWARE_SECTION     = new Name(OVF_NAMESPACE, "VirtualHardwareSection");
+    static public final Name RASD_RESOURCE_TYPE               = new Name(RASD_NAMESPACE, "ResourceType");
+    static public final Name RASD_VIRTUAL_QUANTITY            = new Name(RASD_NAMESPACE, "VirtualQuantity");
+
+    static private final ThreadLocal<DocumentBuilder> builders = new ThreadLocal<DocumentBuilder>();
+
+    /**
+     * Parses a response into a namespace aware DOM. Parsers are reused per thread.
+     * @param xml the response body
+     * @return the parsed document
+     * @throws CloudException the response is not well-formed XML
+     * @throws InternalException no XML parser could be configured
+     */
+    static public @Nonnull Document parse(@Nonnull String xml) throws CloudException, InternalException {
+        try {
+            DocumentBuilder builder = builders.get();
+
+            if( builder == null ) {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+
+                factory.setNamespaceAware(true);
+                builder = factory.newDocumentBuilder();
+                builders.set(builder);
+            }
+            else {
+                builder.reset();
+            }
+            return builder.parse(new InputSource(new StringReader(xml)));
+        }
+        catch( ParserConfigurationException e ) {
+            throw new InternalException(e);
+        }
+        catch( SAXException e ) {
+            throw new CloudException(e);
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    static public @Nullable Element child(@Nonnull Node parent, @Nonnull Name name) {
+        for( Node n = parent.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if( name.matches(n) ) {
+                return (Element)n;
+            }
+        }
+        return null;
+    }
+
+    static public @Nonnull List<Element> children(@Nonnull Node parent, @Nonnull Name name) {
+        ArrayList<Element> list = new ArrayList<Element>();
+
+        for( Node n = parent.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if( name.matches(n) ) {
+                list.add((Element)n);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Finds the first element with the specified name in document order, searching the specified node itself first.
+     */
+    static public @Nullable Element first(@Nonnull Node node, @Nonnull Name name) {
+        if( name.matches(node) ) {
+            return (Element)node;
+        }
+        for( Node n = node.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if( n.getNodeType() == Node.ELEMENT_NODE ) {
+                Element e = first(n, name);
+
+                if( e != null ) {
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the trimmed value of the attribute or <code>null</code> if it is absent or empty
+     */
+    static public @Nullable String attribute(@Nonnull Element element, @Nonnull String name) {
+        String value = element.getAttribute(name);
+
+        if( value == null ) {
+            return null;
+        }
+        value = value.trim();
+        return (value.length() < 1 ? null : value);
+    }
+
+    /**
+     * @return the trimmed text of the named child or <code>null</code> if there is no such child or it is empty
+     */
+    static public @Nullable String text(@Nonnull Node parent, @Nonnull Name name) {
+        Element e = child(parent, name);
+
+        return (e == null ? null : text(e));
+    }
+
+    /**
+     * @return the trimmed text of the element or <code>null</code> if it is empty
+     */
+    static public @Nullable String text(@Nonnull Element element) {
+        String value = element.getTextContent();
+
+        if( value == null ) {
+            return null;
+        }
+        value = value.trim();
+        return (value.length() < 1 ? null : value);
+    }
+
+    /**
+     * A <code>Link</code> offered by an entity.
+     */
+    static public final class Link {
+        private final String rel;
+        private final String type;
+        private final String href;
+
+        public Link(@Nonnull String rel, @Nullable String type, @Nonnull String href) {
+            this.rel = rel;
+            this.type = type;
+            this.href = href;
+        }
+
+        public @Nonnull String getRel() {
+            return rel;
+        }
+
+        public @Nullable String getType() {
+            return type;
+        }
+
+        public @Nonnull String getHref() {
+            return href;
+        }
+    }
+
+    /**
+     * The attributes, description and links common to every vCloud entity or reference.
+     */
+    static public class Entity {
+        private final String     id;
+        private final String     href;
+        private final String     name;
+        private final String     type;
+        private final String     status;
+        private final String     description;
+        private final List<Link> links;
+
+        protected Entity(@Nonnull Entity entity) {
+            this(entity.id, entity.href, entity.name, entity.type, entity.status, entity.description, entity.links);
+        }
+
+        public Entity(@Nullable String id, @Nullable String href, @Nullable String name, @Nullable String type, @Nullable String status, @Nullable String description, @Nonnull List<Link> links) {
+            this.id = id;
+            this.href = href;
+            this.name = name;
+            this.type = type;
+            this.status = status;
+            this.description = description;
+            this.links = Collections.unmodifiableList(links);
+        }
+
+        /**
+         * @return the provider ID derived from the entity's href
+         */
+        public @Nullable String getId() {
+            return id;
+        }
+
+        public @Nullable String getHref() {
+            return href;
+        }
+
+        public @Nullable String getName() {
+            return name;
+        }
+
+        public @Nullable String getType() {
+            return type;
+        }
+
+        /**
+         * @return the numeric status code of the entity, if it reports one
+         */
+        public @Nullable String getStatus() {
+            return status;
+        }
+
+        public @Nullable String getDescription() {
+            return description;
+        }
+
+        public @Nonnull List<Link> getLinks() {
+            return links;
+        }
+
+        /**
+         * @param rel the relationship of the link
+         * @param type the media type of the link or <code>null</code> for any type
+         * @return the href of the first matching link or <code>null</code> if the entity offers none
+         */
+        public @Nullable String getLink(@Nonnull String rel, @Nullable String type) {
+            for( Link link : links ) {
+                if( link.getRel().equalsIgnoreCase(rel) && (type == null || type.equals(link.getType())) ) {
+                    return link.getHref();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A <code>Task</code>, including the error that ended it if it failed.
+     */
+    static public final class Task extends Entity {
+        private final String operation;
+        private final String ownerHref;
+        private final String errorMessage;
+        private final String errorMajorCode;
+        private final String errorMinorCode;
+
+        public Task(@Nonnull Entity entity, @Nullable String operation, @Nullable String ownerHref, @Nullable String errorMessage, @Nullable String errorMajorCode, @Nullable String errorMinorCode) {
+            super(entity);
+            this.operation = operation;
+            this.ownerHref = ownerHref;
+            this.errorMessage = errorMessage;
+            this.errorMajorCode = errorMajorCode;
+            this.errorMinorCode = errorMinorCode;
+        }
+
+        public @Nullable String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return the href of the entity the task acts on
+         */
+        public @Nullable String getOwnerHref() {
+            return ownerHref;
+        }
+
+        public boolean hasError() {
+            return (errorMessage != null || errorMajorCode != null || errorMinorCode != null);
+        }
+
+        /**
+         * @return the task's error as an exception, in the form produced by {@link vCloudMethod#parseError(Node)}
+         */
+        public @Nonnull CloudException toException() {
+            String major = (errorMajorCode == null ? "" : errorMajorCode);
+            String minor = (errorMinorCode == null ? "" : errorMinorCode);
+
+            return new CloudException(CloudErrorType.GENERAL, 200, major + ":" + minor, errorMessage == null ? "Unknown" : errorMessage);
+        }
+    }
+
+    /**
+     * A <code>VApp</code> or a <code>Vm</code>, along with the VMs it contains.
+     */
+    static public final class VApp extends Entity {
+        private final List<Entity> vms;
+
+        public VApp(@Nonnull Entity entity, @Nonnull List<Entity> vms) {
+            super(entity);
+            this.vms = Collections.unmodifiableList(vms);
+        }
+
+        /**
+         * @return the VMs listed under the vApp's <code>Children</code>, empty for a VM
+         */
+        public @Nonnull List<Entity> getVms() {
+            return vms;
+        }
+    }
+
+    /**
+     * An independent <code>Disk</code>.
+     */
+    static public final class Disk extends Entity {
+        private final long   size;
+        private final String busType;
+        private final String busSubType;
+
+        public Disk(@Nonnull Entity entity, long size, @Nullable String busType, @Nullable String busSubType) {
+            super(entity);
+            this.size = size;
+            this.busType = busType;
+            this.busSubType = busSubType;
+        }
+
+        /**
+         * @return the size of the disk as reported by the cloud or -1 if it was not reported
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public @Nullable String getBusType() {
+            return busType;
+        }
+
+        public @Nullable String getBusSubType() {
+            return busSubType;
+        }
+    }
+
+    /**
+     * An <code>OrgVdcNetwork</code>, <code>OrgNetwork</code> or <code>Network</code> and its first IP scope.
+     */
+    static public final class Network extends Entity {
+        private final String  fenceMode;
+        private final boolean shared;
+        private final boolean enabled;
+        private final String  gateway;
+        private final String  netmask;
+        private final String  dns1;
+        private final String  dns2;
+        private final String  dnsSuffix;
+        private final String  ipStart;
+        private final String  ipEnd;
+
+        public Network(@Nonnull Entity entity, @Nullable String fenceMode, boolean shared, boolean enabled, @Nullable String gateway, @Nullable String netmask, @Nullable String dns1, @Nullable String dns2, @Nullable String dnsSuffix, @Nullable String ipStart, @Nullable String ipEnd) {
+            super(entity);
+            this.fenceMode = fenceMode;
+            this.shared = shared;
+            this.enabled = enabled;
+            this.gateway = gateway;
+            this.netmask = netmask;
+            this.dns1 = dns1;
+            this.dns2 = dns2;
+            this.dnsSuffix = dnsSuffix;
+            this.ipStart = ipStart;
+            this.ipEnd = ipEnd;
+        }
+
+        public @Nullable String getFenceMode() {
+            return fenceMode;
+        }
+
+        public boolean isShared() {
+            return shared;
+        }
+
+        /**
+         * @return <code>false</code> only if the IP scope is explicitly disabled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public @Nullable String getGateway() {
+            return gateway;
+        }
+
+        public @Nullable String getNetmask() {
+            return netmask;
+        }
+
+        public @Nullable String getDns1() {
+            return dns1;
+        }
+
+        public @Nullable String getDns2() {
+            return dns2;
+        }
+
+        public @Nullable String getDnsSuffix() {
+            return dnsSuffix;
+        }
+
+        /**
+         * @return the first address of the first range in the IP scope
+         */
+        public @Nullable String getIpStart() {
+            return ipStart;
+        }
+
+        /**
+         * @return the last address of the first range in the IP scope
+         */
+        public @Nullable String getIpEnd() {
+            return ipEnd;
+        }
+    }
+
+    /**
+     * A <code>Catalog</code> and references to its items.
+     */
+    static public final class Catalog extends Entity {
+        private final boolean      published;
+        private final List<Entity> items;
+
+        public Catalog(@Nonnull Entity entity, boolean published, @Nonnull List<Entity> items) {
+            super(entity);
+            this.published = published;
+            this.items = Collections.unmodifiableList(items);
+        }
+
+        public boolean isPublished() {
+            return published;
+        }
+
+        public @Nonnull List<Entity> getItems() {
+            return items;
+        }
+    }
+
+    private final vCloud provider;
+
+    public vCloudBinder(@Nonnull vCloud provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Binds the attributes, description and links of an entity or reference element.
+     */
+    public @Nonnull Entity toEntity(@Nonnull Element element) {
+        ArrayList<Link> links = new ArrayList<Link>();
+
+        for( Node n = element.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if( LINK.matches(n) ) {
+                Element link = (Element)n;
+                String rel = attribute(link, "rel");
+                String href = attribute(link, "href");
+
+                if( rel != null && href != null ) {
+                    links.add(new Link(rel, attribute(link, "type"), href));
+                }
+            }
+        }
+        String href = attribute(element, "href");
+
+        return new Entity(href == null ? null : provider.toID(href), href, attribute(element, "name"), attribute(element, "type"), attribute(element, "status"), text(element, DESCRIPTION), links);
+    }
+
+    /**
+     * Binds the first task in a document, which is either the document itself or the first task it lists.
+     * @param root the root element of the document
+     * @return the task or <code>null</code> if the document contains none
+     */
+    public @Nullable Task toTask(@Nonnull Element root) {
+        Element task = first(root, TASK);
+
+        if( task == null ) {
+            return null;
+        }
+        Element owner = child(task, OWNER);
+        Element error = child(task, ERROR);
+        String message = null, major = null, minor = null;
+
+        if( error != null ) {
+            message = attribute(error, "message");
+            major = attribute(error, "majorErrorCode");
+            minor = attribute(error, "minorErrorCode");
+        }
+        return new Task(toEntity(task), attribute(task, "operation"), owner == null ? null : attribute(owner, "href"), message, major, minor);
+    }
+
+    /**
+     * Binds a <code>VApp</code> or <code>Vm</code> document.
+     */
+    public @Nonnull VApp toVApp(@Nonnull Element root) {
+        ArrayList<Entity> vms = new ArrayList<Entity>();
+        Element children = child(root, CHILDREN);
+
+        if( children != null ) {
+            for( Node n = children.getFirstChild(); n != null; n = n.getNextSibling() ) {
+                if( VM.matches(n) ) {
+                    vms.add(toEntity((Element)n));
+                }
+            }
+        }
+        return new VApp(toEntity(root), vms);
+    }
+
+    public @Nonnull Disk toDisk(@Nonnull Element root) {
+        String size = attribute(root, "size");
+        long bytes = -1L;
+
+        if( size != null ) {
+            try {
+                bytes = Long.parseLong(size);
+            }
+            catch( NumberFormatException ignore ) {
+                // leave it unknown
+            }
+        }
+        return new Disk(toEntity(root), bytes, attribute(root, "busType"), attribute(root, "busSubType"));
+    }
+
+    /**
+     * Binds a network document, reading the addressing from the configuration itself on API versions without IP
+     * scopes and the fence mode from the features on API versions that put it there.
+     */
+    public @Nonnull Network toNetwork(@Nonnull Element root) {
+        Element configuration = child(root, CONFIGURATION);
+        String fenceMode = null, gateway = null, netmask = null, dns1 = null, dns2 = null, suffix = null, ipStart = null, ipEnd = null;
+        boolean enabled = true;
+
+        if( configuration != null ) {
+            Element scope = child(configuration, IP_SCOPE);
+
+            if( scope == null ) {
+                Element scopes = child(configuration, IP_SCOPES);
+
+                if( scopes != null ) {
+                    scope = child(scopes, IP_SCOPE);
+                }
+            }
+            if( scope != null ) {
+                Element ranges = child(scope, IP_RANGES);
+                Element range = (ranges == null ? null : child(ranges, IP_RANGE));
+
+                gateway = text(scope, GATEWAY);
+                netmask = text(scope, NETMASK);
+                dns1 = text(scope, DNS1);
+                dns2 = text(scope, DNS2);
+                suffix = text(scope, DNS_SUFFIX);
+                enabled = !"false".equalsIgnoreCase(text(scope, IS_ENABLED));
+                if( range != null ) {
+                    ipStart = text(range, START_ADDRESS);
+                    ipEnd = text(range, END_ADDRESS);
+                }
+            }
+            else {
+                gateway = text(configuration, GATEWAY);
+                netmask = text(configuration, NETMASK);
+            }
+            fenceMode = text(configuration, FENCE_MODE);
+        }
+        if( fenceMode == null ) {
+            Element features = child(root, FEATURES);
+
+            if( features != null ) {
+                fenceMode = text(features, FENCE_MODE);
+            }
+        }
+        return new Network(toEntity(root), fenceMode, "true".equalsIgnoreCase(text(root, IS_SHARED)), enabled, gateway, netmask, dns1, dns2, suffix, ipStart, ipEnd);
+    }
+
+    public @Nonnull Catalog toCatalog(@Nonnull Element root) {
+        ArrayList<Entity> items = new ArrayList<Entity>();
+        Element list = child(root, CATALOG_ITEMS);
+
+        if( list != null ) {
+            for( Node n = list.getFirstChild(); n != null; n = n.getNextSibling() ) {
+                if( CATALOG_ITEM.matches(n) ) {
+                    items.add(toEntity((Element)n));
+                }
+            }
+        }
+        return new Catalog(toEntity(root), "true".equalsIgnoreCase(text(root, IS_PUBLISHED)), items);
+    }
+
+    /**
+     * Binds the entries of a <code>Metadata</code> document, reading typed values on API versions that use them.
+     * @return the keys and values in document order
+     */
+    public @Nonnull Map<String,String> toMetadata(@Nonnull Element root) {
+        LinkedHashMap<String,String> metadata = new LinkedHashMap<String, String>();
+
+        for( Node n = root.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if( METADATA_ENTRY.matches(n) ) {
+                String key = text(n, KEY);
+                Element typed = child(n, TYPED_VALUE);
+                String value = text(typed == null ? n : typed, VALUE);
+
+                if( key != null && value != null ) {
+                    metadata.put(key, value);
+                }
+            }
+        }
+        return metadata;
+    }
+}
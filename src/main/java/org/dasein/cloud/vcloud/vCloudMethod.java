@@ -33,6 +33,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.params.ConnRoutePNames;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.ssl.SSLSocketFactory;
@@ -51,17 +52,20 @@ import org.dasein.cloud.CloudException;
 import org.dasein.cloud.ContextRequirements;
 import org.dasein.cloud.InternalException;
 import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.Tag;
 import org.dasein.cloud.Taggable;
 import org.dasein.cloud.dc.DataCenter;
 import org.dasein.cloud.dc.Region;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.Cache;
 import org.dasein.cloud.util.CacheLevel;
+import org.dasein.cloud.util.TagUtils;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.time.Day;
 import org.dasein.util.uom.time.TimePeriod;
 import org.dasein.util.uom.time.Minute;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
@@ -72,8 +76,16 @@ import javax.servlet.http.HttpServletResponse;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -87,10 +99,13 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * [Class Documentation]
@@ -157,6 +172,79 @@ public class vCloudMethod {
     static private Logger logger = vCloud.getLogger(vCloudMethod.class);
     static private Logger wire   = vCloud.getWireLogger(vCloudMethod.class);
 
+    static private final int ACTION_CACHE_SIZE = 10000;
+
+    /**
+     * Action links (by relationship) for recently parsed vApps and VMs, keyed by the user they were shown to and the
+     * entity ID and evicted least recently used first.
+     */
+    static private final LinkedHashMap<String,Map<String,String>> actionLinks = new LinkedHashMap<String, Map<String,String>>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Map<String,String>> eldest) {
+            return (size() > ACTION_CACHE_SIZE);
+        }
+    };
+
+    /**
+     * A GET in progress that other threads asking for the same URL on behalf of the same user can wait on instead of
+     * sending their own request.
+     */
+    static private class Flight {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final String         tenant;
+        private String               xml;
+        private Throwable            error;
+
+        private Flight(@Nonnull String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    static private final ConcurrentHashMap<String,Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    /**
+     * Stops later reads from joining any GET of the tenant that is already in flight, since it may have been answered
+     * from before a change that has now been made. Readers already waiting on such a GET overlapped the change and
+     * still get its response.
+     * @param provider the provider that made the change
+     */
+    static private void detachFlights(@Nonnull vCloud provider) {
+        String tenant = provider.getTenantKey();
+        Iterator<Flight> it = flights.values().iterator();
+
+        while( it.hasNext() ) {
+            if( it.next().tenant.equals(tenant) ) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * An org name looked up by {@link #getOrgName(String)} and when it should be looked up again.
+     */
+    static private class OrgName {
+        private final String name;
+        private final long   expires;
+
+        private OrgName(@Nonnull String name, long expires) {
+            this.name = name;
+            this.expires = expires;
+        }
+    }
+
+    static private final int MAX_ORG_NAMES = 1000;
+
+    /**
+     * Org names keyed by the org's URL, kept for as long as the catalog listings that show them as owners. The least
+     * recently used names are dropped once {@link #MAX_ORG_NAMES} are held.
+     */
+    static private final LinkedHashMap<String,OrgName> orgNames = new LinkedHashMap<String, OrgName>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,OrgName> eldest) {
+            return (size() > MAX_ORG_NAMES);
+        }
+    };
+
     static public class Org {
         public String  token;
         public String  endpoint;
@@ -203,7 +291,22 @@ public class vCloudMethod {
         public int networkQuota = -2;
     }
 
-    private vCloud provider;
+    /**
+     * The result of waiting on a vCloud task.
+     */
+    static public enum TaskOutcome {
+        /** The task completed successfully (or no task was pending). */
+        SUCCESS,
+        /** The task was cancelled or aborted in the cloud. */
+        CANCELLED,
+        /** The deadline passed before the task completed. */
+        TIMED_OUT,
+        /** The waiting thread was interrupted before the task completed. */
+        INTERRUPTED
+    }
+
+    private vCloud       provider;
+    private vCloudBinder binder;
 
     public vCloudMethod(@Nonnull vCloud provider) {
         this.provider = provider;
@@ -270,7 +373,7 @@ public class vCloudMethod {
 
             try {
                 APITrace.trace(provider, "GET org");
-                response = client.execute(get);
+                response = execute(client, get);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -484,7 +587,7 @@ public class vCloudMethod {
 
                 try {
                     APITrace.trace(provider, "POST sessions");
-                    response = client.execute(method);
+                    response = execute(client, method);
                     if( wire.isDebugEnabled() ) {
                         wire.debug(response.getStatusLine().toString());
                         for( Header header : response.getAllHeaders() ) {
@@ -715,6 +818,7 @@ public class vCloudMethod {
             String endpoint = toURL(resource, id);
             HttpClient client = null;
 
+            forgetActions(id);
             if( wire.isDebugEnabled() ) {
                 wire.debug("");
                 wire.debug(">>> [DELETE (" + (new Date()) + ")] -> " + endpoint + " >--------------------------------------------------------------------------------------");
@@ -737,7 +841,7 @@ public class vCloudMethod {
 
                 try {
                     APITrace.trace(provider, "DELETE " + resource);
-                    response = client.execute(delete);
+                    response = execute(client, delete);
                     if( wire.isDebugEnabled() ) {
                         wire.debug(response.getStatusLine().toString());
                         for( Header header : response.getAllHeaders() ) {
@@ -822,6 +926,10 @@ public class vCloudMethod {
                 if(client != null){
                     client.getConnectionManager().shutdown();
                 }
+                // whatever was cached for the entity may no longer be accurate, whether or not the request succeeded
+                EntityCache.invalidate(provider, endpoint);
+                VdcSnapshot.invalidate(provider);
+                detachFlights(provider);
                 if( wire.isDebugEnabled() ) {
                     wire.debug("<<< [DELETE (" + (new Date()) + ")] -> " + endpoint + " <--------------------------------------------------------------------------------------");
                     wire.debug("");
@@ -836,14 +944,99 @@ public class vCloudMethod {
         }
     }
 
+    /**
+     * Reads a resource, answering from the {@link EntityCache} when the resource is a cached entity type and a live
+     * copy of the entity is cached. Concurrent reads of the same URL for the same user are coalesced: the first
+     * thread sends the request and the others share its response. A read started after a post, put or delete against
+     * the tenant has returned never joins a request sent before it.
+     * @param resource the resource type
+     * @param id the ID of the resource, optionally followed by a sub-resource path
+     * @return the representation of the resource, or <code>null</code> if it does not exist or is not visible
+     * @throws CloudException an error occurred in the cloud provider reading the resource
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
     public @Nullable String get(@Nonnull String resource, @Nullable String id) throws CloudException, InternalException {
+        EntityCache cache = (id == null ? null : EntityCache.getInstance(provider, resource));
+
+        String url = toURL(resource, id);
+
+        if( cache != null ) {
+            if( cache.isMissing(url) ) {
+                return null;
+            }
+            String xml = cache.get(url);
+
+            if( xml != null ) {
+                return xml;
+            }
+        }
+        String key = provider.getUserKey() + " " + url;
+        Flight flight = new Flight(provider.getTenantKey());
+        Flight leader = flights.putIfAbsent(key, flight);
+
+        if( leader != null ) {
+            return follow(leader, resource, id);
+        }
+        try {
+            flight.xml = fetch(resource, id);
+            return flight.xml;
+        }
+        catch( Throwable t ) {
+            // anything short of a response, errors included, must reach the followers
+            flight.error = t;
+            throw t;
+        }
+        finally {
+            flights.remove(key, flight);
+            flight.done.countDown();
+        }
+    }
+
+    private @Nullable String follow(@Nonnull Flight leader, @Nonnull String resource, @Nullable String id) throws CloudException, InternalException {
+        try {
+            leader.done.await();
+        }
+        catch( InterruptedException e ) {
+            // don't leave the caller waiting on someone else's request; send our own
+            Thread.currentThread().interrupt();
+            return fetch(resource, id);
+        }
+        if( leader.error instanceof CloudException ) {
+            throw (CloudException)leader.error;
+        }
+        else if( leader.error instanceof InternalException ) {
+            throw (InternalException)leader.error;
+        }
+        else if( leader.error instanceof RuntimeException ) {
+            throw (RuntimeException)leader.error;
+        }
+        else if( leader.error instanceof Error ) {
+            throw (Error)leader.error;
+        }
+        return leader.xml;
+    }
+
+    /**
+     * Reads a resource from the cloud, bypassing the {@link EntityCache} but refreshing it with the response. Use
+     * this when polling for a change of state.
+     * @param resource the resource type
+     * @param id the ID of the resource, optionally followed by a sub-resource path
+     * @return the representation of the resource, or <code>null</code> if it does not exist or is not visible
+     * @throws CloudException an error occurred in the cloud provider reading the resource
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
+    public @Nullable String fetch(@Nonnull String resource, @Nullable String id) throws CloudException, InternalException {
         if( logger.isTraceEnabled() ) {
-            logger.trace("ENTER: " + vCloudMethod.class.getName() + ".get(" + resource + "," + id + ")");
+            logger.trace("ENTER: " + vCloudMethod.class.getName() + ".fetch(" + resource + "," + id + ")");
         }
         try {
             Org org = authenticate(false);
             String endpoint = toURL(resource, id);
             HttpClient client = null;
+            ResponseCache responses = ResponseCache.getInstance(provider);
+            EntityCache cache = (id == null ? null : EntityCache.getInstance(provider, resource));
+            // taken before the request so a change made while it is in flight keeps the response out of the cache
+            long generation = (cache == null ? 0L : cache.getGeneration(endpoint));
 
             if( wire.isDebugEnabled() ) {
                 wire.debug("");
@@ -856,6 +1049,7 @@ public class vCloudMethod {
                 get.addHeader("Accept", "application/*+xml;version=" + org.version.version + ",application/*+xml;version=" + org.version.version);
 
                 addAuth(get, org.token);
+                ResponseCache.Response cached = (responses == null ? null : responses.addValidators(get, endpoint));
 
                 if( wire.isDebugEnabled() ) {
                     wire.debug(get.getRequestLine().toString());
@@ -868,7 +1062,7 @@ public class vCloudMethod {
 
                 try {
                     APITrace.trace(provider, "GET " + resource);
-                    response = client.execute(get);
+                    response = execute(client, get);
                     if( wire.isDebugEnabled() ) {
                         wire.debug(response.getStatusLine().toString());
                         for( Header header : response.getAllHeaders() ) {
@@ -885,13 +1079,33 @@ public class vCloudMethod {
 
                 logger.debug("HTTP STATUS: " + code);
 
-                if( code == HttpServletResponse.SC_NOT_FOUND || code == HttpServletResponse.SC_FORBIDDEN ) {
+                if( code == HttpServletResponse.SC_NOT_MODIFIED && cached != null ) {
+                    responses.hit();
+                    if( cache != null ) {
+                        cache.put(endpoint, cached.getBody(), generation);
+                    }
+                    return cached.getBody();
+                }
+                else if( code == HttpServletResponse.SC_NOT_FOUND || code == HttpServletResponse.SC_FORBIDDEN ) {
+                    if( responses != null ) {
+                        responses.remove(endpoint);
+                    }
+                    if( id != null ) {
+                        // remember the miss only if the entity is gone and nothing changed it while the request was
+                        // in flight; a 403 depends on the user's rights and is not remembered
+                        boolean unchanged = (code == HttpServletResponse.SC_NOT_FOUND && cache != null && cache.getGeneration(endpoint) == generation);
+
+                        EntityCache.invalidate(provider, endpoint);
+                        if( unchanged ) {
+                            cache.putMissing(endpoint, cache.getGeneration(endpoint));
+                        }
+                    }
                     return null;
                 }
                 else if( code == HttpServletResponse.SC_UNAUTHORIZED ) {
                     if( matches(getAPIVersion(), "1.0", null) ) {
                         authenticate(true);
-                        return get(resource, id);
+                        return fetch(resource, id);
                     }
                     return null;
                 }
@@ -916,53 +1130,204 @@ public class vCloudMethod {
                         logger.error("Failed to read response error due to a cloud I/O error: " + e.getMessage());
                         throw new CloudException(e);
                     }
+                    if( xml != null ) {
+                        if( responses != null ) {
+                            responses.store(endpoint, response, xml);
+                        }
+                        if( cache != null ) {
+                            cache.put(endpoint, xml, generation);
+                        }
+                    }
                     return xml;
                 }
                 else {
                     logger.error("Expected OK for GET request, got " + code);
-                    String xml = null;
+                    throw toGetException(code, response);
+                }
+            }
+            finally {
+                if(client != null){
+                    client.getConnectionManager().shutdown();
+                }
 
-                    try {
-                        HttpEntity entity = response.getEntity();
+                if( wire.isDebugEnabled() ) {
+                    wire.debug("<<< [GET (" + (new Date()) + ")] -> " + endpoint + " <--------------------------------------------------------------------------------------");
+                    wire.debug("");
+                }
+            }
+        }
+        finally {
+            if( logger.isTraceEnabled() ) {
+                logger.trace("EXIT: " + vCloudMethod.class.getName() + ".fetch()");
+            }
 
-                        if( entity != null ) {
-                            xml = EntityUtils.toString(entity);
-                            if( wire.isDebugEnabled() ) {
-                                wire.debug(xml);
-                                wire.debug("");
-                            }
-                        }
+        }
+    }
+
+    /**
+     * Sends a request, first waiting for a permit from the tenant's {@link RateLimiter} if the calling thread is running
+     * a bulk operation.
+     */
+    private @Nonnull HttpResponse execute(@Nonnull HttpClient client, @Nonnull HttpUriRequest request) throws IOException {
+        try {
+            RateLimiter.pace();
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send " + request.getRequestLine());
+        }
+        return client.execute(request);
+    }
+
+    /**
+     * Receives the elements selected from a streamed response.
+     */
+    static public interface ElementHandler {
+        /**
+         * Called for each selected element as soon as its start tag has been read.
+         * @param localName the local name of the element
+         * @param attributes the element's attributes keyed by local name
+         * @throws CloudException an error occurred in the cloud provider acting on the element
+         * @throws InternalException an error occurred within Dasein Cloud acting on the element
+         */
+        public void element(@Nonnull String localName, @Nonnull Map<String,String> attributes) throws CloudException, InternalException;
+    }
+
+    static private final XMLInputFactory streamFactory;
+
+    static {
+        streamFactory = XMLInputFactory.newInstance();
+        streamFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    /**
+     * Fetches a resource and streams the attributes of the selected elements to a handler while the response is
+     * still downloading, without building a document. This suits large listings such as VDCs with thousands of
+     * resource entities or catalogs with thousands of items, where only the references are needed and the handler
+     * can start fetching each child as soon as its reference arrives.
+     * @param resource the resource type
+     * @param id the ID of the resource
+     * @param localNames the local names of the elements to report, each either plain (<code>ResourceEntity</code>) or
+     * restricted to children of a given parent (<code>AvailableNetworks/Network</code>)
+     * @param handler the handler receiving the selected elements in document order
+     * @return false if the resource does not exist or is not visible, true otherwise
+     * @throws CloudException an error occurred in the cloud provider or in the handler
+     * @throws InternalException an error occurred within Dasein Cloud or in the handler
+     */
+    public boolean stream(@Nonnull String resource, @Nullable String id, @Nonnull Collection<String> localNames, @Nonnull ElementHandler handler) throws CloudException, InternalException {
+        if( logger.isTraceEnabled() ) {
+            logger.trace("ENTER: " + vCloudMethod.class.getName() + ".stream(" + resource + "," + id + ")");
+        }
+        try {
+            Org org = authenticate(false);
+            String endpoint = toURL(resource, id);
+            HttpClient client = null;
+
+            if( wire.isDebugEnabled() ) {
+                wire.debug("");
+                wire.debug(">>> [GET (" + (new Date()) + ")] -> " + endpoint + " >--------------------------------------------------------------------------------------");
+            }
+            try {
+                client = getClient(false);
+                HttpGet get = new HttpGet(endpoint);
+
+                get.addHeader("Accept", "application/*+xml;version=" + org.version.version + ",application/*+xml;version=" + org.version.version);
+                addAuth(get, org.token);
+
+                HttpResponse response;
+
+                try {
+                    APITrace.trace(provider, "GET " + resource);
+                    response = execute(client, get);
+                    if( wire.isDebugEnabled() ) {
+                        wire.debug(response.getStatusLine().toString());
+                        wire.debug("");
                     }
-                    catch( IOException e ) {
-                        logger.error("Failed to read response error due to a cloud I/O error: " + e.getMessage());
-                        throw new CloudException(e);
+                }
+                catch( IOException e ) {
+                    logger.error("I/O error from server communications: " + e.getMessage());
+                    throw new InternalException(e);
+                }
+                int code = response.getStatusLine().getStatusCode();
+
+                logger.debug("HTTP STATUS: " + code);
+
+                if( code == HttpServletResponse.SC_NOT_FOUND || code == HttpServletResponse.SC_FORBIDDEN ) {
+                    return false;
+                }
+                else if( code == HttpServletResponse.SC_UNAUTHORIZED ) {
+                    if( matches(getAPIVersion(), "1.0", null) ) {
+                        authenticate(true);
+                        return stream(resource, id, localNames, handler);
                     }
+                    return false;
+                }
+                else if( code == HttpServletResponse.SC_NO_CONTENT ) {
+                    return true;
+                }
+                else if( code != HttpServletResponse.SC_OK ) {
+                    logger.error("Expected OK for GET request, got " + code);
+                    throw toGetException(code, response);
+                }
+                HttpEntity entity = response.getEntity();
 
-                    vCloudException.Data data = null;
+                if( entity == null ) {
+                    return true;
+                }
+                InputStream input = null;
 
-                    if( xml != null && !xml.equals("") ) {
-                        Document doc = parseXML(xml);
-                        String docElementTagName = doc.getDocumentElement().getTagName();
-                        String nsString = "";
-                        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                        NodeList errors = doc.getElementsByTagName(nsString + "Error");
+                try {
+                    input = entity.getContent();
+                    XMLStreamReader reader = streamFactory.createXMLStreamReader(input);
 
-                        if( errors.getLength() > 0 ) {
-                            data = vCloudException.parseException(code, errors.item(0));
+                    try {
+                        ArrayList<String> path = new ArrayList<String>();
+
+                        while( reader.hasNext() ) {
+                            int event = reader.next();
+
+                            if( event == XMLStreamConstants.START_ELEMENT ) {
+                                String localName = reader.getLocalName();
+                                String parent = (path.isEmpty() ? "" : path.get(path.size()-1));
+
+                                path.add(localName);
+                                if( localNames.contains(localName) || localNames.contains(parent + "/" + localName) ) {
+                                    HashMap<String,String> attributes = new HashMap<String, String>();
+
+                                    for( int i=0; i<reader.getAttributeCount(); i++ ) {
+                                        attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i).trim());
+                                    }
+                                    handler.element(localName, attributes);
+                                }
+                            }
+                            else if( event == XMLStreamConstants.END_ELEMENT ) {
+                                path.remove(path.size()-1);
+                            }
                         }
                     }
-                    if( data == null ) {
-                        throw new vCloudException(CloudErrorType.GENERAL, code, response.getStatusLine().getReasonPhrase(), "No further information");
+                    finally {
+                        reader.close();
+                    }
+                }
+                catch( XMLStreamException e ) {
+                    throw new CloudException(e);
+                }
+                catch( IOException e ) {
+                    logger.error("Failed to read response due to a cloud I/O error: " + e.getMessage());
+                    throw new CloudException(e);
+                }
+                finally {
+                    if( input != null ) {
+                        try { input.close(); }
+                        catch( IOException ignore ) { }
                     }
-                    logger.error("[" +  code + " : " + data.title + "] " + data.description);
-                    throw new vCloudException(data);
                 }
+                return true;
             }
             finally {
                 if(client != null){
                     client.getConnectionManager().shutdown();
                 }
-
                 if( wire.isDebugEnabled() ) {
                     wire.debug("<<< [GET (" + (new Date()) + ")] -> " + endpoint + " <--------------------------------------------------------------------------------------");
                     wire.debug("");
@@ -971,10 +1336,52 @@ public class vCloudMethod {
         }
         finally {
             if( logger.isTraceEnabled() ) {
-                logger.trace("EXIT: " + vCloudMethod.class.getName() + ".get()");
+                logger.trace("EXIT: " + vCloudMethod.class.getName() + ".stream()");
+            }
+        }
+    }
+
+    /**
+     * Reads the error document from a failed GET.
+     * @return the exception describing the failure
+     */
+    private @Nonnull CloudException toGetException(int code, @Nonnull HttpResponse response) throws CloudException, InternalException {
+        String xml = null;
+
+        try {
+            HttpEntity entity = response.getEntity();
+
+            if( entity != null ) {
+                xml = EntityUtils.toString(entity);
+                if( wire.isDebugEnabled() ) {
+                    wire.debug(xml);
+                    wire.debug("");
+                }
             }
+        }
+        catch( IOException e ) {
+            logger.error("Failed to read response error due to a cloud I/O error: " + e.getMessage());
+            throw new CloudException(e);
+        }
+
+        vCloudException.Data data = null;
+
+        if( xml != null && !xml.equals("") ) {
+            Document doc = parseXML(xml);
+            String docElementTagName = doc.getDocumentElement().getTagName();
+            String nsString = "";
+            if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
+            NodeList errors = doc.getElementsByTagName(nsString + "Error");
 
+            if( errors.getLength() > 0 ) {
+                data = vCloudException.parseException(code, errors.item(0));
+            }
         }
+        if( data == null ) {
+            return new vCloudException(CloudErrorType.GENERAL, code, response.getStatusLine().getReasonPhrase(), "No further information");
+        }
+        logger.error("[" +  code + " : " + data.title + "] " + data.description);
+        return new vCloudException(data);
     }
 
     public @Nonnull String getAction(@Nonnull String endpoint) {
@@ -1192,6 +1599,16 @@ public class vCloudMethod {
     }
 
     public @Nonnull String getOrgName(@Nonnull String href) throws CloudException, InternalException {
+        synchronized( orgNames ) {
+            OrgName cached = orgNames.get(href);
+
+            if( cached != null ) {
+                if( cached.expires > System.currentTimeMillis() ) {
+                    return cached.name;
+                }
+                orgNames.remove(href);
+            }
+        }
         String id = provider.toID(href);
         String xml = get("org", id);
 
@@ -1218,7 +1635,12 @@ public class vCloudMethod {
         if( name == null ) {
             return id;
         }
-        return name.getNodeValue().trim();
+        String orgName = name.getNodeValue().trim();
+
+        synchronized( orgNames ) {
+            orgNames.put(href, new OrgName(orgName, System.currentTimeMillis() + CalendarWrapper.MINUTE * 30L));
+        }
+        return orgName;
     }
 
     public @Nonnull Region getRegion() throws CloudException, InternalException {
@@ -1274,7 +1696,7 @@ public class vCloudMethod {
 
             try {
                 APITrace.trace(provider, "GET versions");
-                response = client.execute(method);
+                response = execute(client, method);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -1460,59 +1882,39 @@ public class vCloudMethod {
         String xml = get("vdc", id);
 
         if( xml != null ) {
-            Document doc = parseXML(xml);
-            String docElementTagName = doc.getDocumentElement().getTagName();
-            String nsString = "";
-            if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-            NodeList vdcs = doc.getElementsByTagName(nsString + "Vdc");
+            Element vdcNode = vCloudBinder.first(bindXML(xml), vCloudBinder.VDC);
 
-            if( vdcs.getLength() < 1 ) {
+            if( vdcNode == null ) {
                 return;
             }
-            NodeList attributes = vdcs.item(0).getChildNodes();
-
-            for( int i=0; i<attributes.getLength(); i++ ) {
-                Node attribute = attributes.item(i);
-                if(attribute.getNodeName().contains(":"))nsString = attribute.getNodeName().substring(0, attribute.getNodeName().indexOf(":") + 1);
-                else nsString = "";
-
-                if( attribute.getNodeName().equalsIgnoreCase(nsString + "Link") && attribute.hasAttributes() ) {
-                    Node rel = attribute.getAttributes().getNamedItem("rel");
-
-                    if( rel.getNodeValue().trim().equalsIgnoreCase("add") ) {
-                        Node type = attribute.getAttributes().getNamedItem("type");
-                        Node href = attribute.getAttributes().getNamedItem("href");
+            for( vCloudBinder.Link link : getBinder().toEntity(vdcNode).getLinks() ) {
+                if( link.getRel().equalsIgnoreCase("add") && link.getType() != null ) {
+                    vdc.actions.put(link.getType(), link.getHref());
+                }
+            }
+            String quota = vCloudBinder.text(vdcNode, vCloudBinder.VM_QUOTA);
 
-                        if( type != null && href != null ) {
-                            vdc.actions.put(type.getNodeValue().trim(), href.getNodeValue().trim());
-                        }
-                    }
+            if( quota != null ) {
+                try {
+                    vdc.vmQuota = Integer.parseInt(quota);
                 }
-                else if( attribute.getNodeName().equalsIgnoreCase(nsString + "VmQuota") && attribute.hasChildNodes() ) {
-                    try {
-                        vdc.vmQuota = Integer.parseInt(attribute.getFirstChild().getNodeValue().trim());
-                    }
-                    catch( NumberFormatException ignore ) {
-                        // ignore
-                    }
+                catch( NumberFormatException ignore ) {
+                    // ignore
                 }
-                else if( attribute.getNodeName().equalsIgnoreCase(nsString + "NetworkQuota") && attribute.hasChildNodes() ) {
-                    try {
-                        vdc.networkQuota = Integer.parseInt(attribute.getFirstChild().getNodeValue().trim());
-                    }
-                    catch( NumberFormatException ignore ) {
-                        // ignore
-                    }
+            }
+            quota = vCloudBinder.text(vdcNode, vCloudBinder.NETWORK_QUOTA);
+            if( quota != null ) {
+                try {
+                    vdc.networkQuota = Integer.parseInt(quota);
                 }
-                else if( attribute.getNodeName().equalsIgnoreCase(nsString + "IsEnabled") && attribute.hasChildNodes() ) {
-                    boolean enabled = attribute.getFirstChild().getNodeValue().trim().equalsIgnoreCase("true");
-
-                    if( !enabled ) {
-                        vdc.dataCenter.setActive(false);
-                        vdc.dataCenter.setAvailable(false);
-                    }
+                catch( NumberFormatException ignore ) {
+                    // ignore
                 }
             }
+            if( "false".equalsIgnoreCase(vCloudBinder.text(vdcNode, vCloudBinder.IS_ENABLED)) ) {
+                vdc.dataCenter.setActive(false);
+                vdc.dataCenter.setAvailable(false);
+            }
         }
     }
 
@@ -1541,7 +1943,7 @@ public class vCloudMethod {
 
             try {
                 APITrace.trace(provider, "GET org");
-                response = client.execute(method);
+                response = execute(client, method);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -1709,58 +2111,51 @@ public class vCloudMethod {
         throw new CloudException(type, 200, major + ":" + minor, message);
     }
 
-    public void parseMetaData(@Nonnull Taggable resource, @Nonnull String xml) throws CloudException, InternalException {
-        Document doc = parseXML(xml);
-        String docElementTagName = doc.getDocumentElement().getTagName();
-        String nsString = "";
-        if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-        NodeList md = doc.getElementsByTagName(nsString + "MetadataEntry");
-
-        for( int i=0; i<md.getLength(); i++ ) {
-            Node entry = md.item(i);
-
-            if( entry.hasChildNodes() ) {
-                NodeList parts = entry.getChildNodes();
-                String key = null, value = null;
-
-                for( int j=0; j<parts.getLength(); j++ ) {
-                    Node part = parts.item(j);
-                    if(part.getNodeName().contains(":"))nsString = part.getNodeName().substring(0, part.getNodeName().indexOf(":") + 1);
-                    else nsString = "";
-
-                    if( part.getNodeName().equalsIgnoreCase(nsString + "Key") && part.hasChildNodes() ) {
-                        key = part.getFirstChild().getNodeValue().trim();
-                    }
-                    else if( part.getNodeName().equalsIgnoreCase(nsString + "TypedValue") && part.hasChildNodes() ) {
-                        NodeList values = part.getChildNodes();
-
-                        for( int k=0; k<values.getLength(); k++ ) {
-                            Node v = values.item(k);
+    /**
+     * Reads the entries of a metadata document.
+     * @param xml the metadata document
+     * @return the metadata keys and values in document order
+     * @throws CloudException the document could not be parsed
+     * @throws InternalException an error occurred within Dasein Cloud parsing the document
+     */
+    public @Nonnull Map<String,String> toMetaData(@Nonnull String xml) throws CloudException, InternalException {
+        return getBinder().toMetadata(bindXML(xml));
+    }
 
-                            if( v.getNodeName().equalsIgnoreCase(nsString + "Value") && v.hasChildNodes() ) {
-                                value = v.getFirstChild().getNodeValue().trim();
-                            }
-                        }
-                    }
-                    else if( part.getNodeName().equalsIgnoreCase(nsString + "Value") && part.hasChildNodes() ) {
-                        value = part.getFirstChild().getNodeValue().trim();
-                    }
-                }
-                if( key != null && value != null ) {
-                    resource.setTag(key, value);
-                }
-            }
+    public void parseMetaData(@Nonnull Taggable resource, @Nonnull String xml) throws CloudException, InternalException {
+        for( Map.Entry<String,String> entry : toMetaData(xml).entrySet() ) {
+            resource.setTag(entry.getKey(), entry.getValue());
         }
     }
 
+    /**
+     * Fetches only the metadata of an entity, which is much cheaper than loading the entity itself when all that is
+     * needed is its current tags.
+     * @param resource the resource type of the entity
+     * @param id the ID of the entity
+     * @return the metadata keys and values, empty if the entity has none or does not exist
+     * @throws CloudException an error occurred in the cloud provider fetching the metadata
+     * @throws InternalException an error occurred within Dasein Cloud fetching the metadata
+     */
+    public @Nonnull Map<String,String> getMetaData(@Nonnull String resource, @Nonnull String id) throws CloudException, InternalException {
+        String xml = get(resource, id + "/metadata");
+
+        if( xml == null || xml.equals("") ) {
+            return Collections.emptyMap();
+        }
+        return toMetaData(xml);
+    }
+
     public @Nonnull Document parseXML(@Nonnull String xml) throws CloudException, InternalException {
         try {
             ByteArrayInputStream bas = new ByteArrayInputStream(xml.getBytes());
 
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             DocumentBuilder parser = factory.newDocumentBuilder();
+            Document doc = parser.parse(bas);
 
-            return parser.parse(bas);
+            cacheActions(doc);
+            return doc;
         }
         catch( ParserConfigurationException e ) {
             throw new InternalException(e);
@@ -1773,7 +2168,211 @@ public class vCloudMethod {
         }
     }
 
+    /**
+     * Parses a response for binding with {@link vCloudBinder}, recording the actions it offers just as
+     * {@link #parseXML(String)} does.
+     * @param xml the response body
+     * @return the root element of the namespace aware document
+     * @throws CloudException the response is not well-formed XML
+     * @throws InternalException no XML parser could be configured
+     */
+    public @Nonnull Element bindXML(@Nonnull String xml) throws CloudException, InternalException {
+        Document doc = vCloudBinder.parse(xml);
+
+        cacheActions(doc);
+        return doc.getDocumentElement();
+    }
+
+    public @Nonnull vCloudBinder getBinder() {
+        if( binder == null ) {
+            binder = new vCloudBinder(provider);
+        }
+        return binder;
+    }
+
+    /**
+     * @param xml a task or a response listing tasks
+     * @return the first task in the response or <code>null</code> if the response is empty or lists no tasks
+     */
+    public @Nullable vCloudBinder.Task toTask(@Nullable String xml) throws CloudException, InternalException {
+        if( xml == null || xml.equals("") ) {
+            return null;
+        }
+        return getBinder().toTask(bindXML(xml));
+    }
+
+    public @Nullable vCloudBinder.VApp toVApp(@Nullable String xml) throws CloudException, InternalException {
+        if( xml == null || xml.equals("") ) {
+            return null;
+        }
+        return getBinder().toVApp(bindXML(xml));
+    }
+
+    public @Nullable vCloudBinder.Disk toDisk(@Nullable String xml) throws CloudException, InternalException {
+        if( xml == null || xml.equals("") ) {
+            return null;
+        }
+        return getBinder().toDisk(bindXML(xml));
+    }
+
+    public @Nullable vCloudBinder.Network toNetwork(@Nullable String xml) throws CloudException, InternalException {
+        if( xml == null || xml.equals("") ) {
+            return null;
+        }
+        return getBinder().toNetwork(bindXML(xml));
+    }
+
+    public @Nullable vCloudBinder.Catalog toCatalog(@Nullable String xml) throws CloudException, InternalException {
+        if( xml == null || xml.equals("") ) {
+            return null;
+        }
+        return getBinder().toCatalog(bindXML(xml));
+    }
+
+    /**
+     * Records the action links of the vApp or VM described by a parsed document, along with those of the VMs nested in
+     * a vApp, so later actions on those entities can skip the discovery request.
+     */
+    private void cacheActions(@Nonnull Document doc) {
+        Node root = doc.getDocumentElement();
+
+        if( root == null || !isActionEntity(root) ) {
+            return;
+        }
+        cacheActions(root);
+        NodeList children = root.getChildNodes();
+
+        for( int i=0; i<children.getLength(); i++ ) {
+            Node child = children.item(i);
+
+            if( child.getNodeName().equals("Children") || child.getNodeName().endsWith(":Children") ) {
+                NodeList vms = child.getChildNodes();
+
+                for( int j=0; j<vms.getLength(); j++ ) {
+                    if( isActionEntity(vms.item(j)) ) {
+                        cacheActions(vms.item(j));
+                    }
+                }
+            }
+        }
+    }
+
+    private void cacheActions(@Nonnull Node entity) {
+        Node href = entity.getAttributes().getNamedItem("href");
+
+        if( href == null ) {
+            return;
+        }
+        HashMap<String,String> links = new HashMap<String, String>();
+        NodeList children = entity.getChildNodes();
+
+        for( int i=0; i<children.getLength(); i++ ) {
+            Node link = children.item(i);
+
+            if( (link.getNodeName().equals("Link") || link.getNodeName().endsWith(":Link")) && link.hasAttributes() ) {
+                Node rel = link.getAttributes().getNamedItem("rel");
+                Node target = link.getAttributes().getNamedItem("href");
+
+                if( rel != null && target != null && !links.containsKey(rel.getNodeValue().trim()) ) {
+                    links.put(rel.getNodeValue().trim(), target.getNodeValue().trim());
+                }
+            }
+        }
+        synchronized( actionLinks ) {
+            actionLinks.put(toActionKey(provider.toID(href.getNodeValue().trim())), links);
+        }
+    }
+
+    private boolean isActionEntity(@Nonnull Node node) {
+        String name = node.getNodeName();
+
+        return (node.getNodeType() == Node.ELEMENT_NODE && node.hasAttributes() && (name.equals("VApp") || name.endsWith(":VApp") || name.equals("Vm") || name.endsWith(":Vm")));
+    }
+
+    private @Nonnull String toActionKey(@Nonnull String id) {
+        return provider.getUserKey() + "#" + id;
+    }
+
+    private void forgetActions(@Nonnull String id) {
+        synchronized( actionLinks ) {
+            actionLinks.remove(toActionKey(id));
+        }
+    }
+
+    /**
+     * Posts an action against a vApp or VM. If the entity's action links are known from an earlier response, the
+     * action is posted straight to the recorded link; a 404 or 405 from that link (the link has gone away or the
+     * entity no longer accepts the action there) discards what is known about the entity and falls back to reading
+     * it from the cloud, bypassing the entity cache, to discover the link. Any other error, including a busy entity,
+     * is thrown as is, since the action may yet be applied and must not be posted twice.
+     * @param resource the resource type of the entity (normally <code>vApp</code>)
+     * @param id the ID of the vApp or VM
+     * @param rel the relationship of the action link, for example <code>power:powerOn</code>
+     * @param contentType the content type of the payload, if any
+     * @param payload the action payload, if any
+     * @return the response to the action, or <code>null</code> if the entity does not exist or does not currently offer the action
+     * @throws CloudException an error occurred in the cloud provider performing the action
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
+    public @Nullable String postAction(@Nonnull String resource, @Nonnull String id, @Nonnull String rel, @Nullable String contentType, @Nullable XmlWriter.Payload payload) throws CloudException, InternalException {
+        String href = null;
+
+        synchronized( actionLinks ) {
+            Map<String,String> links = actionLinks.get(toActionKey(id));
+
+            if( links != null ) {
+                href = links.get(rel);
+            }
+        }
+        boolean stale = false;
+
+        if( href != null ) {
+            try {
+                return postXml(getAction(href), href, contentType, payload);
+            }
+            catch( CloudException e ) {
+                int code = e.getHttpCode();
+
+                if( code != HttpServletResponse.SC_NOT_FOUND && code != HttpServletResponse.SC_METHOD_NOT_ALLOWED ) {
+                    throw e;
+                }
+                logger.debug("Cached " + rel + " link for " + id + " is stale, rediscovering: " + e.getMessage());
+                forgetActions(id);
+                stale = true;
+            }
+        }
+        // after a stale link, the cached copy of the entity may still offer it
+        String xml = (stale ? fetch(resource, id) : get(resource, id));
+
+        if( xml == null || xml.equals("") ) {
+            return null;
+        }
+        href = getBinder().toEntity(bindXML(xml)).getLink(rel, null);
+        if( href == null ) {
+            return null;
+        }
+        return postXml(getAction(href), href, contentType, payload);
+    }
+
     public @Nonnull String post(@Nonnull String action, @Nullable String vdcId, @Nullable String payload) throws CloudException, InternalException {
+        return postToVdc(action, vdcId, toEntity(payload));
+    }
+
+    /**
+     * Posts one of the VDC actions ({@link #INSTANTIATE_VAPP}, {@link #COMPOSE_VAPP}, {@link #CAPTURE_VAPP} or
+     * {@link #CREATE_DISK}) with a body built by an {@link XmlWriter}.
+     * @param action the VDC action to post
+     * @param vdcId the VDC against which the action is posted, or <code>null</code> for the first VDC in the org
+     * @param payload the request body
+     * @return the response body
+     * @throws CloudException an error occurred in the cloud provider handling the request
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
+    public @Nonnull String postXml(@Nonnull String action, @Nullable String vdcId, @Nonnull XmlWriter.Payload payload) throws CloudException, InternalException {
+        return postToVdc(action, vdcId, XmlWriter.toEntity(payload, null));
+    }
+
+    private @Nonnull String postToVdc(@Nonnull String action, @Nullable String vdcId, @Nullable HttpEntity entity) throws CloudException, InternalException {
         if( logger.isTraceEnabled() ) {
             logger.trace("ENTER: " + vCloudMethod.class.getName() + ".post(" + action + ")");
         }
@@ -1822,7 +2421,7 @@ public class vCloudMethod {
             if( endpoint == null) {
                 throw new CloudException("No endpoint for " + action);
             }
-            return post(action, endpoint, contentType, payload);
+            return postEntity(action, endpoint, contentType, entity);
         }
         finally {
             if( logger.isTraceEnabled() ) {
@@ -1832,6 +2431,53 @@ public class vCloudMethod {
     }
 
     public @Nonnull String post(@Nonnull String action, @Nonnull String endpoint, @Nullable String contentType, @Nullable String payload) throws CloudException, InternalException {
+        return postEntity(action, endpoint, contentType, toEntity(payload));
+    }
+
+    /**
+     * Posts a request whose body is built by an {@link XmlWriter}.
+     * @param action the action being performed, for tracing
+     * @param endpoint the URL to post to
+     * @param contentType the content type of the payload
+     * @param payload the request body, if any
+     * @return the response body
+     * @throws CloudException an error occurred in the cloud provider handling the request
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
+    public @Nonnull String postXml(@Nonnull String action, @Nonnull String endpoint, @Nullable String contentType, @Nullable XmlWriter.Payload payload) throws CloudException, InternalException {
+        return postEntity(action, endpoint, contentType, payload == null ? null : XmlWriter.toEntity(payload, null));
+    }
+
+    private @Nullable HttpEntity toEntity(@Nullable String payload) throws InternalException {
+        if( payload == null ) {
+            return null;
+        }
+        try {
+            //noinspection deprecation
+            return new StringEntity(payload, "application/json", "UTF-8");
+        }
+        catch( UnsupportedEncodingException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    /**
+     * Renders a request entity for the wire log. Only called when wire logging is enabled, so payloads are not copied
+     * into a string otherwise.
+     */
+    private @Nonnull String toWireString(@Nonnull HttpEntity entity) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            entity.writeTo(out);
+            return out.toString("UTF-8");
+        }
+        catch( IOException e ) {
+            return "[unable to render request body: " + e.getMessage() + "]";
+        }
+    }
+
+    private @Nonnull String postEntity(@Nonnull String action, @Nonnull String endpoint, @Nullable String contentType, @Nullable HttpEntity body) throws CloudException, InternalException {
         if( logger.isTraceEnabled() ) {
             logger.trace("ENTER: " + vCloudMethod.class.getName() + ".post(" + endpoint + ")");
         }
@@ -1860,24 +2506,18 @@ public class vCloudMethod {
                     }
                     wire.debug("");
                 }
-                if( payload != null ) {
-                    try {
-                        //noinspection deprecation
-                        post.setEntity(new StringEntity(payload == null ? "" : payload, "application/json", "UTF-8"));
-                    }
-                    catch( UnsupportedEncodingException e ) {
-                        throw new InternalException(e);
+                if( body != null ) {
+                    post.setEntity(body);
+                    if( wire.isDebugEnabled() ) {
+                        wire.debug(toWireString(body));
+                        wire.debug("");
                     }
-                    try { wire.debug(EntityUtils.toString(post.getEntity())); }
-                    catch( IOException ignore ) { }
-
-                    wire.debug("");
                 }
                 HttpResponse response;
 
                 try {
                     APITrace.trace(provider, "POST " + action);
-                    response = client.execute(post);
+                    response = execute(client, post);
                     if( wire.isDebugEnabled() ) {
                         wire.debug(response.getStatusLine().toString());
                         for( Header header : response.getAllHeaders() ) {
@@ -1895,11 +2535,11 @@ public class vCloudMethod {
                 logger.debug("HTTP STATUS: " + code);
 
                 if( code == HttpServletResponse.SC_NOT_FOUND ) {
-                    throw new CloudException("No action match for " + endpoint);
+                    throw new vCloudException(CloudErrorType.GENERAL, code, "Not Found", "No action match for " + endpoint);
                 }
                 else if( code == HttpServletResponse.SC_UNAUTHORIZED ) {
                     authenticate(true);
-                    return post(action, endpoint, contentType, payload);
+                    return postEntity(action, endpoint, contentType, body);
                 }
                 else if( code == HttpServletResponse.SC_NO_CONTENT ) {
                     return "";
@@ -1907,6 +2547,14 @@ public class vCloudMethod {
                 else if( code == HttpServletResponse.SC_OK || code == HttpServletResponse.SC_CREATED || code == HttpServletResponse.SC_ACCEPTED ) {
                     String xml = null;
 
+                    // posts to a collection create a member of it
+                    if( endpoint.endsWith("/catalogItems") ) {
+                        EntityCache.created(provider, "catalogItem");
+                    }
+                    else if( endpoint.endsWith("/catalogs") ) {
+                        EntityCache.created(provider, "catalog");
+                    }
+
                     try {
                         HttpEntity entity = response.getEntity();
 
@@ -1968,6 +2616,12 @@ public class vCloudMethod {
                 if(client != null){
                     client.getConnectionManager().shutdown();
                 }
+                // whatever was cached for the entity may no longer be accurate, whether or not the request succeeded
+                EntityCache.invalidate(provider, endpoint);
+                if( endpoint.contains("/vdc/") ) {
+                    VdcSnapshot.invalidate(provider);
+                }
+                detachFlights(provider);
                 if( wire.isDebugEnabled() ) {
                     wire.debug("<<< [POST (" + (new Date()) + ")] -> " + endpoint + " <--------------------------------------------------------------------------------------");
                     wire.debug("");
@@ -1985,28 +2639,7 @@ public class vCloudMethod {
     	APITrace.begin(provider, "Cloud.createTags");
     	try {
     		try {
-    			String apiVersion = getAPIVersion();
-    			StringBuilder xml = new StringBuilder();
-    			xml.append("<Metadata xmlns=\"http://www.vmware.com/vcloud/v1.5\" ");
-    			xml.append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">");
-    			for( Map.Entry<String,Object> entry : metadata.entrySet() ) {
-    				Object value = entry.getValue();
-    				if( value != null && !value.equals("") ) {
-    					xml.append("<MetadataEntry>");
-    					xml.append("<Key>").append(vCloud.escapeXml(entry.getKey())).append("</Key>");
-    					if( vCloudMethod.matches(apiVersion, "5.1", null) ) {
-    						xml.append("<TypedValue xsi:type=\"MetadataStringValue\">");
-    					}
-    					xml.append("<Value>").append(vCloud.escapeXml(value.toString())).append("</Value>");
-    					if(vCloudMethod.matches(apiVersion, "5.1", null) ) {
-    						xml.append("</TypedValue>");
-    					}
-    					xml.append("</MetadataEntry>");
-    				}
-    			}
-    			xml.append("</Metadata>");
-    			String response = post("metaData", toURL(resource, id) + "/metadata", getMediaTypeForMetadata(), xml.toString());
-    			waitFor(response);
+    			mergeMetaData(resource, id, metadata);
     		} catch( CloudException e ) {
     			logger.error("Error while creating tags for " + resource + " - " + id + ".", e);
     		}
@@ -2014,34 +2647,73 @@ public class vCloudMethod {
     		APITrace.end();
     	}
     }
-    
+
+    /**
+     * Merges the specified entries into an entity's metadata with a single request and waits for the resulting task.
+     * Unlike {@link #postMetaData(String, String, Map)}, failures are thrown to the caller.
+     * @param resource the resource type of the entity
+     * @param id the ID of the entity
+     * @param metadata the keys and values to merge
+     * @throws CloudException the request or its task failed
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
+    public void mergeMetaData(@Nonnull String resource, @Nonnull String id, @Nonnull Map<String,Object> metadata) throws CloudException, InternalException {
+    	XmlWriter.Payload payload = RequestPayloads.metadata(vCloudMethod.matches(getAPIVersion(), "5.1", null), metadata);
+    	String response = postXml("metaData", toURL(resource, id) + "/metadata", getMediaTypeForMetadata(), payload);
+    	TaskOutcome outcome = waitFor(response, System.currentTimeMillis() + (CalendarWrapper.MINUTE * 30L), false);
+
+    	if( !outcome.equals(TaskOutcome.SUCCESS) ) {
+    		throw new CloudException("Metadata update for " + resource + " - " + id + " did not complete: " + outcome);
+    	}
+    }
+
+    /**
+     * Makes an entity's metadata match the specified tags, removing any keys that are not among them and merging the
+     * rest. The keys to remove are determined from the entity's metadata alone.
+     * @param resource the resource type of the entity
+     * @param id the ID of the entity
+     * @param tags the complete set of tags the entity should have
+     * @throws CloudException a request or its task failed
+     * @throws InternalException an error occurred within Dasein Cloud preparing the requests
+     */
+    public void replaceMetaData(@Nonnull String resource, @Nonnull String id, @Nonnull Tag... tags) throws CloudException, InternalException {
+    	Tag[] remove = TagUtils.getTagsForDelete(getMetaData(resource, id), tags);
+
+    	if( remove.length > 0 ) {
+    		removeMetaData(resource, id, toMetadataMap(remove));
+    	}
+    	mergeMetaData(resource, id, toMetadataMap(tags));
+    }
+
+    /**
+     * @param tags the tags to convert
+     * @return the keys and values of the tags as a metadata map
+     */
+    static public @Nonnull Map<String,Object> toMetadataMap(@Nonnull Tag... tags) {
+    	HashMap<String,Object> metadata = new HashMap<String, Object>();
+
+    	for( Tag tag : tags ) {
+    		metadata.put(tag.getKey(), tag.getValue());
+    	}
+    	return metadata;
+    }
+
+    /**
+     * Updates the values of the specified metadata keys. The POST to an entity's metadata merges the entries into
+     * what is already there, so all of the keys are updated by a single request and task rather than one per key.
+     * @param resource the resource type of the entity
+     * @param id the ID of the entity
+     * @param metadata the keys and values to update
+     * @throws CloudException an error occurred in the cloud provider preparing the request
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
     public void putMetaData(@Nonnull String resource, @Nonnull String id, @Nonnull Map<String,Object> metadata) throws CloudException, InternalException {
     	APITrace.begin(provider, "Cloud.updateTags");
     	try {
     		try {
-    			String apiVersion = getAPIVersion();
-    			for( Map.Entry<String,Object> entry : metadata.entrySet() ) {
-    				StringBuilder xml = new StringBuilder();
-    				Object value = entry.getValue();
-    				if( value != null && !value.equals("") ) {
-    					xml.append("<MetadataValue xmlns=\"http://www.vmware.com/vcloud/v1.5\" ");
-    					xml.append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">");
-    					if( vCloudMethod.matches(apiVersion, "5.1", null) ) {
-    						xml.append("<TypedValue xsi:type=\"MetadataStringValue\">");
-    					}
-    					xml.append("<Value>").append(vCloud.escapeXml(value.toString())).append("</Value>");
-    					if(vCloudMethod.matches(apiVersion, "5.1", null) ) {
-    						xml.append("</TypedValue>");
-    					}
-    					xml.append("</MetadataValue>");
-    					String response = put("metaData", toURL(resource, id) + "/metadata/" + URLEncoder.encode(entry.getKey(), "utf-8"), getMediaTypeForMetadataValue(), xml.toString());
-    					waitFor(response);
-    				}
-    			}
+    			mergeMetaData(resource, id, metadata);
     		} catch( CloudException e ) {
     			logger.error("Error while updating tags for " + resource + " - " + id + ".", e);
-    		} catch (UnsupportedEncodingException e) {
-    			logger.error(e);
     		}
     	} finally {
     		APITrace.end();
@@ -2052,21 +2724,68 @@ public class vCloudMethod {
     	APITrace.begin(provider, "Cloud.deleteTags");
     	try {
     		try {
-    			for( Map.Entry<String,Object> entry : metadata.entrySet() ) {
-    				String response = delete(resource + "/" + id + "/metadata" , URLEncoder.encode(entry.getKey(), "utf-8"));
-    				waitFor(response);
-    			}
+    			removeMetaData(resource, id, metadata);
     		} catch( CloudException e ) {
     			logger.error("Error while deleting tags for " + resource + " - " + id + ".", e);
-    		} catch (UnsupportedEncodingException e) {
-    			logger.error(e);
     		}
     	} finally {
     		APITrace.end();
     	}
     }
 
+    /**
+     * Removes the specified metadata keys. vCloud only deletes metadata one key at a time and locks the entity for the
+     * duration of each delete task, so the keys are deleted one after another, each delete waiting for the previous
+     * task to finish. Unlike {@link #delMetaData(String, String, Map)}, failures are thrown to the caller once every key
+     * has been attempted.
+     * @param resource the resource type of the entity
+     * @param id the ID of the entity
+     * @param metadata the keys to remove
+     * @throws CloudException one or more of the keys could not be removed
+     * @throws InternalException an error occurred within Dasein Cloud preparing the requests
+     */
+    public void removeMetaData(@Nonnull String resource, @Nonnull String id, @Nonnull Map<String,Object> metadata) throws CloudException, InternalException {
+    	BulkOperationReport report = new BulkOperationReport();
+    	long deadline = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 30L);
+
+    	for( String key : metadata.keySet() ) {
+    		if( Thread.currentThread().isInterrupted() ) {
+    			report.record(key, BulkOperationReport.Outcome.INTERRUPTED, "Interrupted before the delete was requested");
+    			continue;
+    		}
+    		try {
+    			String response = delete(resource + "/" + id + "/metadata" , URLEncoder.encode(key, "utf-8"));
+
+    			waitForAll(Collections.singletonMap(key, response == null ? "" : response), deadline, false, report);
+    		}
+    		catch( CloudException | InternalException | UnsupportedEncodingException e ) {
+    			report.record(key, BulkOperationReport.Outcome.FAILED, e.getMessage());
+    		}
+    	}
+    	if( !report.isSuccessful() ) {
+    		throw new CloudException("Unable to delete tags for " + resource + " - " + id + ": " + report);
+    	}
+    }
+
     public @Nonnull String put(@Nonnull String action, @Nonnull String endpoint, @Nullable String contentType, @Nullable String payload) throws CloudException, InternalException {
+        return putEntity(action, endpoint, contentType, toEntity(payload));
+    }
+
+    /**
+     * Puts a request whose body is built by an {@link XmlWriter}.
+     * @param action the action being performed, for tracing
+     * @param endpoint the URL to put to
+     * @param contentType the content type of the payload
+     * @param payload the request body
+     * @return the response body
+     * @throws CloudException an error occurred in the cloud provider handling the request
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
+    public @Nonnull String putXml(@Nonnull String action, @Nonnull String endpoint, @Nullable String contentType, @Nonnull XmlWriter.Payload payload) throws CloudException, InternalException {
+        return putEntity(action, endpoint, contentType, XmlWriter.toEntity(payload, null));
+    }
+
+    private @Nonnull String putEntity(@Nonnull String action, @Nonnull String endpoint, @Nullable String contentType, @Nullable HttpEntity body) throws CloudException, InternalException {
         if( logger.isTraceEnabled() ) {
             logger.trace("ENTER: " + vCloudMethod.class.getName() + ".put(" + endpoint + ")");
         }
@@ -2096,24 +2815,18 @@ public class vCloudMethod {
                     }
                     wire.debug("");
                 }
-                if( payload != null ) {
-                    try {
-                        //noinspection deprecation
-                        put.setEntity(new StringEntity(payload == null ? "" : payload, "application/json", "UTF-8"));
-                    }
-                    catch( UnsupportedEncodingException e ) {
-                        throw new InternalException(e);
+                if( body != null ) {
+                    put.setEntity(body);
+                    if( wire.isDebugEnabled() ) {
+                        wire.debug(toWireString(put.getEntity()));
+                        wire.debug("");
                     }
-                    try { wire.debug(EntityUtils.toString(put.getEntity())); }
-                    catch( IOException ignore ) { }
-
-                    wire.debug("");
                 }
                 HttpResponse response;
 
                 try {
                     APITrace.trace(provider, "PUT " + action);
-                    response = client.execute(put);
+                    response = execute(client, put);
                     if( wire.isDebugEnabled() ) {
                         wire.debug(response.getStatusLine().toString());
                         for( Header header : response.getAllHeaders() ) {
@@ -2131,11 +2844,11 @@ public class vCloudMethod {
                 logger.debug("HTTP STATUS: " + code);
 
                 if( code == HttpServletResponse.SC_NOT_FOUND ) {
-                    throw new CloudException("No action match for " + endpoint);
+                    throw new vCloudException(CloudErrorType.GENERAL, code, "Not Found", "No action match for " + endpoint);
                 }
                 else if( code == HttpServletResponse.SC_UNAUTHORIZED ) {
                     authenticate(true);
-                    return post(action, endpoint, contentType, payload);
+                    return putEntity(action, endpoint, contentType, body);
                 }
                 else if( code == HttpServletResponse.SC_NO_CONTENT ) {
                     return "";
@@ -2204,6 +2917,9 @@ public class vCloudMethod {
                 if(client != null){
                     client.getConnectionManager().shutdown();
                 }
+                // whatever was cached for the entity may no longer be accurate, whether or not the request succeeded
+                EntityCache.invalidate(provider, endpoint);
+                detachFlights(provider);
                 if( wire.isDebugEnabled() ) {
                     wire.debug("<<< [PUT (" + (new Date()) + ")] -> " + endpoint + " <--------------------------------------------------------------------------------------");
                     wire.debug("");
@@ -2267,75 +2983,369 @@ public class vCloudMethod {
         return url;
     }
 
+    /**
+     * Cancels a running vCloud task.
+     * @param taskId the ID of the task to cancel
+     * @throws CloudException an error occurred in the cloud provider cancelling the task
+     * @throws InternalException an error occurred within Dasein Cloud preparing the request
+     */
+    public void cancelTask(@Nonnull String taskId) throws CloudException, InternalException {
+        post("cancelTask", toURL("task", taskId) + "/action/cancel", null, null);
+    }
+
+    /**
+     * Waits up to 30 minutes for the task described in the specified task XML to complete successfully.
+     * @param xmlTask the XML returned from the request that spawned the task
+     * @throws CloudException the task completed with an error, was cancelled, did not complete in time or the wait
+     * was interrupted
+     */
     public void waitFor(@Nullable String xmlTask) throws CloudException {
-        long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 30L);
+        TaskOutcome outcome = waitFor(xmlTask, System.currentTimeMillis() + (CalendarWrapper.MINUTE * 30L), false);
+
+        if( !outcome.equals(TaskOutcome.SUCCESS) ) {
+            throw new CloudException("Task did not complete successfully: " + outcome);
+        }
+    }
+
+    /**
+     * Waits for the task described in the specified task XML to complete or for the specified deadline to pass,
+     * whichever comes first. The wait honours thread interruption: an interrupted wait returns immediately with
+     * the interrupt flag restored. A single deadline may be shared across several waits so that it bounds an entire
+     * multi-step operation.
+     * @param xmlTask the XML returned from the request that spawned the task
+     * @param deadline the absolute time (in milliseconds since the epoch) after which to stop waiting
+     * @param cancelOnAbort true if the task should be cancelled in the cloud when the wait times out or is interrupted
+     * @return the outcome of the wait
+     * @throws CloudException the task completed with an error or the task XML could not be read
+     */
+    public @Nonnull TaskOutcome waitFor(@Nullable String xmlTask, long deadline, boolean cancelOnAbort) throws CloudException {
         String taskId = null;
 
         int passCount = 1;
-        while( timeout > System.currentTimeMillis() ) {
-            if( xmlTask == null || xmlTask.equals("") ) {
-                return;
+        while( true ) {
+            vCloudBinder.Task task;
+
+            try {
+                task = toTask(xmlTask);
             }
-            NodeList tasks;
+            catch( InternalException e ) {
+                throw new CloudException("Unable to read task " + (taskId == null ? "" : taskId + " ") + "to wait on: " + e.getMessage());
+            }
+            if( task == null ) {
+                return TaskOutcome.SUCCESS;
+            }
+            String s = task.getStatus();
 
+            if( s != null && task.getOwnerHref() != null && (s.equals("success") || s.equals("canceled") || s.equals("aborted") || s.equals("error")) ) {
+                EntityCache.invalidate(provider, task.getOwnerHref());
+                VdcSnapshot.invalidate(provider);
+                detachFlights(provider);
+                if( s.equals("success") ) {
+                    // the task may have created its owner
+                    EntityCache.created(provider, task.getOwnerHref());
+                }
+            }
+            if( s != null ) {
+                if( s.equals("success") ) {
+                    return TaskOutcome.SUCCESS;
+                }
+                else if( s.equals("canceled") || s.equals("aborted") ) {
+                    return TaskOutcome.CANCELLED;
+                }
+                else if( s.equals("error") ) {
+                    if( task.hasError() ) {
+                        throw task.toException();
+                    }
+                    throw new CloudException("Task failed without further information: " + task.getId());
+                }
+            }
+            if( taskId == null ) {
+                taskId = task.getId();
+            }
+            if( taskId == null ) {
+                return TaskOutcome.SUCCESS;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+
+            if( remaining <= 0L ) {
+                logger.warn("Task timed out: " + taskId);
+                if( cancelOnAbort ) {
+                    cancelQuietly(taskId);
+                }
+                return TaskOutcome.TIMED_OUT;
+            }
             try {
-                Document doc = parseXML(xmlTask);
-                String docElementTagName = doc.getDocumentElement().getTagName();
-                String nsString = "";
-                if(docElementTagName.contains(":"))nsString = docElementTagName.substring(0, docElementTagName.indexOf(":") + 1);
-                tasks = doc.getElementsByTagName(nsString + "Task");
+                Thread.sleep(Math.min(remaining, Math.min(passCount, 10) * CalendarWrapper.SECOND));
             }
-            catch( Throwable ignore ) {
-                return;
+            catch( InterruptedException e ) {
+                logger.warn("Interrupted while waiting for task " + taskId);
+                if( cancelOnAbort ) {
+                    cancelQuietly(taskId);
+                }
+                Thread.currentThread().interrupt();
+                return TaskOutcome.INTERRUPTED;
             }
-            if( tasks.getLength() < 1 ) {
-                return;
+            try {
+                xmlTask = get("task", taskId);
+            }
+            catch( InternalException e ) {
+                logger.warn("Unable to check status of task " + taskId + ", will retry: " + e.getMessage());
             }
-            Node task = tasks.item(0);
+            catch( CloudException e ) {
+                logger.warn("Unable to check status of task " + taskId + ", will retry: " + e.getMessage());
+            }
+            passCount += 1;
+        }
+    }
 
-            if( task.hasAttributes() ) {
-                Node status = task.getAttributes().getNamedItem("status");
+    /**
+     * The status of a vApp, VM or disk, along with the tasks it reports as still in progress.
+     */
+    static public class EntityStatus {
+        public String       status;
+        public List<String> runningTasks = new ArrayList<String>();
+    }
 
-                if( status != null ) {
-                    String s = status.getNodeValue().trim();
+    /**
+     * Reads the status of an entity without building a DOM for its representation. Only the status attribute of the
+     * root element and the tasks listed directly under it are examined.
+     * @param resource the resource type of the entity, such as <code>vApp</code> or <code>disk</code>
+     * @param id the ID of the entity
+     * @return the entity's status or <code>null</code> if it does not exist
+     * @throws CloudException an error occurred in the cloud provider reading the entity
+     * @throws InternalException an error occurred within Dasein Cloud reading the response
+     */
+    public @Nullable EntityStatus getEntityStatus(@Nonnull String resource, @Nonnull String id) throws CloudException, InternalException {
+        String xml = fetch(resource, id);
 
-                    if( s.equals("success") ) {
-                        return;
-                    }
-                    else if( s.equals("error") ) {
-                        NodeList elements = task.getChildNodes();
+        if( xml == null || xml.equals("") ) {
+            return null;
+        }
+        EntityStatus entity = new EntityStatus();
 
-                        for( int i=0; i<elements.getLength(); i++ ) {
-                            Node element = elements.item(i);
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(xml));
+
+            try {
+                boolean inTasks = false;
+                int depth = 0;
+
+                while( reader.hasNext() ) {
+                    int event = reader.next();
+
+                    if( event == XMLStreamConstants.START_ELEMENT ) {
+                        depth++;
+                        if( depth == 1 ) {
+                            entity.status = reader.getAttributeValue(null, "status");
+                        }
+                        else if( depth == 2 ) {
+                            inTasks = reader.getLocalName().equals("Tasks");
+                        }
+                        else if( depth == 3 && inTasks && reader.getLocalName().equals("Task") ) {
+                            String status = reader.getAttributeValue(null, "status");
+                            String href = reader.getAttributeValue(null, "href");
 
-                            if( element.getNodeName().equalsIgnoreCase("Error") ) {
-                                parseError(element);
-                                return;
+                            if( href != null && status != null && (status.equals("running") || status.equals("queued") || status.equals("preRunning")) ) {
+                                entity.runningTasks.add(provider.toID(href.trim()));
                             }
                         }
                     }
+                    else if( event == XMLStreamConstants.END_ELEMENT ) {
+                        depth--;
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch( XMLStreamException e ) {
+            throw new CloudException(e);
+        }
+        return entity;
+    }
+
+    /**
+     * Waits for an entity to leave a transitional state and finish any tasks running against it. While the entity
+     * reports running tasks, the wait follows the first of them and re-reads the entity as soon as it completes;
+     * otherwise the entity is re-read after a short interval that grows from one to ten seconds.
+     * @param resource the resource type of the entity, such as <code>vApp</code> or <code>disk</code>
+     * @param id the ID of the entity
+     * @param pendingStatuses the status values considered transitional
+     * @param deadline the absolute time (in milliseconds since the epoch) after which to stop waiting
+     * @return the last status read, or <code>null</code> if the entity no longer exists
+     * @throws CloudException an error occurred in the cloud provider reading the entity
+     * @throws InternalException an error occurred within Dasein Cloud reading the response
+     */
+    public @Nullable String waitForEntity(@Nonnull String resource, @Nonnull String id, @Nonnull Collection<String> pendingStatuses, long deadline) throws CloudException, InternalException {
+        long interval = CalendarWrapper.SECOND;
+
+        while( true ) {
+            EntityStatus entity = getEntityStatus(resource, id);
+
+            if( entity == null ) {
+                return null;
+            }
+            if( !pendingStatuses.contains(entity.status) && entity.runningTasks.isEmpty() ) {
+                return entity.status;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+
+            if( remaining <= 0L ) {
+                logger.warn("Timed out waiting for " + resource + " " + id + " (status " + entity.status + ")");
+                return entity.status;
+            }
+            if( !entity.runningTasks.isEmpty() ) {
+                String taskId = entity.runningTasks.get(0);
+                boolean followed = false;
+
+                try {
+                    if( waitFor(get("task", taskId), deadline, false).equals(TaskOutcome.INTERRUPTED) ) {
+                        return entity.status;
+                    }
+                    followed = true;
                 }
-                if( taskId == null ) {
-                    Node href = task.getAttributes().getNamedItem("href");
+                catch( CloudException e ) {
+                    logger.debug("Unable to follow task " + taskId + " on " + resource + " " + id + ": " + e.getMessage());
+                }
+                if( followed ) {
+                    interval = CalendarWrapper.SECOND;
+                    continue;
+                }
+            }
+            try {
+                Thread.sleep(Math.min(remaining, interval));
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return entity.status;
+            }
+            interval = Math.min(interval * 2, CalendarWrapper.SECOND * 10L);
+        }
+    }
+
+    /**
+     * Tracks many tasks together until they all finish or the deadline passes, recording the outcome for each resource
+     * in the report. Resources that share a task (for example, VMs covered by a single vApp-level action) are checked
+     * with a single request per pass.
+     * @param tasks the XML returned from the request that spawned each task, keyed by the ID of the resource it acts on
+     * @param deadline the absolute time (in milliseconds since the epoch) after which to stop waiting
+     * @param cancelOnAbort true if unfinished tasks should be cancelled in the cloud when the wait times out or is interrupted
+     * @param report the report in which to record the outcome for each resource
+     */
+    public void waitForAll(@Nonnull Map<String,String> tasks, long deadline, boolean cancelOnAbort, @Nonnull BulkOperationReport report) {
+        HashMap<String,List<String>> pending = new HashMap<String, List<String>>();
+
+        for( Map.Entry<String,String> entry : tasks.entrySet() ) {
+            String taskId = checkTask(entry.getValue(), Collections.singletonList(entry.getKey()), report);
+
+            if( taskId != null ) {
+                List<String> ids = pending.get(taskId);
 
-                    if( href == null ) {
-                        return;
+                if( ids == null ) {
+                    ids = new ArrayList<String>();
+                    pending.put(taskId, ids);
+                }
+                ids.add(entry.getKey());
+            }
+        }
+        int passCount = 1;
+
+        while( !pending.isEmpty() ) {
+            long remaining = deadline - System.currentTimeMillis();
+
+            if( remaining <= 0L ) {
+                for( Map.Entry<String,List<String>> entry : pending.entrySet() ) {
+                    logger.warn("Task timed out: " + entry.getKey());
+                    if( cancelOnAbort ) {
+                        cancelQuietly(entry.getKey());
                     }
-                    taskId = provider.toID(href.getNodeValue().trim());
+                    report.record(entry.getValue(), BulkOperationReport.Outcome.TIMED_OUT, "Task timed out: " + entry.getKey());
                 }
+                return;
             }
             try {
-                if (passCount > 10) {
-                    Thread.sleep(10 * CalendarWrapper.SECOND);
-                } else {
-                    Thread.sleep(passCount * CalendarWrapper.SECOND);
+                Thread.sleep(Math.min(remaining, Math.min(passCount, 10) * CalendarWrapper.SECOND));
+            }
+            catch( InterruptedException e ) {
+                for( Map.Entry<String,List<String>> entry : pending.entrySet() ) {
+                    if( cancelOnAbort ) {
+                        cancelQuietly(entry.getKey());
+                    }
+                    report.record(entry.getValue(), BulkOperationReport.Outcome.INTERRUPTED, "Interrupted while waiting for task " + entry.getKey());
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+            Iterator<Map.Entry<String,List<String>>> it = pending.entrySet().iterator();
+
+            while( it.hasNext() ) {
+                Map.Entry<String,List<String>> entry = it.next();
+                String xmlTask;
+
+                try {
+                    xmlTask = get("task", entry.getKey());
+                }
+                catch( InternalException | CloudException e ) {
+                    logger.warn("Unable to check status of task " + entry.getKey() + ", will retry: " + e.getMessage());
+                    continue;
+                }
+                if( checkTask(xmlTask, entry.getValue(), report) == null ) {
+                    it.remove();
                 }
             }
-            catch( InterruptedException ignore ) { }
-            try { xmlTask = get("task", taskId); }
-            catch( Throwable ignore ) { }
             passCount += 1;
         }
-        logger.warn("Task timed out: " + taskId);
+    }
+
+    /**
+     * Records the outcome of a finished task against the resources it acts on.
+     * @return the ID of the task if it is still running, otherwise <code>null</code>
+     */
+    private @Nullable String checkTask(@Nullable String xmlTask, @Nonnull Collection<String> ids, @Nonnull BulkOperationReport report) {
+        vCloudBinder.Task task;
+
+        try {
+            task = toTask(xmlTask);
+        }
+        catch( Throwable ignore ) {
+            task = null;
+        }
+        if( task == null || task.getId() == null ) {
+            report.record(ids, BulkOperationReport.Outcome.SUCCEEDED, null);
+            return null;
+        }
+        String taskId = task.getId();
+        String s = task.getStatus();
+
+        if( s != null ) {
+            if( s.equals("success") ) {
+                report.record(ids, BulkOperationReport.Outcome.SUCCEEDED, null);
+                return null;
+            }
+            else if( s.equals("canceled") || s.equals("aborted") ) {
+                report.record(ids, BulkOperationReport.Outcome.CANCELLED, "Task " + s + ": " + taskId);
+                return null;
+            }
+            else if( s.equals("error") ) {
+                String message = (task.hasError() ? task.toException().getMessage() : "Task failed without further information: " + taskId);
+
+                report.record(ids, BulkOperationReport.Outcome.FAILED, message);
+                return null;
+            }
+        }
+        return taskId;
+    }
+
+    private void cancelQuietly(@Nonnull String taskId) {
+        try {
+            cancelTask(taskId);
+        }
+        catch( Throwable t ) {
+            logger.warn("Failed to cancel task " + taskId + ": " + t.getMessage());
+        }
     }
 }
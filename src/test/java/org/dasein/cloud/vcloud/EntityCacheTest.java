@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a read racing a change never caches what it read, using the generation taken before the read.
+ */
+public class EntityCacheTest {
+    static private final String BASE = "https://cloud.example.com/api/";
+
+    private vCloud      provider;
+    private EntityCache disks;
+
+    @Before
+    public void setUp() {
+        provider = new vCloud();
+        disks = EntityCache.getInstance(provider, "disk");
+        disks.clear();
+    }
+
+    @Test
+    public void readWithoutChangeIsCached() {
+        String href = BASE + "disk/d-1";
+        long generation = disks.getGeneration(href);
+
+        disks.put(href, "<Disk/>", generation);
+        assertEquals("<Disk/>", disks.get(href));
+    }
+
+    @Test
+    public void readRacingChangeIsNotCached() {
+        String href = BASE + "disk/d-2";
+        long generation = disks.getGeneration(href);
+
+        // a write lands while the GET is in flight
+        EntityCache.invalidate(provider, href + "/action/updateMetadata");
+        disks.put(href, "<Disk/>", generation);
+        assertNull(disks.get(href));
+
+        generation = disks.getGeneration(href);
+        disks.put(href, "<Disk status=\"1\"/>", generation);
+        assertEquals("<Disk status=\"1\"/>", disks.get(href));
+    }
+
+    @Test
+    public void missRacingChangeIsNotRemembered() {
+        String href = BASE + "disk/d-3";
+        long generation = disks.getGeneration(href);
+
+        EntityCache.invalidate(provider, href);
+        disks.putMissing(href, generation);
+        assertFalse(disks.isMissing(href));
+
+        disks.putMissing(href, disks.getGeneration(href));
+        assertTrue(disks.isMissing(href));
+    }
+
+    @Test
+    public void changesToOtherEntitiesDoNotInterfere() {
+        String href = BASE + "disk/d-4";
+        long generation = disks.getGeneration(href);
+
+        EntityCache.invalidate(provider, BASE + "disk/d-40");
+        disks.put(href, "<Disk/>", generation);
+        assertEquals("<Disk/>", disks.get(href));
+    }
+
+    @Test
+    public void clearOutdatesEveryReadInFlight() {
+        String href = BASE + "disk/d-5";
+        long generation = disks.getGeneration(href);
+
+        disks.clear();
+        disks.put(href, "<Disk/>", generation);
+        assertNull(disks.get(href));
+    }
+
+    @Test
+    public void forgottenGenerationsStayOutdated() {
+        String href = BASE + "disk/d-6";
+        long generation = disks.getGeneration(href);
+
+        EntityCache.invalidate(provider, href);
+        // push the change out of the bounded generation table
+        for( int i=0; i<600; i++ ) {
+            EntityCache.invalidate(provider, BASE + "disk/other-" + i);
+        }
+        disks.put(href, "<Disk/>", generation);
+        assertNull(disks.get(href));
+    }
+
+    @Test
+    public void readsListingTasksAreNotCached() {
+        String href = BASE + "disk/d-7";
+
+        disks.put(href, "<Disk><Tasks><Task status=\"running\"/></Tasks></Disk>", disks.getGeneration(href));
+        assertNull(disks.get(href));
+    }
+
+    @Test
+    public void missesAreForgottenWhenTheirTypeIsCreated() {
+        String href = BASE + "disk/d-8";
+
+        disks.putMissing(href, disks.getGeneration(href));
+        EntityCache.created(provider, BASE + "vApp/vapp-1");
+        assertTrue(disks.isMissing(href));
+        EntityCache.created(provider, BASE + "disk/d-80");
+        assertFalse(disks.isMissing(href));
+    }
+}
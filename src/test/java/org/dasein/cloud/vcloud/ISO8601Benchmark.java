@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import java.util.Calendar;
+
+/**
+ * A simple timing harness comparing {@link ISO8601#parseMillis(String)} with {@link ISO8601#parse(String)}. It is not
+ * a unit test and is not run by the build; run it by hand from the test classpath:
+ * <pre>
+ *   java -cp target/classes:target/test-classes:... org.dasein.cloud.vcloud.ISO8601Benchmark [iterations]
+ * </pre>
+ */
+public class ISO8601Benchmark {
+    static private final String[] SAMPLES = {
+            "2015-10-14T17:42:09.501Z",
+            "2015-10-14T17:42:09.501+05:30",
+            "2016-02-29T00:00:00.000-08:00",
+            "2012-06-30T23:59:59.999Z"
+    };
+
+    static public void main(String ... args) {
+        int iterations = (args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+
+        for( int round=0; round<3; round++ ) {
+            // the first rounds warm up the JIT
+            long sink = 0L;
+            long start = System.nanoTime();
+
+            for( int i=0; i<iterations; i++ ) {
+                Calendar cal = ISO8601.parse(SAMPLES[i & 3]);
+
+                sink += cal.getTimeInMillis();
+            }
+            long slow = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for( int i=0; i<iterations; i++ ) {
+                sink -= ISO8601.parseMillis(SAMPLES[i & 3]);
+            }
+            long fast = System.nanoTime() - start;
+
+            System.out.println("round " + (round+1) + ": parse " + (slow/iterations) + " ns/op, parseMillis " + (fast/iterations) + " ns/op" + (sink == 0L ? "" : " (results differ)"));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link ISO8601#parseMillis(String)} agrees with {@link ISO8601#parse(String)} on valid dates, on dates
+ * the fast path hands to the calendar and on input neither should accept.
+ */
+public class ISO8601Test {
+    static private long slow(String text) {
+        Calendar cal = ISO8601.parse(text);
+
+        return (cal == null ? ISO8601.INVALID : cal.getTimeInMillis());
+    }
+
+    static private void assertSame(String text) {
+        assertEquals(text, slow(text), ISO8601.parseMillis(text));
+    }
+
+    static private void assertInvalid(String text) {
+        assertNull(text, ISO8601.parse(text));
+        assertEquals(text, ISO8601.INVALID, ISO8601.parseMillis(text));
+    }
+
+    @Test
+    public void epoch() {
+        assertEquals(0L, ISO8601.parseMillis("1970-01-01T00:00:00.000Z"));
+        assertEquals(-1L, ISO8601.parseMillis("1969-12-31T23:59:59.999Z"));
+    }
+
+    @Test
+    public void typicalTimestamps() {
+        assertEquals(1444780800123L, ISO8601.parseMillis("2015-10-14T00:00:00.123Z"));
+        assertSame("2015-10-14T17:42:09.501Z");
+        assertSame("2038-01-19T03:14:08.000Z");
+        assertSame("9999-12-31T23:59:59.999Z");
+    }
+
+    @Test
+    public void leapDays() {
+        assertSame("2000-02-29T12:00:00.000Z");
+        assertSame("2016-02-29T23:59:59.999Z");
+        assertSame("2016-03-01T00:00:00.000Z");
+        assertEquals(ISO8601.parseMillis("2016-02-29T00:00:00.000Z") + 86400000L, ISO8601.parseMillis("2016-03-01T00:00:00.000Z"));
+        assertInvalid("2015-02-29T00:00:00.000Z");
+        assertInvalid("1900-02-29T00:00:00.000Z");
+        assertInvalid("2016-02-30T00:00:00.000Z");
+        assertInvalid("2016-04-31T00:00:00.000Z");
+    }
+
+    @Test
+    public void offsets() {
+        assertEquals(ISO8601.parseMillis("2015-10-14T12:00:00.000Z"), ISO8601.parseMillis("2015-10-14T17:30:00.000+05:30"));
+        assertEquals(ISO8601.parseMillis("2015-10-14T12:00:00.000Z"), ISO8601.parseMillis("2015-10-14T07:00:00.000-05:00"));
+        assertSame("2015-10-14T17:30:00.000+05:30");
+        assertSame("2015-10-14T07:00:00.000-05:00");
+        assertSame("2015-12-31T23:30:00.000-00:00");
+        assertSame("2016-01-01T00:30:00.000+00:00");
+        assertSame("2015-10-14T00:00:00.000+23:59");
+        assertSame("2015-10-14T00:00:00.000-23:59");
+        assertInvalid("2015-10-14T00:00:00.000+24:00");
+        assertInvalid("2015-10-14T00:00:00.000+05:60");
+    }
+
+    @Test
+    public void beforeGregorianCutover() {
+        // the calendar switches to Julian rules before October 1582, so these go through the slow path
+        assertSame("1582-10-15T00:00:00.000Z");
+        assertSame("1582-10-04T00:00:00.000Z");
+        assertSame("1500-02-29T00:00:00.000Z");
+        assertSame("1000-06-15T08:00:00.000+01:00");
+        assertSame("0001-01-01T00:00:00.000Z");
+        assertSame("0000-01-01T00:00:00.000Z");
+        assertSame("-0001-01-01T00:00:00.000Z");
+        assertSame("+2015-10-14T00:00:00.000Z");
+        assertInvalid("1582-10-10T00:00:00.000Z");
+    }
+
+    @Test
+    public void invalidInput() {
+        assertInvalid("");
+        assertInvalid("garbage");
+        assertInvalid("2015-10-14");
+        assertInvalid("2015-10-14T00:00:00Z");
+        assertInvalid("2015-10-14T00:00:00.000");
+        assertInvalid("2015-10-14T00:00:00.000ZZ");
+        assertInvalid("2015-10-14 00:00:00.000Z");
+        assertInvalid("2015/10/14T00:00:00.000Z");
+        assertInvalid("2015-13-01T00:00:00.000Z");
+        assertInvalid("2015-00-01T00:00:00.000Z");
+        assertInvalid("2015-10-00T00:00:00.000Z");
+        assertInvalid("2015-10-14T24:00:00.000Z");
+        assertInvalid("2015-10-14T00:60:00.000Z");
+        assertInvalid("2015-10-14T00:00:60.000Z");
+        assertInvalid("2015-1a-14T00:00:00.000Z");
+        assertInvalid("2015-10-14T00:00:00.00aZ");
+        assertInvalid("2015-10-14T00:00:00.000+0530");
+        assertInvalid("2015-10-14T00:00:00.000+05:30:00");
+        assertInvalid("2015-10-14T00:00:00.000X");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void nullInput() {
+        ISO8601.parseMillis(null);
+    }
+
+    @Test
+    public void randomTimestampsAgree() {
+        Random random = new Random(20151014L);
+
+        for( int i=0; i<20000; i++ ) {
+            StringBuilder text = new StringBuilder();
+
+            text.append(pad(1583 + random.nextInt(8417), 4)).append('-').append(pad(1 + random.nextInt(12), 2)).append('-');
+            text.append(pad(1 + random.nextInt(31), 2)).append('T').append(pad(random.nextInt(24), 2)).append(':');
+            text.append(pad(random.nextInt(60), 2)).append(':').append(pad(random.nextInt(60), 2)).append('.');
+            text.append(pad(random.nextInt(1000), 3));
+            if( random.nextBoolean() ) {
+                text.append('Z');
+            }
+            else {
+                text.append(random.nextBoolean() ? '+' : '-').append(pad(random.nextInt(24), 2)).append(':').append(pad(random.nextInt(60), 2));
+            }
+            if( random.nextInt(4) == 0 ) {
+                // corrupt one character
+                text.setCharAt(random.nextInt(text.length()), "0123456789-+:.TZx".charAt(random.nextInt(17)));
+            }
+            assertSame(text.toString());
+        }
+    }
+
+    static private String pad(int value, int width) {
+        String s = String.valueOf(value);
+
+        while( s.length() < width ) {
+            s = "0" + s;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.vcloud;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Renders the launch payloads with names that need escaping and checks the documents read back as written.
+ */
+public class RequestPayloadsTest {
+    static private final String NAME = "web \"tier\" & <db>";
+
+    static private Document parse(XmlWriter.Payload payload) throws Exception {
+        return vCloudBinder.parse(XmlWriter.toString(payload));
+    }
+
+    static private XmlWriter.Payload networkConfig() {
+        return RequestPayloads.vAppNetworkConfig(NAME, "https://cloud.example.com/api/network/n-1", "n-1", null, null, null, null);
+    }
+
+    @Test
+    public void instantiateEscapesTheName() throws Exception {
+        XmlWriter.Payload payload = RequestPayloads.instantiateVAppTemplate(NAME, "vappTemplate-9", networkConfig(), "https://cloud.example.com/api/vAppTemplate/vappTemplate-9", Collections.<XmlWriter.Payload>emptyList());
+        Element root = parse(payload).getDocumentElement();
+
+        assertEquals("InstantiateVAppTemplateParams", root.getLocalName());
+        assertEquals(NAME, root.getAttribute("name"));
+        assertEquals("false", root.getAttribute("deploy"));
+        assertEquals(NAME, ((Element)root.getElementsByTagNameNS("*", "ParentNetwork").item(0)).getAttribute("name"));
+        assertEquals("https://cloud.example.com/api/vAppTemplate/vappTemplate-9", ((Element)root.getElementsByTagNameNS("*", "Source").item(0)).getAttribute("href"));
+        assertEquals("true", root.getElementsByTagNameNS("*", "AllEULAsAccepted").item(0).getTextContent());
+    }
+
+    @Test
+    public void composeWritesEverySourcedItem() throws Exception {
+        XmlWriter.Payload network = RequestPayloads.networkConnection(null, null, NAME);
+        XmlWriter.Payload guest = RequestPayloads.guestCustomization(false, "p&ss", null, "web-1");
+        XmlWriter.Payload first = RequestPayloads.sourcedItem("https://cloud.example.com/api/vAppTemplate/vm-1", NAME + "-1", null, network, guest, null);
+        XmlWriter.Payload second = RequestPayloads.sourcedItem("https://cloud.example.com/api/vAppTemplate/vm-1", NAME + "-2", "second", network, guest, "<ovf:VirtualHardwareSection/>");
+        Document doc = parse(RequestPayloads.composeVApp(NAME, "vappTemplate-9", networkConfig(), Arrays.asList(first, second)));
+        NodeList items = doc.getElementsByTagNameNS("*", "SourcedItem");
+
+        assertEquals(2, items.getLength());
+        assertEquals(NAME + "-2", ((Element)items.item(1)).getElementsByTagNameNS("*", "Name").item(0).getTextContent());
+        assertEquals("p&ss", doc.getElementsByTagNameNS("*", "AdminPassword").item(0).getTextContent());
+        assertEquals(1, doc.getElementsByTagNameNS("*", "VirtualHardwareSection").getLength());
+        assertEquals(0, doc.getElementsByTagNameNS("*", "Source").item(0).getChildNodes().getLength());
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud.compute;
+
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.VirtualMachineProduct;
+import org.dasein.cloud.vcloud.vCloud;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Looks up products in a test products resource, whose set for the default provider and cloud names must win over
+ * the default set, and checks that callers only ever get copies of the indexed products.
+ */
+public class ProductCatalogTest {
+    private ProductCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("vcloud.vmproducts", "/org/dasein/cloud/vcloud/compute/testproducts.json");
+        catalog = ProductCatalog.getInstance(new vCloud());
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("vcloud.vmproducts");
+    }
+
+    static private String ids(List<VirtualMachineProduct> products) {
+        StringBuilder ids = new StringBuilder();
+
+        for( VirtualMachineProduct product : products ) {
+            if( ids.length() > 0 ) {
+                ids.append(",");
+            }
+            ids.append(product.getProviderProductId());
+        }
+        return ids.toString();
+    }
+
+    @Test
+    public void productById() {
+        VirtualMachineProduct product = catalog.getProduct("small");
+
+        assertEquals("Small", product.getName());
+        assertEquals("One CPU", product.getDescription());
+        assertEquals(1, product.getCpuCount());
+        assertEquals(512, product.getRamSize().intValue());
+        assertEquals(20, product.getRootVolumeSize().intValue());
+        assertEquals(0.05f, product.getStandardHourlyRate(), 0.0001f);
+    }
+
+    @Test
+    public void defaultsForMissingFields() {
+        VirtualMachineProduct product = catalog.getProduct("medium");
+
+        assertEquals("medium", product.getName());
+        assertEquals("medium", product.getDescription());
+        assertEquals(1, product.getRootVolumeSize().intValue());
+    }
+
+    @Test
+    public void unknownProducts() {
+        assertNull(catalog.getProduct("default-only"));
+        assertNull(catalog.getProduct("huge"));
+        assertNull(catalog.getProduct(Architecture.I32, 4, 8192));
+        assertNull(catalog.getProduct(Architecture.I64, 3, 8192));
+    }
+
+    @Test
+    public void productsByArchitecture() {
+        assertEquals("small,medium,large,small-again", ids(catalog.getProducts(null)));
+        assertEquals("small,medium,small-again", ids(catalog.getProducts(Architecture.I32)));
+        assertEquals("small,medium,large,small-again", ids(catalog.getProducts(Architecture.I64)));
+    }
+
+    @Test
+    public void productBySizePrefersFirstDefined() {
+        assertEquals("small", catalog.getProduct(Architecture.I32, 1, 512).getProviderProductId());
+        assertEquals("medium", catalog.getProduct(Architecture.I32, 2, 2048).getProviderProductId());
+        assertEquals("large", catalog.getProduct(Architecture.I64, 4, 8192).getProviderProductId());
+    }
+
+    @Test
+    public void customProducts() {
+        VirtualMachineProduct product = catalog.getProduct("custom:2:4096");
+
+        assertEquals("custom:2:4096", product.getProviderProductId());
+        assertEquals(2, product.getCpuCount());
+        assertEquals(4096, product.getRamSize().intValue());
+
+        product = ProductCatalog.toCustomProduct("custom:x:y");
+        assertEquals(1, product.getCpuCount());
+        assertEquals(512, product.getRamSize().intValue());
+    }
+
+    @Test
+    public void callersGetCopies() {
+        VirtualMachineProduct product = catalog.getProduct("small");
+
+        assertNotSame(product, catalog.getProduct("small"));
+        product.setName("changed");
+        product.setCpuCount(16);
+        assertEquals("Small", catalog.getProduct("small").getName());
+        assertEquals(1, catalog.getProduct(Architecture.I32, 1, 512).getCpuCount());
+
+        List<VirtualMachineProduct> products = catalog.getProducts(Architecture.I64);
+
+        products.get(0).setName("changed");
+        products.clear();
+        assertEquals("Small", catalog.getProducts(Architecture.I64).get(0).getName());
+
+        VirtualMachineProduct custom = catalog.getProduct("custom:4:1024");
+
+        custom.setCpuCount(1);
+        assertEquals(4, catalog.getProduct("custom:4:1024").getCpuCount());
+    }
+
+    @Test
+    public void nearestFitExactMatch() {
+        assertEquals("medium", catalog.findProduct(Architecture.I64, 2, 2048).getProviderProductId());
+        // products of the same size are taken in the order they are defined
+        assertEquals("small", catalog.findProduct(Architecture.I32, 1, 512).getProviderProductId());
+    }
+
+    @Test
+    public void nearestFitRoundsUp() {
+        assertEquals("small", catalog.findProduct(Architecture.I64, 1, 256).getProviderProductId());
+        assertEquals("medium", catalog.findProduct(Architecture.I64, 2, 1024).getProviderProductId());
+        assertEquals("large", catalog.findProduct(Architecture.I64, 3, 2048).getProviderProductId());
+        assertEquals("large", catalog.findProduct(Architecture.I64, 1, 4096).getProviderProductId());
+    }
+
+    @Test
+    public void nearestFitWithoutFit() {
+        assertNull(catalog.findProduct(Architecture.I64, 8, 512));
+        assertNull(catalog.findProduct(Architecture.I64, 1, 16384));
+        // large is not defined for I32
+        assertNull(catalog.findProduct(Architecture.I32, 4, 1024));
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.vcloud.compute;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks where the description of a VM being reconfigured ends up, since vCloud rejects a reconfigureVm payload whose
+ * elements are out of schema order.
+ */
+public class vAppSupportTest {
+    static private final String NS = "http://www.vmware.com/vcloud/v1.5";
+
+    private Element parse(String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml))).getDocumentElement();
+    }
+
+    static private String names(Element parent) {
+        StringBuilder names = new StringBuilder();
+
+        for( Node n = parent.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if( n.getNodeType() == Node.ELEMENT_NODE ) {
+                if( names.length() > 0 ) {
+                    names.append(",");
+                }
+                names.append(n.getNodeName());
+            }
+        }
+        return names.toString();
+    }
+
+    @Test
+    public void missingDescriptionGoesAfterLinks() throws Exception {
+        Element vm = parse(
+                "<Vm xmlns=\"" + NS + "\" name=\"web-1\">" +
+                "<Link rel=\"up\" href=\"https://cloud.example.com/api/vApp/vapp-1\"/>" +
+                "<Link rel=\"edit\" href=\"https://cloud.example.com/api/vApp/vm-1\"/>" +
+                "<GuestCustomizationSection/>" +
+                "</Vm>");
+
+        vAppSupport.setDescription(vm, "web server");
+        assertEquals("Link,Link,Description,GuestCustomizationSection", names(vm));
+        assertEquals("web server", vm.getChildNodes().item(2).getTextContent());
+    }
+
+    @Test
+    public void missingDescriptionWithoutLinks() throws Exception {
+        Element vm = parse("<vcloud:Vm xmlns:vcloud=\"" + NS + "\"><vcloud:GuestCustomizationSection/></vcloud:Vm>");
+
+        vAppSupport.setDescription(vm, null);
+        assertEquals("vcloud:Description,vcloud:GuestCustomizationSection", names(vm));
+        assertEquals("", vm.getFirstChild().getTextContent());
+    }
+
+    @Test
+    public void existingDescriptionIsReplaced() throws Exception {
+        Element vm = parse(
+                "<Vm xmlns=\"" + NS + "\">" +
+                "<Link rel=\"up\" href=\"https://cloud.example.com/api/vApp/vapp-1\"/>" +
+                "<Description>old</Description>" +
+                "</Vm>");
+
+        vAppSupport.setDescription(vm, "new");
+        assertEquals("Link,Description", names(vm));
+        assertEquals("new", vm.getLastChild().getTextContent());
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Binds sample vCloud responses, written both with the vCloud namespace as the default and with a prefix, and checks
+ * that elements outside the vCloud namespaces are ignored.
+ */
+public class vCloudBinderTest {
+    static private final String NS = "http://www.vmware.com/vcloud/v1.5";
+
+    static private final String TASK =
+            "<Task xmlns=\"" + NS + "\" status=\"error\" operation=\"Deploying Virtual Application web (42)\" href=\"https://cloud.example.com/api/task/t-1\" name=\"task\">" +
+            "<Link rel=\"task:cancel\" href=\"https://cloud.example.com/api/task/t-1/action/cancel\"/>" +
+            "<Owner type=\"application/vnd.vmware.vcloud.vApp+xml\" href=\"https://cloud.example.com/api/vApp/vapp-42\" name=\"web\"/>" +
+            "<Error message=\"  The entity is busy.  \" majorErrorCode=\"400\" minorErrorCode=\"BUSY_ENTITY\"/>" +
+            "</Task>";
+
+    static private final String PREFIXED_TASK =
+            "<vcloud:Task xmlns:vcloud=\"" + NS + "\" status=\"success\" href=\"https://cloud.example.com/api/task/t-2\">" +
+            "<vcloud:Owner href=\"https://cloud.example.com/api/disk/d-7\"/>" +
+            "</vcloud:Task>";
+
+    static private final String VAPP =
+            "<VApp xmlns=\"" + NS + "\" xmlns:ovf=\"http://schemas.dmtf.org/ovf/envelope/1\" status=\"8\" name=\"web\" type=\"application/vnd.vmware.vcloud.vApp+xml\" href=\"https://cloud.example.com/api/vApp/vapp-42\">" +
+            "<Link rel=\"power:powerOn\" href=\"https://cloud.example.com/api/vApp/vapp-42/power/action/powerOn\"/>" +
+            "<Link rel=\"up\" type=\"application/vnd.vmware.vcloud.vdc+xml\" href=\"https://cloud.example.com/api/vdc/vdc-1\"/>" +
+            "<ovf:Link rel=\"foreign\" href=\"https://example.com/not-vcloud\"/>" +
+            "<Description> Web tier </Description>" +
+            "<Tasks><Task status=\"running\" href=\"https://cloud.example.com/api/task/t-3\"/></Tasks>" +
+            "<Children>" +
+            "<Vm status=\"4\" name=\"web-1\" href=\"https://cloud.example.com/api/vApp/vm-1\"/>" +
+            "<Vm status=\"8\" name=\"web-2\" href=\"https://cloud.example.com/api/vApp/vm-2\"/>" +
+            "</Children>" +
+            "</VApp>";
+
+    static private final String PREFIXED_VAPP =
+            "<v:VApp xmlns:v=\"http://www.vmware.com/vcloud/v5.1\" name=\"db\" href=\"https://cloud.example.com/api/vApp/vapp-43\">" +
+            "<v:Children><v:Vm name=\"db-1\" href=\"https://cloud.example.com/api/vApp/vm-3\"/></v:Children>" +
+            "</v:VApp>";
+
+    static private final String TYPED_METADATA =
+            "<Metadata xmlns=\"" + NS + "\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+            "<MetadataEntry><Key>dsnImageId</Key><TypedValue xsi:type=\"MetadataStringValue\"><Value>vappTemplate-9</Value></TypedValue></MetadataEntry>" +
+            "<MetadataEntry><Key>empty</Key><TypedValue xsi:type=\"MetadataStringValue\"><Value> </Value></TypedValue></MetadataEntry>" +
+            "<MetadataEntry><Key>owner</Key><TypedValue xsi:type=\"MetadataStringValue\"><Value>ops</Value></TypedValue></MetadataEntry>" +
+            "</Metadata>";
+
+    static private final String PREFIXED_METADATA =
+            "<vcloud:Metadata xmlns:vcloud=\"" + NS + "\">" +
+            "<vcloud:MetadataEntry><vcloud:Key>b</vcloud:Key><vcloud:Value>2</vcloud:Value></vcloud:MetadataEntry>" +
+            "<vcloud:MetadataEntry><vcloud:Key>a</vcloud:Key><vcloud:Value>1</vcloud:Value></vcloud:MetadataEntry>" +
+            "</vcloud:Metadata>";
+
+    private vCloudBinder binder;
+
+    @Before
+    public void setUp() {
+        binder = new vCloudBinder(new vCloud());
+    }
+
+    private Element parse(String xml) throws Exception {
+        return vCloudBinder.parse(xml).getDocumentElement();
+    }
+
+    @Test
+    public void taskWithError() throws Exception {
+        vCloudBinder.Task task = binder.toTask(parse(TASK));
+
+        assertNotNull(task);
+        assertEquals("t-1", task.getId());
+        assertEquals("error", task.getStatus());
+        assertEquals("Deploying Virtual Application web (42)", task.getOperation());
+        assertEquals("https://cloud.example.com/api/vApp/vapp-42", task.getOwnerHref());
+        assertEquals("https://cloud.example.com/api/task/t-1/action/cancel", task.getLink("task:cancel", null));
+        assertTrue(task.hasError());
+        assertEquals("The entity is busy.", task.toException().getMessage());
+    }
+
+    @Test
+    public void prefixedTaskWithoutError() throws Exception {
+        vCloudBinder.Task task = binder.toTask(parse(PREFIXED_TASK));
+
+        assertNotNull(task);
+        assertEquals("t-2", task.getId());
+        assertEquals("success", task.getStatus());
+        assertNull(task.getOperation());
+        assertEquals("https://cloud.example.com/api/disk/d-7", task.getOwnerHref());
+        assertFalse(task.hasError());
+    }
+
+    @Test
+    public void taskListedByEntity() throws Exception {
+        vCloudBinder.Task task = binder.toTask(parse(VAPP));
+
+        assertNotNull(task);
+        assertEquals("t-3", task.getId());
+        assertEquals("running", task.getStatus());
+    }
+
+    @Test
+    public void noTask() throws Exception {
+        assertNull(binder.toTask(parse(PREFIXED_METADATA)));
+    }
+
+    @Test
+    public void vAppWithVms() throws Exception {
+        vCloudBinder.VApp vapp = binder.toVApp(parse(VAPP));
+
+        assertEquals("vapp-42", vapp.getId());
+        assertEquals("web", vapp.getName());
+        assertEquals("8", vapp.getStatus());
+        assertEquals("Web tier", vapp.getDescription());
+        assertEquals(2, vapp.getLinks().size());
+        assertEquals("https://cloud.example.com/api/vdc/vdc-1", vapp.getLink("up", "application/vnd.vmware.vcloud.vdc+xml"));
+        assertNull(vapp.getLink("up", "application/vnd.vmware.vcloud.org+xml"));
+        assertNull(vapp.getLink("foreign", null));
+        assertEquals(2, vapp.getVms().size());
+        assertEquals("vm-1", vapp.getVms().get(0).getId());
+        assertEquals("4", vapp.getVms().get(0).getStatus());
+        assertEquals("web-2", vapp.getVms().get(1).getName());
+    }
+
+    @Test
+    public void prefixedVApp() throws Exception {
+        vCloudBinder.VApp vapp = binder.toVApp(parse(PREFIXED_VAPP));
+
+        assertEquals("vapp-43", vapp.getId());
+        assertNull(vapp.getDescription());
+        assertEquals(1, vapp.getVms().size());
+        assertEquals("vm-3", vapp.getVms().get(0).getId());
+    }
+
+    @Test
+    public void typedMetadata() throws Exception {
+        Map<String,String> metadata = binder.toMetadata(parse(TYPED_METADATA));
+
+        assertEquals(2, metadata.size());
+        assertEquals("vappTemplate-9", metadata.get("dsnImageId"));
+        assertEquals("ops", metadata.get("owner"));
+        assertFalse(metadata.containsKey("empty"));
+    }
+
+    @Test
+    public void prefixedMetadataKeepsDocumentOrder() throws Exception {
+        Map<String,String> metadata = binder.toMetadata(parse(PREFIXED_METADATA));
+
+        assertEquals("[b, a]", metadata.keySet().toString());
+        assertEquals("1", metadata.get("a"));
+    }
+
+    @Test
+    public void disk() throws Exception {
+        vCloudBinder.Disk disk = binder.toDisk(parse("<Disk xmlns=\"" + NS + "\" size=\"10737418240\" busType=\"6\" busSubType=\"lsilogic\" href=\"https://cloud.example.com/api/disk/d-7\"/>"));
+
+        assertEquals("d-7", disk.getId());
+        assertEquals(10737418240L, disk.getSize());
+        assertEquals("6", disk.getBusType());
+        assertEquals("lsilogic", disk.getBusSubType());
+        assertEquals(-1L, binder.toDisk(parse("<Disk xmlns=\"" + NS + "\" size=\"big\"/>")).getSize());
+    }
+
+    @Test
+    public void networkWithNestedScope() throws Exception {
+        vCloudBinder.Network network = binder.toNetwork(parse(
+                "<OrgVdcNetwork xmlns=\"" + NS + "\" name=\"app\" href=\"https://cloud.example.com/api/network/n-1\">" +
+                "<Configuration><IpScopes><IpScope><Gateway>10.0.0.1</Gateway><Netmask>255.255.255.0</Netmask><Dns1>10.0.0.2</Dns1><DnsSuffix>example.com</DnsSuffix>" +
+                "<IpRanges><IpRange><StartAddress>10.0.0.10</StartAddress><EndAddress>10.0.0.99</EndAddress></IpRange></IpRanges></IpScope></IpScopes>" +
+                "<FenceMode>bridged</FenceMode></Configuration>" +
+                "<IsShared>true</IsShared>" +
+                "</OrgVdcNetwork>"));
+
+        assertEquals("n-1", network.getId());
+        assertEquals("10.0.0.1", network.getGateway());
+        assertEquals("255.255.255.0", network.getNetmask());
+        assertEquals("10.0.0.2", network.getDns1());
+        assertNull(network.getDns2());
+        assertEquals("example.com", network.getDnsSuffix());
+        assertEquals("bridged", network.getFenceMode());
+        assertEquals("10.0.0.10", network.getIpStart());
+        assertEquals("10.0.0.99", network.getIpEnd());
+        assertTrue(network.isShared());
+        assertTrue(network.isEnabled());
+    }
+
+    @Test
+    public void networkWithoutScopes() throws Exception {
+        vCloudBinder.Network network = binder.toNetwork(parse(
+                "<vcloud:OrgNetwork xmlns:vcloud=\"" + NS + "\" name=\"legacy\" href=\"https://cloud.example.com/api/network/n-2\">" +
+                "<vcloud:Description>Old network</vcloud:Description>" +
+                "<vcloud:Configuration><vcloud:Gateway>192.168.0.1</vcloud:Gateway><vcloud:Netmask>255.255.0.0</vcloud:Netmask></vcloud:Configuration>" +
+                "<vcloud:Features><vcloud:FenceMode>natRouted</vcloud:FenceMode></vcloud:Features>" +
+                "</vcloud:OrgNetwork>"));
+
+        assertEquals("Old network", network.getDescription());
+        assertEquals("192.168.0.1", network.getGateway());
+        assertEquals("255.255.0.0", network.getNetmask());
+        assertEquals("natRouted", network.getFenceMode());
+        assertNull(network.getIpStart());
+        assertFalse(network.isShared());
+        assertTrue(network.isEnabled());
+    }
+
+    @Test
+    public void ovfNamesMatchTheirOwnNamespace() throws Exception {
+        Element vm = parse(
+                "<Vm xmlns=\"" + NS + "\" xmlns:ovf=\"" + vCloudBinder.OVF_NAMESPACE + "\" xmlns:rasd=\"" + vCloudBinder.RASD_NAMESPACE + "\">" +
+                "<Description>vm</Description>" +
+                "<ovf:VirtualHardwareSection><ovf:Description>hardware</ovf:Description>" +
+                "<ovf:Item><rasd:ResourceType>3</rasd:ResourceType><rasd:VirtualQuantity>2</rasd:VirtualQuantity></ovf:Item></ovf:VirtualHardwareSection>" +
+                "</Vm>");
+        Element hardware = vCloudBinder.child(vm, vCloudBinder.OVF_VIRTUAL_HARDWARE_SECTION);
+
+        assertEquals("vm", vCloudBinder.text(vm, vCloudBinder.DESCRIPTION));
+        assertNull(vCloudBinder.child(vm, vCloudBinder.OVF_DESCRIPTION));
+        assertEquals("hardware", vCloudBinder.text(hardware, vCloudBinder.OVF_DESCRIPTION));
+        assertNull(vCloudBinder.child(hardware, vCloudBinder.DESCRIPTION));
+
+        Element item = vCloudBinder.child(hardware, vCloudBinder.OVF_ITEM);
+
+        assertEquals("3", vCloudBinder.text(item, vCloudBinder.RASD_RESOURCE_TYPE));
+        assertEquals("2", vCloudBinder.text(item, vCloudBinder.RASD_VIRTUAL_QUANTITY));
+    }
+
+    @Test
+    public void catalogItems() throws Exception {
+        vCloudBinder.Catalog catalog = binder.toCatalog(parse(
+                "<vcloud:Catalog xmlns:vcloud=\"" + NS + "\" name=\"Public\" href=\"https://cloud.example.com/api/catalog/c-1\">" +
+                "<vcloud:IsPublished>true</vcloud:IsPublished>" +
+                "<vcloud:CatalogItems>" +
+                "<vcloud:CatalogItem name=\"centos\" href=\"https://cloud.example.com/api/catalogItem/ci-1\"/>" +
+                "<vcloud:CatalogItem name=\"ubuntu\" href=\"https://cloud.example.com/api/catalogItem/ci-2\"/>" +
+                "</vcloud:CatalogItems>" +
+                "</vcloud:Catalog>"));
+
+        assertEquals("c-1", catalog.getId());
+        assertTrue(catalog.isPublished());
+        assertEquals(2, catalog.getItems().size());
+        assertEquals("ci-2", catalog.getItems().get(1).getId());
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.vcloud;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link vCloud#toID(String)} in standard and compat mode, including the edge cases the scanning
+ * implementation has to get right, against the original <code>String.split</code> implementation.
+ */
+public class vCloudToIDTest {
+    @After
+    public void tearDown() {
+        System.clearProperty("vCloudCompat");
+    }
+
+    static private vCloud newProvider(boolean compat) {
+        if( compat ) {
+            System.setProperty("vCloudCompat", "true");
+        }
+        else {
+            System.clearProperty("vCloudCompat");
+        }
+        return new vCloud();
+    }
+
+    /**
+     * The implementation <code>toID</code> replaced.
+     */
+    static private String splitToID(String url, boolean compat) {
+        String[] parts = url.split("/");
+
+        if( parts.length > 2 ) {
+            if( compat ) {
+                return "/" + parts[parts.length-2] + "/" + parts[parts.length-1];
+            }
+            return parts[parts.length-1];
+        }
+        return url;
+    }
+
+    @Test
+    public void standardMode() {
+        vCloud provider = newProvider(false);
+
+        assertEquals("vm-1", provider.toID("https://cloud.example.com/api/vApp/vm-1"));
+        assertEquals("vm-1", provider.toID("https://cloud.example.com/api/vApp/vm-1/"));
+        assertEquals("vm-1", provider.toID("https://cloud.example.com/api/vApp/vm-1///"));
+        assertEquals("b", provider.toID("/a/b"));
+        assertEquals("a", provider.toID("//a"));
+        assertEquals("b", provider.toID("a//b"));
+    }
+
+    @Test
+    public void compatMode() {
+        vCloud provider = newProvider(true);
+
+        assertEquals("/vApp/vm-1", provider.toID("https://cloud.example.com/api/vApp/vm-1"));
+        assertEquals("/vApp/vm-1", provider.toID("https://cloud.example.com/api/vApp/vm-1/"));
+        assertEquals("/a/b", provider.toID("/a/b"));
+        assertEquals("//a", provider.toID("//a"));
+        assertEquals("//b", provider.toID("a//b"));
+    }
+
+    @Test
+    public void fewerThanThreeSegmentsAreReturnedAsIs() {
+        for( boolean compat : new boolean[] { false, true } ) {
+            vCloud provider = newProvider(compat);
+
+            assertEquals("vm-1", provider.toID("vm-1"));
+            assertEquals("vApp/vm-1", provider.toID("vApp/vm-1"));
+            assertEquals("vApp/vm-1/", provider.toID("vApp/vm-1/"));
+            assertEquals("/vm-1", provider.toID("/vm-1"));
+            assertEquals("/", provider.toID("/"));
+            assertEquals("///", provider.toID("///"));
+            assertEquals("", provider.toID(""));
+        }
+    }
+
+    @Test
+    public void generatedHrefsMatchSplit() {
+        Random random = new Random(424L);
+
+        for( boolean compat : new boolean[] { false, true } ) {
+            vCloud provider = newProvider(compat);
+
+            for( int i=0; i<50000; i++ ) {
+                StringBuilder url = new StringBuilder();
+                int length = random.nextInt(12);
+
+                for( int j=0; j<length; j++ ) {
+                    url.append(random.nextInt(3) == 0 ? '/' : (char)('a' + random.nextInt(3)));
+                }
+                assertEquals(url + " compat=" + compat, splitToID(url.toString(), compat), provider.toID(url.toString()));
+            }
+        }
+    }
+}